@@ -0,0 +1,231 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.access.User;
+
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Unit tests for the background execution of webhooks in {@link AsyncWebhookJobs}.
+ * <p>
+ * Jobs run on the calling thread, so the static mocks of the DAL apply to them.
+ * </p>
+ */
+class AsyncWebhookJobsTest {
+
+  private static final long RETENTION = 60_000L;
+
+  private MockedStatic<OBDal> obDalMock;
+  private MockedStatic<OBContext> obContextMock;
+  private MockedStatic<OBMessageUtils> messageMock;
+  private OBDal obDal;
+  private User user;
+  private BaseWebhookService webhook;
+
+  @BeforeEach
+  void setUp() {
+    obDal = mock(OBDal.class);
+    obDalMock = mockStatic(OBDal.class);
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    OBContext context = mock(OBContext.class);
+    user = mock(User.class);
+    when(user.getId()).thenReturn("USER1");
+    when(context.getUser()).thenReturn(user);
+    obContextMock = mockStatic(OBContext.class);
+    obContextMock.when(OBContext::getOBContext).thenReturn(context);
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    webhook = mock(BaseWebhookService.class);
+  }
+
+  @AfterEach
+  void tearDown() {
+    obDalMock.close();
+    obContextMock.close();
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that only the "true" value of the Async parameter requests a background run.
+   */
+  @Test
+  void testIsRequested() {
+    Map<String, String> parameter = new HashMap<>();
+    assertFalse(AsyncWebhookJobs.isRequested(parameter));
+    parameter.put(AsyncWebhookJobs.PARAMETER, "false");
+    assertFalse(AsyncWebhookJobs.isRequested(parameter));
+    parameter.put(AsyncWebhookJobs.PARAMETER, " TRUE ");
+    assertTrue(AsyncWebhookJobs.isRequested(parameter));
+  }
+
+  /**
+   * Ensures that a job runs the webhook without the Async parameter, commits its session and keeps its response
+   * and last progress for the status call.
+   */
+  @Test
+  void testSubmitRunsWebhookAndKeepsResponse() throws Exception {
+    doAnswer(invocation -> {
+      Map<String, String> parameter = invocation.getArgument(0);
+      Map<String, String> responseVars = invocation.getArgument(1);
+      assertFalse(parameter.containsKey(AsyncWebhookJobs.PARAMETER));
+      AsyncWebhookJobs.reportProgress("Registering columns");
+      responseVars.put("message", "Registered " + parameter.get("TableName"));
+      return null;
+    }).when(webhook).get(anyMap(), anyMap());
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(Runnable::run, RETENTION);
+
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, Map.of("TableName", "copdev_test", AsyncWebhookJobs.PARAMETER, "true"), responseVars);
+    String jobId = new JSONObject(responseVars.get("response")).getString("jobId");
+    JSONObject status = jobs.getStatus(jobId);
+
+    assertEquals(AsyncWebhookJobs.STATUS_DONE, status.getString("status"));
+    assertEquals("Registering columns", status.getString("progress"));
+    assertEquals("Registered copdev_test", status.getJSONObject("responseVars").getString("message"));
+    verify(obDal).commitAndClose();
+    verify(obDal, never()).rollbackAndClose();
+  }
+
+  /**
+   * Ensures that a job whose webhook throws rolls back its session and is reported as failed with the error.
+   */
+  @Test
+  void testFailedJobRollsBack() throws Exception {
+    doThrow(new OBException("boom")).when(webhook).get(anyMap(), anyMap());
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(Runnable::run, RETENTION);
+
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+    JSONObject status = jobs.getStatus(new JSONObject(responseVars.get("response")).getString("jobId"));
+
+    assertEquals(AsyncWebhookJobs.STATUS_FAILED, status.getString("status"));
+    assertEquals("boom", status.getJSONObject("responseVars").getString("error"));
+    verify(obDal).rollbackAndClose();
+  }
+
+  /**
+   * Ensures that a job whose webhook throws an exception without a message is reported as failed with the class
+   * of the exception.
+   */
+  @Test
+  void testFailedJobWithoutMessage() throws Exception {
+    doThrow(new NullPointerException()).when(webhook).get(anyMap(), anyMap());
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(Runnable::run, RETENTION);
+
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+    JSONObject status = jobs.getStatus(new JSONObject(responseVars.get("response")).getString("jobId"));
+
+    assertEquals(AsyncWebhookJobs.STATUS_FAILED, status.getString("status"));
+    assertEquals(NullPointerException.class.getName(), status.getJSONObject("responseVars").getString("error"));
+    verify(obDal).rollbackAndClose();
+  }
+
+  /**
+   * Ensures that a job waiting in the queue is reported as queued, without a response yet.
+   */
+  @Test
+  void testQueuedJob() throws Exception {
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(runnable -> {
+    }, RETENTION);
+
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+    JSONObject status = jobs.getStatus(new JSONObject(responseVars.get("response")).getString("jobId"));
+
+    assertEquals(AsyncWebhookJobs.STATUS_QUEUED, status.getString("status"));
+    assertFalse(status.has("responseVars"));
+    verify(webhook, never()).get(anyMap(), anyMap());
+  }
+
+  /**
+   * Ensures that a submission rejected by a full queue is reported as an error and leaves no job behind.
+   */
+  @Test
+  void testSubmitWhenQueueIsFull() {
+    Executor full = runnable -> {
+      throw new RejectedExecutionException();
+    };
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(full, RETENTION);
+
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+
+    assertEquals("COPDEV_AsyncQueueFull", responseVars.get("error"));
+    assertFalse(responseVars.containsKey("response"));
+  }
+
+  /**
+   * Ensures that an unknown job, or one that finished longer than the retention ago, is not found.
+   */
+  @Test
+  void testGetStatusOfUnknownJob() throws Exception {
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(Runnable::run, 0L);
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+    String jobId = new JSONObject(responseVars.get("response")).getString("jobId");
+
+    assertThrows(OBException.class, () -> jobs.getStatus("UNKNOWN"));
+    Thread.sleep(5);
+    assertThrows(OBException.class, () -> jobs.getStatus(jobId));
+  }
+
+  /**
+   * Ensures that a job submitted by a user is not returned to another one.
+   */
+  @Test
+  void testGetStatusOfAnotherUser() throws Exception {
+    AsyncWebhookJobs jobs = new AsyncWebhookJobs(runnable -> {
+    }, RETENTION);
+    Map<String, String> responseVars = new HashMap<>();
+    jobs.submit(webhook, new HashMap<>(), responseVars);
+    String jobId = new JSONObject(responseVars.get("response")).getString("jobId");
+
+    when(user.getId()).thenReturn("USER2");
+    assertThrows(OBException.class, () -> jobs.getStatus(jobId));
+  }
+}
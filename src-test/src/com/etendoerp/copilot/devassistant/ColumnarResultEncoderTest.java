@@ -0,0 +1,137 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for {@link ColumnarResultEncoder}.
+ * <p>
+ * The result set has ten rows with a numeric amount and a status that only takes two values.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ColumnarResultEncoderTest {
+
+  private static final int ROWS = 10;
+
+  @Mock private ResultSet resultSet;
+  @Mock private ResultSetMetaData metaData;
+
+  /**
+   * Configures the mocked result set.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(2);
+    when(metaData.getColumnName(1)).thenReturn("amount");
+    when(metaData.getColumnName(2)).thenReturn("docstatus");
+    when(metaData.getColumnType(1)).thenReturn(Types.NUMERIC);
+    when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+    Boolean[] next = new Boolean[ROWS];
+    String[] amounts = new String[ROWS - 1];
+    String[] statuses = new String[ROWS - 1];
+    for (int i = 0; i < ROWS - 1; i++) {
+      next[i] = true;
+      amounts[i] = String.valueOf(i + 2);
+      statuses[i] = i % 2 == 0 ? "DR" : "CO";
+    }
+    next[ROWS - 1] = false;
+    // ROWS rows followed by the end of the result set
+    when(resultSet.next()).thenReturn(true, next);
+    when(resultSet.getString(1)).thenReturn("1", amounts);
+    when(resultSet.getString(2)).thenReturn("CO", statuses);
+  }
+
+  /**
+   * Ensures that column names are written once, numbers stay raw and repeated strings use a dictionary.
+   */
+  @Test
+  void testColumnarEncodingWithDictionary() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new ColumnarResultEncoder(0, 0, true).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    JSONArray columns = json.getJSONArray(ColumnarResultEncoder.COLUMNS);
+    assertEquals(ROWS, summary.getRowCount());
+    assertFalse(json.getBoolean(QueryResultStreamer.TRUNCATED));
+
+    JSONObject amount = columns.getJSONObject(0);
+    assertEquals(ColumnarResultEncoder.TYPE_NUMBER, amount.getString("type"));
+    assertEquals(ROWS, amount.getJSONArray(ColumnarResultEncoder.VALUES).length());
+    assertFalse(amount.has(ColumnarResultEncoder.DICTIONARY));
+
+    JSONObject status = columns.getJSONObject(1);
+    JSONArray dictionary = status.getJSONArray(ColumnarResultEncoder.DICTIONARY);
+    assertEquals(2, dictionary.length());
+    assertEquals("CO", dictionary.getString(0));
+    assertEquals(0, status.getJSONArray(ColumnarResultEncoder.VALUES).getInt(0));
+    assertEquals(1, status.getJSONArray(ColumnarResultEncoder.VALUES).getInt(1));
+  }
+
+  /**
+   * Ensures that dictionary encoding can be disabled and the row cap is honoured.
+   */
+  @Test
+  void testColumnarEncodingWithoutDictionaryAndRowCap() throws Exception {
+    StringWriter out = new StringWriter();
+
+    new ColumnarResultEncoder(3, 0, false).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    JSONObject status = json.getJSONArray(ColumnarResultEncoder.COLUMNS).getJSONObject(1);
+    assertFalse(status.has(ColumnarResultEncoder.DICTIONARY));
+    assertEquals("CO", status.getJSONArray(ColumnarResultEncoder.VALUES).getString(0));
+    assertEquals(3, json.getInt(QueryResultStreamer.ROW_COUNT));
+    assertTrue(json.getBoolean(QueryResultStreamer.TRUNCATED));
+  }
+
+  /**
+   * Ensures that a first row larger than the byte cap is still written, so a page always advances.
+   */
+  @Test
+  void testOversizedFirstRowIsWritten() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new ColumnarResultEncoder(0, 1, true).stream(resultSet, out);
+
+    assertEquals(1, summary.getRowCount());
+    assertTrue(summary.isTruncated());
+    assertEquals(1, new JSONObject(out.toString()).getInt(QueryResultStreamer.ROW_COUNT));
+  }
+}
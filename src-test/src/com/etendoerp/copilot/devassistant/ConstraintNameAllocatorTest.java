@@ -0,0 +1,111 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the names allocated by {@link ConstraintNameAllocator}.
+ */
+class ConstraintNameAllocatorTest {
+
+  /**
+   * Ensures that a free name is allocated as proposed, removing the prefix repeated in the table name.
+   */
+  @Test
+  void testFreeName() {
+    ConstraintNameAllocator names = new ConstraintNameAllocator(new HashSet<>());
+
+    assertEquals("copdev_sale_ad_org_fk", names.allocate("copdev", "copdev_sale", "ad_org", "fk"));
+  }
+
+  /**
+   * Ensures that a name taken in the catalog gets a counter.
+   */
+  @Test
+  void testTakenName() {
+    ConstraintNameAllocator names = new ConstraintNameAllocator(new HashSet<>(Set.of("copdev_sale_ad_org_fk")));
+
+    assertEquals("copdev_sal_ad_or2_fk", names.allocate("copdev", "copdev_sale", "ad_org", "fk"));
+  }
+
+  /**
+   * Ensures that the names allocated in the same operation do not collide with each other.
+   */
+  @Test
+  void testReservedNames() {
+    ConstraintNameAllocator names = new ConstraintNameAllocator(new HashSet<>());
+
+    String first = names.allocate("copdev", "sale", "ad_org", "ix");
+    String second = names.allocate("copdev", "sale", "ad_org", "ix");
+    String third = names.allocate("copdev", "sale", "ad_org", "ix");
+
+    assertNotEquals(first, second);
+    assertEquals("copdev_sal_ad_or3_ix", third);
+  }
+
+  /**
+   * Ensures that long names are shortened to the maximum length.
+   */
+  @Test
+  void testLongName() {
+    ConstraintNameAllocator names = new ConstraintNameAllocator(new HashSet<>());
+
+    String name = names.allocate("copdev", "sales_order_line_extension", "c_bpartner_location", "fk");
+
+    assertTrue(name.length() <= 30, name);
+    assertTrue(name.startsWith("copdev_") && name.endsWith("_fk"), name);
+  }
+
+  /**
+   * Ensures that an allocator is not created when the existing names cannot be read.
+   */
+  @Test
+  void testExistingNamesNotRead() throws Exception {
+    OBDal obDal = mock(OBDal.class);
+    Connection connection = mock(Connection.class);
+    when(obDal.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenThrow(new SQLException("connection closed"));
+
+    try (MockedStatic<OBDal> obDalMock = mockStatic(OBDal.class);
+         MockedStatic<OBMessageUtils> messageMock = mockStatic(OBMessageUtils.class)) {
+      obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+      messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s %s");
+
+      assertThrows(OBException.class, () -> ConstraintNameAllocator.forPrefixes(List.of("copdev")));
+    }
+  }
+}
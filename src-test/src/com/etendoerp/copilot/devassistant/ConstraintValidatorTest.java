@@ -0,0 +1,164 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Unit tests for the validation modes of {@link ConstraintValidator}.
+ */
+class ConstraintValidatorTest {
+
+  private static final String TABLE = "copdev_order";
+  private static final String CONSTRAINT = "copdev_order_partner_fk";
+  private static final String VALIDATE = "ALTER TABLE IF EXISTS public.copdev_order VALIDATE CONSTRAINT "
+      + "copdev_order_partner_fk";
+
+  private MockedStatic<Utils> utilsMock;
+  private MockedStatic<AsyncWebhookJobs> asyncMock;
+  private AsyncWebhookJobs jobs;
+
+  /**
+   * Mocks the batch execution and the job registry.
+   */
+  @BeforeEach
+  void setUp() {
+    utilsMock = mockStatic(Utils.class);
+    jobs = mock(AsyncWebhookJobs.class);
+    asyncMock = mockStatic(AsyncWebhookJobs.class);
+    asyncMock.when(AsyncWebhookJobs::getInstance).thenReturn(jobs);
+  }
+
+  /**
+   * Releases the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    utilsMock.close();
+    asyncMock.close();
+  }
+
+  /**
+   * Ensures that only the sync and queued modes create the constraint NOT VALID.
+   */
+  @Test
+  void testModes() {
+    assertEquals(ConstraintValidator.MODE_IMMEDIATE, ConstraintValidator.getMode(null));
+    assertEquals(ConstraintValidator.MODE_SYNC, ConstraintValidator.getMode(" SYNC "));
+    assertEquals(ConstraintValidator.MODE_QUEUED, ConstraintValidator.getMode("queued"));
+    assertFalse(ConstraintValidator.isDeferred("immediate"));
+    assertTrue(ConstraintValidator.isDeferred("sync"));
+    assertTrue(ConstraintValidator.isDeferred("queued"));
+  }
+
+  /**
+   * Ensures that the immediate mode validates the constraint right away.
+   */
+  @Test
+  void testImmediateValidatesNow() throws Exception {
+    JSONObject result = ConstraintValidator.validate(TABLE, CONSTRAINT, ConstraintValidator.MODE_IMMEDIATE, null);
+
+    assertEquals(ConstraintValidator.STATUS_VALIDATED, result.getString("status"));
+    utilsMock.verify(() -> Utils.executeBatch(List.of(VALIDATE)));
+    verify(jobs, never()).submit(any(), anyMap(), anyMap());
+  }
+
+  /**
+   * Ensures that a failed synchronous validation is reported and leaves the constraint NOT VALID.
+   */
+  @Test
+  void testSyncFailureIsReported() throws Exception {
+    utilsMock.when(() -> Utils.executeBatch(anyList())).thenThrow(new OBException("violates foreign key"));
+
+    JSONObject result = ConstraintValidator.validate(TABLE, CONSTRAINT, ConstraintValidator.MODE_SYNC, null);
+
+    assertEquals(ConstraintValidator.STATUS_FAILED, result.getString("status"));
+    assertEquals("violates foreign key", result.getString("error"));
+  }
+
+  /**
+   * Ensures that a queued validation is submitted as a background job and returns its ID, and that the job
+   * validates the constraint synchronously.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  void testQueuedReturnsJobId() throws Exception {
+    doAnswer(inv -> {
+      ((Map<String, String>) inv.getArgument(2)).put("response", new JSONObject().put("jobId", "JOB1").toString());
+      return null;
+    }).when(jobs).submit(any(BaseWebhookService.class), anyMap(), anyMap());
+
+    JSONObject result = ConstraintValidator.validate(TABLE, CONSTRAINT, ConstraintValidator.MODE_QUEUED, null);
+
+    assertEquals(ConstraintValidator.STATUS_QUEUED, result.getString("status"));
+    assertEquals("JOB1", result.getString("jobId"));
+    ArgumentCaptor<Map<String, String>> parameter = ArgumentCaptor.forClass(Map.class);
+    ArgumentCaptor<BaseWebhookService> job = ArgumentCaptor.forClass(BaseWebhookService.class);
+    verify(jobs).submit(job.capture(), parameter.capture(), anyMap());
+    assertEquals(TABLE, parameter.getValue().get(ConstraintValidator.PARAM_TABLE_NAME));
+    assertEquals(CONSTRAINT, parameter.getValue().get(ConstraintValidator.PARAM_CONSTRAINT_NAME));
+    assertEquals("false", parameter.getValue().get(ConstraintValidator.PARAM_SAFE_DDL));
+    utilsMock.verify(() -> Utils.executeBatch(anyList()), never());
+
+    Map<String, String> jobResponse = new HashMap<>();
+    job.getValue().get(parameter.getValue(), jobResponse);
+    utilsMock.verify(() -> Utils.executeBatch(List.of(VALIDATE)));
+    assertEquals(ConstraintValidator.STATUS_VALIDATED,
+        new JSONObject(jobResponse.get("response")).getString("status"));
+  }
+
+  /**
+   * Ensures that a queued validation rejected by a full queue is reported as failed.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  void testQueuedRejectedIsReported() throws Exception {
+    doAnswer(inv -> {
+      ((Map<String, String>) inv.getArgument(2)).put("error", "queue full");
+      return null;
+    }).when(jobs).submit(any(BaseWebhookService.class), anyMap(), anyMap());
+
+    JSONObject result = ConstraintValidator.validate(TABLE, CONSTRAINT, ConstraintValidator.MODE_QUEUED, null);
+
+    assertEquals(ConstraintValidator.STATUS_FAILED, result.getString("status"));
+    assertEquals("queue full", result.getString("error"));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.module.DataPackage;
+
+/**
+ * Unit tests for the plans built by {@link DryRun}.
+ */
+class DryRunTest {
+
+  /**
+   * Ensures that the dry-run mode is only enabled by an explicit "true".
+   */
+  @Test
+  void testIsEnabled() {
+    assertTrue(DryRun.isEnabled(Map.of(DryRun.PARAMETER, "TRUE")));
+    assertFalse(DryRun.isEnabled(Map.of(DryRun.PARAMETER, "false")));
+    assertFalse(DryRun.isEnabled(Map.of()));
+  }
+
+  /**
+   * Ensures that the statements keep their order and the records write entities as their ID.
+   */
+  @Test
+  void testPlan() throws JSONException {
+    DataPackage dataPackage = mock(DataPackage.class);
+    when(dataPackage.getId()).thenReturn("DP1");
+    Map<String, Object> values = DryRun.values();
+    values.put(Table.PROPERTY_DBTABLENAME, "copdev_sale");
+    values.put(Table.PROPERTY_DATAPACKAGE, dataPackage);
+
+    JSONObject plan = new DryRun()
+        .addStatements(List.of("CREATE TABLE copdev_sale ()", "CREATE INDEX copdev_sale_ix"))
+        .addRecord(Table.ENTITY_NAME, DryRun.ACTION_CREATE, values)
+        .toJSON();
+
+    assertTrue(plan.getBoolean("dryRun"));
+    JSONArray ddl = plan.getJSONArray("ddl");
+    assertEquals(2, ddl.length());
+    assertEquals("CREATE INDEX copdev_sale_ix", ddl.getString(1));
+    JSONObject record = plan.getJSONArray("records").getJSONObject(0);
+    assertEquals(Table.ENTITY_NAME, record.getString("entity"));
+    assertEquals(DryRun.ACTION_CREATE, record.getString("action"));
+    assertEquals("copdev_sale", record.getJSONObject("values").getString(Table.PROPERTY_DBTABLENAME));
+    assertEquals("DP1", record.getJSONObject("values").getString(Table.PROPERTY_DATAPACKAGE));
+  }
+}
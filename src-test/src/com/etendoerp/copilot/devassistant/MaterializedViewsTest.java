@@ -0,0 +1,95 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the statements generated by {@link MaterializedViews}.
+ */
+class MaterializedViewsTest {
+
+  /**
+   * Ensures that the materialized view replaces the "_v" suffix of the view.
+   */
+  @Test
+  void testMaterializedName() {
+    assertEquals("copdev_sales_mv", MaterializedViews.getMaterializedName("copdev_sales_v"));
+  }
+
+  /**
+   * Ensures that the view is recreated over the materialized view, with the unique index required by a
+   * concurrent refresh and the refresh interval in the comment.
+   */
+  @Test
+  void testCreateStatements() {
+    List<String> statements = MaterializedViews.buildCreateStatements("copdev_sales_v",
+        "SELECT * FROM copdev_sale;", 30);
+
+    assertEquals(6, statements.size());
+    assertEquals("DROP VIEW IF EXISTS public.copdev_sales_v", statements.get(0));
+    assertEquals("DROP MATERIALIZED VIEW IF EXISTS public.copdev_sales_mv", statements.get(1));
+    assertEquals("CREATE MATERIALIZED VIEW public.copdev_sales_mv AS SELECT * FROM copdev_sale WITH DATA",
+        statements.get(2));
+    assertEquals("CREATE UNIQUE INDEX copdev_sales_mv_ix ON public.copdev_sales_mv (copdev_sales_v_id)",
+        statements.get(3));
+    assertTrue(statements.get(4).endsWith("IS 'copdev:materialized:30'"));
+    assertEquals("CREATE VIEW public.copdev_sales_v AS SELECT * FROM public.copdev_sales_mv", statements.get(5));
+  }
+
+  /**
+   * Ensures that a negative refresh interval is stored as a refresh on every run.
+   */
+  @Test
+  void testNegativeRefreshInterval() {
+    List<String> statements = MaterializedViews.buildCreateStatements("copdev_sales_v", "SELECT 1", -5);
+
+    assertTrue(statements.get(4).endsWith("IS 'copdev:materialized:0'"));
+  }
+
+  /**
+   * Ensures that a refresh records its time in the comment, next to the refresh interval.
+   */
+  @Test
+  void testRefreshRecordsLastRefresh() {
+    List<String> statements = MaterializedViews.buildRefreshStatements("copdev_sales_mv", 30,
+        Instant.ofEpochMilli(1700000000000L));
+
+    assertEquals("REFRESH MATERIALIZED VIEW CONCURRENTLY public.copdev_sales_mv", statements.get(0));
+    assertEquals("COMMENT ON MATERIALIZED VIEW public.copdev_sales_mv IS 'copdev:materialized:30:1700000000000'",
+        statements.get(1));
+  }
+
+  /**
+   * Ensures that the interval and the last refresh are read from the comment, with or without a refresh.
+   */
+  @Test
+  void testReadRefreshMark() {
+    assertEquals(30, MaterializedViews.getRefreshMinutes("30:1700000000000"));
+    assertEquals(Instant.ofEpochMilli(1700000000000L), MaterializedViews.getLastRefresh("30:1700000000000"));
+    assertEquals(15, MaterializedViews.getRefreshMinutes("15"));
+    assertNull(MaterializedViews.getLastRefresh("15"));
+    assertEquals(0, MaterializedViews.getRefreshMinutes("x"));
+  }
+}
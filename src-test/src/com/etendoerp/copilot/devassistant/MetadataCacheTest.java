@@ -0,0 +1,159 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.module.Module;
+
+/**
+ * Unit tests for {@link MetadataCache}.
+ */
+class MetadataCacheTest {
+
+  private static final String MODULE_ID = "module-id";
+
+  private MockedStatic<OBDal> obDalMock;
+  private OBDal obDal;
+  private Module module;
+
+  /**
+   * Starts every test with an empty cache and a module resolvable by its ID.
+   */
+  @BeforeEach
+  void setUp() {
+    MetadataCache.invalidate();
+    obDal = mock(OBDal.class);
+    module = mock(Module.class);
+    when(module.getId()).thenReturn(MODULE_ID);
+    obDalMock = mockStatic(OBDal.class);
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    when(obDal.get(Module.class, MODULE_ID)).thenReturn(module);
+  }
+
+  /**
+   * Releases the static mock and empties the cache.
+   */
+  @AfterEach
+  void tearDown() {
+    obDalMock.close();
+    MetadataCache.invalidate();
+  }
+
+  /**
+   * Ensures that the loader runs once and later lookups resolve the cached ID.
+   */
+  @Test
+  void testEntityLoadedOnce() {
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 3; i++) {
+      Module result = MetadataCache.getEntity(MetadataCache.MODULE_BY_PREFIX, "TEST", Module.class, () -> {
+        loads.incrementAndGet();
+        return module;
+      });
+      assertSame(module, result);
+    }
+    assertEquals(1, loads.get());
+  }
+
+  /**
+   * Ensures that a lookup without result is not cached.
+   */
+  @Test
+  void testMissNotCached() {
+    assertNull(MetadataCache.getEntity(MetadataCache.MODULE_BY_PREFIX, "NONE", Module.class, () -> null));
+    assertEquals(0, MetadataCache.MODULE_BY_PREFIX.size());
+  }
+
+  /**
+   * Ensures that an entity deleted after being cached is loaded again.
+   */
+  @Test
+  void testDeletedEntityReloaded() {
+    AtomicInteger loads = new AtomicInteger();
+    MetadataCache.getEntity(MetadataCache.MODULE_BY_PREFIX, "TEST", Module.class, () -> {
+      loads.incrementAndGet();
+      return module;
+    });
+    when(obDal.get(Module.class, MODULE_ID)).thenReturn(null);
+
+    assertNull(MetadataCache.getEntity(MetadataCache.MODULE_BY_PREFIX, "TEST", Module.class, () -> {
+      loads.incrementAndGet();
+      return null;
+    }));
+    assertEquals(2, loads.get());
+    assertEquals(0, MetadataCache.MODULE_BY_PREFIX.size());
+  }
+
+  /**
+   * Ensures that invalidating the cache forces the next lookup to load the value again.
+   */
+  @Test
+  void testInvalidate() {
+    assertEquals("test", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "test"));
+    assertEquals("test", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "other"));
+
+    MetadataCache.invalidate();
+
+    assertEquals("other", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "other"));
+  }
+
+  /**
+   * Ensures that evicting a key leaves the other keys cached, and that a value loaded again before the transaction
+   * ends is evicted when it completes.
+   */
+  @Test
+  void testEvictUntilTransactionCompleted() {
+    MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "test");
+    MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, "other-module", () -> "other");
+
+    MetadataCache.evict(MetadataCache.PREFIX_BY_MODULE, MODULE_ID);
+
+    assertEquals(1, MetadataCache.PREFIX_BY_MODULE.size());
+    assertEquals("stale", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "stale"));
+
+    MetadataCache.transactionCompleted();
+
+    assertEquals("new", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, MODULE_ID, () -> "new"));
+    assertEquals("other", MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, "other-module", () -> "none"));
+  }
+
+  /**
+   * Ensures that a region never grows beyond its limit.
+   */
+  @Test
+  void testBoundedRegion() {
+    for (int i = 0; i <= MetadataCache.MAX_ENTRIES; i++) {
+      String key = String.valueOf(i);
+      MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, key, () -> key);
+    }
+    assertEquals(1, MetadataCache.PREFIX_BY_MODULE.size());
+  }
+}
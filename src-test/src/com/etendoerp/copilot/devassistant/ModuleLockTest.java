@@ -0,0 +1,175 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.module.ModuleDBPrefix;
+
+/**
+ * Unit tests for {@link ModuleLock}.
+ */
+class ModuleLockTest {
+
+  private MockedStatic<OBMessageUtils> messageMock;
+  private Connection connection;
+  private PreparedStatement statement;
+  private ResultSet resultSet;
+
+  /**
+   * Mocks a connection whose lock query returns the mocked result set.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s %s");
+    connection = mock(Connection.class);
+    statement = mock(PreparedStatement.class);
+    resultSet = mock(ResultSet.class);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that a free lock is taken at the first attempt, keyed by the prefix.
+   */
+  @Test
+  void testAcquireFreeLock() throws Exception {
+    when(resultSet.getBoolean(1)).thenReturn(true);
+    long acquired = ModuleLock.getMetrics().getLong("acquired");
+
+    new ModuleLock(1000).acquire(connection, "COPDEV");
+
+    verify(statement).setString(1, "COPDEV");
+    verify(statement, times(1)).executeQuery();
+    assertEquals(acquired + 1, ModuleLock.getMetrics().getLong("acquired"));
+  }
+
+  /**
+   * Ensures that a lock held by another transaction is polled until it is released, and the wait is recorded.
+   */
+  @Test
+  void testAcquireWaitsForHeldLock() throws Exception {
+    when(resultSet.getBoolean(1)).thenReturn(false, false, true);
+    JSONObject before = ModuleLock.getMetrics();
+
+    long waited = new ModuleLock(5000).acquire(connection, "COPDEV");
+
+    verify(statement, times(3)).executeQuery();
+    JSONObject after = ModuleLock.getMetrics();
+    assertEquals(before.getLong("contended") + 1, after.getLong("contended"));
+    assertTrue(after.getLong("maxWaitMillis") >= waited);
+    assertTrue(waited > 0);
+  }
+
+  /**
+   * Ensures that a lock not released before the timeout fails the request instead of waiting.
+   */
+  @Test
+  void testAcquireTimesOut() throws Exception {
+    when(resultSet.getBoolean(1)).thenReturn(false);
+    long timedOut = ModuleLock.getMetrics().getLong("timedOut");
+
+    OBException e = assertThrows(OBException.class, () -> new ModuleLock(50).acquire(connection, "COPDEV"));
+
+    assertTrue(e.getMessage().startsWith("COPDEV_ModuleLockTimeout COPDEV 50"));
+    assertEquals(timedOut + 1, ModuleLock.getMetrics().getLong("timedOut"));
+  }
+
+  /**
+   * Ensures that several modules are locked once each, in the order of their prefixes, and modules without prefix
+   * are skipped.
+   */
+  @Test
+  void testLockAllInPrefixOrder() throws Exception {
+    when(resultSet.getBoolean(1)).thenReturn(true);
+    OBDal obDal = mock(OBDal.class);
+    when(obDal.getConnection()).thenReturn(connection);
+    OBPropertiesProvider properties = mock(OBPropertiesProvider.class);
+    try (MockedStatic<OBDal> obDalMock = mockStatic(OBDal.class);
+         MockedStatic<OBPropertiesProvider> propertiesMock = mockStatic(OBPropertiesProvider.class)) {
+      obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+      propertiesMock.when(OBPropertiesProvider::getInstance).thenReturn(properties);
+
+      ModuleLock.lockAll(module("ZZDEV"), module("COPDEV"), module("copdev"), module(null), null);
+    }
+
+    InOrder order = inOrder(statement);
+    order.verify(statement).setString(1, "COPDEV");
+    order.verify(statement).setString(1, "ZZDEV");
+    verify(statement, times(2)).executeQuery();
+  }
+
+  private static Module module(String prefix) {
+    Module module = mock(Module.class);
+    if (prefix == null) {
+      when(module.getModuleDBPrefixList()).thenReturn(List.of());
+      return module;
+    }
+    ModuleDBPrefix dbPrefix = mock(ModuleDBPrefix.class);
+    when(dbPrefix.getName()).thenReturn(prefix);
+    when(module.getModuleDBPrefixList()).thenReturn(List.of(dbPrefix));
+    return module;
+  }
+
+  /**
+   * Ensures that a timeout of 0 tries the lock only once.
+   */
+  @Test
+  void testAcquireWithoutTimeoutTriesOnce() throws Exception {
+    when(resultSet.getBoolean(1)).thenReturn(false);
+
+    assertThrows(OBException.class, () -> new ModuleLock(0).acquire(connection, "COPDEV"));
+
+    verify(statement, times(1)).executeQuery();
+  }
+}
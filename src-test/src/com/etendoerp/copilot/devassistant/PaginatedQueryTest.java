@@ -0,0 +1,122 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mockStatic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the parameter and continuation token handling of {@link PaginatedQuery}.
+ */
+class PaginatedQueryTest {
+
+  private static final String QUERY = "SELECT documentno FROM c_order ORDER BY created DESC";
+  private static final String KEY = "documentno";
+
+  private MockedStatic<OBMessageUtils> messageMock;
+
+  /**
+   * Mocks the message lookups used in the error paths.
+   */
+  @BeforeEach
+  void setUp() {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0));
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that a token issued for a query decodes back to the same key, even when the key holds the separator.
+   */
+  @Test
+  void testTokenRoundTrip() {
+    String token = PaginatedQuery.encodeToken(QUERY, KEY, "2025-01-01 10:00:00");
+
+    PaginatedQuery query = PaginatedQuery.of(QUERY + ";", KEY, "50", token);
+
+    assertEquals("2025-01-01 10:00:00", query.getStartKey());
+    assertEquals(50, query.getPageSize());
+  }
+
+  /**
+   * Ensures that a token cannot be replayed against another query or key column.
+   */
+  @Test
+  void testTokenFromOtherQueryIsRejected() {
+    String token = PaginatedQuery.encodeToken(QUERY, KEY, "100");
+
+    OBException e = assertThrows(OBException.class,
+        () -> PaginatedQuery.of("SELECT name FROM ad_table", KEY, null, token));
+    assertEquals("COPDEV_InvalidContinuationToken", e.getMessage());
+    assertThrows(OBException.class, () -> PaginatedQuery.of(QUERY, "created", null, token));
+  }
+
+  /**
+   * Ensures that the page size is clamped, non numeric page sizes are rejected and only SELECTs are allowed.
+   */
+  @Test
+  void testPageSizeIsClampedAndOnlySelectsAllowed() {
+    assertEquals(PaginatedQuery.MAX_PAGE_SIZE, PaginatedQuery.of(QUERY, KEY, "100000", null).getPageSize());
+    assertEquals(PaginatedQuery.DEFAULT_PAGE_SIZE, PaginatedQuery.of(QUERY, KEY, "", null).getPageSize());
+    OBException e = assertThrows(OBException.class, () -> PaginatedQuery.of(QUERY, KEY, "fifty", null));
+    assertEquals("COPDEV_InvalidPageSize", e.getMessage());
+    assertThrows(OBException.class, () -> PaginatedQuery.of("DELETE FROM c_order", KEY, null, null));
+  }
+
+  /**
+   * Ensures that the key column is required and cannot inject SQL.
+   */
+  @Test
+  void testKeyColumnIsValidated() {
+    assertThrows(OBException.class, () -> PaginatedQuery.of(QUERY, null, null, null));
+    OBException e = assertThrows(OBException.class,
+        () -> PaginatedQuery.of(QUERY, "1; DROP TABLE c_order", null, null));
+    assertEquals("COPDEV_InvalidKeyColumn", e.getMessage());
+  }
+
+  /**
+   * Ensures that the first page has no key filter and the following ones start at the key of the token, both
+   * ordered by the key column.
+   */
+  @Test
+  void testPageQueryUsesKeyset() {
+    String firstPage = PaginatedQuery.of(QUERY, KEY, "10", null).buildPageQuery();
+    String nextPage = PaginatedQuery.of(QUERY, KEY, "10", PaginatedQuery.encodeToken(QUERY, KEY, "100"))
+        .buildPageQuery();
+
+    assertEquals("SELECT * FROM (" + QUERY + ") AS copdev_page ORDER BY copdev_page.documentno LIMIT 11",
+        firstPage);
+    assertEquals("SELECT * FROM (" + QUERY + ") AS copdev_page WHERE copdev_page.documentno >= ? "
+        + "ORDER BY copdev_page.documentno LIMIT 11", nextPage);
+  }
+}
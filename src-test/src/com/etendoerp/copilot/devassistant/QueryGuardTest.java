@@ -0,0 +1,182 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for {@link QueryGuard}.
+ */
+class QueryGuardTest {
+
+  private static final String QUERY = "SELECT * FROM c_order";
+  private static final String PLAN = "[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Total Cost\": 25000.5, \"Plan Rows\": 800000}}]";
+
+  private MockedStatic<OBMessageUtils> messageMock;
+  private Connection connection;
+  private Statement setStatement;
+
+  /**
+   * Mocks a transaction connection whose EXPLAIN returns {@link #PLAN}.
+   */
+  @BeforeEach
+  void setUp() throws SQLException {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenReturn("cost %s/%s rows %s/%s");
+
+    connection = mock(Connection.class);
+    setStatement = mock(Statement.class);
+    PreparedStatement explainStatement = mock(PreparedStatement.class);
+    ResultSet explainResult = mock(ResultSet.class);
+    when(connection.getAutoCommit()).thenReturn(false);
+    when(connection.createStatement()).thenReturn(setStatement);
+    when(connection.prepareStatement("EXPLAIN (FORMAT JSON) " + QUERY)).thenReturn(explainStatement);
+    when(explainStatement.executeQuery()).thenReturn(explainResult);
+    when(explainResult.next()).thenReturn(true);
+    when(explainResult.getString(1)).thenReturn(PLAN);
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that the root plan estimates are parsed from the EXPLAIN output.
+   */
+  @Test
+  void testParsePlan() throws SQLException {
+    QueryGuard.PlanEstimate estimate = QueryGuard.PlanEstimate.parse(PLAN);
+
+    assertEquals(25000.5, estimate.getTotalCost());
+    assertEquals(800000, estimate.getPlanRows());
+  }
+
+  /**
+   * Ensures that plans within the limits are accepted and the timeout is applied.
+   */
+  @Test
+  void testCheckAcceptsCheapPlan() throws SQLException {
+    QueryGuard guard = new QueryGuard(100000, 1000000, 5000);
+
+    guard.check(connection, QUERY);
+
+    verify(setStatement).execute("SET LOCAL statement_timeout = 5000");
+  }
+
+  /**
+   * Ensures that plans above the row limit are rejected without setting the timeout.
+   */
+  @Test
+  void testCheckRejectsExpensivePlan() {
+    QueryGuard guard = new QueryGuard(100000, 1000, 5000);
+
+    assertThrows(OBException.class, () -> guard.check(connection, QUERY));
+    verify(setStatement, never()).execute(anyString());
+  }
+
+  /**
+   * Ensures that the placeholders of the checked query are bound untyped, so its bounds count in the plan.
+   */
+  @Test
+  void testCheckBindsParameters() throws SQLException {
+    String pageQuery = QUERY + " WHERE documentno >= ? LIMIT 51";
+    PreparedStatement explainStatement = mock(PreparedStatement.class);
+    ResultSet explainResult = mock(ResultSet.class);
+    when(connection.prepareStatement("EXPLAIN (FORMAT JSON) " + pageQuery)).thenReturn(explainStatement);
+    when(explainStatement.executeQuery()).thenReturn(explainResult);
+    when(explainResult.next()).thenReturn(true);
+    when(explainResult.getString(1)).thenReturn(
+        "[{\"Plan\": {\"Node Type\": \"Limit\", \"Total Cost\": 12.5, \"Plan Rows\": 51}}]");
+
+    QueryGuard.PlanEstimate estimate = new QueryGuard(100, 1000, 0).check(connection, pageQuery, "1000");
+
+    verify(explainStatement).setObject(1, "1000", Types.OTHER);
+    assertEquals(51, estimate.getPlanRows());
+  }
+
+  /**
+   * Ensures that a registered statement can be cancelled once.
+   */
+  @Test
+  void testCancelRunningStatement() throws SQLException {
+    QueryGuard guard = new QueryGuard(0, 0, 0);
+    PreparedStatement running = mock(PreparedStatement.class);
+    when(connection.prepareStatement(QUERY)).thenReturn(running);
+
+    guard.prepare(connection, QUERY);
+
+    assertTrue(guard.cancel());
+    assertFalse(guard.cancel());
+    verify(running).cancel();
+  }
+
+  /**
+   * Ensures that a tracked guard can only be cancelled by the user that runs it, and no longer once untracked.
+   */
+  @Test
+  void testCancelTrackedQuery() throws SQLException {
+    QueryGuard guard = new QueryGuard(0, 0, 0);
+    PreparedStatement running = mock(PreparedStatement.class);
+    when(connection.prepareStatement(QUERY)).thenReturn(running);
+    guard.prepare(connection, QUERY);
+
+    guard.track("user", "query-1");
+
+    assertFalse(QueryGuard.cancel("other", "query-1"));
+    assertTrue(QueryGuard.cancel("user", "query-1"));
+    verify(running).cancel();
+    guard.untrack("user", "query-1");
+    assertFalse(QueryGuard.cancel("user", "query-1"));
+  }
+
+  /**
+   * Ensures that the default timeout is restored for the rest of the transaction.
+   */
+  @Test
+  void testRestoreResetsTimeout() throws SQLException {
+    new QueryGuard(0, 0, 5000).restore(connection);
+
+    verify(setStatement).execute("SET LOCAL statement_timeout TO DEFAULT");
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for {@link QueryResultStreamer}.
+ * <p>
+ * The result set is mocked with two columns (a numeric id and a string name) and three rows.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class QueryResultStreamerTest {
+
+  @Mock private ResultSet resultSet;
+  @Mock private ResultSetMetaData metaData;
+
+  /**
+   * Configures a result set with three rows.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(2);
+    when(metaData.getColumnName(1)).thenReturn("id");
+    when(metaData.getColumnName(2)).thenReturn("name");
+    when(metaData.getColumnType(1)).thenReturn(Types.NUMERIC);
+    when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+    when(resultSet.next()).thenReturn(true, true, true, false);
+    when(resultSet.getString(1)).thenReturn("1", "2", "3");
+    when(resultSet.getString(2)).thenReturn("first \"row\"", null, "third");
+  }
+
+  /**
+   * Ensures that all rows are written when no cap is reached and metadata is resolved once.
+   */
+  @Test
+  void testStreamWritesAllRows() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new QueryResultStreamer(10, 0).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    JSONArray rows = json.getJSONArray(QueryResultStreamer.RESULT);
+    assertEquals(3, rows.length());
+    assertEquals(1, rows.getJSONObject(0).getInt("id"));
+    assertEquals("first \"row\"", rows.getJSONObject(0).getString("name"));
+    assertTrue(rows.getJSONObject(1).isNull("name"));
+    assertFalse(json.getBoolean(QueryResultStreamer.TRUNCATED));
+    assertEquals(3, summary.getRowCount());
+    verify(resultSet, times(1)).getMetaData();
+  }
+
+  /**
+   * Ensures that the row cap truncates the output and sets the marker.
+   */
+  @Test
+  void testStreamTruncatesOnRowCap() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new QueryResultStreamer(2, 0).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    assertEquals(2, json.getJSONArray(QueryResultStreamer.RESULT).length());
+    assertEquals(2, json.getInt(QueryResultStreamer.ROW_COUNT));
+    assertTrue(json.getBoolean(QueryResultStreamer.TRUNCATED));
+    assertTrue(summary.isTruncated());
+  }
+
+  /**
+   * Ensures that the byte cap truncates the output before the row that would exceed it.
+   */
+  @Test
+  void testStreamTruncatesOnByteCap() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new QueryResultStreamer(0, 40).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    assertEquals(1, json.getJSONArray(QueryResultStreamer.RESULT).length());
+    assertTrue(json.getBoolean(QueryResultStreamer.TRUNCATED));
+    assertTrue(summary.getBytes() <= 40);
+  }
+
+  /**
+   * Ensures that a first row larger than the byte cap is still written, so a page always advances.
+   */
+  @Test
+  void testStreamWritesOversizedFirstRow() throws Exception {
+    StringWriter out = new StringWriter();
+
+    QueryResultStreamer.StreamSummary summary = new QueryResultStreamer(0, 5).stream(resultSet, out);
+
+    JSONObject json = new JSONObject(out.toString());
+    assertEquals(1, json.getJSONArray(QueryResultStreamer.RESULT).length());
+    assertEquals(1, summary.getRowCount());
+    assertTrue(summary.isTruncated());
+    assertTrue(summary.getBytes() > 5);
+  }
+
+  /**
+   * Ensures that NaN and infinite numbers are written as strings, since they are not valid JSON numbers.
+   */
+  @Test
+  void testStreamQuotesNonFiniteNumbers() throws Exception {
+    when(metaData.getColumnType(1)).thenReturn(Types.DOUBLE);
+    when(resultSet.getString(1)).thenReturn("NaN", "Infinity", "-Infinity");
+    StringWriter out = new StringWriter();
+
+    new QueryResultStreamer(10, 0).stream(resultSet, out);
+
+    JSONArray rows = new JSONObject(out.toString()).getJSONArray(QueryResultStreamer.RESULT);
+    assertEquals("NaN", rows.getJSONObject(0).getString("id"));
+    assertEquals("Infinity", rows.getJSONObject(1).getString("id"));
+    assertEquals("-Infinity", rows.getJSONObject(2).getString("id"));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.ui.Window;
+
+/**
+ * Unit tests for the convergent writes of {@link RecordUpsert}.
+ */
+class RecordUpsertTest {
+
+  private MockedStatic<OBDal> obDalMock;
+  private OBDal obDal;
+  private Module module;
+  private Window window;
+
+  @BeforeEach
+  void setUp() {
+    obDal = mock(OBDal.class);
+    obDalMock = mockStatic(OBDal.class);
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    module = mock(Module.class);
+    when(module.getId()).thenReturn("MOD1");
+    window = mock(Window.class);
+    when(window.get(Window.PROPERTY_NAME)).thenReturn("Sales");
+    when(window.get(Window.PROPERTY_MODULE)).thenReturn(module);
+    when(window.get(Window.PROPERTY_DESCRIPTION)).thenReturn("Old");
+  }
+
+  @AfterEach
+  void tearDown() {
+    obDalMock.close();
+  }
+
+  /**
+   * Ensures that an entity is compared with the current value by its ID.
+   */
+  @Test
+  void testChangesCompareEntitiesById() {
+    Map<String, Object> byId = DryRun.values();
+    byId.put(Window.PROPERTY_MODULE, "MOD1");
+    Map<String, Object> other = DryRun.values();
+    other.put(Window.PROPERTY_MODULE, "MOD2");
+
+    assertTrue(RecordUpsert.changes(window, byId).isEmpty());
+    assertEquals(Map.of(Window.PROPERTY_MODULE, "MOD2"), RecordUpsert.changes(window, other));
+  }
+
+  /**
+   * Ensures that a record already in the requested state is neither changed nor saved.
+   */
+  @Test
+  void testConvergeUnchanged() {
+    Map<String, Object> values = DryRun.values();
+    values.put(Window.PROPERTY_NAME, "Sales");
+    values.put(Window.PROPERTY_MODULE, module);
+    values.put(Window.PROPERTY_DESCRIPTION, "Old");
+
+    assertFalse(RecordUpsert.converge(window, values));
+    verify(window, never()).set(anyString(), any());
+    verify(obDal, never()).save(any());
+  }
+
+  /**
+   * Ensures that only the values that differ are set, and the record is saved.
+   */
+  @Test
+  void testConvergeChanged() {
+    Map<String, Object> values = DryRun.values();
+    values.put(Window.PROPERTY_NAME, "Sales");
+    values.put(Window.PROPERTY_DESCRIPTION, "New");
+
+    assertEquals(Map.of(Window.PROPERTY_DESCRIPTION, "New"), RecordUpsert.changes(window, values));
+    assertTrue(RecordUpsert.converge(window, values));
+    verify(window).set(Window.PROPERTY_DESCRIPTION, "New");
+    verify(window, never()).set(Window.PROPERTY_NAME, "Sales");
+    verify(obDal).save(window);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.domain.Reference;
+
+/**
+ * Unit tests for {@link ReferenceTypeRegistry}.
+ */
+class ReferenceTypeRegistryTest {
+
+  private static final String STRING_ID = "10";
+  private static final String YES_NO_ID = "20";
+  private static final String CUSTOM_ID = "CUSTOM";
+
+  private MockedStatic<OBMessageUtils> messageMock;
+  private ReferenceTypeRegistry registry;
+
+  /**
+   * Builds a registry with two built-in references and a provider.
+   */
+  @BeforeEach
+  void setUp() {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " ");
+    ReferenceDbTypeProvider provider = () -> Map.of(CUSTOM_ID, Pair.of("text", null));
+    registry = new ReferenceTypeRegistry(Map.of("String", List.of(STRING_ID), "YesNo", List.of(YES_NO_ID)),
+        List.of(provider));
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that built-in and provided types are found by reference ID.
+   */
+  @Test
+  void testTypeById() {
+    assertEquals(Pair.of(ReferenceTypeRegistry.CHARACTER_VARYING, 200), registry.getDbType(reference(STRING_ID, true, null)));
+    assertEquals(Pair.of("character", 1), registry.getDbType(reference(YES_NO_ID, true, null)));
+    assertEquals(Pair.of("text", null), registry.getDbType(reference(CUSTOM_ID, true, null)));
+  }
+
+  /**
+   * Ensures that a reference that is not a base reference falls back to its parent.
+   */
+  @Test
+  void testTypeByParent() {
+    Reference parent = reference(YES_NO_ID, true, null);
+
+    assertEquals(Pair.of("character", 1), registry.getDbType(reference("CHILD", false, parent)));
+  }
+
+  /**
+   * Ensures that an unknown base reference is rejected.
+   */
+  @Test
+  void testUnknownReference() {
+    Reference unknown = reference("UNKNOWN", true, null);
+
+    OBException e = assertThrows(OBException.class, () -> registry.getDbType(unknown));
+    assertTrue(e.getMessage().startsWith("COPDEV_ColumnTypeNotFound"));
+  }
+
+  /**
+   * Ensures that the references of a database type are found by the type.
+   */
+  @Test
+  void testReferencesByType() {
+    assertEquals(List.of(STRING_ID), registry.getReferences("VARCHAR"));
+    assertEquals(List.of(CUSTOM_ID), registry.getReferences("text"));
+    assertTrue(registry.getReferences("bytea").isEmpty());
+  }
+
+  private static Reference reference(String id, boolean base, Reference parent) {
+    Reference reference = mock(Reference.class);
+    when(reference.getId()).thenReturn(id);
+    when(reference.getName()).thenReturn(id);
+    when(reference.isBaseReference()).thenReturn(base);
+    when(reference.getParentReference()).thenReturn(parent);
+    return reference;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for {@link SafeDDLExecutor}.
+ */
+class SafeDDLExecutorTest {
+
+  private static final String ALTER = "ALTER TABLE copdev_test ALTER COLUMN name TYPE varchar(60)";
+  private static final SQLException LOCK_NOT_AVAILABLE = new SQLException("canceling statement due to lock timeout",
+      "55P03");
+
+  private MockedStatic<OBMessageUtils> messageMock;
+  private ConnectionProvider connProv;
+  private Connection connection;
+  private Statement statement;
+
+  /**
+   * Mocks a connection provider that always returns the same connection.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s %s %s");
+    connProv = mock(ConnectionProvider.class);
+    connection = mock(Connection.class);
+    statement = mock(Statement.class);
+    when(connProv.getTransactionConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  private SafeDDLExecutor executor(int maxRetries, long onlineThreshold) {
+    return new SafeDDLExecutor(connProv, 2000, maxRetries, 0, onlineThreshold, 100);
+  }
+
+  /**
+   * Ensures that a statement blocked by a lock is retried and that the lock timeout is set on every attempt.
+   */
+  @Test
+  void testRetriesWhenLockIsNotAvailable() throws Exception {
+    when(statement.execute(ALTER)).thenThrow(LOCK_NOT_AVAILABLE).thenReturn(false);
+
+    JSONObject response = executor(3, 1000).execute(List.of(ALTER));
+
+    assertEquals(2, response.getInt("attempts"));
+    verify(statement, times(2)).execute("SET LOCAL lock_timeout = 2000");
+    verify(connProv).releaseRollbackConnection(connection);
+    verify(connProv).releaseCommitConnection(connection);
+  }
+
+  /**
+   * Ensures that the executor gives up after the last attempt and that other errors are not retried.
+   */
+  @Test
+  void testGivesUpAfterMaxRetriesAndDoesNotRetryOtherErrors() throws Exception {
+    when(statement.execute(ALTER)).thenThrow(LOCK_NOT_AVAILABLE);
+
+    OBException lockError = assertThrows(OBException.class, () -> executor(2, 1000).execute(List.of(ALTER)));
+    assertTrue(lockError.getMessage().startsWith("COPDEV_DDLLockTimeout"));
+    verify(statement, times(2)).execute(ALTER);
+
+    String other = "ALTER TABLE copdev_test ALTER COLUMN qty TYPE numeric";
+    when(statement.execute(other)).thenThrow(new SQLException("cannot cast", "42804"));
+    OBException otherError = assertThrows(OBException.class, () -> executor(5, 1000).execute(List.of(other)));
+    assertTrue(otherError.getMessage().startsWith("COPDEV_NotValidQuery"));
+    verify(statement, times(1)).execute(other);
+  }
+
+  /**
+   * Ensures that on a small table all the type changes are applied with a single in-place ALTER TABLE.
+   */
+  @Test
+  void testSmallTableChangesTypesInPlace() throws Exception {
+    PreparedStatement estimate = mock(PreparedStatement.class);
+    ResultSet rs = mock(ResultSet.class);
+    when(connection.prepareStatement(anyString())).thenReturn(estimate);
+    when(estimate.executeQuery()).thenReturn(rs);
+    when(rs.next()).thenReturn(true);
+    when(rs.getLong(1)).thenReturn(500L);
+
+    JSONObject report = executor(3, 1000).alterColumnTypes("copdev_test",
+        List.of(new SafeDDLExecutor.ColumnTypeChange("name", "varchar(60)"),
+            new SafeDDLExecutor.ColumnTypeChange("qty", "numeric")));
+
+    assertEquals(500L, report.getLong("estimatedRows"));
+    assertEquals(SafeDDLExecutor.STRATEGY_IN_PLACE, report.getJSONArray("steps").getJSONObject(0).getString("strategy"));
+    verify(statement).execute(
+        "ALTER TABLE copdev_test ALTER COLUMN name TYPE varchar(60), ALTER COLUMN qty TYPE numeric");
+  }
+
+  /**
+   * Ensures that generated identifiers fit the Etendo limit and keep their suffix.
+   */
+  @Test
+  void testIdentifierKeepsSuffix() {
+    String identifier = SafeDDLExecutor.identifier("copdev_swap_" + "a".repeat(80), "_12");
+
+    assertEquals(30, identifier.length());
+    assertTrue(identifier.endsWith("_12"));
+  }
+}
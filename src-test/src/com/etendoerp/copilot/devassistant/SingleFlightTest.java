@@ -0,0 +1,237 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openbravo.base.exception.OBException;
+
+/**
+ * Unit tests for the coalescing of identical calls in {@link SingleFlight}.
+ */
+class SingleFlightTest {
+
+  private static final long TTL = 60_000L;
+
+  private final AtomicInteger executions = new AtomicInteger();
+
+  /**
+   * Drops the responses kept by the tests.
+   */
+  @AfterEach
+  void tearDown() {
+    SingleFlight.invalidate();
+    SingleFlight.transactionCompleted();
+  }
+
+  private BiConsumer<Map<String, String>, Map<String, String>> lookup(String key, String value) {
+    return (parameter, responseVars) -> {
+      executions.incrementAndGet();
+      responseVars.put(key, value);
+    };
+  }
+
+  private Map<String, String> call(String key, long ttl, BiConsumer<Map<String, String>, Map<String, String>> lookup) {
+    Map<String, String> responseVars = new HashMap<>();
+    SingleFlight.execute(key, ttl, SingleFlight.MAX_WAIT_MILLIS, new HashMap<>(), responseVars, lookup);
+    return responseVars;
+  }
+
+  /**
+   * Ensures that a call arriving while an identical one runs waits for it and gets its response.
+   */
+  @Test
+  void testConcurrentCallsShareOneExecution() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    BiConsumer<Map<String, String>, Map<String, String>> slowLookup = (parameter, responseVars) -> {
+      executions.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      responseVars.put("info", "shared");
+    };
+    Map<String, String> leaderResponse = new HashMap<>();
+    Map<String, String> followerResponse = new HashMap<>();
+    Thread leader = new Thread(() -> leaderResponse.putAll(call("concurrent", TTL, slowLookup)));
+    Thread follower = new Thread(() -> followerResponse.putAll(call("concurrent", TTL, slowLookup)));
+
+    leader.start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    follower.start();
+    release.countDown();
+    leader.join(5000);
+    follower.join(5000);
+
+    assertEquals(1, executions.get());
+    assertEquals("shared", leaderResponse.get("info"));
+    assertEquals(leaderResponse, followerResponse);
+  }
+
+  /**
+   * Ensures that a call that waits too long for an identical one runs the lookup itself.
+   */
+  @Test
+  void testWaitingCallRunsLookupAfterTimeout() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    BiConsumer<Map<String, String>, Map<String, String>> stuckLookup = (parameter, responseVars) -> {
+      executions.incrementAndGet();
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      responseVars.put("info", "stuck");
+    };
+    Thread leader = new Thread(() -> call("stuck", TTL, stuckLookup));
+    leader.start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    Map<String, String> responseVars = new HashMap<>();
+    SingleFlight.execute("stuck", TTL, 50, new HashMap<>(), responseVars, lookup("info", "direct"));
+    release.countDown();
+    leader.join(5000);
+
+    assertEquals("direct", responseVars.get("info"));
+    assertEquals(2, executions.get());
+  }
+
+  /**
+   * Ensures that new calls are not coalesced while the map is full of responses that have not expired.
+   */
+  @Test
+  void testFullMapRunsCallsWithoutCoalescing() {
+    for (int i = 0; i < SingleFlight.MAX_ENTRIES; i++) {
+      call("full" + i, TTL, lookup("info", "kept"));
+    }
+    call("overflow", TTL, lookup("info", "first"));
+
+    assertEquals("second", call("overflow", TTL, lookup("info", "second")).get("info"));
+    assertEquals("kept", call("full0", TTL, lookup("info", "second")).get("info"));
+    assertEquals(SingleFlight.MAX_ENTRIES + 2, executions.get());
+  }
+
+  /**
+   * Ensures that a response is kept for identical calls until it expires.
+   */
+  @Test
+  void testResponseIsKeptUntilItExpires() {
+    assertEquals("first", call("kept", TTL, lookup("info", "first")).get("info"));
+    assertEquals("first", call("kept", TTL, lookup("info", "second")).get("info"));
+    assertEquals(1, executions.get());
+
+    call("expired", 0, lookup("info", "first"));
+    assertEquals("second", call("expired", 0, lookup("info", "second")).get("info"));
+    assertEquals(3, executions.get());
+  }
+
+  /**
+   * Ensures that calls with different keys are not coalesced.
+   */
+  @Test
+  void testDifferentCallsAreNotShared() {
+    call("first", TTL, lookup("info", "first"));
+    assertEquals("second", call("second", TTL, lookup("info", "second")).get("info"));
+    assertEquals(2, executions.get());
+  }
+
+  /**
+   * Ensures that an error response and a failed call are not kept.
+   */
+  @Test
+  void testErrorsAreNotKept() {
+    call("error", TTL, lookup("error", "Missing parameters."));
+    assertEquals("found", call("error", TTL, lookup("info", "found")).get("info"));
+
+    BiConsumer<Map<String, String>, Map<String, String>> failing = (parameter, responseVars) -> {
+      executions.incrementAndGet();
+      throw new OBException("boom");
+    };
+    assertThrows(OBException.class, () -> call("failure", TTL, failing));
+    assertEquals("found", call("failure", TTL, lookup("info", "found")).get("info"));
+    assertEquals(4, executions.get());
+  }
+
+  /**
+   * Ensures that invalidating drops the kept responses.
+   */
+  @Test
+  void testInvalidate() {
+    call("invalidated", TTL, lookup("info", "first"));
+    SingleFlight.invalidate();
+
+    assertEquals("second", call("invalidated", TTL, lookup("info", "second")).get("info"));
+    assertEquals(2, executions.get());
+  }
+
+  /**
+   * Ensures that the responses kept between the write of the metadata and the end of its transaction, which read
+   * the previous metadata, are dropped when the transaction ends.
+   */
+  @Test
+  void testInvalidateAgainWhenTransactionCompletes() {
+    SingleFlight.invalidate();
+    call("uncommitted", TTL, lookup("info", "previous"));
+    assertEquals("previous", call("uncommitted", TTL, lookup("info", "current")).get("info"));
+
+    SingleFlight.transactionCompleted();
+
+    assertEquals("current", call("uncommitted", TTL, lookup("info", "current")).get("info"));
+    SingleFlight.transactionCompleted();
+    assertEquals("current", call("uncommitted", TTL, lookup("info", "next")).get("info"));
+    assertEquals(2, executions.get());
+  }
+
+  /**
+   * Ensures that the key depends on the webhook, the role and every parameter, and not on the parameter order.
+   */
+  @Test
+  void testGetKey() {
+    Map<String, String> parameter = new LinkedHashMap<>();
+    parameter.put("Name", "Sales");
+    parameter.put("KeyWord", "table");
+    Map<String, String> reordered = new LinkedHashMap<>();
+    reordered.put("KeyWord", "table");
+    reordered.put("Name", "Sales");
+    Map<String, String> merged = Map.of("Name", "Sales:7:KeyWord5:table");
+
+    String key = SingleFlight.getKey("Webhook", "ROLE", parameter);
+    assertEquals(key, SingleFlight.getKey("Webhook", "ROLE", reordered));
+    assertNotEquals(key, SingleFlight.getKey("Webhook", "OTHER", parameter));
+    assertNotEquals(key, SingleFlight.getKey("Other", "ROLE", parameter));
+    assertNotEquals(key, SingleFlight.getKey("Webhook", "ROLE", merged));
+  }
+}
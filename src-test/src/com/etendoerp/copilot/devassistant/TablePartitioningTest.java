@@ -0,0 +1,154 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.YearMonth;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the DDL generated by {@link TablePartitioning}.
+ */
+class TablePartitioningTest {
+
+  private static final String TABLE = "copdev_log";
+
+  private MockedStatic<OBMessageUtils> messageMock;
+
+  /**
+   * Mocks the message lookups used in the error paths.
+   */
+  @BeforeEach
+  void setUp() {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s %s");
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that a range partitioning creates the current month and the months ahead, across the year boundary,
+   * plus a default one.
+   */
+  @Test
+  void testRangePartitionsAreMonthly() {
+    TablePartitioning partitioning = TablePartitioning.of("RANGE", null, null, "2");
+
+    List<String> partitions = partitioning.buildInitialPartitions(TABLE, YearMonth.of(2026, 11));
+
+    assertEquals("PARTITION BY RANGE (created)", partitioning.getPartitionClause());
+    assertEquals("copdev_log_id, created", partitioning.getPrimaryKeyColumns(TABLE));
+    assertEquals(4, partitions.size());
+    assertEquals("CREATE TABLE IF NOT EXISTS public.copdev_log_p202701 PARTITION OF public.copdev_log "
+        + "FOR VALUES FROM ('2027-01-01') TO ('2027-02-01')", partitions.get(2));
+    assertEquals("CREATE TABLE IF NOT EXISTS public.copdev_log_pdefault PARTITION OF public.copdev_log DEFAULT",
+        partitions.get(3));
+  }
+
+  /**
+   * Ensures that a list partitioning creates one partition per value plus a default one.
+   */
+  @Test
+  void testListPartitionsIncludeDefault() {
+    TablePartitioning partitioning = TablePartitioning.of("list", "ad_org_id", "0, 4F1B ", null);
+
+    List<String> partitions = partitioning.buildInitialPartitions(TABLE, YearMonth.of(2026, 11));
+
+    assertEquals(3, partitions.size());
+    assertEquals("CREATE TABLE IF NOT EXISTS public.copdev_log_p2 PARTITION OF public.copdev_log "
+        + "FOR VALUES IN ('4F1B')", partitions.get(1));
+    assertEquals("CREATE TABLE IF NOT EXISTS public.copdev_log_pdefault PARTITION OF public.copdev_log DEFAULT",
+        partitions.get(2));
+  }
+
+  /**
+   * Ensures that plain tables have no partitioning and unsupported keys are rejected.
+   */
+  @Test
+  void testBlankAndInvalidDefinitions() {
+    assertNull(TablePartitioning.of("", "created", null, null));
+    assertThrows(OBException.class, () -> TablePartitioning.of("range", "ad_client_id", null, null));
+    assertThrows(OBException.class, () -> TablePartitioning.of("hash", null, null, null));
+    assertThrows(OBException.class, () -> TablePartitioning.of("range", null, null, "two"));
+  }
+
+  /**
+   * Ensures that a table whose partition names would exceed the identifier limit is rejected.
+   */
+  @Test
+  void testPartitionNamesWithinLimit() {
+    TablePartitioning partitioning = TablePartitioning.of("range", null, null, "0");
+
+    assertEquals(2, partitioning.buildInitialPartitions("copdev_twentyone_char", YearMonth.of(2026, 11)).size());
+    assertThrows(OBException.class,
+        () -> partitioning.buildInitialPartitions("copdev_twentytwo_chars", YearMonth.of(2026, 11)));
+  }
+
+  /**
+   * Ensures that a table whose partitions cannot be created is reported without stopping the maintenance of the
+   * other tables, and that the months ahead are limited.
+   */
+  @Test
+  void testFuturePartitionsContinueAfterFailure() throws Exception {
+    OBDal obDal = mock(OBDal.class);
+    Connection connection = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    when(obDal.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getString(1)).thenReturn(TABLE, "copdev_audit");
+
+    try (MockedStatic<OBDal> obDalMock = mockStatic(OBDal.class);
+         MockedStatic<Utils> utilsMock = mockStatic(Utils.class)) {
+      obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+      utilsMock.when(() -> Utils.executeBatch(anyList())).thenThrow(new OBException("locked")).thenReturn(null);
+
+      assertEquals(List.of(TABLE), TablePartitioning.createFuturePartitions(1));
+      utilsMock.verify(() -> Utils.executeBatch(anyList()), times(2));
+    }
+    assertEquals(24, TablePartitioning.clampMonthsAhead(100));
+    assertEquals(0, TablePartitioning.clampMonthsAhead(-1));
+  }
+}
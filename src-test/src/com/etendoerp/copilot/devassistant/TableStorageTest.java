@@ -0,0 +1,96 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mockStatic;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Unit tests for the storage clauses generated by {@link TableStorage}.
+ */
+class TableStorageTest {
+
+  private MockedStatic<OBMessageUtils> messageMock;
+
+  /**
+   * Mocks the message lookups used in the error paths.
+   */
+  @BeforeEach
+  void setUp() {
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s %s");
+  }
+
+  /**
+   * Releases the static mock.
+   */
+  @AfterEach
+  void tearDown() {
+    messageMock.close();
+  }
+
+  /**
+   * Ensures that without options the table keeps the previous storage clause.
+   */
+  @Test
+  void testDefaultStorage() {
+    TableStorage storage = TableStorage.of(null, null, null, null, null, null);
+
+    assertEquals("", storage.getTableModifier());
+    assertEquals("TABLESPACE pg_default", storage.getStorageClause(null));
+  }
+
+  /**
+   * Ensures that the staging profile creates an UNLOGGED table and that overrides win over the profile.
+   */
+  @Test
+  void testProfileWithOverrides() {
+    TableStorage staging = TableStorage.of("Staging", null, null, null, null, "fast_ssd");
+    TableStorage transactional = TableStorage.of("transactional", "80", null, null, null, null);
+
+    assertEquals("UNLOGGED ", staging.getTableModifier());
+    assertEquals("WITH (fillfactor = 100, autovacuum_enabled = false) TABLESPACE fast_ssd",
+        staging.getStorageClause(null));
+    assertEquals("WITH (fillfactor = 80, autovacuum_vacuum_scale_factor = 0.05, "
+        + "autovacuum_analyze_scale_factor = 0.02) TABLESPACE pg_default", transactional.getStorageClause(null));
+  }
+
+  /**
+   * Ensures that invalid values and storage parameters on partitioned tables are rejected.
+   */
+  @Test
+  void testInvalidOptions() {
+    assertThrows(OBException.class, () -> TableStorage.of("archive", null, null, null, null, null));
+    assertThrows(OBException.class, () -> TableStorage.of(null, "5", null, null, null, null));
+    assertThrows(OBException.class, () -> TableStorage.of(null, null, "1d", null, null, null));
+    assertThrows(OBException.class, () -> TableStorage.of(null, null, null, "0x1p3", null, null));
+    assertThrows(OBException.class, () -> TableStorage.of(null, null, null, null, null, "pg_default; DROP"));
+    assertThrows(OBException.class,
+        () -> TableStorage.of("staging", null, null, null, null, null).getStorageClause("PARTITION BY RANGE (created)"));
+    assertEquals("PARTITION BY RANGE (created) TABLESPACE pg_default",
+        TableStorage.of(null, null, null, null, null, null).getStorageClause("PARTITION BY RANGE (created)"));
+  }
+}
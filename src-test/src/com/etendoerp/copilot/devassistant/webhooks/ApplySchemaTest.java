@@ -0,0 +1,256 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.domain.Reference;
+import org.openbravo.model.ad.module.DataPackage;
+import org.openbravo.model.ad.module.Module;
+
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.ReferenceTypeRegistry;
+import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
+import com.etendoerp.copilot.devassistant.Utils;
+
+/**
+ * Unit tests for the validation and the DDL of the plans of {@link ApplySchema}, and for the cleanup of a failed
+ * registration.
+ */
+class ApplySchemaTest {
+
+  private static final String PREFIX = "copdev";
+  private static final String SALE = "copdev_sale";
+  private static final String LINE = "copdev_line";
+
+  private MockedStatic<OBDal> obDalMock;
+  private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ReferenceTypeRegistry> registryMock;
+  private MockedStatic<CheckTablesColumnHook> catalogMock;
+  private OBDal obDal;
+  private List<Reference> references;
+
+  /**
+   * Mocks the AD and catalog lookups: no table of the spec exists, and the String and TableDir references are
+   * found by name.
+   */
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() throws Exception {
+    obDal = mock(OBDal.class);
+    obDalMock = mockStatic(OBDal.class);
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s");
+
+    Connection connection = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(obDal.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(mock(ResultSet.class));
+
+    OBQuery<Table> tableQuery = mock(OBQuery.class);
+    when(obDal.createQuery(eq(Table.class), anyString())).thenReturn(tableQuery);
+    when(tableQuery.setNamedParameter(anyString(), any())).thenReturn(tableQuery);
+    references = new ArrayList<>(List.of(reference("10", "String"),
+        reference(CreateColumn.TABLEDIR_REFERENCE_ID, "TableDir")));
+    OBQuery<Reference> referenceQuery = mock(OBQuery.class);
+    when(obDal.createQuery(eq(Reference.class), anyString())).thenReturn(referenceQuery);
+    when(referenceQuery.setNamedParameter(anyString(), any())).thenReturn(referenceQuery);
+    when(referenceQuery.list()).thenAnswer(inv -> references);
+
+    ReferenceTypeRegistry registry = mock(ReferenceTypeRegistry.class);
+    when(registry.getDbType(any())).thenReturn(Pair.of("varchar", 32));
+    registryMock = mockStatic(ReferenceTypeRegistry.class);
+    registryMock.when(ReferenceTypeRegistry::getInstance).thenReturn(registry);
+    catalogMock = mockStatic(CheckTablesColumnHook.class);
+    catalogMock.when(() -> CheckTablesColumnHook.loadCatalogColumns(anyCollection())).thenReturn(new HashMap<>());
+  }
+
+  /**
+   * Releases the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    obDalMock.close();
+    messageMock.close();
+    registryMock.close();
+    catalogMock.close();
+  }
+
+  /**
+   * Ensures that the tables are created first, then the columns, then the foreign keys and their indexes, so a
+   * foreign key can point to a table of the spec declared after it.
+   */
+  @Test
+  void testDDLOrder() throws Exception {
+    JSONObject spec = spec(table("line", column("copdev_sale_id", "TableDir")), table("sale", column("status",
+        "String")));
+
+    List<String> ddl = ApplySchema.SchemaPlan.of(spec, PREFIX).getDDL();
+
+    int lastCreateTable = -1;
+    int firstAddColumn = -1;
+    int foreignKey = -1;
+    for (int i = 0; i < ddl.size(); i++) {
+      String statement = ddl.get(i);
+      if (statement.startsWith("CREATE TABLE")) {
+        lastCreateTable = i;
+      } else if (statement.contains("ADD COLUMN") && firstAddColumn < 0) {
+        firstAddColumn = i;
+      } else if (statement.contains("FOREIGN KEY (copdev_sale_id)")) {
+        foreignKey = i;
+      }
+    }
+    assertTrue(ddl.get(0).contains("public." + LINE + " "));
+    assertTrue(lastCreateTable < firstAddColumn);
+    assertTrue(firstAddColumn < foreignKey);
+    assertTrue(ddl.get(foreignKey).contains("REFERENCES public." + SALE + " (" + SALE + "_id)"));
+    assertEquals(foreignKey + 2, ddl.size());
+    assertTrue(ddl.get(foreignKey + 1).contains("(copdev_sale_id)"));
+  }
+
+  /**
+   * Ensures that a table declared twice is rejected.
+   */
+  @Test
+  void testDuplicateTable() throws Exception {
+    JSONObject spec = spec(table("sale", column("status", "String")), table("sale", column("total", "String")));
+
+    assertInvalid(spec, "COPDEV_InvalidSchemaSpec");
+  }
+
+  /**
+   * Ensures that a column declared twice in a table is rejected.
+   */
+  @Test
+  void testDuplicateColumn() throws Exception {
+    JSONObject spec = spec(table("sale", column("status", "String"), column("STATUS", "String")));
+
+    assertInvalid(spec, "COPDEV_InvalidSchemaSpec");
+  }
+
+  /**
+   * Ensures that a column whose reference is neither in the spec nor in the AD is rejected.
+   */
+  @Test
+  void testUnknownReference() throws Exception {
+    JSONObject spec = spec(table("sale", column("status", "Sale Status")));
+    references.clear();
+
+    assertInvalid(spec, "COPDEV_InvalidSchemaSpec");
+  }
+
+  /**
+   * Ensures that a foreign key to a table of the spec that is partitioned is rejected, since the primary key of a
+   * partitioned table includes the partition key.
+   */
+  @Test
+  void testForeignKeyToPartitionedTable() throws Exception {
+    JSONObject sale = table("sale", column("status", "String")).put("partitionBy", "range");
+    JSONObject spec = spec(sale, table("line", column("copdev_sale_id", "TableDir")));
+
+    assertInvalid(spec, "COPDEV_PartitionedFKTarget");
+  }
+
+  /**
+   * Ensures that the tables created by the DDL are dropped when the AD registration fails.
+   */
+  @Test
+  void testFailedRegistrationDropsTables() throws Exception {
+    Module module = mock(Module.class);
+    try (MockedStatic<OBContext> contextMock = mockStatic(OBContext.class);
+         MockedStatic<ModuleLock> lockMock = mockStatic(ModuleLock.class);
+         MockedStatic<Utils> utilsMock = mockStatic(Utils.class);
+         MockedStatic<TableRegistrationUtils> registrationMock = mockStatic(TableRegistrationUtils.class,
+             CALLS_REAL_METHODS)) {
+      registrationMock.when(() -> TableRegistrationUtils.getModuleAndPrefix(anyString()))
+          .thenReturn(new Object[]{ module, PREFIX });
+      registrationMock.when(() -> TableRegistrationUtils.getDataPackage(module)).thenReturn(mock(DataPackage.class));
+      registrationMock.when(() -> TableRegistrationUtils.newAdTable(any(), anyString(), anyString(), any(), any(),
+          any(), anyBoolean())).thenThrow(new OBException("registration failed"));
+      utilsMock.when(() -> Utils.executeBatch(anyList())).thenReturn(new JSONObject());
+      Map<String, String> parameter = new HashMap<>();
+      parameter.put("ModuleID", "module-id");
+      parameter.put("Spec", spec(table("sale", column("status", "String"))).toString());
+      Map<String, String> responseVars = new HashMap<>();
+
+      new ApplySchema().get(parameter, responseVars);
+
+      assertEquals("registration failed", responseVars.get("error"));
+      utilsMock.verify(() -> Utils.executeBatch(List.of("DROP TABLE IF EXISTS public." + SALE + " CASCADE")));
+    }
+  }
+
+  private static void assertInvalid(JSONObject spec, String message) {
+    OBException e = assertThrows(OBException.class, () -> ApplySchema.SchemaPlan.of(spec, PREFIX));
+    assertTrue(e.getMessage().startsWith(message), e.getMessage());
+  }
+
+  private static JSONObject spec(JSONObject... tables) throws Exception {
+    return new JSONObject().put("tables", new JSONArray(List.of(tables)));
+  }
+
+  private static JSONObject table(String name, JSONObject... columns) throws Exception {
+    return new JSONObject().put("name", name).put("columns", new JSONArray(List.of(columns)));
+  }
+
+  private static JSONObject column(String columnName, String reference) throws Exception {
+    return new JSONObject().put("columnNameDB", columnName).put("reference", reference);
+  }
+
+  private static Reference reference(String id, String name) {
+    Reference reference = mock(Reference.class);
+    when(reference.getId()).thenReturn(id);
+    when(reference.getName()).thenReturn(name);
+    when(reference.isBaseReference()).thenReturn(true);
+    return reference;
+  }
+}
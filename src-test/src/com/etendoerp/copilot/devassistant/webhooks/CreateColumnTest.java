@@ -0,0 +1,204 @@
+/*
+ *************************************************************************
+ * The contents of this file are subject to the Etendo License
+ * (the "License"), you may not use this file except in compliance with
+ * the License.
+ * You may obtain a copy of the License at
+ * https://github.com/etendosoftware/etendo_core/blob/main/legal/Etendo_license.txt
+ * Software distributed under the License is distributed on an
+ * "AS IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing rights
+ * and limitations under the License.
+ * All portions are Copyright © 2021–2025 FUTIT SERVICES, S.L
+ * All Rights Reserved.
+ * Contributor(s): Futit Services S.L.
+ *************************************************************************
+ */
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.datamodel.Column;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.domain.Reference;
+import org.openbravo.model.ad.module.DataPackage;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.module.ModuleDBPrefix;
+
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.ReferenceTypeRegistry;
+import com.etendoerp.copilot.devassistant.Utils;
+
+/**
+ * Unit tests for the multi-column form of {@link CreateColumn}.
+ */
+class CreateColumnTest {
+
+  private static final String TABLE_ID = "table-id";
+  private static final String MODULE_ID = "module-id";
+  private static final String STRING_ID = "10";
+
+  private MockedStatic<OBDal> obDalMock;
+  private MockedStatic<OBProvider> providerMock;
+  private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ReferenceTypeRegistry> registryMock;
+  private MockedStatic<ModuleLock> lockMock;
+  private MockedStatic<Utils> utilsMock;
+  private OBDal obDal;
+  private List<List<String>> batches;
+
+  /**
+   * Mocks a table of a module in development with a DB prefix, and a String reference.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    obDal = mock(OBDal.class);
+    obDalMock = mockStatic(OBDal.class);
+    obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    messageMock = mockStatic(OBMessageUtils.class);
+    messageMock.when(() -> OBMessageUtils.messageBD(anyString())).thenAnswer(inv -> inv.getArgument(0) + " %s");
+    lockMock = mockStatic(ModuleLock.class);
+
+    Module module = mock(Module.class);
+    ModuleDBPrefix prefix = mock(ModuleDBPrefix.class);
+    when(prefix.getName()).thenReturn("COPDEV");
+    when(module.getModuleDBPrefixList()).thenReturn(List.of(prefix));
+    when(module.isInDevelopment()).thenReturn(true);
+    DataPackage dataPackage = mock(DataPackage.class);
+    when(dataPackage.getModule()).thenReturn(module);
+    Table table = mock(Table.class);
+    when(table.getDataPackage()).thenReturn(dataPackage);
+    when(table.getDBTableName()).thenReturn("copdev_sale");
+    Reference reference = mock(Reference.class);
+    when(reference.getId()).thenReturn(STRING_ID);
+    when(reference.isBaseReference()).thenReturn(true);
+    when(obDal.get(Table.class, TABLE_ID)).thenReturn(table);
+    when(obDal.get(Module.class, MODULE_ID)).thenReturn(module);
+    when(obDal.get(Reference.class, STRING_ID)).thenReturn(reference);
+
+    Connection connection = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(obDal.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(mock(ResultSet.class));
+
+    ReferenceTypeRegistry registry = mock(ReferenceTypeRegistry.class);
+    when(registry.getDbType(any())).thenReturn(Pair.of("varchar", 60));
+    registryMock = mockStatic(ReferenceTypeRegistry.class);
+    registryMock.when(ReferenceTypeRegistry::getInstance).thenReturn(registry);
+    OBProvider provider = mock(OBProvider.class);
+    when(provider.get(Column.class)).thenAnswer(inv -> mock(Column.class));
+    providerMock = mockStatic(OBProvider.class);
+    providerMock.when(OBProvider::getInstance).thenReturn(provider);
+
+    batches = new ArrayList<>();
+    utilsMock = mockStatic(Utils.class);
+    utilsMock.when(() -> Utils.executeBatch(anyList())).thenAnswer(inv -> {
+      batches.add(inv.getArgument(0));
+      return new JSONObject();
+    });
+  }
+
+  /**
+   * Releases the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    obDalMock.close();
+    providerMock.close();
+    messageMock.close();
+    registryMock.close();
+    lockMock.close();
+    utilsMock.close();
+  }
+
+  /**
+   * Ensures that several columns are added by a single ALTER TABLE and registered with a single flush.
+   */
+  @Test
+  void testColumnsAddedTogether() {
+    Map<String, String> responseVars = new HashMap<>();
+
+    new CreateColumn().get(parameters("[{\"name\": \"Status\", \"columnNameDB\": \"status\", \"referenceID\": \"10\"},"
+        + " {\"name\": \"Code\", \"columnNameDB\": \"code\", \"referenceID\": \"10\"}]"), responseVars);
+
+    assertTrue(responseVars.containsKey("response"), String.valueOf(responseVars));
+    assertEquals(1, batches.size());
+    assertEquals(1, batches.get(0).size());
+    String alter = batches.get(0).get(0);
+    assertTrue(alter.startsWith("ALTER TABLE IF EXISTS public.copdev_sale ADD COLUMN status"));
+    assertTrue(alter.contains(", ADD COLUMN code"));
+    verify(obDal, times(2)).save(any(Column.class));
+    verify(obDal, times(1)).flush();
+  }
+
+  /**
+   * Ensures that a failed registration drops the columns the batch created, and that the batch would have failed
+   * on a column that already existed, so no previous column is dropped.
+   */
+  @Test
+  void testFailedRegistrationDropsCreatedColumns() {
+    doThrow(new OBException("duplicated AD_COLUMN")).when(obDal).flush();
+    Map<String, String> responseVars = new HashMap<>();
+
+    new CreateColumn().get(parameters("[{\"columnNameDB\": \"status\", \"referenceID\": \"10\"}]"),
+        responseVars);
+
+    assertEquals("duplicated AD_COLUMN", responseVars.get("error"));
+    assertEquals(2, batches.size());
+    assertTrue(batches.get(0).get(0).contains("ADD COLUMN status"));
+    assertEquals(List.of("ALTER TABLE IF EXISTS public.copdev_sale DROP COLUMN IF EXISTS status"), batches.get(1));
+  }
+
+  /**
+   * Ensures that a column name repeated in the array, in any case, is rejected before anything is written.
+   */
+  @Test
+  void testDuplicateColumnsRejected() {
+    Map<String, String> parameter = parameters("[{\"columnNameDB\": \"status\", \"referenceID\": \"10\"},"
+        + " {\"columnNameDB\": \"Status\", \"referenceID\": \"10\"}]");
+
+    OBException e = assertThrows(OBException.class, () -> new CreateColumn().get(parameter, new HashMap<>()));
+
+    assertTrue(e.getMessage().contains("duplicated column Status"));
+    assertTrue(batches.isEmpty());
+  }
+
+  private static Map<String, String> parameters(String columns) {
+    Map<String, String> parameter = new HashMap<>();
+    parameter.put("tableID", TABLE_ID);
+    parameter.put("moduleID", MODULE_ID);
+    parameter.put("columns", columns);
+    parameter.put("safeDDL", "false");
+    return parameter;
+  }
+}
@@ -37,11 +37,14 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -55,12 +58,14 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.domain.List;
 import org.openbravo.model.ad.domain.Reference;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.Utils;
 
 /**
@@ -99,10 +104,14 @@ class CreateReferenceTest {
   @Mock
   private List referenceList;
 
+  @Mock
+  private OBCriteria<Reference> referenceCriteria;
+
   private MockedStatic<OBDal> obDalMock;
   private MockedStatic<OBProvider> obProviderMock;
   private MockedStatic<Utils> utilsMock;
   private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ModuleLock> moduleLockMock;
 
   private Map<String, String> requestParams;
   private Map<String, String> responseVars;
@@ -116,6 +125,7 @@ class CreateReferenceTest {
     obProviderMock = mockStatic(OBProvider.class);
     utilsMock = mockStatic(Utils.class);
     messageMock = mockStatic(OBMessageUtils.class);
+    moduleLockMock = mockStatic(ModuleLock.class);
 
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
     obProviderMock.when(OBProvider::getInstance).thenReturn(obProvider);
@@ -133,6 +143,7 @@ class CreateReferenceTest {
     obProviderMock.close();
     utilsMock.close();
     messageMock.close();
+    moduleLockMock.close();
   }
 
   /**
@@ -369,6 +380,7 @@ class CreateReferenceTest {
     when(obProvider.get(Reference.class)).thenReturn(reference);
     utilsMock.when(() -> Utils.getModuleByPrefix("TEST")).thenReturn(module);
     when(obDal.get(Reference.class, "17")).thenReturn(parentReference);
+    setupReferenceLookup(null);
 
     doThrow(new RuntimeException("Database error")).when(obDal).save(any(Reference.class));
 
@@ -411,6 +423,74 @@ class CreateReferenceTest {
     verify(obDal, times(3)).save(any(List.class));
   }
 
+  /**
+   * A reference that already exists in the module converges: only the missing List items are created, with search
+   * keys that do not collide with the existing ones, and no new Reference is created.
+   */
+  @Test
+  void testGetWithExistingReferenceShouldCreateOnlyMissingItems() {
+    setupValidRequestParams();
+    Reference existing = mock(Reference.class);
+    List existingItem = mock(List.class);
+    when(existingItem.getName()).thenReturn("Item1");
+    when(existingItem.getSearchKey()).thenReturn("IT");
+    when(existingItem.get(List.PROPERTY_ACTIVE)).thenReturn(true);
+    java.util.List<List> existingItems = new ArrayList<>();
+    existingItems.add(existingItem);
+    when(existing.getADListList()).thenReturn(existingItems);
+    when(existing.getModule()).thenReturn(module);
+    when(existing.getId()).thenReturn("REF1");
+    when(obProvider.get(List.class)).thenReturn(referenceList);
+    utilsMock.when(() -> Utils.getModuleByPrefix("TEST")).thenReturn(module);
+    when(obDal.get(Reference.class, "17")).thenReturn(parentReference);
+    setupReferenceLookup(existing);
+    messageMock.when(() -> OBMessageUtils.messageBD("COPDEV_RecordUpdated")).thenReturn("%s %s (%s) updated");
+
+    service.get(requestParams, responseVars);
+
+    assertEquals("ADReference Test Reference (REF1) updated", responseVars.get(MESSAGE));
+    verify(obProvider, never()).get(Reference.class);
+    verify(obDal, times(2)).save(any(List.class));
+    verify(referenceList, never()).setSearchKey("IT");
+    verify(obDal).flush();
+  }
+
+  /**
+   * The items of an existing reference that are no longer listed are deactivated, and the inactive items listed
+   * again are activated, instead of being deleted or created again.
+   */
+  @Test
+  void testGetWithExistingReferenceShouldDeactivateUnlistedItems() {
+    setupValidRequestParams();
+    requestParams.put(REFERENCE_LIST, "Item1");
+    Reference existing = mock(Reference.class);
+    List listedItem = mock(List.class);
+    when(listedItem.getName()).thenReturn("Item1");
+    when(listedItem.getSearchKey()).thenReturn("IT");
+    when(listedItem.get(List.PROPERTY_ACTIVE)).thenReturn(false);
+    List staleItem = mock(List.class);
+    when(staleItem.getName()).thenReturn("Item2");
+    when(staleItem.getSearchKey()).thenReturn("IT2");
+    when(staleItem.get(List.PROPERTY_ACTIVE)).thenReturn(true);
+    java.util.List<List> existingItems = new ArrayList<>();
+    existingItems.add(listedItem);
+    existingItems.add(staleItem);
+    when(existing.getADListList()).thenReturn(existingItems);
+    when(existing.getId()).thenReturn("REF1");
+    utilsMock.when(() -> Utils.getModuleByPrefix("TEST")).thenReturn(module);
+    when(obDal.get(Reference.class, "17")).thenReturn(parentReference);
+    setupReferenceLookup(existing);
+    messageMock.when(() -> OBMessageUtils.messageBD("COPDEV_RecordUpdated")).thenReturn("%s %s (%s) updated");
+
+    service.get(requestParams, responseVars);
+
+    assertEquals("ADReference Test Reference (REF1) updated", responseVars.get(MESSAGE));
+    verify(listedItem).set(List.PROPERTY_ACTIVE, true);
+    verify(staleItem).set(List.PROPERTY_ACTIVE, false);
+    verify(obProvider, never()).get(List.class);
+    verify(obDal).flush();
+  }
+
   /**
    * Populates requestParams with a minimal valid payload shared across tests.
    */
@@ -443,6 +523,20 @@ class CreateReferenceTest {
 
     when(obDal.get(Reference.class, "17")).thenReturn(parentReference);
     when(reference.getModule()).thenReturn(module);
+    setupReferenceLookup(null);
+  }
+
+  /**
+   * Configures the lookup of the reference by name and module.
+   *
+   * @param existing
+   *     the reference found, or null if the module has none with the name
+   */
+  private void setupReferenceLookup(Reference existing) {
+    when(obDal.createCriteria(Reference.class)).thenReturn(referenceCriteria);
+    when(referenceCriteria.add(any())).thenReturn(referenceCriteria);
+    when(referenceCriteria.setMaxResults(1)).thenReturn(referenceCriteria);
+    when(referenceCriteria.uniqueResult()).thenReturn(existing);
   }
 
   /**
@@ -57,6 +57,7 @@ import org.openbravo.model.ad.datamodel.Table;
 import org.openbravo.model.ad.module.DataPackage;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
 
 /**
@@ -97,6 +98,7 @@ class CreateViewTest {
   private MockedStatic<OBContext> obContextMock;
   private MockedStatic<OBMessageUtils> messageMock;
   private MockedStatic<TableRegistrationUtils> tableRegUtilsMock;
+  private MockedStatic<ModuleLock> moduleLockMock;
 
   private Map<String, String> parameters;
   private Map<String, String> responseVars;
@@ -110,6 +112,7 @@ class CreateViewTest {
     obContextMock = mockStatic(OBContext.class);
     messageMock = mockStatic(OBMessageUtils.class);
     tableRegUtilsMock = mockStatic(TableRegistrationUtils.class);
+    moduleLockMock = mockStatic(ModuleLock.class);
 
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
     obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
@@ -135,6 +138,7 @@ class CreateViewTest {
     obContextMock.close();
     messageMock.close();
     tableRegUtilsMock.close();
+    moduleLockMock.close();
   }
 
   /**
@@ -26,6 +26,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,10 +44,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.SingleFlight;
+
 /**
  * Unit tests for {@link JavaPackageRetriever}.
  *
@@ -86,30 +92,51 @@ class JavaPackageRetrieverTest {
   @Mock
   private Module module3;
 
+  @Mock
+  private OBContext obContext;
+
+  @Mock
+  private Role role;
+
+  @Mock
+  private OBPropertiesProvider propertiesProvider;
+
   private MockedStatic<OBDal> obDalMock;
+  private MockedStatic<OBContext> obContextMock;
+  private MockedStatic<OBPropertiesProvider> propertiesMock;
 
   private Map<String, String> parameters;
   private Map<String, String> responseVars;
 
   /**
-   * Initializes the static OBDal mock and resets test input/output maps before
-   * each test, ensuring isolation between test cases.
+   * Initializes the static OBDal, OBContext and properties mocks and resets test
+   * input/output maps before each test, ensuring isolation between test cases.
    */
   @BeforeEach
   void setUp() {
     obDalMock = mockStatic(OBDal.class);
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
+    obContextMock = mockStatic(OBContext.class);
+    obContextMock.when(OBContext::getOBContext).thenReturn(obContext);
+    when(obContext.getRole()).thenReturn(role);
+    when(role.getId()).thenReturn("0");
+    propertiesMock = mockStatic(OBPropertiesProvider.class);
+    propertiesMock.when(OBPropertiesProvider::getInstance).thenReturn(propertiesProvider);
 
     parameters = new HashMap<>();
     responseVars = new HashMap<>();
   }
 
   /**
-   * Closes the static OBDal mock after each test to avoid cross-test interference.
+   * Closes the static mocks and drops the responses kept by {@link SingleFlight}
+   * after each test to avoid cross-test interference.
    */
   @AfterEach
   void tearDown() {
     obDalMock.close();
+    obContextMock.close();
+    propertiesMock.close();
+    SingleFlight.invalidate();
   }
 
   /**
@@ -404,6 +431,24 @@ class JavaPackageRetrieverTest {
     assertEquals("com.module123", responseVars.get("info"));
   }
 
+  /**
+   * Verifies that an identical search repeated while its response is kept is
+   * answered without querying the modules again.
+   */
+  @Test
+  void testIdenticalCallsShouldShareOneQuery() {
+    addKeyword("copilot");
+    setupCriteriaReturning(Collections.singletonList(module1));
+    mockModule(module1, JAVA_PACKAGE);
+
+    javaPackageRetriever.get(parameters, responseVars);
+    Map<String, String> sharedResponse = new HashMap<>();
+    javaPackageRetriever.get(new HashMap<>(parameters), sharedResponse);
+
+    assertEquals(responseVars, sharedResponse);
+    verify(obDal, times(1)).createCriteria(Module.class);
+  }
+
   /**
    * Adds a KEYWORD parameter to the test input map.
    */
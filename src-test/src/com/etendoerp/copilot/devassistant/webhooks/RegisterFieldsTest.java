@@ -63,6 +63,7 @@ import org.openbravo.model.ad.ui.Element;
 import org.openbravo.model.ad.ui.Field;
 import org.openbravo.model.ad.ui.Tab;
 
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.Utils;
 
 /**
@@ -125,6 +126,7 @@ class RegisterFieldsTest {
   private MockedStatic<OBDal> obDalMock;
   private MockedStatic<Utils> utilsMock;
   private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ModuleLock> moduleLockMock;
 
   private Map<String, String> requestParams;
   private Map<String, String> responseVars;
@@ -140,6 +142,7 @@ class RegisterFieldsTest {
     obDalMock = mockStatic(OBDal.class);
     utilsMock = mockStatic(Utils.class);
     messageMock = mockStatic(OBMessageUtils.class);
+    moduleLockMock = mockStatic(ModuleLock.class);
 
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
 
@@ -156,6 +159,7 @@ class RegisterFieldsTest {
     obDalMock.close();
     utilsMock.close();
     messageMock.close();
+    moduleLockMock.close();
   }
 
   /**
@@ -63,6 +63,7 @@ import org.openbravo.model.ad.module.Module;
 import org.openbravo.model.ad.ui.Tab;
 import org.openbravo.model.ad.ui.Window;
 
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.Utils;
 
 /**
@@ -121,6 +122,7 @@ class RegisterTabTest {
   private MockedStatic<OBContext> obContextMock;
   private MockedStatic<Utils> utilsMock;
   private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ModuleLock> moduleLockMock;
 
   private Map<String, String> requestParams;
   private Map<String, String> responseVars;
@@ -143,6 +145,7 @@ class RegisterTabTest {
     obContextMock = mockStatic(OBContext.class);
     utilsMock = mockStatic(Utils.class);
     messageMock = mockStatic(OBMessageUtils.class);
+    moduleLockMock = mockStatic(ModuleLock.class);
 
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
     obProviderMock.when(OBProvider::getInstance).thenReturn(obProvider);
@@ -164,16 +167,21 @@ class RegisterTabTest {
     obContextMock.close();
     utilsMock.close();
     messageMock.close();
+    moduleLockMock.close();
   }
 
   /**
-   * Verifies that when a tab already exists for the same table in the window,
+   * Verifies that when a tab of another module already exists for the same table in the window,
    * the service returns an error message and does not attempt to persist a new Tab.
    */
   @Test
   void testGetWhenTabAlreadyExistsShouldReturnError() {
     setupValidRequestParams();
     setupMocksWithExistingTab();
+    Module otherModule = mock(Module.class);
+    when(otherModule.getId()).thenReturn("otherModule456");
+    when(module.getId()).thenReturn("module123");
+    when(existingTab.getModule()).thenReturn(otherModule);
 
     messageMock.when(() -> OBMessageUtils.messageBD("COPDEV_TabAlreadyExists"))
         .thenReturn("Tab '%s' (ID: %s) already exists in window '%s'");
@@ -191,6 +199,30 @@ class RegisterTabTest {
     verify(obDal, never()).save(any(Tab.class));
   }
 
+  /**
+   * Verifies that when a tab of the same module already exists for the table in the window,
+   * it is brought to the requested state instead of failing or creating a second Tab.
+   */
+  @Test
+  void testGetWhenTabOfModuleAlreadyExistsShouldConverge() {
+    setupValidRequestParams();
+    setupMocksWithExistingTab();
+    when(module.getId()).thenReturn("module123");
+    when(existingTab.getModule()).thenReturn(module);
+    when(existingTab.getName()).thenReturn("Test Table");
+    when(existingTab.getId()).thenReturn("existingTab123");
+
+    messageMock.when(() -> OBMessageUtils.messageBD("COPDEV_RecordUpdated"))
+        .thenReturn("%s %s (%s) updated");
+
+    service.get(requestParams, responseVars);
+
+    assertEquals("ADTab Test Table (existingTab123) updated", responseVars.get("message"));
+    verify(obProvider, never()).get(Tab.class);
+    verify(obDal).save(existingTab);
+    verify(obDal).flush();
+  }
+
   /**
    * Ensures the created tab name starts with an uppercase letter when the
    * table name comes in lowercase from the DB.
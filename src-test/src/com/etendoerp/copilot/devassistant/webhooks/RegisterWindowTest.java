@@ -61,6 +61,8 @@ import org.openbravo.model.ad.ui.Menu;
 import org.openbravo.model.ad.ui.Window;
 import org.openbravo.model.common.enterprise.Organization;
 
+import com.etendoerp.copilot.devassistant.ModuleLock;
+
 /**
  * Unit tests for {@link RegisterWindow}.
  *
@@ -99,6 +101,12 @@ class RegisterWindowTest {
   @Mock
   private OBCriteria<ModuleDBPrefix> modulePrefixCriteria;
 
+  @Mock
+  private OBCriteria<Window> windowCriteria;
+
+  @Mock
+  private OBCriteria<Menu> menuCriteria;
+
   @Mock
   private ModuleDBPrefix moduleDBPrefix;
 
@@ -124,6 +132,7 @@ class RegisterWindowTest {
   private MockedStatic<OBProvider> obProviderMock;
   private MockedStatic<OBContext> obContextMock;
   private MockedStatic<OBMessageUtils> messageMock;
+  private MockedStatic<ModuleLock> moduleLockMock;
 
   private Map<String, String> parameters;
   private Map<String, String> responseVars;
@@ -146,6 +155,7 @@ class RegisterWindowTest {
     obProviderMock = mockStatic(OBProvider.class);
     obContextMock = mockStatic(OBContext.class);
     messageMock = mockStatic(OBMessageUtils.class);
+    moduleLockMock = mockStatic(ModuleLock.class);
 
     obDalMock.when(OBDal::getInstance).thenReturn(obDal);
     obProviderMock.when(OBProvider::getInstance).thenReturn(obProvider);
@@ -176,6 +186,7 @@ class RegisterWindowTest {
     obProviderMock.close();
     obContextMock.close();
     messageMock.close();
+    moduleLockMock.close();
   }
 
   /**
@@ -204,6 +215,45 @@ class RegisterWindowTest {
     verify(obDal).flush();
   }
 
+  /**
+   * Verifies that a window that already exists in the module with the same name
+   * is brought to the requested state instead of being created again.
+   */
+  @Test
+  void testGetWithExistingWindowShouldConverge() {
+    parameters.put(DB_PREFIX, "TEST");
+    parameters.put("Name", TEST_WINDOW);
+    parameters.put(DESCRIPTION, "New Description");
+
+    dataPackageList.add(dataPackage);
+    when(obDal.createCriteria(ModuleDBPrefix.class)).thenReturn(modulePrefixCriteria);
+    when(modulePrefixCriteria.add(any())).thenReturn(modulePrefixCriteria);
+    when(modulePrefixCriteria.setMaxResults(anyInt())).thenReturn(modulePrefixCriteria);
+    when(modulePrefixCriteria.uniqueResult()).thenReturn(moduleDBPrefix);
+    when(moduleDBPrefix.getModule()).thenReturn(module);
+    when(module.isInDevelopment()).thenReturn(true);
+    when(module.getDataPackageList()).thenReturn(dataPackageList);
+    when(dataPackage.getModule()).thenReturn(module);
+    when(window.getName()).thenReturn(TEST_WINDOW);
+    when(window.getId()).thenReturn(WINDOW_123);
+    setupWindowLookup(window);
+    when(obDal.createCriteria(Menu.class)).thenReturn(menuCriteria);
+    when(menuCriteria.add(any())).thenReturn(menuCriteria);
+    when(menuCriteria.setMaxResults(anyInt())).thenReturn(menuCriteria);
+    when(menuCriteria.uniqueResult()).thenReturn(menu);
+    messageMock.when(() -> OBMessageUtils.messageBD("COPDEV_RecordUpdated"))
+        .thenReturn("%s %s (%s) updated");
+
+    registerWindow.get(parameters, responseVars);
+
+    assertEquals("ADWindow " + TEST_WINDOW + " (" + WINDOW_123 + ") updated", responseVars.get(MESSAGE));
+    verify(obProvider, never()).get(Window.class);
+    verify(obProvider, never()).get(Menu.class);
+    verify(obDal).save(window);
+    verify(obDal).save(menu);
+    verify(obDal).flush();
+  }
+
   /**
    * Ensures that if the DB Prefix parameter is missing,
    * the service returns a meaningful error message and performs rollback.
@@ -554,6 +604,7 @@ class RegisterWindowTest {
     when(module.isInDevelopment()).thenReturn(true);
     when(module.getDataPackageList()).thenReturn(dataPackageList);
     when(firstPackage.getModule()).thenReturn(module);
+    setupWindowLookup(null);
 
     when(obProvider.get(Window.class)).thenReturn(window);
     when(obProvider.get(Menu.class)).thenReturn(menu);
@@ -615,5 +666,19 @@ class RegisterWindowTest {
     when(window.getName()).thenReturn(TEST_WINDOW);
     when(window.getId()).thenReturn(WINDOW_123);
     when(window.getModule()).thenReturn(module);
+    setupWindowLookup(null);
+  }
+
+  /**
+   * Configures the lookup of the window by name and module.
+   *
+   * @param existing
+   *     the window found, or null if the module has none with the name
+   */
+  private void setupWindowLookup(Window existing) {
+    when(obDal.createCriteria(Window.class)).thenReturn(windowCriteria);
+    when(windowCriteria.add(any())).thenReturn(windowCriteria);
+    when(windowCriteria.setMaxResults(anyInt())).thenReturn(windowCriteria);
+    when(windowCriteria.uniqueResult()).thenReturn(existing);
   }
 }
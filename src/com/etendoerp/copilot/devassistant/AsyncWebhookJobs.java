@@ -0,0 +1,258 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Runs long webhooks in the background and keeps their results until they are polled.
+ * <p>
+ * A webhook called with {@code Async=true} is enqueued on a bounded executor and returns a job ID at once, so it
+ * does not hold the request thread nor its connection while it runs. The job runs the same webhook with the
+ * context of the caller, in a DAL session of its own that is committed, or rolled back on failure, and closed
+ * when it finishes. Its status, progress and final response variables are returned by the
+ * {@code GetAsyncJobStatus} webhook to the user that submitted it. When the queue is full the call is rejected
+ * instead of waiting.
+ * </p>
+ * The executor is configured in Openbravo.properties:
+ * <ul>
+ *   <li>{@value #PROP_THREADS}: number of jobs run at the same time (default {@value #DEFAULT_THREADS})</li>
+ *   <li>{@value #PROP_QUEUE_SIZE}: number of jobs waiting to run (default {@value #DEFAULT_QUEUE_SIZE})</li>
+ *   <li>{@value #PROP_RETENTION}: minutes a finished job is kept (default {@value #DEFAULT_RETENTION_MINUTES})</li>
+ * </ul>
+ * Jobs live in the memory of the node that received the call and are lost on restart.
+ */
+public class AsyncWebhookJobs {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String PARAMETER = "Async";
+  public static final String PROP_THREADS = "copdev.async.threads";
+  public static final String PROP_QUEUE_SIZE = "copdev.async.queueSize";
+  public static final String PROP_RETENTION = "copdev.async.retentionMinutes";
+  public static final int DEFAULT_THREADS = 2;
+  public static final int DEFAULT_QUEUE_SIZE = 20;
+  public static final int DEFAULT_RETENTION_MINUTES = 60;
+  public static final String STATUS_QUEUED = "queued";
+  public static final String STATUS_RUNNING = "running";
+  public static final String STATUS_DONE = "done";
+  public static final String STATUS_FAILED = "failed";
+
+  private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+  private static volatile AsyncWebhookJobs instance;
+
+  private final Executor executor;
+  private final long retentionMillis;
+  private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a job registry.
+   *
+   * @param executor
+   *     the executor that runs the jobs, which rejects them when it cannot take more
+   * @param retentionMillis
+   *     milliseconds a finished job is kept
+   */
+  AsyncWebhookJobs(Executor executor, long retentionMillis) {
+    this.executor = executor;
+    this.retentionMillis = retentionMillis;
+  }
+
+  private static Executor newExecutor(int threads, int queueSize) {
+    AtomicInteger counter = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+        runnable -> {
+          Thread thread = new Thread(runnable, "copdev-async-webhook-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * @return the job registry, configured from Openbravo.properties on the first call
+   */
+  public static AsyncWebhookJobs getInstance() {
+    AsyncWebhookJobs jobs = instance;
+    if (jobs == null) {
+      synchronized (AsyncWebhookJobs.class) {
+        jobs = instance;
+        if (jobs == null) {
+          Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+          jobs = new AsyncWebhookJobs(newExecutor(readNumber(props, PROP_THREADS, DEFAULT_THREADS),
+              readNumber(props, PROP_QUEUE_SIZE, DEFAULT_QUEUE_SIZE)),
+              TimeUnit.MINUTES.toMillis(readNumber(props, PROP_RETENTION, DEFAULT_RETENTION_MINUTES)));
+          instance = jobs;
+        }
+      }
+    }
+    return jobs;
+  }
+
+  private static int readNumber(Properties props, String key, int defaultValue) {
+    String value = props != null ? props.getProperty(key) : null;
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(1, Integer.parseInt(value.trim()));
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value '{}' for property {}, using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Tells whether a webhook must run in the background.
+   *
+   * @param parameter
+   *     the parameters of the webhook
+   * @return true if the {@value #PARAMETER} parameter is "true"
+   */
+  public static boolean isRequested(Map<String, String> parameter) {
+    return StringUtils.equalsIgnoreCase(StringUtils.trim(parameter.get(PARAMETER)), "true");
+  }
+
+  /**
+   * Reports the progress of the job running on the current thread. Outside a job it does nothing, so webhooks can
+   * report their progress whether they run in the background or not.
+   *
+   * @param progress
+   *     a short description of the current step
+   */
+  public static void reportProgress(String progress) {
+    Job job = CURRENT.get();
+    if (job != null) {
+      job.progress = progress;
+    }
+  }
+
+  /**
+   * Enqueues a webhook to run in the background with the same parameters, except {@value #PARAMETER}.
+   *
+   * @param webhook
+   *     the webhook to run
+   * @param parameter
+   *     the parameters of the call
+   * @param responseVars
+   *     the response of the call, which gets the job ID and status under "response", or the error if the queue is
+   *     full
+   */
+  public void submit(BaseWebhookService webhook, Map<String, String> parameter, Map<String, String> responseVars) {
+    purge();
+    Map<String, String> jobParameter = new HashMap<>(parameter);
+    jobParameter.remove(PARAMETER);
+    OBContext context = OBContext.getOBContext();
+    Job job = new Job(webhook.getClass().getSimpleName(), context.getUser().getId());
+    jobs.put(job.id, job);
+    try {
+      executor.execute(() -> run(job, webhook, jobParameter, context));
+      responseVars.put("response", job.toJSON().toString());
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.id);
+      responseVars.put("error", OBMessageUtils.messageBD("COPDEV_AsyncQueueFull"));
+    } catch (JSONException e) {
+      throw new OBException(e);
+    }
+  }
+
+  private void run(Job job, BaseWebhookService webhook, Map<String, String> parameter, OBContext context) {
+    CURRENT.set(job);
+    job.started = new Date();
+    job.status = STATUS_RUNNING;
+    OBContext.setOBContext(context);
+    try {
+      webhook.get(parameter, job.responseVars);
+      OBDal.getInstance().commitAndClose();
+      job.status = job.responseVars.containsKey("error") ? STATUS_FAILED : STATUS_DONE;
+    } catch (Exception e) {
+      LOG.error("Async job {} of {} failed", job.id, job.webhook, e);
+      // The job is failed even if the rollback below throws; the response map does not accept null messages
+      job.status = STATUS_FAILED;
+      job.responseVars.put("error", StringUtils.defaultIfBlank(e.getMessage(), e.getClass().getName()));
+      OBDal.getInstance().rollbackAndClose();
+    } finally {
+      job.finished = new Date();
+      OBContext.setOBContext((OBContext) null);
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * Returns the status of a job submitted by the current user.
+   *
+   * @param jobId
+   *     the ID returned when the job was submitted
+   * @return the job ID, webhook, status, progress, timestamps and, once finished, its response variables
+   * @throws OBException
+   *     if there is no such job for the current user, or it was already purged
+   */
+  public JSONObject getStatus(String jobId) throws JSONException {
+    purge();
+    Job job = jobId != null ? jobs.get(jobId) : null;
+    if (job == null || !StringUtils.equals(job.userId, OBContext.getOBContext().getUser().getId())) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_AsyncJobNotFound"), jobId));
+    }
+    return job.toJSON();
+  }
+
+  private void purge() {
+    long limit = System.currentTimeMillis() - retentionMillis;
+    jobs.values().removeIf(job -> job.finished != null && job.finished.getTime() < limit);
+  }
+
+  /**
+   * A webhook call running in the background. Its state is written by the worker and read by the status webhook.
+   */
+  private static class Job {
+    private final String id = UUID.randomUUID().toString();
+    private final String webhook;
+    private final String userId;
+    private final Date submitted = new Date();
+    private final Map<String, String> responseVars = new ConcurrentHashMap<>();
+    private volatile String status = STATUS_QUEUED;
+    private volatile String progress;
+    private volatile Date started;
+    private volatile Date finished;
+
+    Job(String webhook, String userId) {
+      this.webhook = webhook;
+      this.userId = userId;
+    }
+
+    JSONObject toJSON() throws JSONException {
+      JSONObject json = new JSONObject();
+      json.put("jobId", id);
+      json.put("webhook", webhook);
+      json.put("status", status);
+      json.put("progress", progress);
+      json.put("submitted", submitted.getTime());
+      json.put("started", started != null ? started.getTime() : null);
+      json.put("finished", finished != null ? finished.getTime() : null);
+      if (finished != null) {
+        json.put("responseVars", new JSONObject(responseVars));
+      }
+      return json;
+    }
+  }
+}
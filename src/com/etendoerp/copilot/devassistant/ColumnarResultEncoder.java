@@ -0,0 +1,163 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes a {@link ResultSet} in a compact, column-oriented JSON format meant for LLM-facing responses.
+ * <p>
+ * Column names are written once, each column carries its type and a single array with its values, and string
+ * columns with many repeated values (flags, statuses, references) are dictionary encoded: the distinct values are
+ * written once and the value array holds their positions. On wide tables this removes the repetition of every
+ * column name in every row and most of the repeated strings.
+ * </p>
+ * The generated document has the following shape:
+ * <pre>
+ * {"columns":[
+ *   {"name":"documentno","type":"string","values":["1000","1001"]},
+ *   {"name":"docstatus","type":"string","dictionary":["CO","DR"],"values":[0,1]},
+ *   {"name":"grandtotal","type":"number","values":[12.5,40]}
+ * ],"rowCount":2,"truncated":false}
+ * </pre>
+ * Unlike {@link QueryResultStreamer}, values are buffered until the result set is read, bounded by the row and
+ * byte caps.
+ */
+public class ColumnarResultEncoder implements ResultEncoder {
+
+  public static final String COLUMNS = "columns";
+  public static final String DICTIONARY = "dictionary";
+  public static final String VALUES = "values";
+  public static final String TYPE_NUMBER = "number";
+  public static final String TYPE_BOOLEAN = "boolean";
+  public static final String TYPE_STRING = "string";
+  private static final int MIN_ROWS_FOR_DICTIONARY = 8;
+
+  private final int maxRows;
+  private final long maxBytes;
+  private final boolean dictionaryEncoding;
+
+  /**
+   * Creates an encoder with the given caps.
+   *
+   * @param maxRows
+   *     maximum number of rows to write, a value lower than 1 disables the cap
+   * @param maxBytes
+   *     maximum number of UTF-8 bytes of values to write, a value lower than 1 disables the cap; the first row is
+   *     written even if it exceeds it
+   * @param dictionaryEncoding
+   *     whether string columns with repeated values may be dictionary encoded
+   */
+  public ColumnarResultEncoder(int maxRows, long maxBytes, boolean dictionaryEncoding) {
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.dictionaryEncoding = dictionaryEncoding;
+  }
+
+  @Override
+  public QueryResultStreamer.StreamSummary stream(ResultSet rs, Writer out) throws SQLException, IOException {
+    QueryResultStreamer.ColumnInfo columns = QueryResultStreamer.ColumnInfo.of(rs.getMetaData());
+    int columnCount = columns.count();
+    List<List<String>> values = new ArrayList<>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      values.add(new ArrayList<>());
+    }
+    String[] row = new String[columnCount];
+    int rowCount = 0;
+    long bytes = 0;
+    boolean truncated = false;
+    while (rs.next()) {
+      if (maxRows > 0 && rowCount >= maxRows) {
+        truncated = true;
+        break;
+      }
+      long rowBytes = 0;
+      for (int i = 0; i < columnCount; i++) {
+        row[i] = QueryResultStreamer.jsonValue(rs, i + 1, columns.type(i));
+        rowBytes += row[i].getBytes(StandardCharsets.UTF_8).length + 1L;
+      }
+      if (maxBytes > 0 && rowCount > 0 && bytes + rowBytes > maxBytes) {
+        truncated = true;
+        break;
+      }
+      for (int i = 0; i < columnCount; i++) {
+        values.get(i).add(row[i]);
+      }
+      bytes += rowBytes;
+      rowCount++;
+    }
+
+    out.write("{\"" + COLUMNS + "\":[");
+    for (int i = 0; i < columnCount; i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      writeColumn(out, columns.quotedName(i), typeName(columns.type(i)), values.get(i));
+    }
+    out.write("],\"" + QueryResultStreamer.ROW_COUNT + "\":" + rowCount + ",\"" + QueryResultStreamer.TRUNCATED + "\":"
+        + truncated + "}");
+    out.flush();
+    return new QueryResultStreamer.StreamSummary(rowCount, bytes, truncated);
+  }
+
+  /**
+   * Writes a single column, dictionary encoding it when it pays off.
+   */
+  private void writeColumn(Writer out, String quotedName, String type, List<String> columnValues)
+      throws IOException {
+    out.write("{\"name\":" + quotedName + ",\"type\":\"" + type + "\",");
+    Map<String, Integer> dictionary = TYPE_STRING.equals(type) ? buildDictionary(columnValues) : null;
+    if (dictionary != null) {
+      out.write("\"" + DICTIONARY + "\":[" + String.join(",", dictionary.keySet()) + "],");
+      out.write("\"" + VALUES + "\":[");
+      for (int r = 0; r < columnValues.size(); r++) {
+        if (r > 0) {
+          out.write(',');
+        }
+        String value = columnValues.get(r);
+        out.write("null".equals(value) ? value : String.valueOf(dictionary.get(value)));
+      }
+    } else {
+      out.write("\"" + VALUES + "\":[" + String.join(",", columnValues));
+    }
+    out.write("]}");
+  }
+
+  /**
+   * Builds the dictionary of a string column, or returns null when the column has too few repeated values for the
+   * encoding to be worth it. The returned map keeps the insertion order, which defines the positions.
+   */
+  Map<String, Integer> buildDictionary(List<String> columnValues) {
+    if (!dictionaryEncoding || columnValues.size() < MIN_ROWS_FOR_DICTIONARY) {
+      return null;
+    }
+    Map<String, Integer> dictionary = new LinkedHashMap<>();
+    int limit = columnValues.size() / 2;
+    for (String value : columnValues) {
+      if ("null".equals(value) || dictionary.containsKey(value)) {
+        continue;
+      }
+      if (dictionary.size() >= limit) {
+        return null;
+      }
+      dictionary.put(value, dictionary.size());
+    }
+    return dictionary;
+  }
+
+  private static String typeName(int sqlType) {
+    if (QueryResultStreamer.isRawType(sqlType)) {
+      return TYPE_NUMBER;
+    }
+    if (QueryResultStreamer.isBooleanType(sqlType)) {
+      return TYPE_BOOLEAN;
+    }
+    return TYPE_STRING;
+  }
+}
@@ -0,0 +1,127 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Allocates the names of the constraints and indexes created by the assistant.
+ * <p>
+ * The existing constraint and index names that start with the given prefixes are read from {@code pg_constraint}
+ * and {@code pg_class} once, when the allocator is created. Each allocated name is reserved in memory, so the names
+ * of an operation that creates several tables or columns are collision-free without further queries. An allocator
+ * is meant to live as long as one operation and is not thread-safe.
+ * </p>
+ */
+public class ConstraintNameAllocator {
+
+  private static final int MAX_LENGTH = 30;
+  private static final int MAX_TRIMS = 15;
+  private static final String EXISTING_NAMES_QUERY = "SELECT lower(conname) FROM pg_catalog.pg_constraint "
+      + "WHERE lower(conname) LIKE ANY(?) "
+      + "UNION SELECT lower(relname) FROM pg_catalog.pg_class WHERE relkind IN ('i', 'I') AND lower(relname) LIKE ANY(?)";
+
+  private final Set<String> taken;
+
+  ConstraintNameAllocator(Set<String> taken) {
+    this.taken = taken;
+  }
+
+  /**
+   * Creates an allocator aware of the existing names that start with the given prefixes.
+   *
+   * @param prefixes
+   *     the prefixes of the names to allocate, such as the DB prefix of the module or {@code EM_<prefix>}
+   * @return the allocator
+   * @throws OBException
+   *     if the existing names cannot be read, since the allocated names could then collide with them
+   */
+  public static ConstraintNameAllocator forPrefixes(Collection<String> prefixes) {
+    Set<String> taken = new HashSet<>();
+    String[] patterns = prefixes.stream().map(prefix -> StringUtils.lowerCase(prefix) + "\\_%").toArray(String[]::new);
+    Connection conn = OBDal.getInstance().getConnection();
+    try (PreparedStatement st = conn.prepareStatement(EXISTING_NAMES_QUERY)) {
+      st.setArray(1, conn.createArrayOf("text", patterns));
+      st.setArray(2, conn.createArrayOf("text", patterns));
+      try (ResultSet rs = st.executeQuery()) {
+        while (rs.next()) {
+          taken.add(rs.getString(1));
+        }
+      }
+    } catch (SQLException e) {
+      throw new OBException(
+          String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), EXISTING_NAMES_QUERY, e.getMessage()), e);
+    }
+    return new ConstraintNameAllocator(taken);
+  }
+
+  /**
+   * Allocates a name of the form {@code <prefix>_<name1>_<name2>_<suffix>}, shortened to fit the 30 characters
+   * allowed by Etendo. If the name is taken, a counter is added until a free name is found.
+   *
+   * @param prefix
+   *     the prefix of the name
+   * @param name1
+   *     the first name component, usually the table
+   * @param name2
+   *     the second name component, usually the referenced table or the column
+   * @param suffix
+   *     the suffix, such as {@code pk}, {@code fk}, {@code chk} or {@code ix}
+   * @return the name, reserved for the rest of the operation
+   */
+  public String allocate(String prefix, String name1, String name2, String suffix) {
+    String adjustedName1 = adjustNameWithPrefix(name1, prefix);
+    String adjustedName2 = adjustNameWithPrefix(name2, prefix);
+    String proposal = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
+    if (proposal.length() > MAX_LENGTH
+        && (StringUtils.contains(adjustedName1, "_") || StringUtils.contains(adjustedName2, "_"))) {
+      adjustedName1 = adjustedName1.replace("_", "");
+      adjustedName2 = adjustedName2.replace("_", "");
+      proposal = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
+    }
+    int offset = 1;
+    while (proposal.length() > MAX_LENGTH && offset < MAX_TRIMS) {
+      adjustedName1 = trimName(adjustedName1, offset);
+      adjustedName2 = trimName(adjustedName2, offset);
+      proposal = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
+      offset++;
+    }
+
+    int count = 1;
+    while (taken.contains(StringUtils.lowerCase(proposal))) {
+      count++;
+      proposal = String.format("%s_%s_%s%d_%s", prefix,
+          StringUtils.substring(adjustedName1, 0, adjustedName1.length() - 1),
+          StringUtils.substring(adjustedName2, 0, adjustedName2.length() - 1), count, suffix);
+    }
+    taken.add(StringUtils.lowerCase(proposal));
+    return proposal;
+  }
+
+  private static String adjustNameWithPrefix(String name, String prefix) {
+    if (StringUtils.startsWithIgnoreCase(name, prefix + "_")) {
+      return StringUtils.substring(name, prefix.length() + 1);
+    }
+    return name;
+  }
+
+  private static String buildProposal(String prefix, String name1, String name2, String suffix) {
+    return prefix + "_" + name1 + "_" + name2 + "_" + suffix;
+  }
+
+  private static String trimName(String name, int offset) {
+    if (name.length() > offset) {
+      return StringUtils.substring(name, offset);
+    }
+    return name;
+  }
+}
@@ -0,0 +1,170 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Validates constraints that were created with {@code NOT VALID}.
+ * <p>
+ * Adding a constraint {@code NOT VALID} only checks the rows written from then on, so it takes its lock for a
+ * moment. {@code VALIDATE CONSTRAINT} checks the existing rows afterwards under a SHARE UPDATE EXCLUSIVE lock,
+ * which does not block reads or writes on the table. The validation can run synchronously, right after the
+ * constraint is created, or be queued to run in the background as an {@link AsyncWebhookJobs} job. A queued
+ * validation returns the job ID, whose status and result are polled with the {@code GetAsyncJobStatus} webhook.
+ * </p>
+ * <p>
+ * Jobs do not survive a restart, but the pending validation itself does: the constraint stays {@code NOT VALID} in
+ * the catalog until it is validated, and can be validated again at any time with the {@code ValidateConstraint}
+ * webhook.
+ * </p>
+ */
+public class ConstraintValidator {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String MODE_IMMEDIATE = "immediate";
+  public static final String MODE_SYNC = "sync";
+  public static final String MODE_QUEUED = "queued";
+  public static final String STATUS_VALIDATED = "validated";
+  public static final String STATUS_QUEUED = "queued";
+  public static final String STATUS_FAILED = "failed";
+  public static final String PARAM_TABLE_NAME = "TableName";
+  public static final String PARAM_CONSTRAINT_NAME = "ConstraintName";
+  public static final String PARAM_SAFE_DDL = "SafeDDL";
+
+  private ConstraintValidator() {
+  }
+
+  /**
+   * Normalizes the requested validation mode.
+   *
+   * @param mode
+   *     the value of the webhook parameter
+   * @return {@value #MODE_SYNC} or {@value #MODE_QUEUED} for a deferred validation, {@value #MODE_IMMEDIATE}
+   *     otherwise
+   */
+  public static String getMode(String mode) {
+    if (StringUtils.equalsIgnoreCase(StringUtils.trim(mode), MODE_SYNC)) {
+      return MODE_SYNC;
+    }
+    if (StringUtils.equalsIgnoreCase(StringUtils.trim(mode), MODE_QUEUED)) {
+      return MODE_QUEUED;
+    }
+    return MODE_IMMEDIATE;
+  }
+
+  /**
+   * @return true if the constraints must be created {@code NOT VALID} for the given mode
+   */
+  public static boolean isDeferred(String mode) {
+    return !StringUtils.equals(getMode(mode), MODE_IMMEDIATE);
+  }
+
+  /**
+   * Builds the statement that validates a constraint.
+   *
+   * @param tableName
+   *     the database name of the table
+   * @param constraintName
+   *     the name of the constraint
+   * @return the {@code VALIDATE CONSTRAINT} statement
+   */
+  public static String buildValidateQuery(String tableName, String constraintName) {
+    return String.format("ALTER TABLE IF EXISTS public.%s VALIDATE CONSTRAINT %s", tableName, constraintName);
+  }
+
+  /**
+   * Validates a constraint now, or queues its validation, depending on the mode.
+   *
+   * @param tableName
+   *     the database name of the table
+   * @param constraintName
+   *     the name of the constraint created {@code NOT VALID}
+   * @param mode
+   *     {@value #MODE_SYNC} or {@value #MODE_QUEUED}
+   * @param safeDDL
+   *     the executor used to run the validation in safe-DDL mode, or null to run it directly
+   * @return a JSONObject with the constraint, the mode and the status of the validation. When a synchronous
+   *     validation fails, for example because existing rows violate the constraint, the status is
+   *     {@value #STATUS_FAILED}, the error is included and the constraint remains {@code NOT VALID}. A queued
+   *     validation includes the ID of its job in "jobId", or fails if the job queue is full.
+   */
+  public static JSONObject validate(String tableName, String constraintName, String mode,
+      SafeDDLExecutor safeDDL) {
+    String query = buildValidateQuery(tableName, constraintName);
+    JSONObject result = new JSONObject();
+    try {
+      result.put("constraint", constraintName);
+      result.put("mode", getMode(mode));
+      if (StringUtils.equals(getMode(mode), MODE_QUEUED)) {
+        queue(tableName, constraintName, safeDDL, result);
+      } else {
+        try {
+          run(query, safeDDL);
+          result.put("status", STATUS_VALIDATED);
+        } catch (OBException e) {
+          LOG.error("Constraint validation failed, the constraint remains NOT VALID: {}", query, e);
+          result.put("status", STATUS_FAILED);
+          result.put("error", e.getMessage());
+        }
+      }
+    } catch (JSONException e) {
+      LOG.error("Error building the validation result of {}", constraintName, e);
+    }
+    return result;
+  }
+
+  private static void queue(String tableName, String constraintName, SafeDDLExecutor safeDDL, JSONObject result)
+      throws JSONException {
+    Map<String, String> parameter = new HashMap<>();
+    parameter.put(PARAM_TABLE_NAME, tableName);
+    parameter.put(PARAM_CONSTRAINT_NAME, constraintName);
+    parameter.put(PARAM_SAFE_DDL, String.valueOf(safeDDL != null));
+    Map<String, String> responseVars = new HashMap<>();
+    AsyncWebhookJobs.getInstance().submit(new ValidationJob(), parameter, responseVars);
+    if (responseVars.containsKey("error")) {
+      LOG.error("Constraint validation not queued, the constraint remains NOT VALID: {}", constraintName);
+      result.put("status", STATUS_FAILED);
+      result.put("error", responseVars.get("error"));
+      return;
+    }
+    result.put("status", STATUS_QUEUED);
+    result.put("jobId", new JSONObject(responseVars.get("response")).getString("jobId"));
+  }
+
+  private static void run(String query, SafeDDLExecutor safeDDL) {
+    if (safeDDL != null) {
+      safeDDL.execute(List.of(query));
+    } else {
+      Utils.executeBatch(List.of(query));
+    }
+  }
+
+  /**
+   * The background job of a queued validation, which validates the constraint synchronously on the worker.
+   */
+  static class ValidationJob extends BaseWebhookService {
+
+    @Override
+    public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+      SafeDDLExecutor safeDDL = SafeDDLExecutor.isEnabled(parameter.get(PARAM_SAFE_DDL))
+          ? SafeDDLExecutor.fromProperties() : null;
+      JSONObject result = validate(parameter.get(PARAM_TABLE_NAME), parameter.get(PARAM_CONSTRAINT_NAME),
+          MODE_SYNC, safeDDL);
+      if (result.has("error")) {
+        responseVars.put("error", result.optString("error"));
+      } else {
+        responseVars.put("response", result.toString());
+      }
+    }
+  }
+}
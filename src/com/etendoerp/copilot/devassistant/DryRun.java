@@ -0,0 +1,130 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.structure.BaseOBObject;
+
+/**
+ * Plan of the changes a mutating webhook would make, returned instead of making them when the webhook runs in
+ * dry-run mode.
+ * <p>
+ * A webhook in dry-run mode runs its validations and builds its statements as usual, reading the catalog and the
+ * AD where it needs to, but it does not execute any DDL, save any entity or take any lock. The plan holds the
+ * statements in execution order and the AD records that would be created or updated, so a design can be iterated
+ * on before the final apply.
+ * </p>
+ */
+public class DryRun {
+
+  public static final String PARAMETER = "DryRun";
+  public static final String ACTION_CREATE = "create";
+  public static final String ACTION_UPDATE = "update";
+
+  private final JSONArray ddl = new JSONArray();
+  private final JSONArray records = new JSONArray();
+
+  /**
+   * Tells whether a webhook must run in dry-run mode.
+   *
+   * @param parameter
+   *     the parameters of the webhook
+   * @return true if the {@value #PARAMETER} parameter is "true"
+   */
+  public static boolean isEnabled(Map<String, String> parameter) {
+    return StringUtils.equalsIgnoreCase(StringUtils.trim(parameter.get(PARAMETER)), "true");
+  }
+
+  /**
+   * Adds statements to the plan.
+   *
+   * @param statements
+   *     the statements, in execution order
+   * @return this plan
+   */
+  public DryRun addStatements(Collection<String> statements) {
+    statements.forEach(ddl::put);
+    return this;
+  }
+
+  /**
+   * Adds an AD record to the plan.
+   *
+   * @param entityName
+   *     the name of the entity of the record, such as {@code Table.ENTITY_NAME}
+   * @param action
+   *     {@value #ACTION_CREATE} or {@value #ACTION_UPDATE}
+   * @param values
+   *     the values of the record by property name. Entities are written as their ID, and an updated record
+   *     includes its ID and only the changed properties.
+   * @return this plan
+   * @throws JSONException
+   *     if a value cannot be written
+   */
+  public DryRun addRecord(String entityName, String action, Map<String, Object> values) throws JSONException {
+    JSONObject jsonValues = new JSONObject();
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      Object value = entry.getValue();
+      jsonValues.put(entry.getKey(), value instanceof BaseOBObject ? ((BaseOBObject) value).getId() : value);
+    }
+    JSONObject record = new JSONObject();
+    record.put("entity", entityName);
+    record.put("action", action);
+    record.put("values", jsonValues);
+    records.put(record);
+    return this;
+  }
+
+  /**
+   * Adds to the plan the update that would bring an existing record to the requested state, if any.
+   *
+   * @param entityName
+   *     the name of the entity of the record
+   * @param existing
+   *     the existing record
+   * @param values
+   *     the requested values by property name
+   * @return this plan
+   * @throws JSONException
+   *     if a value cannot be written
+   * @see RecordUpsert#changes(BaseOBObject, Map)
+   */
+  public DryRun addUpdate(String entityName, BaseOBObject existing, Map<String, Object> values)
+      throws JSONException {
+    Map<String, Object> changes = RecordUpsert.changes(existing, values);
+    if (!changes.isEmpty()) {
+      Map<String, Object> updated = values();
+      updated.put(BaseOBObject.ID, existing.getId());
+      updated.putAll(changes);
+      addRecord(entityName, ACTION_UPDATE, updated);
+    }
+    return this;
+  }
+
+  /**
+   * Starts the values of a record, keeping the order in which they are added.
+   *
+   * @return an empty, ordered map of values
+   */
+  public static Map<String, Object> values() {
+    return new LinkedHashMap<>();
+  }
+
+  /**
+   * @return the plan as {@code {"dryRun": true, "ddl": [...], "records": [...]}}
+   * @throws JSONException
+   *     if the plan cannot be written
+   */
+  public JSONObject toJSON() throws JSONException {
+    JSONObject plan = new JSONObject();
+    plan.put("dryRun", true);
+    plan.put("ddl", ddl);
+    plan.put("records", records);
+    return plan;
+  }
+}
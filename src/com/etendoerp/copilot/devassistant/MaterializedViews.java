@@ -0,0 +1,176 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Materialized views created by the assistant.
+ * <p>
+ * The rows of a view are stored in a materialized view named {@code <view>_mv}, with a unique index on the
+ * {@code <view>_id} column. The view registered in the AD keeps its {@code <view>_v} name and only selects from
+ * the materialized view, so the AD registration and the column synchronization work as for any other view,
+ * while grids read the stored rows instead of computing the query on every load.
+ * </p>
+ * <p>
+ * The materialized views are refreshed {@code CONCURRENTLY}, which does not block readers, by the
+ * {@code MaterializedViewRefreshProcess} background process. Each one is marked with a comment that holds its
+ * minimum refresh interval in minutes and, once refreshed, the time of its last refresh, so views with different
+ * freshness needs can share the same schedule. The comment is written in the transaction of the refresh, so the
+ * last refresh is shared by every node of a cluster and survives restarts.
+ * </p>
+ * <p>
+ * The database model exported by {@code export.database} holds the {@code <view>_v} view, as
+ * {@code SELECT * FROM <view>_mv}, but neither the materialized view nor its index and comment, which the model
+ * does not support. {@code update.database} on another instance therefore cannot create the view until the
+ * materialized view exists. A module meant to be installed elsewhere should create its views without
+ * materialization; on the instance that owns the module, calling {@code CreateView} again with the same query
+ * recreates the materialized view and the view over it.
+ * </p>
+ */
+public class MaterializedViews {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String MARK = "copdev:materialized:";
+  public static final String SUFFIX = "_mv";
+
+  private MaterializedViews() {
+  }
+
+  /**
+   * Returns the name of the materialized view that stores the rows of a view.
+   *
+   * @param viewDbName
+   *     the database name of the view, ending in {@code _v}
+   * @return the name of the materialized view
+   */
+  public static String getMaterializedName(String viewDbName) {
+    return SafeDDLExecutor.identifier(StringUtils.removeEndIgnoreCase(viewDbName, "_v"), SUFFIX);
+  }
+
+  /**
+   * Builds the statements that (re)create the materialized view, its unique index and the view over it.
+   *
+   * @param viewDbName
+   *     the database name of the view registered in the AD
+   * @param querySelect
+   *     the query of the view
+   * @param refreshMinutes
+   *     the minimum number of minutes between two refreshes, 0 to refresh on every run of the process
+   * @return the statements, to be executed in order in a single transaction
+   */
+  public static List<String> buildCreateStatements(String viewDbName, String querySelect, int refreshMinutes) {
+    String mvName = getMaterializedName(viewDbName);
+    String indexName = SafeDDLExecutor.identifier(mvName, "_" + SupportingIndexes.INDEX_SUFFIX);
+    String query = StringUtils.removeEnd(StringUtils.trim(querySelect), ";");
+    List<String> statements = new ArrayList<>();
+    statements.add(String.format("DROP VIEW IF EXISTS public.%s", viewDbName));
+    statements.add(String.format("DROP MATERIALIZED VIEW IF EXISTS public.%s", mvName));
+    statements.add(String.format("CREATE MATERIALIZED VIEW public.%s AS %s WITH DATA", mvName, query));
+    statements.add(String.format("CREATE UNIQUE INDEX %s ON public.%s (%s_id)", indexName, mvName, viewDbName));
+    statements.add(
+        String.format("COMMENT ON MATERIALIZED VIEW public.%s IS '%s%d'", mvName, MARK, Math.max(0, refreshMinutes)));
+    statements.add(String.format("CREATE VIEW public.%s AS SELECT * FROM public.%s", viewDbName, mvName));
+    return statements;
+  }
+
+  /**
+   * Refreshes concurrently every materialized view created by the assistant whose refresh interval has elapsed
+   * since its last refresh. A failing view is logged and does not prevent the refresh of the others.
+   *
+   * @return the number of views refreshed
+   */
+  public static int refreshDue() {
+    Instant now = Instant.now();
+    int refreshed = 0;
+    for (Map.Entry<String, String> view : getMaterializedViews().entrySet()) {
+      String mark = StringUtils.removeStart(view.getValue(), MARK);
+      int minutes = getRefreshMinutes(mark);
+      Instant last = getLastRefresh(mark);
+      if (last != null && Duration.between(last, now).toMinutes() < minutes) {
+        continue;
+      }
+      try {
+        Utils.executeBatch(buildRefreshStatements(view.getKey(), minutes, now));
+        refreshed++;
+      } catch (OBException e) {
+        LOG.error("Error refreshing materialized view {}: {}", view.getKey(), e.getMessage(), e);
+      }
+    }
+    return refreshed;
+  }
+
+  /**
+   * Builds the statements that refresh a materialized view and record the time of the refresh in its comment.
+   *
+   * @param mvName
+   *     the name of the materialized view
+   * @param refreshMinutes
+   *     the refresh interval of the view, kept in the comment
+   * @param refreshed
+   *     the time of the refresh
+   * @return the statements, to be executed in order in a single transaction
+   */
+  static List<String> buildRefreshStatements(String mvName, int refreshMinutes, Instant refreshed) {
+    return List.of(String.format("REFRESH MATERIALIZED VIEW CONCURRENTLY public.%s", mvName),
+        String.format("COMMENT ON MATERIALIZED VIEW public.%s IS '%s%d:%d'", mvName, MARK, refreshMinutes,
+            refreshed.toEpochMilli()));
+  }
+
+  /**
+   * @param mark
+   *     the comment of a materialized view, without {@value #MARK}
+   * @return the refresh interval in minutes, 0 if it is missing or invalid
+   */
+  static int getRefreshMinutes(String mark) {
+    String minutes = StringUtils.substringBefore(mark, ":");
+    return StringUtils.isNumeric(minutes) ? Integer.parseInt(minutes) : 0;
+  }
+
+  /**
+   * @param mark
+   *     the comment of a materialized view, without {@value #MARK}
+   * @return the time of the last refresh, or null if the view was not refreshed since it was created
+   */
+  static Instant getLastRefresh(String mark) {
+    String millis = StringUtils.substringAfter(mark, ":");
+    return StringUtils.isNumeric(millis) ? Instant.ofEpochMilli(Long.parseLong(millis)) : null;
+  }
+
+  /**
+   * @return the materialized views created by the assistant, with their comment
+   */
+  private static Map<String, String> getMaterializedViews() {
+    String query = "SELECT c.relname, d.description FROM pg_catalog.pg_class c "
+        + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+        + "JOIN pg_catalog.pg_description d ON d.objoid = c.oid AND d.objsubid = 0 "
+        + "WHERE c.relkind = 'm' AND n.nspname = 'public' AND d.description LIKE ?";
+    Map<String, String> views = new LinkedHashMap<>();
+    Connection conn = OBDal.getInstance().getConnection();
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, MARK + "%");
+      try (ResultSet rs = st.executeQuery()) {
+        while (rs.next()) {
+          views.put(rs.getString(1), rs.getString(2));
+        }
+      }
+    } catch (SQLException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    }
+    return views;
+  }
+}
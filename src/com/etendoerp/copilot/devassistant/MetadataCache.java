@@ -0,0 +1,158 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * In-memory cache of the AD metadata lookups repeated by the webhooks, such as the module of a DB prefix or the
+ * data package of a module.
+ * <p>
+ * Only identifiers and names are cached, never the entities themselves, which belong to the Hibernate session that
+ * loaded them. A cached identifier is resolved with {@link OBDal#get(Class, Object)}, that is, with a primary key
+ * lookup served from the current session when possible. A lookup without result is not cached.
+ * </p>
+ * <p>
+ * Each region is bounded to {@value #MAX_ENTRIES} entries and is emptied when it reaches the limit. When a module,
+ * DB prefix, data package or table is created, updated or deleted in this node, {@code MetadataCacheHandler} evicts
+ * only the keys it affects, see {@link #evict(Region, String)}. The keys are evicted when the write is flushed and
+ * again when its transaction ends, so a lookup that loaded the old value from another session before the commit,
+ * or a value written by a transaction that is rolled back, does not stay cached.
+ * </p>
+ */
+public class MetadataCache {
+
+  private static final Logger LOG = LogManager.getLogger();
+  static final int MAX_ENTRIES = 1000;
+
+  public static final Region MODULE_BY_PREFIX = new Region("moduleByPrefix");
+  public static final Region MODULE_BY_JAVA_PACKAGE = new Region("moduleByJavaPackage");
+  public static final Region PREFIX_BY_MODULE = new Region("prefixByModule");
+  public static final Region DATA_PACKAGE_BY_MODULE = new Region("dataPackageByModule");
+  public static final Region TABLE_BY_DB_NAME = new Region("tableByDBName");
+  private static final List<Region> REGIONS = List.of(MODULE_BY_PREFIX, MODULE_BY_JAVA_PACKAGE, PREFIX_BY_MODULE,
+      DATA_PACKAGE_BY_MODULE, TABLE_BY_DB_NAME);
+  private static final ThreadLocal<Map<Region, Set<String>>> PENDING = ThreadLocal.withInitial(HashMap::new);
+
+  private MetadataCache() {
+  }
+
+  /**
+   * Returns the entity cached under the given key, loading it and caching its identifier on a miss.
+   *
+   * @param region
+   *     the region of the lookup
+   * @param key
+   *     the key of the lookup
+   * @param type
+   *     the class of the entity
+   * @param loader
+   *     the uncached lookup, which may return null
+   * @return the entity, or null if the loader does not find it
+   */
+  public static <T extends BaseOBObject> T getEntity(Region region, String key, Class<T> type, Supplier<T> loader) {
+    String id = region.entries.get(key);
+    if (id != null) {
+      T cached = OBDal.getInstance().get(type, id);
+      if (cached != null) {
+        return cached;
+      }
+      region.entries.remove(key);
+    }
+    T loaded = loader.get();
+    if (loaded != null) {
+      region.put(key, (String) loaded.getId());
+    }
+    return loaded;
+  }
+
+  /**
+   * Returns the value cached under the given key, loading and caching it on a miss.
+   *
+   * @param region
+   *     the region of the lookup
+   * @param key
+   *     the key of the lookup
+   * @param loader
+   *     the uncached lookup, which may return null
+   * @return the value, or null if the loader does not find it
+   */
+  public static String getValue(Region region, String key, Supplier<String> loader) {
+    String value = region.entries.get(key);
+    if (value != null) {
+      return value;
+    }
+    value = loader.get();
+    if (value != null) {
+      region.put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Evicts a key now and again when the transaction of the current thread ends.
+   *
+   * @param region
+   *     the region of the key
+   * @param key
+   *     the key to evict, ignored if null
+   */
+  public static void evict(Region region, String key) {
+    if (key == null) {
+      return;
+    }
+    region.entries.remove(key);
+    PENDING.get().computeIfAbsent(region, r -> new HashSet<>()).add(key);
+  }
+
+  /**
+   * Evicts again the keys evicted during the transaction of the current thread. It is called when the transaction
+   * is committed or rolled back.
+   */
+  public static void transactionCompleted() {
+    Map<Region, Set<String>> pending = PENDING.get();
+    pending.forEach((region, keys) -> keys.forEach(region.entries::remove));
+    PENDING.remove();
+  }
+
+  /**
+   * Empties every region of the cache.
+   */
+  public static void invalidate() {
+    REGIONS.forEach(region -> region.entries.clear());
+    LOG.debug("AD metadata cache invalidated");
+  }
+
+  /**
+   * A bounded map of lookup keys to identifiers or names.
+   */
+  public static class Region {
+    private final String name;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    Region(String name) {
+      this.name = name;
+    }
+
+    private void put(String key, String value) {
+      if (entries.size() >= MAX_ENTRIES) {
+        LOG.debug("AD metadata cache region {} is full, emptying it", name);
+        entries.clear();
+      }
+      entries.put(key, value);
+    }
+
+    public int size() {
+      return entries.size();
+    }
+  }
+}
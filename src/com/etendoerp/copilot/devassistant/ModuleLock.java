@@ -0,0 +1,228 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.module.Module;
+
+/**
+ * Serializes the DDL and AD registration of a module across requests and cluster nodes.
+ * <p>
+ * The lock is a PostgreSQL transaction-level advisory lock keyed by the DB prefix of the module, taken on the
+ * connection of the DAL session. It is released when the DAL transaction of the request ends, so two requests on
+ * the same module run one after the other while requests on different modules run in parallel. The lock is polled
+ * with {@code pg_try_advisory_xact_lock} and an increasing pause until the timeout, after which the request fails
+ * instead of waiting indefinitely. The wait of every acquisition is added to the metrics returned by
+ * {@link #getMetrics()}, which operators read with the GetModuleLockMetrics webhook.
+ * </p>
+ * The timeout is read from Openbravo.properties:
+ * <ul>
+ *   <li>{@value #PROP_TIMEOUT}: maximum wait for the lock in milliseconds, 0 to try only once (default
+ *   {@value #DEFAULT_TIMEOUT_MILLIS})</li>
+ * </ul>
+ */
+public class ModuleLock {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String PROP_TIMEOUT = "copdev.moduleLock.timeoutMillis";
+  public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+  private static final long MIN_PAUSE_MILLIS = 20;
+  private static final long MAX_PAUSE_MILLIS = 500;
+  private static final String LOCK_QUERY = "SELECT pg_try_advisory_xact_lock(hashtext('copdev.module'), "
+      + "hashtext(lower(?)))";
+
+  private static final LongAdder ACQUIRED = new LongAdder();
+  private static final LongAdder CONTENDED = new LongAdder();
+  private static final LongAdder TIMED_OUT = new LongAdder();
+  private static final LongAdder TOTAL_WAIT_MILLIS = new LongAdder();
+  private static final AtomicLong MAX_WAIT_MILLIS = new AtomicLong();
+
+  private final long timeoutMillis;
+
+  /**
+   * Creates a lock with the given timeout.
+   *
+   * @param timeoutMillis
+   *     maximum wait for the lock in milliseconds, a value lower than or equal to 0 tries only once
+   */
+  public ModuleLock(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Creates a lock with the timeout configured in Openbravo.properties.
+   *
+   * @return the configured lock
+   */
+  public static ModuleLock fromProperties() {
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String value = props != null ? props.getProperty(PROP_TIMEOUT) : null;
+    long timeout = DEFAULT_TIMEOUT_MILLIS;
+    if (StringUtils.isNotBlank(value)) {
+      try {
+        timeout = Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        LOG.warn("Invalid value '{}' for property {}, using {}", value, PROP_TIMEOUT, DEFAULT_TIMEOUT_MILLIS);
+      }
+    }
+    return new ModuleLock(timeout);
+  }
+
+  /**
+   * Locks a module for the rest of the current DAL transaction, with the configured timeout.
+   *
+   * @param prefix
+   *     the DB prefix of the module
+   * @return the milliseconds waited for the lock
+   * @throws OBException
+   *     if the lock is not acquired before the timeout
+   */
+  public static long lock(String prefix) {
+    try {
+      return fromProperties().acquire(OBDal.getInstance().getConnection(), prefix);
+    } catch (SQLException e) {
+      throw new OBException(e);
+    }
+  }
+
+  /**
+   * Locks a module by its DB prefix for the rest of the current DAL transaction. A module without DB prefix owns no
+   * tables, so it is not locked.
+   *
+   * @param module
+   *     the module, or null to lock nothing
+   * @return the milliseconds waited for the lock
+   * @throws OBException
+   *     if the lock is not acquired before the timeout
+   */
+  public static long lock(Module module) {
+    if (module == null || module.getModuleDBPrefixList().isEmpty()) {
+      return 0;
+    }
+    return lock(module.getModuleDBPrefixList().get(0).getName());
+  }
+
+  /**
+   * Locks several modules for the rest of the current DAL transaction. The locks are taken in the order of the DB
+   * prefixes, so two requests that lock the same modules cannot wait for each other. Modules without DB prefix, and
+   * null modules, are not locked.
+   *
+   * @param modules
+   *     the modules, which may repeat
+   * @return the milliseconds waited for the locks
+   * @throws OBException
+   *     if a lock is not acquired before the timeout
+   */
+  public static long lockAll(Module... modules) {
+    Set<String> prefixes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    for (Module module : modules) {
+      if (module != null && !module.getModuleDBPrefixList().isEmpty()) {
+        prefixes.add(module.getModuleDBPrefixList().get(0).getName());
+      }
+    }
+    long waited = 0;
+    for (String prefix : prefixes) {
+      waited += lock(prefix);
+    }
+    return waited;
+  }
+
+  /**
+   * Locks a module for the rest of the transaction of the given connection.
+   *
+   * @param conn
+   *     a connection with autocommit disabled, whose transaction holds the lock
+   * @param prefix
+   *     the DB prefix of the module, compared case-insensitively
+   * @return the milliseconds waited for the lock
+   * @throws SQLException
+   *     if an error occurs while trying the lock
+   * @throws OBException
+   *     if the lock is not acquired before the timeout
+   */
+  public long acquire(Connection conn, String prefix) throws SQLException {
+    long start = System.currentTimeMillis();
+    long pause = MIN_PAUSE_MILLIS;
+    int attempts = 0;
+    try (PreparedStatement ps = conn.prepareStatement(LOCK_QUERY)) {
+      ps.setString(1, prefix);
+      while (true) {
+        attempts++;
+        if (tryLock(ps)) {
+          long waited = System.currentTimeMillis() - start;
+          record(waited, attempts > 1);
+          Utils.logIfDebug(LOG, String.format("Lock on module %s acquired after %s ms and %s attempts", prefix,
+              waited, attempts));
+          return waited;
+        }
+        long remaining = timeoutMillis - (System.currentTimeMillis() - start);
+        if (remaining <= 0) {
+          CONTENDED.increment();
+          TIMED_OUT.increment();
+          LOG.warn("Lock on module {} not acquired after {} ms and {} attempts", prefix, timeoutMillis, attempts);
+          throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModuleLockTimeout"), prefix,
+              timeoutMillis));
+        }
+        sleep(Math.min(pause, remaining));
+        pause = Math.min(MAX_PAUSE_MILLIS, pause * 2);
+      }
+    }
+  }
+
+  private static boolean tryLock(PreparedStatement ps) throws SQLException {
+    try (ResultSet rs = ps.executeQuery()) {
+      return rs.next() && rs.getBoolean(1);
+    }
+  }
+
+  private static void record(long waited, boolean contended) {
+    ACQUIRED.increment();
+    TOTAL_WAIT_MILLIS.add(waited);
+    MAX_WAIT_MILLIS.accumulateAndGet(waited, Math::max);
+    if (contended) {
+      CONTENDED.increment();
+      LOG.info("Module lock contended, waited {} ms", waited);
+    }
+  }
+
+  /**
+   * @return the lock metrics of this node since startup: locks acquired, acquisitions that had to wait,
+   *     acquisitions that timed out, and total and maximum wait in milliseconds
+   * @throws JSONException
+   *     if the metrics cannot be written
+   */
+  public static JSONObject getMetrics() throws JSONException {
+    JSONObject metrics = new JSONObject();
+    metrics.put("acquired", ACQUIRED.sum());
+    metrics.put("contended", CONTENDED.sum());
+    metrics.put("timedOut", TIMED_OUT.sum());
+    metrics.put("totalWaitMillis", TOTAL_WAIT_MILLIS.sum());
+    metrics.put("maxWaitMillis", MAX_WAIT_MILLIS.get());
+    return metrics;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OBException(e);
+    }
+  }
+}
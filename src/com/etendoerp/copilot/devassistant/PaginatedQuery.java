@@ -0,0 +1,304 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Executes a read-only SQL query one page at a time.
+ * <p>
+ * Pages are read by keyset: the rows are ordered by a key column chosen by the caller, which must be unique and
+ * not null, and each page starts at the key of the first row the previous page did not return. The order of the
+ * pages is therefore deterministic, and a deep page is found through the key instead of reading and discarding
+ * every row before it, so the database can use an index on the key. Any {@code ORDER BY} of the query itself is
+ * replaced by the order of the key.
+ * </p>
+ * <p>
+ * Each page is read through a server-side cursor: the statement runs on a dedicated connection with autocommit
+ * disabled and a fetch size equal to the page size, so the driver never buffers more rows than the page needs.
+ * The key of the next page is returned in an opaque continuation token bound to the query text and key column, so
+ * a token cannot be replayed against a different query. Cursors are not kept open between requests, which keeps
+ * connections from being pinned by agents that never ask for the next page.
+ * </p>
+ */
+public class PaginatedQuery {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  public static final int MAX_PAGE_SIZE = 500;
+  private static final String TOKEN_SEPARATOR = ":";
+  private static final Pattern KEY_COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private final String query;
+  private final String keyColumn;
+  private final int pageSize;
+  private final String startKey;
+  private final QueryGuard guard;
+
+  private PaginatedQuery(String query, String keyColumn, int pageSize, String startKey, QueryGuard guard) {
+    this.query = query;
+    this.keyColumn = keyColumn;
+    this.pageSize = pageSize;
+    this.startKey = startKey;
+    this.guard = guard;
+  }
+
+  /**
+   * Builds a paginated query from the raw webhook parameters.
+   *
+   * @param query
+   *     the SELECT query to paginate
+   * @param keyColumn
+   *     the unique, not null column of the query result that orders the pages
+   * @param pageSize
+   *     the requested page size, blank for the default one
+   * @param continuationToken
+   *     the token returned by the previous page, blank for the first page
+   * @return the paginated query
+   * @throws OBException
+   *     if the query is not a SELECT, the key column or page size are not valid, or the token does not belong to
+   *     the query
+   */
+  public static PaginatedQuery of(String query, String keyColumn, String pageSize, String continuationToken) {
+    String cleanQuery = StringUtils.removeEnd(StringUtils.trimToEmpty(query), ";");
+    if (!QueryGuard.isSelect(cleanQuery)) {
+      throw new OBException(OBMessageUtils.messageBD("COPDEV_OnlySelectQueries"));
+    }
+    String key = StringUtils.trimToEmpty(keyColumn);
+    if (!KEY_COLUMN.matcher(key).matches()) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidKeyColumn"), keyColumn));
+    }
+    int size = DEFAULT_PAGE_SIZE;
+    if (StringUtils.isNotBlank(pageSize)) {
+      try {
+        size = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(pageSize.trim())));
+      } catch (NumberFormatException e) {
+        throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidPageSize"), pageSize));
+      }
+    }
+    String startKey = StringUtils.isBlank(continuationToken) ? null
+        : decodeToken(cleanQuery, key, continuationToken);
+    return new PaginatedQuery(cleanQuery, key, size, startKey, QueryGuard.fromProperties());
+  }
+
+  /**
+   * Reads the current page.
+   * <p>
+   * The page query is checked by the {@link QueryGuard} before it runs, with the start key bound, so the estimate
+   * covers the rows of the page instead of the whole result of the query. Pages whose plan is too expensive are
+   * rejected and the execution is bounded by the configured statement timeout.
+   * </p>
+   *
+   * @param connProv
+   *     the connection provider used to obtain a transaction connection
+   * @return the page with its rows and the token of the next page, if any
+   * @throws OBException
+   *     if an error occurs while executing the query
+   */
+  public Page fetch(ConnectionProvider connProv) {
+    return fetch(connProv, ResultFormat.ROWS);
+  }
+
+  /**
+   * Reads the current page and encodes its rows in the given format.
+   *
+   * @param connProv
+   *     the connection provider used to obtain a transaction connection
+   * @param format
+   *     the format of the returned rows
+   * @return the page with its rows and the token of the next page, if any
+   * @throws OBException
+   *     if an error occurs while executing the query
+   */
+  public Page fetch(ConnectionProvider connProv, ResultFormat format) {
+    Connection conn = null;
+    try {
+      conn = connProv.getTransactionConnection();
+      conn.setReadOnly(true);
+      String pageQuery = buildPageQuery();
+      Utils.logIfDebug(LOG, "Executing page query: " + pageQuery);
+      guard.check(conn, pageQuery, startKey != null ? new Object[] { startKey } : new Object[0]);
+      PreparedStatement st = guard.prepare(conn, pageQuery);
+      try {
+        st.setFetchSize(pageSize);
+        if (startKey != null) {
+          // Untyped, so Postgres reads the key with the type of the key column
+          st.setObject(1, startKey, Types.OTHER);
+        }
+        StringWriter writer = new StringWriter();
+        String nextToken = null;
+        QueryResultStreamer.StreamSummary summary;
+        try (ResultSet rs = st.executeQuery()) {
+          summary = format.encoder(pageSize, QueryResultStreamer.DEFAULT_MAX_BYTES).stream(rs, writer);
+          if (summary.isTruncated()) {
+            // A truncated encoder leaves the result set on the first row it did not write
+            nextToken = encodeToken(query, keyColumn, getNextKey(rs));
+          }
+        }
+        return new Page(writer.toString(), summary.getRowCount(), nextToken);
+      } finally {
+        guard.release(st);
+        st.close();
+      }
+    } catch (OBException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    } finally {
+      releaseConnection(connProv, conn);
+    }
+  }
+
+  /**
+   * Builds the query of the current page: the rows of the query from the start key on, ordered by the key column,
+   * plus one row to know whether there is a next page.
+   */
+  String buildPageQuery() {
+    String key = "copdev_page." + keyColumn;
+    return String.format("SELECT * FROM (%s) AS copdev_page%s ORDER BY %s LIMIT %d", query,
+        startKey != null ? " WHERE " + key + " >= ?" : "", key, pageSize + 1);
+  }
+
+  private String getNextKey(ResultSet rs) throws SQLException {
+    String nextKey = rs.getString(rs.findColumn(keyColumn));
+    if (nextKey == null) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NullKeyColumn"), keyColumn));
+    }
+    return nextKey;
+  }
+
+  private static void releaseConnection(ConnectionProvider connProv, Connection conn) {
+    if (conn == null) {
+      return;
+    }
+    try {
+      conn.setReadOnly(false);
+      connProv.releaseRollbackConnection(conn);
+    } catch (SQLException e) {
+      LOG.error("Error releasing connection: {}", e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Encodes the key of the next page together with a fingerprint of the query and key column.
+   *
+   * @param query
+   *     the paginated query
+   * @param keyColumn
+   *     the key column of the pages
+   * @param nextKey
+   *     the key of the first row of the next page
+   * @return the opaque continuation token
+   */
+  static String encodeToken(String query, String keyColumn, String nextKey) {
+    String raw = nextKey + TOKEN_SEPARATOR + fingerprint(keyColumn + TOKEN_SEPARATOR + query);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a continuation token and checks that it was issued for the given query and key column.
+   *
+   * @param query
+   *     the paginated query
+   * @param keyColumn
+   *     the key column of the pages
+   * @param token
+   *     the continuation token
+   * @return the key of the first row of the page
+   * @throws OBException
+   *     if the token is malformed or belongs to another query
+   */
+  static String decodeToken(String query, String keyColumn, String token) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+      // The key may contain the separator, the fingerprint never does
+      int separator = raw.lastIndexOf(TOKEN_SEPARATOR);
+      if (separator >= 0 && StringUtils.equals(raw.substring(separator + 1),
+          fingerprint(keyColumn + TOKEN_SEPARATOR + query))) {
+        return raw.substring(0, separator);
+      }
+    } catch (IllegalArgumentException e) {
+      Utils.logIfDebug(LOG, "Malformed continuation token: " + e.getMessage());
+    }
+    throw new OBException(OBMessageUtils.messageBD("COPDEV_InvalidContinuationToken"));
+  }
+
+  private static String fingerprint(String query) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new OBException(e);
+    }
+  }
+
+  /**
+   * @return the guard of this query, which can be tracked to cancel the page being read from another request
+   */
+  public QueryGuard getGuard() {
+    return guard;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public String getKeyColumn() {
+    return keyColumn;
+  }
+
+  /**
+   * @return the key of the first row of the page, or null for the first page
+   */
+  public String getStartKey() {
+    return startKey;
+  }
+
+  /**
+   * A single page of a paginated query.
+   */
+  public static class Page {
+    private final String json;
+    private final int rowCount;
+    private final String nextToken;
+
+    public Page(String json, int rowCount, String nextToken) {
+      this.json = json;
+      this.rowCount = rowCount;
+      this.nextToken = nextToken;
+    }
+
+    /**
+     * @return the rows of the page, serialized in the requested {@link ResultFormat}
+     */
+    public String getJson() {
+      return json;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    /**
+     * @return the token of the next page, or null when this is the last page
+     */
+    public String getNextToken() {
+      return nextToken;
+    }
+  }
+}
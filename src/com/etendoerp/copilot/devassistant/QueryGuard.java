@@ -0,0 +1,331 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Guards the execution of agent-issued SQL.
+ * <p>
+ * Before a query runs, its plan is estimated with {@code EXPLAIN} and the query is rejected when the estimated
+ * total cost or number of rows is above the configured limits. Once the plan is accepted, the query runs with a
+ * {@code SET LOCAL statement_timeout}, so the guard must be applied on a connection with autocommit disabled.
+ * A rejected query leaves the timeout of the transaction untouched.
+ * The statement being executed can be cancelled from another thread with {@link #cancel()}, or with
+ * {@link #cancel(String, String)} when the guard is tracked under an ID chosen by the caller, so a caller that
+ * goes away can stop its query from another request instead of waiting for the timeout.
+ * </p>
+ * The limits are read from Openbravo.properties:
+ * <ul>
+ *   <li>{@value #PROP_MAX_COST}: maximum estimated plan cost (default {@value #DEFAULT_MAX_COST})</li>
+ *   <li>{@value #PROP_MAX_ROWS}: maximum estimated plan rows (default {@value #DEFAULT_MAX_ROWS})</li>
+ *   <li>{@value #PROP_TIMEOUT}: statement timeout in milliseconds (default {@value #DEFAULT_TIMEOUT_MILLIS})</li>
+ * </ul>
+ */
+public class QueryGuard {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String PROP_MAX_COST = "copdev.query.maxPlanCost";
+  public static final String PROP_MAX_ROWS = "copdev.query.maxPlanRows";
+  public static final String PROP_TIMEOUT = "copdev.query.statementTimeout";
+  public static final double DEFAULT_MAX_COST = 1000000;
+  public static final double DEFAULT_MAX_ROWS = 1000000;
+  public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+  private final double maxCost;
+  private final double maxRows;
+  private final long timeoutMillis;
+  private static final Map<String, QueryGuard> TRACKED = new ConcurrentHashMap<>();
+
+  private final AtomicReference<Statement> running = new AtomicReference<>();
+
+  /**
+   * Creates a guard with the given limits.
+   *
+   * @param maxCost
+   *     maximum estimated plan cost, a value lower than or equal to 0 disables the check
+   * @param maxRows
+   *     maximum estimated plan rows, a value lower than or equal to 0 disables the check
+   * @param timeoutMillis
+   *     statement timeout in milliseconds, a value lower than or equal to 0 disables it
+   */
+  public QueryGuard(double maxCost, double maxRows, long timeoutMillis) {
+    this.maxCost = maxCost;
+    this.maxRows = maxRows;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Creates a guard with the limits configured in Openbravo.properties.
+   *
+   * @return the configured guard
+   */
+  public static QueryGuard fromProperties() {
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new QueryGuard(readNumber(props, PROP_MAX_COST, DEFAULT_MAX_COST),
+        readNumber(props, PROP_MAX_ROWS, DEFAULT_MAX_ROWS),
+        (long) readNumber(props, PROP_TIMEOUT, DEFAULT_TIMEOUT_MILLIS));
+  }
+
+  private static double readNumber(Properties props, String key, double defaultValue) {
+    String value = props != null ? props.getProperty(key) : null;
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value '{}' for property {}, using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Checks the plan of the query and, if it is accepted, sets the statement timeout for the current transaction.
+   *
+   * @param conn
+   *     a connection with autocommit disabled, on which the query will be executed
+   * @param query
+   *     the query to check
+   * @param parameters
+   *     the values of the {@code ?} placeholders of the query, bound untyped as in the query itself; the plan is
+   *     estimated for these values, so the bounds and the LIMIT of the query count in the estimate
+   * @return the plan estimate of the query
+   * @throws SQLException
+   *     if an error occurs while explaining the query
+   * @throws OBException
+   *     if the estimated cost or rows are above the limits
+   */
+  public PlanEstimate check(Connection conn, String query, Object... parameters) throws SQLException {
+    if (conn.getAutoCommit()) {
+      throw new OBException("Guarded queries must run on a connection with autocommit disabled");
+    }
+    PlanEstimate estimate = explain(conn, query, parameters);
+    Utils.logIfDebug(LOG, String.format("Plan estimate for query: cost %s, rows %s", estimate.getTotalCost(),
+        estimate.getPlanRows()));
+    if ((maxCost > 0 && estimate.getTotalCost() > maxCost) || (maxRows > 0 && estimate.getPlanRows() > maxRows)) {
+      throw new OBException(
+          String.format(OBMessageUtils.messageBD("COPDEV_QueryPlanTooExpensive"), estimate.getTotalCost(), maxCost,
+              estimate.getPlanRows(), maxRows));
+    }
+    if (timeoutMillis > 0) {
+      try (Statement st = conn.createStatement()) {
+        st.execute("SET LOCAL statement_timeout = " + timeoutMillis);
+      }
+    }
+    return estimate;
+  }
+
+  /**
+   * Restores the default statement timeout for the rest of the transaction, once the guarded query has run on a
+   * connection that is used for other statements afterwards.
+   *
+   * @param conn
+   *     the connection previously checked with {@link #check(Connection, String)}
+   * @throws SQLException
+   *     if the timeout cannot be restored
+   */
+  public void restore(Connection conn) throws SQLException {
+    if (timeoutMillis > 0) {
+      try (Statement st = conn.createStatement()) {
+        st.execute("SET LOCAL statement_timeout TO DEFAULT");
+      }
+    }
+  }
+
+  /**
+   * Prepares a statement for the guarded query and registers it so that it can be cancelled.
+   * <p>
+   * The statement also gets a client-side query timeout slightly above the server one, so the driver cancels it
+   * if the server does not answer in time.
+   * </p>
+   *
+   * @param conn
+   *     the connection previously checked with {@link #check(Connection, String)}
+   * @param query
+   *     the query to prepare
+   * @return the prepared statement, which must be released with {@link #release(Statement)}
+   * @throws SQLException
+   *     if the statement cannot be prepared
+   */
+  public PreparedStatement prepare(Connection conn, String query) throws SQLException {
+    PreparedStatement st = conn.prepareStatement(query);
+    if (timeoutMillis > 0) {
+      st.setQueryTimeout((int) Math.max(1, timeoutMillis / 1000 + 1));
+    }
+    running.set(st);
+    return st;
+  }
+
+  /**
+   * Unregisters a statement returned by {@link #prepare(Connection, String)}.
+   *
+   * @param st
+   *     the statement to release
+   */
+  public void release(Statement st) {
+    running.compareAndSet(st, null);
+  }
+
+  /**
+   * Cancels the statement currently running under this guard, if any. Intended to be called from another thread,
+   * for example when the caller that requested the query goes away.
+   *
+   * @return true if a running statement was cancelled
+   */
+  public boolean cancel() {
+    Statement st = running.getAndSet(null);
+    if (st == null) {
+      return false;
+    }
+    try {
+      st.cancel();
+      LOG.info("Guarded query cancelled");
+      return true;
+    } catch (SQLException e) {
+      LOG.error("Error cancelling guarded query: {}", e.getMessage(), e);
+      return false;
+    }
+  }
+
+  /**
+   * Tracks this guard under an ID, so its running statement can be cancelled with {@link #cancel(String, String)}.
+   * A blank ID tracks nothing.
+   *
+   * @param userId
+   *     the user that runs the query, the only one allowed to cancel it
+   * @param queryId
+   *     the ID chosen by the caller
+   */
+  public void track(String userId, String queryId) {
+    if (StringUtils.isNotBlank(queryId)) {
+      TRACKED.put(trackingKey(userId, queryId), this);
+    }
+  }
+
+  /**
+   * Stops tracking this guard, once its query has finished.
+   *
+   * @param userId
+   *     the user that runs the query
+   * @param queryId
+   *     the ID the guard was tracked under
+   */
+  public void untrack(String userId, String queryId) {
+    if (StringUtils.isNotBlank(queryId)) {
+      TRACKED.remove(trackingKey(userId, queryId), this);
+    }
+  }
+
+  /**
+   * Cancels the statement running under the guard tracked with the given ID.
+   *
+   * @param userId
+   *     the user that runs the query
+   * @param queryId
+   *     the ID the guard was tracked under
+   * @return true if a running statement was cancelled
+   */
+  public static boolean cancel(String userId, String queryId) {
+    QueryGuard guard = StringUtils.isBlank(queryId) ? null : TRACKED.get(trackingKey(userId, queryId));
+    return guard != null && guard.cancel();
+  }
+
+  private static String trackingKey(String userId, String queryId) {
+    return userId + ":" + queryId.trim();
+  }
+
+  /**
+   * Tells whether a statement is a query, that is, a statement the guard can explain.
+   *
+   * @param query
+   *     the statement, without leading blanks
+   * @return true for SELECT and WITH statements
+   */
+  public static boolean isSelect(String query) {
+    return StringUtils.startsWithIgnoreCase(query, "select") || StringUtils.startsWithIgnoreCase(query, "with");
+  }
+
+  /**
+   * Runs {@code EXPLAIN (FORMAT JSON)} on the query and extracts the root plan estimates.
+   *
+   * @param conn
+   *     the connection to use
+   * @param query
+   *     the query to explain
+   * @param parameters
+   *     the values of the {@code ?} placeholders of the query, bound untyped
+   * @return the estimated total cost and rows of the root plan node
+   * @throws SQLException
+   *     if the query cannot be explained
+   */
+  static PlanEstimate explain(Connection conn, String query, Object... parameters) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement("EXPLAIN (FORMAT JSON) " + query)) {
+      for (int i = 0; i < parameters.length; i++) {
+        st.setObject(i + 1, parameters[i], Types.OTHER);
+      }
+      try (ResultSet rs = st.executeQuery()) {
+        if (!rs.next()) {
+          throw new SQLException("EXPLAIN returned no plan");
+        }
+        return PlanEstimate.parse(rs.getString(1));
+      }
+    }
+  }
+
+  /**
+   * Estimated cost and rows of the root node of a query plan.
+   */
+  public static class PlanEstimate {
+    private final double totalCost;
+    private final double planRows;
+
+    public PlanEstimate(double totalCost, double planRows) {
+      this.totalCost = totalCost;
+      this.planRows = planRows;
+    }
+
+    /**
+     * Parses the output of {@code EXPLAIN (FORMAT JSON)}.
+     *
+     * @param explainJson
+     *     the JSON plan returned by Postgres
+     * @return the estimate of the root plan node
+     * @throws SQLException
+     *     if the plan cannot be parsed
+     */
+    static PlanEstimate parse(String explainJson) throws SQLException {
+      try {
+        JSONObject plan = new JSONArray(explainJson).getJSONObject(0).getJSONObject("Plan");
+        return new PlanEstimate(plan.getDouble("Total Cost"), plan.getDouble("Plan Rows"));
+      } catch (JSONException e) {
+        throw new SQLException("Unable to parse query plan: " + e.getMessage(), e);
+      }
+    }
+
+    public double getTotalCost() {
+      return totalCost;
+    }
+
+    public double getPlanRows() {
+      return planRows;
+    }
+  }
+}
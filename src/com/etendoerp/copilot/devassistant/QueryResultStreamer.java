@@ -0,0 +1,253 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Serializes a {@link ResultSet} as JSON directly into a {@link Writer}, row by row.
+ * <p>
+ * Unlike building a {@code JSONArray} of {@code JSONObject} rows, no intermediate object graph is kept in memory:
+ * column names and types are resolved once per result set, and every row is written as soon as it is read.
+ * The output is capped by a maximum number of rows and a maximum number of UTF-8 bytes. When one of the caps is
+ * reached the remaining rows are skipped and the output is flagged with a truncation marker. The first row is always
+ * written, even when it alone exceeds the byte cap, so a truncated output never comes without rows and a paginated
+ * query always moves past the row it starts at.
+ * </p>
+ * The generated document has the following shape:
+ * <pre>
+ * {"result":[{"col":value,...},...],"rowCount":N,"truncated":false}
+ * </pre>
+ */
+public class QueryResultStreamer implements ResultEncoder {
+
+  public static final String RESULT = "result";
+  public static final String ROW_COUNT = "rowCount";
+  public static final String TRUNCATED = "truncated";
+  public static final int DEFAULT_MAX_ROWS = 1000;
+  public static final long DEFAULT_MAX_BYTES = 1024L * 1024L;
+
+  private final int maxRows;
+  private final long maxBytes;
+
+  /**
+   * Creates a streamer with the default row and byte caps.
+   */
+  public QueryResultStreamer() {
+    this(DEFAULT_MAX_ROWS, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Creates a streamer with the given caps.
+   *
+   * @param maxRows
+   *     maximum number of rows to write, a value lower than 1 disables the cap
+   * @param maxBytes
+   *     maximum number of UTF-8 bytes of row data to write, a value lower than 1 disables the cap; the first row is
+   *     written even if it exceeds it
+   */
+  public QueryResultStreamer(int maxRows, long maxBytes) {
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Writes the whole result set into the given writer.
+   *
+   * @param rs
+   *     the result set to serialize, positioned before the first row
+   * @param out
+   *     the writer that receives the JSON document
+   * @return a summary with the number of rows written and whether the output was truncated
+   * @throws SQLException
+   *     if an error occurs while reading the result set
+   * @throws IOException
+   *     if an error occurs while writing
+   */
+  @Override
+  public StreamSummary stream(ResultSet rs, Writer out) throws SQLException, IOException {
+    ColumnInfo columns = ColumnInfo.of(rs.getMetaData());
+    out.write("{\"" + RESULT + "\":[");
+    int rowCount = 0;
+    long bytes = 0;
+    boolean truncated = false;
+    StringBuilder row = new StringBuilder();
+    while (rs.next()) {
+      if (maxRows > 0 && rowCount >= maxRows) {
+        truncated = true;
+        break;
+      }
+      row.setLength(0);
+      if (rowCount > 0) {
+        row.append(',');
+      }
+      appendRow(rs, columns, row);
+      long rowBytes = row.toString().getBytes(StandardCharsets.UTF_8).length;
+      if (maxBytes > 0 && rowCount > 0 && bytes + rowBytes > maxBytes) {
+        truncated = true;
+        break;
+      }
+      out.write(row.toString());
+      bytes += rowBytes;
+      rowCount++;
+    }
+    out.write("],\"" + ROW_COUNT + "\":" + rowCount + ",\"" + TRUNCATED + "\":" + truncated + "}");
+    out.flush();
+    return new StreamSummary(rowCount, bytes, truncated);
+  }
+
+  /**
+   * Appends a single row as a JSON object to the given builder.
+   *
+   * @param rs
+   *     the result set positioned on the row to write
+   * @param columns
+   *     the resolved column names and types
+   * @param row
+   *     the builder that receives the JSON object
+   * @throws SQLException
+   *     if an error occurs while reading a value
+   */
+  static void appendRow(ResultSet rs, ColumnInfo columns, StringBuilder row) throws SQLException {
+    row.append('{');
+    for (int i = 0; i < columns.count(); i++) {
+      if (i > 0) {
+        row.append(',');
+      }
+      row.append(columns.quotedNames[i]).append(':');
+      appendValue(rs, i + 1, columns.types[i], row);
+    }
+    row.append('}');
+  }
+
+  /**
+   * Appends a single value, written raw for numbers and booleans and quoted otherwise.
+   */
+  static void appendValue(ResultSet rs, int index, int sqlType, StringBuilder row) throws SQLException {
+    row.append(jsonValue(rs, index, sqlType));
+  }
+
+  /**
+   * Returns the JSON representation of a value: raw for numbers and booleans, quoted otherwise. NaN and infinite
+   * numbers have no JSON literal, so they are quoted as well.
+   */
+  static String jsonValue(ResultSet rs, int index, int sqlType) throws SQLException {
+    String value = rs.getString(index);
+    if (value == null) {
+      return "null";
+    } else if (isRawType(sqlType) && isFinite(value)) {
+      return value;
+    } else if (isBooleanType(sqlType)) {
+      return String.valueOf(rs.getBoolean(index));
+    }
+    return JSONObject.quote(value);
+  }
+
+  /**
+   * Tells whether a numeric value read as text can be written as a JSON number, that is, it is not one of the
+   * {@code NaN}, {@code Infinity} or {@code -Infinity} values of Postgres floating point and numeric types.
+   */
+  static boolean isFinite(String value) {
+    return !StringUtils.equalsIgnoreCase(value, "NaN") && !StringUtils.endsWithIgnoreCase(value, "Infinity");
+  }
+
+  static boolean isBooleanType(int sqlType) {
+    return sqlType == Types.BOOLEAN || sqlType == Types.BIT;
+  }
+
+  static boolean isRawType(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Column names (already JSON-quoted) and SQL types of a result set, resolved once.
+   */
+  static final class ColumnInfo {
+    private final String[] names;
+    private final String[] quotedNames;
+    private final int[] types;
+
+    private ColumnInfo(String[] names, int[] types) {
+      this.names = names;
+      this.types = types;
+      this.quotedNames = new String[names.length];
+      for (int i = 0; i < names.length; i++) {
+        quotedNames[i] = JSONObject.quote(names[i]);
+      }
+    }
+
+    static ColumnInfo of(ResultSetMetaData metaData) throws SQLException {
+      int count = metaData.getColumnCount();
+      String[] names = new String[count];
+      int[] types = new int[count];
+      for (int i = 1; i <= count; i++) {
+        names[i - 1] = metaData.getColumnName(i);
+        types[i - 1] = metaData.getColumnType(i);
+      }
+      return new ColumnInfo(names, types);
+    }
+
+    int count() {
+      return names.length;
+    }
+
+    String name(int index) {
+      return names[index];
+    }
+
+    String quotedName(int index) {
+      return quotedNames[index];
+    }
+
+    int type(int index) {
+      return types[index];
+    }
+  }
+
+  /**
+   * Summary of a streamed result set.
+   */
+  public static class StreamSummary {
+    private final int rowCount;
+    private final long bytes;
+    private final boolean truncated;
+
+    public StreamSummary(int rowCount, long bytes, boolean truncated) {
+      this.rowCount = rowCount;
+      this.bytes = bytes;
+      this.truncated = truncated;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public boolean isTruncated() {
+      return truncated;
+    }
+  }
+}
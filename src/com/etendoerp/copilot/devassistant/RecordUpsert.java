@@ -0,0 +1,65 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * Convergent writes of the AD records registered by the webhooks.
+ * <p>
+ * A webhook that finds its record by natural key, such as a window by name and module, describes the state it wants
+ * as property values. Each value is compared with the same property of the existing record, entities by their ID:
+ * when none differs the record is left untouched, so a retried call does not write or flush anything; otherwise
+ * only the properties that differ are set.
+ * </p>
+ */
+public class RecordUpsert {
+
+  private RecordUpsert() {
+  }
+
+  /**
+   * Returns the requested values that differ from the current values of a record.
+   *
+   * @param record
+   *     the record
+   * @param values
+   *     the requested values by property name
+   * @return the differing values, empty when the record is already in the requested state
+   */
+  public static Map<String, Object> changes(BaseOBObject record, Map<String, Object> values) {
+    Map<String, Object> changes = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      if (!Objects.equals(normalize(record.get(entry.getKey())), normalize(entry.getValue()))) {
+        changes.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Brings a record to the requested state, saving it only if some value differs.
+   *
+   * @param record
+   *     the record
+   * @param values
+   *     the requested values by property name
+   * @return true if the record was changed and saved, false if it was already in the requested state
+   */
+  public static boolean converge(BaseOBObject record, Map<String, Object> values) {
+    Map<String, Object> changes = changes(record, values);
+    if (changes.isEmpty()) {
+      return false;
+    }
+    changes.forEach(record::set);
+    OBDal.getInstance().save(record);
+    return true;
+  }
+
+  private static Object normalize(Object value) {
+    return value instanceof BaseOBObject ? ((BaseOBObject) value).getId() : value;
+  }
+}
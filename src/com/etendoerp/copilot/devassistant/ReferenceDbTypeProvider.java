@@ -0,0 +1,20 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Extension point of the {@link ReferenceTypeRegistry}.
+ * <p>
+ * Modules that define their own base references implement this interface as a CDI bean to declare the database
+ * type of the columns of those references. The types declared by a provider take precedence over the built-in ones.
+ * </p>
+ */
+public interface ReferenceDbTypeProvider {
+
+  /**
+   * @return the database type and length, or a null length for types without one, keyed by reference ID
+   */
+  Map<String, Pair<String, Integer>> getDbTypes();
+}
@@ -0,0 +1,193 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.weld.WeldUtils;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.domain.Reference;
+
+/**
+ * Immutable registry of the database type of the columns of each reference.
+ * <p>
+ * The built-in types are declared by reference name, which is stable across installations, and are resolved to
+ * reference IDs with a single query the first time the registry is used. The types declared by the
+ * {@link ReferenceDbTypeProvider} CDI beans of other modules are added on top. From then on, a type is found by
+ * the ID of the reference of the column, or by the ID of its parent for references that are not base references,
+ * and the references of a database type are found by the type.
+ * </p>
+ */
+public class ReferenceTypeRegistry {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String CHARACTER_VARYING = "varchar";
+  public static final String NUMERIC = "numeric";
+  public static final String TIMESTAMP_WITHOUT_TIME_ZONE = "timestamp without time zone";
+  public static final String CHARACTER = "character";
+  private static final Map<String, Pair<String, Integer>> TYPES_BY_NAME = buildTypesByName();
+  private static volatile ReferenceTypeRegistry instance;
+
+  private final Map<String, Pair<String, Integer>> typesById;
+  private final Map<String, List<String>> referencesByType;
+
+  /**
+   * Builds a registry.
+   *
+   * @param idsByName
+   *     the IDs of the references with a built-in type, keyed by reference name
+   * @param providers
+   *     the providers of additional types
+   */
+  ReferenceTypeRegistry(Map<String, Collection<String>> idsByName, Collection<ReferenceDbTypeProvider> providers) {
+    Map<String, Pair<String, Integer>> byId = new HashMap<>();
+    idsByName.forEach((name, ids) -> {
+      Pair<String, Integer> type = TYPES_BY_NAME.get(name);
+      if (type != null) {
+        ids.forEach(id -> byId.put(id, type));
+      }
+    });
+    for (ReferenceDbTypeProvider provider : providers) {
+      byId.putAll(provider.getDbTypes());
+    }
+    Map<String, List<String>> byType = new HashMap<>();
+    byId.forEach((id, type) -> byType.computeIfAbsent(StringUtils.lowerCase(type.getLeft()), k -> new ArrayList<>())
+        .add(id));
+    byType.replaceAll((type, ids) -> List.copyOf(ids));
+    this.typesById = Map.copyOf(byId);
+    this.referencesByType = Map.copyOf(byType);
+  }
+
+  /**
+   * @return the registry, built on the first call
+   */
+  public static ReferenceTypeRegistry getInstance() {
+    ReferenceTypeRegistry registry = instance;
+    if (registry == null) {
+      synchronized (ReferenceTypeRegistry.class) {
+        registry = instance;
+        if (registry == null) {
+          registry = new ReferenceTypeRegistry(loadReferenceIds(), WeldUtils.getInstances(
+              ReferenceDbTypeProvider.class));
+          LOG.debug("Reference type registry built with {} references", registry.typesById.size());
+          instance = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Resolves the names of the references with a built-in type to their IDs.
+   */
+  private static Map<String, Collection<String>> loadReferenceIds() {
+    OBContext.setAdminMode(true);
+    try {
+      OBQuery<Reference> query = OBDal.getInstance()
+          .createQuery(Reference.class, "as r where r.name in (:names)")
+          .setNamedParameter("names", TYPES_BY_NAME.keySet());
+      query.setFilterOnReadableClients(false);
+      query.setFilterOnReadableOrganization(false);
+      Map<String, Collection<String>> idsByName = new HashMap<>();
+      for (Reference reference : query.list()) {
+        idsByName.computeIfAbsent(reference.getName(), k -> new ArrayList<>()).add(reference.getId());
+      }
+      return idsByName;
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
+  /**
+   * Returns the database type of the columns of a reference.
+   *
+   * @param reference
+   *     the reference of the column
+   * @return the database type and its length, or a null length for types without one
+   * @throws OBException
+   *     if neither the reference nor its parent reference have a type
+   */
+  public Pair<String, Integer> getDbType(Reference reference) {
+    Pair<String, Integer> type = typesById.get(reference.getId());
+    if (type == null && Boolean.FALSE.equals(reference.isBaseReference()) && reference.getParentReference() != null) {
+      type = typesById.get(reference.getParentReference().getId());
+    }
+    if (type == null) {
+      throw new OBException(OBMessageUtils.messageBD("COPDEV_ColumnTypeNotFound") + reference.getName());
+    }
+    return type;
+  }
+
+  /**
+   * Returns the references whose columns have a database type.
+   *
+   * @param dbType
+   *     the database type, without length, as in {@code pg_catalog.format_type}
+   * @return the IDs of the references, empty if none
+   */
+  public List<String> getReferences(String dbType) {
+    return referencesByType.getOrDefault(StringUtils.lowerCase(dbType), Collections.emptyList());
+  }
+
+  private static Map<String, Pair<String, Integer>> buildTypesByName() {
+    Map<String, Pair<String, Integer>> mapping = new HashMap<>();
+    mapping.put("Absolute DateTime", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("Absolute Time", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("Amount", Pair.of(NUMERIC, null));
+    mapping.put("Assignment", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Binary", Pair.of("bytea", null));
+    mapping.put("Button", Pair.of(CHARACTER, 1));
+    mapping.put("Button List", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Color", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Date", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("DateTime", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("DateTime_From (Date)", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("DateTime_To (Date)", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("General Quantity", Pair.of(NUMERIC, null));
+    mapping.put("ID", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Image", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Image BLOB", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Integer", Pair.of(NUMERIC, null));
+    mapping.put("Link", Pair.of(CHARACTER_VARYING, 200));
+    mapping.put("List", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Masked String", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Memo", Pair.of(CHARACTER_VARYING, 4000));
+    mapping.put("Non Transactional Sequence", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Number", Pair.of(NUMERIC, null));
+    mapping.put("OBKMO_Widget in Form Reference", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("OBUISEL_Multi Selector Reference", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("OBUISEL_SelectorAsLink Reference", Pair.of(NUMERIC, null));
+    mapping.put("OBUISEL_Selector Reference", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Password (decryptable)", Pair.of(CHARACTER_VARYING, 255));
+    mapping.put("Password (not decryptable)", Pair.of(CHARACTER_VARYING, 255));
+    mapping.put("PAttribute", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Price", Pair.of(NUMERIC, null));
+    mapping.put("Product Characteristics", Pair.of(CHARACTER_VARYING, 2000));
+    mapping.put("Quantity", Pair.of(NUMERIC, null));
+    mapping.put("Rich Text Area", Pair.of("text", null));
+    mapping.put("RowID", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Search", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Search Vector", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("String", Pair.of(CHARACTER_VARYING, 200));
+    mapping.put("Table", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("TableDir", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Text", Pair.of("text", null));
+    mapping.put("Time", Pair.of(TIMESTAMP_WITHOUT_TIME_ZONE, null));
+    mapping.put("Transactional Sequence", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("Tree Reference", Pair.of(CHARACTER_VARYING, 32));
+    mapping.put("Window Reference", Pair.of(CHARACTER_VARYING, 60));
+    mapping.put("YesNo", Pair.of(CHARACTER, 1));
+    return Collections.unmodifiableMap(mapping);
+  }
+}
@@ -0,0 +1,31 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Serializes a {@link ResultSet} as a JSON document into a {@link Writer}.
+ * <p>
+ * Implementations honour a maximum number of rows and bytes and report in the returned summary whether the
+ * result was truncated. A truncated result set is left on the first row that was not written.
+ * </p>
+ */
+public interface ResultEncoder {
+
+  /**
+   * Writes the result set into the given writer.
+   *
+   * @param rs
+   *     the result set to serialize, positioned before the first row
+   * @param out
+   *     the writer that receives the JSON document
+   * @return a summary with the number of rows written and whether the output was truncated
+   * @throws SQLException
+   *     if an error occurs while reading the result set
+   * @throws IOException
+   *     if an error occurs while writing
+   */
+  QueryResultStreamer.StreamSummary stream(ResultSet rs, Writer out) throws SQLException, IOException;
+}
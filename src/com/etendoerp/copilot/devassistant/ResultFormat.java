@@ -0,0 +1,44 @@
+package com.etendoerp.copilot.devassistant;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Output formats available for the webhooks that return query results.
+ */
+public enum ResultFormat {
+  /**
+   * One JSON object per row, see {@link QueryResultStreamer}.
+   */
+  ROWS,
+  /**
+   * Column header once and one typed array per column, see {@link ColumnarResultEncoder}.
+   */
+  COLUMNAR;
+
+  /**
+   * Resolves the format requested in a webhook parameter. Blank or unknown values fall back to {@link #ROWS}.
+   *
+   * @param value
+   *     the parameter value, case-insensitive
+   * @return the requested format
+   */
+  public static ResultFormat of(String value) {
+    return StringUtils.equalsIgnoreCase(StringUtils.trim(value), COLUMNAR.name()) ? COLUMNAR : ROWS;
+  }
+
+  /**
+   * Creates an encoder for this format.
+   *
+   * @param maxRows
+   *     maximum number of rows to write, a value lower than 1 disables the cap
+   * @param maxBytes
+   *     maximum number of bytes of row data to write, a value lower than 1 disables the cap
+   * @return the encoder
+   */
+  public ResultEncoder encoder(int maxRows, long maxBytes) {
+    if (this == COLUMNAR) {
+      return new ColumnarResultEncoder(maxRows, maxBytes, true);
+    }
+    return new QueryResultStreamer(maxRows, maxBytes);
+  }
+}
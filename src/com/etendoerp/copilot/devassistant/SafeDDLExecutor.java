@@ -0,0 +1,520 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.service.db.DalConnectionProvider;
+
+/**
+ * Executes DDL on live tables without queueing behind long transactions.
+ * <p>
+ * Every transaction runs with a short {@code SET LOCAL lock_timeout}. When the lock cannot be acquired in time the
+ * transaction is rolled back and retried with exponential backoff, so a blocked ALTER never holds the queue of
+ * queries waiting behind it for longer than the lock timeout.
+ * </p>
+ * <p>
+ * Column type changes also take the size of the table into account. The number of rows is estimated from
+ * {@code pg_class.reltuples} and, above a threshold, the type is changed online instead of with an in-place
+ * {@code ALTER COLUMN TYPE} that would rewrite the whole table under an ACCESS EXCLUSIVE lock:
+ * </p>
+ * <ol>
+ *   <li>a new column with the target type is added, together with a trigger that keeps it in sync;</li>
+ *   <li>the existing rows are backfilled in small batches, each one in its own transaction;</li>
+ *   <li>NOT NULL is enforced through a CHECK constraint validated without blocking writes;</li>
+ *   <li>the columns are swapped in a short transaction.</li>
+ * </ol>
+ * The online strategy only applies to columns without dependent objects (indexes, constraints or views). Other
+ * columns are changed in place, still under the lock timeout.
+ * <p>
+ * Postgres cannot reorder columns, so after a swap the column is physically the last one of the table. The AD
+ * columns keep their position, but {@code export.database} writes the columns of the table in their physical order,
+ * so the next export of the module moves the column to the end of the table XML. The step of the report flags it
+ * with {@code "movedToEnd": true} so the change can be expected in the export.
+ * </p>
+ * <p>
+ * The settings are read from Openbravo.properties:
+ * </p>
+ * <ul>
+ *   <li>{@value #PROP_ENABLED}: whether the webhooks use this mode by default (default false)</li>
+ *   <li>{@value #PROP_LOCK_TIMEOUT}: lock timeout in milliseconds (default {@value #DEFAULT_LOCK_TIMEOUT_MILLIS})</li>
+ *   <li>{@value #PROP_MAX_RETRIES}: attempts when the lock is not available (default {@value #DEFAULT_MAX_RETRIES})</li>
+ *   <li>{@value #PROP_BACKOFF}: initial wait between attempts in milliseconds (default {@value #DEFAULT_BACKOFF_MILLIS})</li>
+ *   <li>{@value #PROP_ONLINE_THRESHOLD}: estimated rows above which type changes run online
+ *   (default {@value #DEFAULT_ONLINE_THRESHOLD})</li>
+ *   <li>{@value #PROP_BATCH_SIZE}: rows per backfill batch (default {@value #DEFAULT_BATCH_SIZE})</li>
+ * </ul>
+ */
+public class SafeDDLExecutor {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String PROP_ENABLED = "copdev.ddl.safeMode";
+  public static final String PROP_LOCK_TIMEOUT = "copdev.ddl.lockTimeout";
+  public static final String PROP_MAX_RETRIES = "copdev.ddl.maxRetries";
+  public static final String PROP_BACKOFF = "copdev.ddl.retryBackoff";
+  public static final String PROP_ONLINE_THRESHOLD = "copdev.ddl.onlineRowThreshold";
+  public static final String PROP_BATCH_SIZE = "copdev.ddl.backfillBatchSize";
+  public static final long DEFAULT_LOCK_TIMEOUT_MILLIS = 3000;
+  public static final int DEFAULT_MAX_RETRIES = 5;
+  public static final long DEFAULT_BACKOFF_MILLIS = 500;
+  public static final long DEFAULT_ONLINE_THRESHOLD = 1000000;
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+  public static final String STRATEGY_IN_PLACE = "inPlace";
+  public static final String STRATEGY_ONLINE = "online";
+  private static final String LOCK_NOT_AVAILABLE = "55P03";
+  private static final long MAX_BACKOFF_MILLIS = 30000;
+  // Etendo limits the names of columns, constraints, triggers and functions to 30 characters
+  private static final int MAX_IDENTIFIER_LENGTH = 30;
+
+  private final ConnectionProvider connProv;
+  private final long lockTimeoutMillis;
+  private final int maxRetries;
+  private final long backoffMillis;
+  private final long onlineThreshold;
+  private final int batchSize;
+
+  /**
+   * Creates an executor with the given settings.
+   *
+   * @param connProv
+   *     the connection provider used to obtain transaction connections
+   * @param lockTimeoutMillis
+   *     lock timeout in milliseconds, a value lower than or equal to 0 disables it
+   * @param maxRetries
+   *     maximum number of attempts when the lock is not available
+   * @param backoffMillis
+   *     wait before the second attempt, doubled on every new attempt
+   * @param onlineThreshold
+   *     estimated number of rows above which column type changes run online
+   * @param batchSize
+   *     number of rows updated per backfill transaction
+   */
+  public SafeDDLExecutor(ConnectionProvider connProv, long lockTimeoutMillis, int maxRetries, long backoffMillis,
+      long onlineThreshold, int batchSize) {
+    this.connProv = connProv;
+    this.lockTimeoutMillis = lockTimeoutMillis;
+    this.maxRetries = Math.max(1, maxRetries);
+    this.backoffMillis = Math.max(0, backoffMillis);
+    this.onlineThreshold = onlineThreshold;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Creates an executor with the settings configured in Openbravo.properties.
+   *
+   * @return the configured executor
+   */
+  public static SafeDDLExecutor fromProperties() {
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return new SafeDDLExecutor(new DalConnectionProvider(false),
+        readNumber(props, PROP_LOCK_TIMEOUT, DEFAULT_LOCK_TIMEOUT_MILLIS),
+        (int) readNumber(props, PROP_MAX_RETRIES, DEFAULT_MAX_RETRIES),
+        readNumber(props, PROP_BACKOFF, DEFAULT_BACKOFF_MILLIS),
+        readNumber(props, PROP_ONLINE_THRESHOLD, DEFAULT_ONLINE_THRESHOLD),
+        (int) readNumber(props, PROP_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+  }
+
+  /**
+   * Tells whether the safe-DDL mode must be used.
+   *
+   * @param requested
+   *     the value of the webhook parameter, "true" or "false"; when blank the value of {@value #PROP_ENABLED} is
+   *     used
+   * @return true if the safe-DDL mode is enabled
+   */
+  public static boolean isEnabled(String requested) {
+    if (StringUtils.isNotBlank(requested)) {
+      return StringUtils.equalsIgnoreCase(requested.trim(), "true");
+    }
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    return props != null && StringUtils.equalsIgnoreCase(StringUtils.trim(props.getProperty(PROP_ENABLED)), "true");
+  }
+
+  private static long readNumber(Properties props, String key, long defaultValue) {
+    String value = props != null ? props.getProperty(key) : null;
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value '{}' for property {}, using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Executes the statements in a single transaction under the lock timeout, retrying with backoff while the lock
+   * is not available.
+   *
+   * @param statements
+   *     the statements to execute, in order
+   * @return a JSONObject whose "result" array holds, for each statement, the statement and its update count, and
+   *     whose "attempts" holds the number of attempts needed
+   * @throws OBException
+   *     if a statement fails or the lock is still not available after the last attempt; the transaction is rolled
+   *     back
+   */
+  public JSONObject execute(List<String> statements) {
+    String failed = String.join(";\n", statements);
+    for (int attempt = 1; ; attempt++) {
+      try {
+        JSONObject response = executeOnce(statements);
+        response.put("attempts", attempt);
+        return response;
+      } catch (SQLException e) {
+        if (!isLockNotAvailable(e)) {
+          throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), failed,
+              e.getMessage()));
+        }
+        if (attempt >= maxRetries) {
+          throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_DDLLockTimeout"), failed, attempt,
+              e.getMessage()));
+        }
+        LOG.warn("Lock not available for DDL, attempt {} of {}: {}", attempt, maxRetries, e.getMessage());
+        sleep(Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt - 1, 16)));
+      } catch (JSONException e) {
+        throw new OBException(e);
+      }
+    }
+  }
+
+  private JSONObject executeOnce(List<String> statements) throws SQLException, JSONException {
+    Connection conn = connProv.getTransactionConnection();
+    boolean committed = false;
+    try {
+      JSONArray results = new JSONArray();
+      try (Statement st = conn.createStatement()) {
+        if (lockTimeoutMillis > 0) {
+          st.execute("SET LOCAL lock_timeout = " + lockTimeoutMillis);
+        }
+        for (String statement : statements) {
+          Utils.logIfDebug(LOG, "Executing DDL: " + statement);
+          st.execute(statement);
+          results.put(new JSONObject().put("statement", statement).put("updateCount", st.getUpdateCount()));
+        }
+      }
+      connProv.releaseCommitConnection(conn);
+      committed = true;
+      return new JSONObject().put("result", results);
+    } finally {
+      if (!committed) {
+        try {
+          connProv.releaseRollbackConnection(conn);
+        } catch (SQLException e) {
+          LOG.error("Error rolling back DDL: {}", e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  static boolean isLockNotAvailable(SQLException e) {
+    for (SQLException current = e; current != null; current = current.getNextException()) {
+      if (StringUtils.equals(current.getSQLState(), LOCK_NOT_AVAILABLE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OBException(e);
+    }
+  }
+
+  /**
+   * Estimates the number of rows of a table from {@code pg_class.reltuples}.
+   *
+   * @param tableName
+   *     the database name of the table
+   * @return the estimated number of rows, 0 if the table has never been analyzed
+   */
+  public long estimateRows(String tableName) {
+    return queryLong(
+        "SELECT c.reltuples::bigint FROM pg_catalog.pg_class c JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+            + "WHERE n.nspname = 'public' AND c.relname = lower(?)", tableName);
+  }
+
+  /**
+   * Changes the type of several columns of a table, choosing the strategy from the estimated number of rows.
+   * <p>
+   * Below the threshold all the changes are applied with a single in-place {@code ALTER TABLE} under the lock
+   * timeout. Above it, every column without dependent objects is changed online, and the rest in place.
+   * </p>
+   *
+   * @param tableName
+   *     the database name of the table
+   * @param changes
+   *     the column type changes to apply
+   * @return a JSONObject with the estimated rows and, for every step, the strategy and the statements executed
+   * @throws OBException
+   *     if any of the changes fails
+   */
+  public JSONObject alterColumnTypes(String tableName, List<ColumnTypeChange> changes) {
+    try {
+      long rows = estimateRows(tableName);
+      JSONObject report = new JSONObject().put("table", tableName).put("estimatedRows", rows);
+      JSONArray steps = new JSONArray();
+      List<ColumnTypeChange> inPlace = new ArrayList<>();
+      if (rows < onlineThreshold) {
+        inPlace.addAll(changes);
+      } else {
+        for (ColumnTypeChange change : changes) {
+          if (hasDependentObjects(tableName, change.getColumnName())) {
+            LOG.info("Column {}.{} has dependent objects, changing its type in place", tableName,
+                change.getColumnName());
+            inPlace.add(change);
+          } else {
+            steps.put(changeTypeOnline(tableName, change));
+          }
+        }
+      }
+      if (!inPlace.isEmpty()) {
+        String alter = String.format("ALTER TABLE %s %s", tableName,
+            inPlace.stream().map(ColumnTypeChange::getClause).collect(Collectors.joining(", ")));
+        steps.put(new JSONObject().put("strategy", STRATEGY_IN_PLACE).put("execution", execute(List.of(alter))));
+      }
+      return report.put("steps", steps);
+    } catch (JSONException e) {
+      throw new OBException(e);
+    }
+  }
+
+  /**
+   * Changes the type of a column by adding a new column, backfilling it in batches and swapping both columns. The
+   * swapped column ends up as the last column of the table.
+   *
+   * @param tableName
+   *     the database name of the table
+   * @param change
+   *     the column type change
+   * @return a JSONObject describing the step
+   * @throws JSONException
+   *     if an error occurs while building the report
+   */
+  JSONObject changeTypeOnline(String tableName, ColumnTypeChange change) throws JSONException {
+    String column = change.getColumnName();
+    ColumnState state = getColumnState(tableName, column);
+    String suffix = "_" + state.attnum;
+    String newColumn = identifier("copdev_swap_" + column, suffix);
+    String function = identifier("copdev_swap_" + tableName, suffix);
+    String check = identifier("copdev_swap_" + tableName, suffix + "_nn");
+
+    execute(List.of(String.format("ALTER TABLE %s ADD COLUMN %s %s", tableName, newColumn, change.getType()),
+        String.format("CREATE OR REPLACE FUNCTION %s() RETURNS trigger AS $$ BEGIN NEW.%s := NEW.%s::%s; "
+            + "RETURN NEW; END; $$ LANGUAGE plpgsql", function, newColumn, column, change.getType()),
+        String.format("CREATE TRIGGER %s BEFORE INSERT OR UPDATE ON %s FOR EACH ROW EXECUTE PROCEDURE %s()", function,
+            tableName, function)));
+    long backfilled;
+    try {
+      backfilled = backfill(tableName, column, newColumn, change.getType());
+      if (state.notNull) {
+        execute(List.of(
+            String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s IS NOT NULL) NOT VALID", tableName, check,
+                newColumn)));
+        execute(List.of(String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s", tableName, check)));
+      }
+    } catch (OBException e) {
+      cleanUpOnline(tableName, newColumn, function, check);
+      throw e;
+    }
+
+    List<String> swap = new ArrayList<>();
+    swap.add(String.format("DROP TRIGGER %s ON %s", function, tableName));
+    swap.add(String.format("DROP FUNCTION %s()", function));
+    swap.add(String.format("ALTER TABLE %s DROP COLUMN %s", tableName, column));
+    swap.add(String.format("ALTER TABLE %s RENAME COLUMN %s TO %s", tableName, newColumn, column));
+    if (state.defaultValue != null) {
+      swap.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT %s", tableName, column, state.defaultValue));
+    }
+    if (state.notNull) {
+      // The validated CHECK constraint lets Postgres skip the full scan of SET NOT NULL
+      swap.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET NOT NULL", tableName, column));
+      swap.add(String.format("ALTER TABLE %s DROP CONSTRAINT %s", tableName, check));
+    }
+    JSONObject execution = execute(swap);
+    return new JSONObject().put("strategy", STRATEGY_ONLINE)
+        .put("column", column)
+        .put("backfilledRows", backfilled)
+        .put("movedToEnd", true)
+        .put("execution", execution);
+  }
+
+  /**
+   * Copies the values of the old column into the new one in batches of {@link #batchSize} rows, each batch in its
+   * own transaction so row locks are held only briefly.
+   *
+   * @return the number of rows backfilled
+   */
+  private long backfill(String tableName, String column, String newColumn, String type) throws JSONException {
+    String update = String.format("UPDATE %1$s SET %2$s = %3$s::%4$s WHERE ctid = ANY(ARRAY("
+        + "SELECT ctid FROM %1$s WHERE %2$s IS NULL AND %3$s IS NOT NULL LIMIT %5$d))", tableName, newColumn, column,
+        type, batchSize);
+    long total = 0;
+    int updated;
+    do {
+      JSONObject result = execute(List.of(update));
+      updated = result.getJSONArray("result").getJSONObject(0).optInt("updateCount", 0);
+      total += Math.max(0, updated);
+      Utils.logIfDebug(LOG, String.format("Backfilled %d rows of %s.%s", total, tableName, column));
+    } while (updated > 0);
+    return total;
+  }
+
+  private void cleanUpOnline(String tableName, String newColumn, String function, String check) {
+    try {
+      execute(List.of(String.format("DROP TRIGGER IF EXISTS %s ON %s", function, tableName),
+          String.format("DROP FUNCTION IF EXISTS %s()", function),
+          String.format("ALTER TABLE %s DROP CONSTRAINT IF EXISTS %s", tableName, check),
+          String.format("ALTER TABLE %s DROP COLUMN IF EXISTS %s", tableName, newColumn)));
+    } catch (OBException e) {
+      LOG.error("Error cleaning up the online type change of {}: {}", tableName, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Tells whether a column has indexes, constraints, views or other objects depending on it, apart from its
+   * default value, which would be lost when the column is dropped.
+   */
+  boolean hasDependentObjects(String tableName, String column) {
+    return queryLong("SELECT count(*) FROM pg_catalog.pg_depend d "
+        + "JOIN pg_catalog.pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid "
+        + "WHERE d.refobjid = to_regclass(lower(?)) AND a.attname = lower(?) "
+        + "AND d.classid <> 'pg_catalog.pg_attrdef'::regclass", tableName, column) > 0;
+  }
+
+  private ColumnState getColumnState(String tableName, String column) {
+    String query = "SELECT a.attnum, a.attnotnull, pg_catalog.pg_get_expr(d.adbin, d.adrelid) "
+        + "FROM pg_catalog.pg_attribute a "
+        + "LEFT JOIN pg_catalog.pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum "
+        + "WHERE a.attrelid = to_regclass(lower(?)) AND a.attname = lower(?)";
+    Connection conn = null;
+    try {
+      conn = connProv.getTransactionConnection();
+      try (PreparedStatement st = conn.prepareStatement(query)) {
+        st.setString(1, tableName);
+        st.setString(2, column);
+        try (ResultSet rs = st.executeQuery()) {
+          if (!rs.next()) {
+            throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query,
+                tableName + "." + column + " not found"));
+          }
+          return new ColumnState(rs.getInt(1), rs.getBoolean(2), rs.getString(3));
+        }
+      }
+    } catch (SQLException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    } finally {
+      release(conn);
+    }
+  }
+
+  private long queryLong(String query, String... params) {
+    Connection conn = null;
+    try {
+      conn = connProv.getTransactionConnection();
+      try (PreparedStatement st = conn.prepareStatement(query)) {
+        for (int i = 0; i < params.length; i++) {
+          st.setString(i + 1, params[i]);
+        }
+        try (ResultSet rs = st.executeQuery()) {
+          return rs.next() ? Math.max(0, rs.getLong(1)) : 0;
+        }
+      }
+    } catch (SQLException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    } finally {
+      release(conn);
+    }
+  }
+
+  private void release(Connection conn) {
+    if (conn == null) {
+      return;
+    }
+    try {
+      connProv.releaseRollbackConnection(conn);
+    } catch (SQLException e) {
+      LOG.error("Error releasing connection: {}", e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Builds an identifier that fits the Etendo length limit, keeping the given suffix.
+   */
+  static String identifier(String base, String suffix) {
+    return StringUtils.left(base.toLowerCase(), MAX_IDENTIFIER_LENGTH - suffix.length()) + suffix;
+  }
+
+  /**
+   * A change of the type of a column.
+   */
+  public static class ColumnTypeChange {
+    private final String columnName;
+    private final String type;
+
+    /**
+     * @param columnName
+     *     the database name of the column
+     * @param type
+     *     the target type, including its length if any, for example {@code varchar(60)}
+     */
+    public ColumnTypeChange(String columnName, String type) {
+      this.columnName = columnName;
+      this.type = type;
+    }
+
+    public String getColumnName() {
+      return columnName;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    /**
+     * @return the {@code ALTER COLUMN ... TYPE} clause of this change
+     */
+    public String getClause() {
+      return String.format("ALTER COLUMN %s TYPE %s", columnName, type);
+    }
+  }
+
+  /**
+   * Position, nullability and default value of a column, as stored in the catalog.
+   */
+  private static class ColumnState {
+    private final int attnum;
+    private final boolean notNull;
+    private final String defaultValue;
+
+    private ColumnState(int attnum, boolean notNull, String defaultValue) {
+      this.attnum = attnum;
+      this.notNull = notNull;
+      this.defaultValue = defaultValue;
+    }
+  }
+}
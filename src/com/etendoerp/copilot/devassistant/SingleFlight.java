@@ -0,0 +1,221 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.dal.core.OBContext;
+
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Coalesces identical calls to read-only webhooks.
+ * <p>
+ * Calls are identical when they go to the same webhook class with the same parameters and the same role. The first
+ * call runs the webhook and the calls that arrive while it runs wait for it and get a copy of its response
+ * variables instead of running the same lookup again. A waiting call that gets no response within
+ * {@value #MAX_WAIT_MILLIS} ms runs the lookup itself. The response is then kept for a short time and returned to
+ * the identical calls that arrive in that window. A response with an error, or a call that throws, is never kept.
+ * </p>
+ * <p>
+ * Only response variables are shared, never entities, so a result can be returned to calls running in other DAL
+ * sessions. The kept responses are dropped by {@code SingleFlightHandler} when the AD metadata they are read from is
+ * written in this node, and dropped again when the transaction that wrote it ends, as the calls that ran before
+ * the commit still read the previous metadata. When {@value #MAX_ENTRIES} calls are running or kept, the expired
+ * ones are dropped and, if the map is still full, new calls run their lookup without being coalesced.
+ * </p>
+ * The time a response is kept is read from Openbravo.properties:
+ * <ul>
+ *   <li>{@value #PROP_TTL}: milliseconds a response is kept, 0 to only share running calls (default
+ *   {@value #DEFAULT_TTL_MILLIS})</li>
+ * </ul>
+ */
+public class SingleFlight {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String PROP_TTL = "copdev.singleFlight.ttlMillis";
+  public static final long DEFAULT_TTL_MILLIS = 2000;
+  static final int MAX_ENTRIES = 1000;
+  static final long MAX_WAIT_MILLIS = 10000;
+
+  private static final Map<String, Flight> FLIGHTS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Boolean> PENDING = new ThreadLocal<>();
+
+  private SingleFlight() {
+  }
+
+  /**
+   * Runs a read-only webhook, or shares the response of an identical call that is running or has just finished.
+   *
+   * @param webhook
+   *     the webhook, whose class identifies the call together with the parameters and the role
+   * @param parameter
+   *     the parameters of the call
+   * @param responseVars
+   *     the response of the call, which gets the response variables of the shared execution
+   * @param lookup
+   *     the uncoalesced body of the webhook
+   */
+  public static void execute(BaseWebhookService webhook, Map<String, String> parameter,
+      Map<String, String> responseVars, BiConsumer<Map<String, String>, Map<String, String>> lookup) {
+    execute(getKey(webhook.getClass().getName(), OBContext.getOBContext().getRole().getId(), parameter), getTtl(),
+        MAX_WAIT_MILLIS, parameter, responseVars, lookup);
+  }
+
+  /**
+   * Runs a lookup, or shares the response of a running or kept lookup with the same key.
+   *
+   * @param key
+   *     the key of the call
+   * @param ttl
+   *     milliseconds the response is kept after the lookup finishes
+   * @param maxWait
+   *     milliseconds to wait for a running lookup before running it again
+   * @param parameter
+   *     the parameters of the lookup
+   * @param responseVars
+   *     the response of the call
+   * @param lookup
+   *     the uncoalesced lookup
+   */
+  static void execute(String key, long ttl, long maxWait, Map<String, String> parameter,
+      Map<String, String> responseVars, BiConsumer<Map<String, String>, Map<String, String>> lookup) {
+    if (FLIGHTS.size() >= MAX_ENTRIES) {
+      FLIGHTS.values().removeIf(current -> current.isExpired(ttl));
+      if (FLIGHTS.size() >= MAX_ENTRIES && !FLIGHTS.containsKey(key)) {
+        Utils.logIfDebug(LOG, String.format("Too many calls in flight, running %s without coalescing", key));
+        lookup.accept(parameter, responseVars);
+        return;
+      }
+    }
+    Flight created = new Flight();
+    Flight flight = FLIGHTS.compute(key, (k, current) ->
+        current != null && !current.isExpired(ttl) ? current : created);
+    if (flight != created) {
+      Map<String, String> shared = flight.await(maxWait);
+      if (shared == null) {
+        LOG.warn("Identical call of {} still running after {} ms, running it again", key, maxWait);
+        lookup.accept(parameter, responseVars);
+        return;
+      }
+      Utils.logIfDebug(LOG, String.format("Sharing the response of %s for identical call", key));
+      responseVars.putAll(shared);
+      return;
+    }
+    Map<String, String> result = new HashMap<>();
+    try {
+      lookup.accept(parameter, result);
+    } catch (RuntimeException e) {
+      FLIGHTS.remove(key, flight);
+      flight.future.completeExceptionally(e);
+      throw e;
+    }
+    flight.complete(result);
+    if (ttl <= 0 || result.containsKey("error")) {
+      FLIGHTS.remove(key, flight);
+    }
+    responseVars.putAll(result);
+  }
+
+  /**
+   * Drops every kept response now and again when the transaction of the current thread ends. Running calls are
+   * still shared with the identical calls that are already waiting for them, but not with new calls, and their
+   * response is not kept.
+   */
+  public static void invalidate() {
+    FLIGHTS.clear();
+    PENDING.set(Boolean.TRUE);
+    LOG.debug("Single-flight responses invalidated");
+  }
+
+  /**
+   * Drops again the responses kept while the transaction of the current thread was writing AD metadata. It is
+   * called when the transaction is committed or rolled back.
+   */
+  public static void transactionCompleted() {
+    if (PENDING.get() != null) {
+      PENDING.remove();
+      FLIGHTS.clear();
+    }
+  }
+
+  /**
+   * Builds the key of a call. The parameters are sorted by name and every name and value is prefixed by its
+   * length, so two different calls never get the same key.
+   *
+   * @param webhook
+   *     the class name of the webhook
+   * @param role
+   *     the ID of the role of the call
+   * @param parameter
+   *     the parameters of the call
+   * @return the key of the call
+   */
+  static String getKey(String webhook, String role, Map<String, String> parameter) {
+    StringBuilder key = new StringBuilder(webhook).append(':').append(role);
+    new TreeMap<>(parameter).forEach((name, value) -> {
+      String text = StringUtils.defaultString(value);
+      key.append(':').append(name.length()).append(':').append(name).append(text.length()).append(':').append(text);
+    });
+    return key.toString();
+  }
+
+  private static long getTtl() {
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String value = props != null ? props.getProperty(PROP_TTL) : null;
+    if (StringUtils.isBlank(value)) {
+      return DEFAULT_TTL_MILLIS;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid value '{}' for property {}, using {}", value, PROP_TTL, DEFAULT_TTL_MILLIS);
+      return DEFAULT_TTL_MILLIS;
+    }
+  }
+
+  /**
+   * The execution of a call, shared by the identical calls that arrive while it runs or before it expires.
+   */
+  private static class Flight {
+    private final CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+    private volatile long completedAt;
+
+    void complete(Map<String, String> result) {
+      completedAt = System.currentTimeMillis();
+      future.complete(result);
+    }
+
+    boolean isExpired(long ttl) {
+      return future.isDone() && (completedAt == 0 || System.currentTimeMillis() - completedAt >= ttl);
+    }
+
+    /**
+     * @return a copy of the response, or null if the call has not finished within the given time
+     */
+    Map<String, String> await(long maxWait) {
+      try {
+        return new HashMap<>(future.get(maxWait, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        return null;
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new OBException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OBException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.service.db.DalConnectionProvider;
+
+/**
+ * Builds and creates the indexes that support foreign key columns.
+ * <p>
+ * Postgres does not index the referencing side of a foreign key, so joins through the column and the checks done
+ * when a referenced row is deleted end up scanning the whole table. Every FK column created by the webhooks gets a
+ * btree index on it. The index name carries the module DB prefix, like the constraints, so that
+ * {@code export.database} exports it as part of the module.
+ * </p>
+ * <p>
+ * An index can also be built with {@code CREATE INDEX CONCURRENTLY}, which does not block writes on a table that
+ * already holds data. Such a statement cannot run inside a transaction, so it is executed on its own connection in
+ * autocommit mode; if the build fails the invalid index it leaves behind is dropped.
+ * </p>
+ */
+public class SupportingIndexes {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String INDEX_SUFFIX = "ix";
+
+  private SupportingIndexes() {
+  }
+
+  /**
+   * Builds the statement that creates a btree index on a column.
+   *
+   * @param indexName
+   *     the name of the index, usually allocated by the {@link ConstraintNameAllocator} of the operation
+   * @param tableName
+   *     the database name of the table
+   * @param columnName
+   *     the database name of the indexed column
+   * @param concurrently
+   *     whether the index is built with {@code CREATE INDEX CONCURRENTLY}
+   * @return the CREATE INDEX statement
+   */
+  public static String buildCreateIndexQuery(String indexName, String tableName, String columnName,
+      boolean concurrently) {
+    return String.format("CREATE INDEX %sIF NOT EXISTS %s ON public.%s USING btree (%s)",
+        concurrently ? "CONCURRENTLY " : "", indexName, tableName, columnName);
+  }
+
+  /**
+   * Creates an index with {@code CREATE INDEX CONCURRENTLY}, outside any transaction.
+   *
+   * @param indexName
+   *     the name of the index
+   * @param tableName
+   *     the database name of the table
+   * @param columnName
+   *     the database name of the indexed column
+   * @return a JSONObject with the executed statement
+   * @throws OBException
+   *     if the index cannot be built
+   */
+  public static JSONObject createConcurrently(String indexName, String tableName, String columnName) {
+    return createConcurrently(new DalConnectionProvider(false), indexName, tableName, columnName);
+  }
+
+  static JSONObject createConcurrently(ConnectionProvider connProv, String indexName, String tableName,
+      String columnName) {
+    String query = buildCreateIndexQuery(indexName, tableName, columnName, true);
+    Connection conn = null;
+    try {
+      conn = connProv.getTransactionConnection();
+      conn.setAutoCommit(true);
+      try (Statement st = conn.createStatement()) {
+        Utils.logIfDebug(LOG, "Creating index: " + query);
+        try {
+          st.execute(query);
+        } catch (SQLException e) {
+          st.execute(String.format("DROP INDEX CONCURRENTLY IF EXISTS public.%s", indexName));
+          throw e;
+        }
+      }
+      return new JSONObject().put("statement", query);
+    } catch (SQLException | JSONException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    } finally {
+      release(connProv, conn);
+    }
+  }
+
+  private static void release(ConnectionProvider connProv, Connection conn) {
+    if (conn == null) {
+      return;
+    }
+    try {
+      conn.setAutoCommit(false);
+      connProv.releaseRollbackConnection(conn);
+    } catch (SQLException e) {
+      LOG.error("Error releasing connection: {}", e.getMessage(), e);
+    }
+  }
+}
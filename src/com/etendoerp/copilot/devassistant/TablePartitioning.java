@@ -0,0 +1,291 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Declarative partitioning of the tables created by the assistant.
+ * <p>
+ * Two strategies are supported, over the standard columns every Etendo table has:
+ * </p>
+ * <ul>
+ *   <li>{@value #RANGE}: monthly partitions by a timestamp column ({@code created} or {@code updated}). The partitions
+ *   from the current month up to a number of months ahead are created with the table, together with a default
+ *   partition for the rows outside them, and {@link #createFuturePartitions(int)} keeps creating the following
+ *   ones;</li>
+ *   <li>{@value #LIST}: one partition per value of {@code ad_client_id}, {@code ad_org_id} or {@code isactive},
+ *   plus a default partition for the other values.</li>
+ * </ul>
+ * Postgres requires the primary key of a partitioned table to include the partition key, so the primary key of a
+ * partitioned table is {@code (<table>_id, <key>)}. The AD keeps registering the parent table, with
+ * {@code <table>_id} as its key column, and never sees the partitions. Postgres cannot enforce a unique constraint
+ * on {@code <table>_id} alone, so a foreign key cannot point to a partitioned table: the webhooks reject the
+ * columns that would reference one, see {@link #checkFKTarget(String)}.
+ * <p>
+ * The partitions are named after the table, so the name of a partitioned table leaves room for the longest
+ * partition suffix within the Etendo limit of {@value #MAX_NAME_LENGTH} characters.
+ * </p>
+ */
+public class TablePartitioning {
+
+  private static final Logger LOG = LogManager.getLogger();
+  public static final String RANGE = "range";
+  public static final String LIST = "list";
+  public static final int DEFAULT_MONTHS_AHEAD = 3;
+  private static final int MAX_MONTHS_AHEAD = 24;
+  private static final Set<String> RANGE_KEYS = Set.of("created", "updated");
+  private static final Set<String> LIST_KEYS = Set.of("ad_client_id", "ad_org_id", "isactive");
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+  private static final DateTimeFormatter PARTITION_BOUND = DateTimeFormatter.ofPattern("yyyy-MM-01");
+  private static final String DEFAULT_SUFFIX = "_pdefault";
+  private static final String MONTH_SUFFIX = "_p000000";
+  static final int MAX_NAME_LENGTH = 30;
+
+  private final String strategy;
+  private final String key;
+  private final List<String> values;
+  private final int monthsAhead;
+
+  private TablePartitioning(String strategy, String key, List<String> values, int monthsAhead) {
+    this.strategy = strategy;
+    this.key = key;
+    this.values = values;
+    this.monthsAhead = monthsAhead;
+  }
+
+  /**
+   * Builds the partitioning definition from the raw webhook parameters.
+   *
+   * @param partitionBy
+   *     {@value #RANGE}, {@value #LIST} or blank for a plain table
+   * @param partitionKey
+   *     the partition column; {@code created} and {@code ad_client_id} are used when blank
+   * @param partitionValues
+   *     comma-separated values of a list partitioning
+   * @param monthsAhead
+   *     months of partitions created ahead of the current one in a range partitioning
+   * @return the definition, or null if the table is not partitioned
+   * @throws OBException
+   *     if the strategy or the key are not supported, or the months ahead are not a number
+   */
+  public static TablePartitioning of(String partitionBy, String partitionKey, String partitionValues,
+      String monthsAhead) {
+    if (StringUtils.isBlank(partitionBy)) {
+      return null;
+    }
+    String strategy = StringUtils.lowerCase(partitionBy.trim());
+    boolean isRange = StringUtils.equals(strategy, RANGE);
+    if (!isRange && !StringUtils.equals(strategy, LIST)) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidPartitioning"), partitionBy,
+          partitionKey));
+    }
+    String key = StringUtils.isBlank(partitionKey) ? (isRange ? "created" : "ad_client_id") : StringUtils.lowerCase(
+        partitionKey.trim());
+    if (!(isRange ? RANGE_KEYS : LIST_KEYS).contains(key)) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidPartitioning"), partitionBy,
+          partitionKey));
+    }
+    List<String> values = Arrays.stream(StringUtils.split(StringUtils.defaultString(partitionValues), ','))
+        .map(String::trim)
+        .filter(StringUtils::isNotEmpty)
+        .collect(Collectors.toList());
+    int ahead = DEFAULT_MONTHS_AHEAD;
+    if (StringUtils.isNotBlank(monthsAhead)) {
+      try {
+        ahead = clampMonthsAhead(Integer.parseInt(monthsAhead.trim()));
+      } catch (NumberFormatException e) {
+        throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidPartitionsAhead"), monthsAhead));
+      }
+    }
+    return new TablePartitioning(strategy, key, values, ahead);
+  }
+
+  /**
+   * @return the columns of the primary key of the partitioned table
+   */
+  public String getPrimaryKeyColumns(String tableName) {
+    return tableName + "_id, " + key;
+  }
+
+  /**
+   * @return the {@code PARTITION BY} clause of the CREATE TABLE statement
+   */
+  public String getPartitionClause() {
+    return String.format("PARTITION BY %s (%s)", StringUtils.upperCase(strategy), key);
+  }
+
+  /**
+   * Builds the statements that create the initial partitions of a table.
+   *
+   * @param tableName
+   *     the database name of the parent table
+   * @param current
+   *     the current month, first partition of a range partitioning
+   * @return the CREATE TABLE ... PARTITION OF statements
+   * @throws OBException
+   *     if the name of a partition would exceed {@value #MAX_NAME_LENGTH} characters
+   */
+  public List<String> buildInitialPartitions(String tableName, YearMonth current) {
+    checkNameLength(tableName);
+    List<String> statements = new ArrayList<>();
+    if (StringUtils.equals(strategy, RANGE)) {
+      for (int i = 0; i <= monthsAhead; i++) {
+        statements.add(buildRangePartition(tableName, current.plusMonths(i)));
+      }
+    } else {
+      for (int i = 0; i < values.size(); i++) {
+        statements.add(String.format(
+            "CREATE TABLE IF NOT EXISTS public.%s_p%d PARTITION OF public.%s FOR VALUES IN ('%s')", tableName, i + 1,
+            tableName, values.get(i).replace("'", "''")));
+      }
+    }
+    // Rows outside the monthly ranges, or with a value not listed, go to the default partition instead of failing.
+    // A month cannot be attached later if the default partition already holds rows of it, which is why the
+    // maintenance process creates the months well ahead.
+    statements.add(String.format("CREATE TABLE IF NOT EXISTS public.%s%s PARTITION OF public.%s DEFAULT",
+        tableName, DEFAULT_SUFFIX, tableName));
+    return statements;
+  }
+
+  private void checkNameLength(String tableName) {
+    int suffixLength = Math.max(DEFAULT_SUFFIX.length(),
+        StringUtils.equals(strategy, RANGE) ? MONTH_SUFFIX.length() : ("_p" + values.size()).length());
+    if (tableName.length() + suffixLength > MAX_NAME_LENGTH) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_PartitionNameTooLong"), tableName,
+          MAX_NAME_LENGTH - suffixLength));
+    }
+  }
+
+  /**
+   * Rejects a foreign key to a partitioned table. Its primary key includes the partition key, so there is no unique
+   * constraint on {@code <table>_id} alone for the foreign key to reference.
+   *
+   * @param targetTableName
+   *     the database name of the table the foreign key points to
+   * @throws OBException
+   *     if the table is partitioned
+   */
+  public static void checkFKTarget(String targetTableName) {
+    String query = "SELECT 1 FROM pg_catalog.pg_partitioned_table p "
+        + "JOIN pg_catalog.pg_class c ON c.oid = p.partrelid "
+        + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+        + "WHERE n.nspname = 'public' AND c.relname = lower(?)";
+    Connection conn = OBDal.getInstance().getConnection();
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setString(1, targetTableName);
+      try (ResultSet rs = st.executeQuery()) {
+        if (rs.next()) {
+          throw partitionedFKTarget(targetTableName);
+        }
+      }
+    } catch (SQLException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    }
+  }
+
+  /**
+   * @return the error of a foreign key that points to the given partitioned table
+   */
+  public static OBException partitionedFKTarget(String targetTableName) {
+    return new OBException(String.format(OBMessageUtils.messageBD("COPDEV_PartitionedFKTarget"), targetTableName));
+  }
+
+  /**
+   * Builds the statement that creates the monthly partition of a table.
+   *
+   * @param tableName
+   *     the database name of the parent table
+   * @param month
+   *     the month of the partition
+   * @return the CREATE TABLE ... PARTITION OF statement
+   */
+  static String buildRangePartition(String tableName, YearMonth month) {
+    return String.format(
+        "CREATE TABLE IF NOT EXISTS public.%s_p%s PARTITION OF public.%s FOR VALUES FROM ('%s') TO ('%s')", tableName,
+        month.format(PARTITION_SUFFIX), tableName, month.format(PARTITION_BOUND),
+        month.plusMonths(1).format(PARTITION_BOUND));
+  }
+
+  /**
+   * @return the given number of months ahead, limited to the range allowed for a partitioned table
+   */
+  public static int clampMonthsAhead(int monthsAhead) {
+    return Math.max(0, Math.min(MAX_MONTHS_AHEAD, monthsAhead));
+  }
+
+  /**
+   * Creates the missing monthly partitions, up to the given number of months ahead, of every range partitioned
+   * table that follows the naming of this class, that is, whose partitions are named {@code <table>_pYYYYMM}.
+   * <p>
+   * Each table is maintained in its own transaction, so a table that fails is logged and does not prevent the
+   * maintenance of the others.
+   * </p>
+   *
+   * @param monthsAhead
+   *     months of partitions to keep ahead of the current one
+   * @return the tables whose partitions could not be created, empty if all of them were maintained
+   * @throws OBException
+   *     if the partitioned tables cannot be read
+   */
+  public static List<String> createFuturePartitions(int monthsAhead) {
+    List<String> failed = new ArrayList<>();
+    YearMonth current = YearMonth.now();
+    for (String table : getMonthlyPartitionedTables()) {
+      List<String> statements = new ArrayList<>();
+      for (int i = 0; i <= monthsAhead; i++) {
+        statements.add(buildRangePartition(table, current.plusMonths(i)));
+      }
+      try {
+        Utils.executeBatch(statements);
+        LOG.info("Partitions of {} created up to {}", table, current.plusMonths(monthsAhead));
+      } catch (OBException e) {
+        LOG.error("Error creating the partitions of {}: {}", table, e.getMessage(), e);
+        failed.add(table);
+      }
+    }
+    return failed;
+  }
+
+  private static List<String> getMonthlyPartitionedTables() {
+    String query = "SELECT c.relname FROM pg_catalog.pg_partitioned_table p "
+        + "JOIN pg_catalog.pg_class c ON c.oid = p.partrelid "
+        + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+        + "WHERE p.partstrat = 'r' AND n.nspname = 'public' AND EXISTS (SELECT 1 FROM pg_catalog.pg_inherits i "
+        + "JOIN pg_catalog.pg_class ch ON ch.oid = i.inhrelid "
+        + "WHERE i.inhparent = c.oid AND ch.relname ~ ('^' || c.relname || '_p[0-9]{6}$'))";
+    List<String> tables = new ArrayList<>();
+    Connection conn = OBDal.getInstance().getConnection();
+    try (PreparedStatement st = conn.prepareStatement(query); ResultSet rs = st.executeQuery()) {
+      while (rs.next()) {
+        tables.add(rs.getString(1));
+      }
+    } catch (SQLException e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"), query, e.getMessage()));
+    }
+    return tables;
+  }
+
+  public String getStrategy() {
+    return strategy;
+  }
+
+  public String getKey() {
+    return key;
+  }
+}
@@ -2,10 +2,12 @@ package com.etendoerp.copilot.devassistant;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONException;
 import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.provider.OBProvider;
@@ -46,11 +48,15 @@ public class TableRegistrationUtils {
     if (Boolean.FALSE.equals(module.isInDevelopment())) {
       throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModNotDev"), module.getName()));
     }
-    List<DataPackage> dataPackList = getDataPackageList(module);
-    if (dataPackList.isEmpty()) {
+    DataPackage dataPackage = MetadataCache.getEntity(MetadataCache.DATA_PACKAGE_BY_MODULE, module.getId(),
+        DataPackage.class, () -> {
+          List<DataPackage> dataPackList = getDataPackageList(module);
+          return dataPackList.isEmpty() ? null : dataPackList.get(0);
+        });
+    if (dataPackage == null) {
       throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModNotDP"), module.getName()));
     }
-    return dataPackList.get(0);
+    return dataPackage;
   }
 
   /**
@@ -81,11 +87,13 @@ public class TableRegistrationUtils {
    */
   public static Object[] getModuleAndPrefix(String moduleID) {
     Module module = Utils.getModuleByID(moduleID);
-    List<ModuleDBPrefix> moduleDBPrefixList = getModuleDBPrefixList(module);
-    if (moduleDBPrefixList.isEmpty()) {
+    String prefix = MetadataCache.getValue(MetadataCache.PREFIX_BY_MODULE, moduleID, () -> {
+      List<ModuleDBPrefix> moduleDBPrefixList = getModuleDBPrefixList(module);
+      return moduleDBPrefixList.isEmpty() ? null : StringUtils.lowerCase(moduleDBPrefixList.get(0).getName());
+    });
+    if (prefix == null) {
       throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModulePrefixNotFound"), moduleID));
     }
-    String prefix = StringUtils.lowerCase(moduleDBPrefixList.get(0).getName());
     return new Object[]{ module, prefix };
   }
 
@@ -147,6 +155,19 @@ public class TableRegistrationUtils {
    */
   public static Table createAdTable(DataPackage dataPackage, String javaClass, String tableName, String dataAccessLevel,
       String description, String helpTable, boolean isView) {
+    Table adTable = newAdTable(dataPackage, javaClass, tableName, dataAccessLevel, description, helpTable, isView);
+    OBDal.getInstance().flush();
+    return adTable;
+  }
+
+  /**
+   * Creates a new table or view like {@link #createAdTable}, saving it in the session without flushing, so that
+   * several records can be registered with a single flush.
+   *
+   * @return The newly created table object.
+   */
+  public static Table newAdTable(DataPackage dataPackage, String javaClass, String tableName, String dataAccessLevel,
+      String description, String helpTable, boolean isView) {
     String name = tableName;
     Table adTable = OBProvider.getInstance().get(Table.class);
     adTable.setNewOBObject(true);
@@ -161,8 +182,8 @@ public class TableRegistrationUtils {
     adTable.setDataAccessLevel(dataAccessLevel != null ? dataAccessLevel : "4"); // Default to "Client/Organization"
     adTable.setDataPackage(dataPackage);
     if (isView) {
-      tableName = StringUtils.endsWithIgnoreCase(tableName, "_v") ? tableName : tableName + "_v";
-      name = StringUtils.endsWithIgnoreCase(name, "V") ? name : name + "V";
+      tableName = getViewDbTableName(tableName);
+      name = getViewName(name);
     }
     adTable.setName(name);
     adTable.setDBTableName(tableName);
@@ -171,11 +192,39 @@ public class TableRegistrationUtils {
     adTable.setHelpComment(helpTable);
     adTable.setView(isView);
     OBDal.getInstance().save(adTable);
-    OBDal.getInstance().flush();
-
     return adTable;
   }
 
+  /**
+   * Adds to a dry-run plan the table or view that {@link #newAdTable} would create with the same parameters.
+   *
+   * @param plan
+   *     The plan of the dry run.
+   * @throws JSONException
+   *     If the record cannot be added to the plan.
+   */
+  public static void planAdTable(DryRun plan, DataPackage dataPackage, String javaClass, String tableName,
+      String dataAccessLevel, String description, String helpTable, boolean isView) throws JSONException {
+    Map<String, Object> values = DryRun.values();
+    values.put(Table.PROPERTY_NAME, isView ? getViewName(tableName) : tableName);
+    values.put(Table.PROPERTY_DBTABLENAME, isView ? getViewDbTableName(tableName) : tableName);
+    values.put(Table.PROPERTY_JAVACLASSNAME, javaClass);
+    values.put(Table.PROPERTY_DATAPACKAGE, dataPackage);
+    values.put(Table.PROPERTY_DATAACCESSLEVEL, dataAccessLevel != null ? dataAccessLevel : "4");
+    values.put(Table.PROPERTY_DESCRIPTION, description);
+    values.put(Table.PROPERTY_HELPCOMMENT, helpTable);
+    values.put(Table.PROPERTY_VIEW, isView);
+    plan.addRecord(Table.ENTITY_NAME, DryRun.ACTION_CREATE, values);
+  }
+
+  private static String getViewDbTableName(String tableName) {
+    return StringUtils.endsWithIgnoreCase(tableName, "_v") ? tableName : tableName + "_v";
+  }
+
+  private static String getViewName(String name) {
+    return StringUtils.endsWithIgnoreCase(name, "V") ? name : name + "V";
+  }
+
   /**
    * Determines the Java class name based on the provided name and optional Java class name.
    *
@@ -0,0 +1,185 @@
+package com.etendoerp.copilot.devassistant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+/**
+ * Storage options of the tables created by the assistant.
+ * <p>
+ * The options start from a named profile and each one can be overridden:
+ * </p>
+ * <ul>
+ *   <li>{@value #PROFILE_TRANSACTIONAL}: update-heavy tables. Leaves free space in every page for HOT updates and
+ *   vacuums and analyzes more often than the defaults;</li>
+ *   <li>{@value #PROFILE_APPEND_ONLY}: tables that are only inserted into. Pages are filled completely;</li>
+ *   <li>{@value #PROFILE_STAGING}: scratch and import staging tables. {@code UNLOGGED}, so they do not pay the WAL
+ *   cost, and without autovacuum. Their content is lost after a crash and they are not replicated.</li>
+ * </ul>
+ * Without a profile nor overrides the table is created as before, in the {@code pg_default} tablespace.
+ * Partitioned tables only accept the tablespace, since Postgres does not allow storage parameters nor
+ * {@code UNLOGGED} on the parent of a partitioning.
+ */
+public class TableStorage {
+
+  public static final String PROFILE_TRANSACTIONAL = "transactional";
+  public static final String PROFILE_APPEND_ONLY = "append-only";
+  public static final String PROFILE_STAGING = "staging";
+  public static final String DEFAULT_TABLESPACE = "pg_default";
+  private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+  private static final Pattern DECIMAL = Pattern.compile("\\d{1,3}(\\.\\d{1,6})?");
+
+  private Integer fillFactor;
+  private String vacuumScaleFactor;
+  private String analyzeScaleFactor;
+  private Boolean autovacuumEnabled;
+  private boolean unlogged;
+  private String tablespace = DEFAULT_TABLESPACE;
+
+  private TableStorage() {
+  }
+
+  /**
+   * Builds the storage options from the raw webhook parameters.
+   *
+   * @param profile
+   *     the name of the profile, blank for none
+   * @param fillFactor
+   *     the fillfactor, from 10 to 100, overriding the profile
+   * @param vacuumScaleFactor
+   *     the {@code autovacuum_vacuum_scale_factor}, overriding the profile
+   * @param analyzeScaleFactor
+   *     the {@code autovacuum_analyze_scale_factor}, overriding the profile
+   * @param unlogged
+   *     "true" or "false" to override the profile
+   * @param tablespace
+   *     the tablespace, {@value #DEFAULT_TABLESPACE} when blank
+   * @return the storage options
+   * @throws OBException
+   *     if the profile is unknown or an option is not valid
+   */
+  public static TableStorage of(String profile, String fillFactor, String vacuumScaleFactor,
+      String analyzeScaleFactor, String unlogged, String tablespace) {
+    TableStorage storage = new TableStorage();
+    storage.applyProfile(StringUtils.lowerCase(StringUtils.trimToEmpty(profile)));
+    if (StringUtils.isNotBlank(fillFactor)) {
+      storage.fillFactor = parseFillFactor(fillFactor.trim());
+    }
+    if (StringUtils.isNotBlank(vacuumScaleFactor)) {
+      storage.vacuumScaleFactor = parseScaleFactor("autovacuum_vacuum_scale_factor", vacuumScaleFactor.trim());
+    }
+    if (StringUtils.isNotBlank(analyzeScaleFactor)) {
+      storage.analyzeScaleFactor = parseScaleFactor("autovacuum_analyze_scale_factor", analyzeScaleFactor.trim());
+    }
+    if (StringUtils.isNotBlank(unlogged)) {
+      storage.unlogged = StringUtils.equalsIgnoreCase(unlogged.trim(), "true");
+    }
+    if (StringUtils.isNotBlank(tablespace)) {
+      String name = StringUtils.lowerCase(tablespace.trim());
+      if (!IDENTIFIER.matcher(name).matches()) {
+        throw invalid("tablespace", tablespace);
+      }
+      storage.tablespace = name;
+    }
+    return storage;
+  }
+
+  private void applyProfile(String profile) {
+    switch (profile) {
+      case "":
+        break;
+      case PROFILE_TRANSACTIONAL:
+        fillFactor = 90;
+        vacuumScaleFactor = "0.05";
+        analyzeScaleFactor = "0.02";
+        break;
+      case PROFILE_APPEND_ONLY:
+        fillFactor = 100;
+        analyzeScaleFactor = "0.05";
+        break;
+      case PROFILE_STAGING:
+        fillFactor = 100;
+        autovacuumEnabled = false;
+        unlogged = true;
+        break;
+      default:
+        throw invalid("profile", profile);
+    }
+  }
+
+  private static Integer parseFillFactor(String value) {
+    try {
+      int parsed = Integer.parseInt(value);
+      if (parsed >= 10 && parsed <= 100) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw invalid("fillfactor", value);
+  }
+
+  private static String parseScaleFactor(String option, String value) {
+    // Only plain decimals reach the DDL, Java literals such as 1d or 0x1p3 would be accepted by parseDouble
+    if (DECIMAL.matcher(value).matches() && Double.parseDouble(value) <= 100) {
+      return value;
+    }
+    throw invalid(option, value);
+  }
+
+  private static OBException invalid(String option, String value) {
+    return new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidStorageOption"), option, value));
+  }
+
+  /**
+   * @return the modifier placed between CREATE and TABLE, {@code "UNLOGGED "} or an empty string
+   */
+  public String getTableModifier() {
+    return unlogged ? "UNLOGGED " : "";
+  }
+
+  /**
+   * @return the {@code WITH (...)} clause with the storage parameters, or an empty string if there are none
+   */
+  public String getWithClause() {
+    List<String> options = new ArrayList<>();
+    if (fillFactor != null) {
+      options.add("fillfactor = " + fillFactor);
+    }
+    if (autovacuumEnabled != null) {
+      options.add("autovacuum_enabled = " + autovacuumEnabled);
+    }
+    if (vacuumScaleFactor != null) {
+      options.add("autovacuum_vacuum_scale_factor = " + vacuumScaleFactor);
+    }
+    if (analyzeScaleFactor != null) {
+      options.add("autovacuum_analyze_scale_factor = " + analyzeScaleFactor);
+    }
+    return options.isEmpty() ? "" : "WITH (" + String.join(", ", options) + ")";
+  }
+
+  /**
+   * Builds the storage clause placed after the column list of the CREATE TABLE statement.
+   *
+   * @param partitionClause
+   *     the {@code PARTITION BY} clause of a partitioned table, or null
+   * @return the clause
+   * @throws OBException
+   *     if storage parameters or {@code UNLOGGED} are requested for a partitioned table
+   */
+  public String getStorageClause(String partitionClause) {
+    String tablespaceClause = "TABLESPACE " + tablespace;
+    if (partitionClause != null) {
+      if (unlogged || StringUtils.isNotEmpty(getWithClause())) {
+        throw invalid("partitioning", partitionClause);
+      }
+      return partitionClause + " " + tablespaceClause;
+    }
+    String with = getWithClause();
+    return StringUtils.isEmpty(with) ? tablespaceClause : with + " " + tablespaceClause;
+  }
+}
@@ -1,8 +1,12 @@
 package com.etendoerp.copilot.devassistant;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
 
@@ -115,15 +119,17 @@ public class Utils {
    *     if the module with the given prefix is not found
    */
   public static Module getModuleByPrefix(String prefix) {
-    OBCriteria<ModuleDBPrefix> criteria = OBDal.getInstance().createCriteria(ModuleDBPrefix.class);
-    criteria.add(Restrictions.eq(ModuleDBPrefix.PROPERTY_NAME, prefix));
-    criteria.setMaxResults(1);
-
-    ModuleDBPrefix dbPrefix = (ModuleDBPrefix) criteria.uniqueResult();
-    if (dbPrefix == null) {
+    Module module = MetadataCache.getEntity(MetadataCache.MODULE_BY_PREFIX, prefix, Module.class, () -> {
+      OBCriteria<ModuleDBPrefix> criteria = OBDal.getInstance().createCriteria(ModuleDBPrefix.class);
+      criteria.add(Restrictions.eq(ModuleDBPrefix.PROPERTY_NAME, prefix));
+      criteria.setMaxResults(1);
+      ModuleDBPrefix dbPrefix = (ModuleDBPrefix) criteria.uniqueResult();
+      return dbPrefix != null ? dbPrefix.getModule() : null;
+    });
+    if (module == null) {
       throw new OBException(OBMessageUtils.getI18NMessage("COPDEV_NullModule"));
     }
-    return dbPrefix.getModule();
+    return module;
   }
 
   /**
@@ -137,17 +143,19 @@ public class Utils {
     if (moduleJavaPackage == null) {
       throw new OBException(OBMessageUtils.messageBD("COPDEV_JavaPackageCannotBeNull"));
     }
-    OBCriteria<Module> moduleCrit = OBDal.getInstance().createCriteria(Module.class);
-    moduleCrit.add(Restrictions.eq(Module.PROPERTY_JAVAPACKAGE, moduleJavaPackage));
-    moduleCrit.setMaxResults(1);
-    return (Module) moduleCrit.uniqueResult();
+    return MetadataCache.getEntity(MetadataCache.MODULE_BY_JAVA_PACKAGE, moduleJavaPackage, Module.class, () -> {
+      OBCriteria<Module> moduleCrit = OBDal.getInstance().createCriteria(Module.class);
+      moduleCrit.add(Restrictions.eq(Module.PROPERTY_JAVAPACKAGE, moduleJavaPackage));
+      moduleCrit.setMaxResults(1);
+      return (Module) moduleCrit.uniqueResult();
+    });
   }
 
   /**
    * Retrieves a Module entity based on its unique identifier (ID).
    * <p>
-   * This method queries the database to find a Module entity that matches the provided ID.
-   * If the ID is null, an exception is thrown. The query is limited to a single result.
+   * This method looks the Module up by its primary key, which is served from the current session when it
+   * was already loaded. If the ID is null, an exception is thrown.
    * </p>
    *
    * @param id
@@ -160,10 +168,7 @@ public class Utils {
     if (id == null) {
       throw new OBException(OBMessageUtils.messageBD("COPDEV_IDCannotBeNull"));
     }
-    OBCriteria<Module> criteria = OBDal.getInstance().createCriteria(Module.class);
-    criteria.add(Restrictions.eq(Module.PROPERTY_ID, id));
-    criteria.setMaxResults(1);
-    Module module = (Module) criteria.uniqueResult();
+    Module module = OBDal.getInstance().get(Module.class, id);
     if (module == null) {
       throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModuleNotFound"), id));
     }
@@ -215,6 +220,10 @@ public class Utils {
 
   /**
    * Executes the given SQL query and logs the result.
+   * <p>
+   * SELECT queries run under the {@link QueryGuard}: they are rejected when their plan is too expensive and are
+   * bounded by the configured statement timeout. Other statements, such as DDL, cannot be explained and run as is.
+   * </p>
    *
    * @param query
    *     the SQL query to execute
@@ -226,9 +235,17 @@ public class Utils {
     var connProv = new DalConnectionProvider();
 
     PreparedStatement st = null;
+    QueryGuard guard = QueryGuard.isSelect(StringUtils.trimToEmpty(query)) ? QueryGuard.fromProperties() : null;
+    boolean guarded = false;
     String errmsg = OBMessageUtils.messageBD("COPDEV_NotValidQuery");
     try {
-      st = connProv.getPreparedStatement(query);
+      if (guard != null) {
+        guard.check(connProv.getConnection(), query);
+        guarded = true;
+        st = guard.prepare(connProv.getConnection(), query);
+      } else {
+        st = connProv.getPreparedStatement(query);
+      }
       logIfDebug(LOG, "Executing query: " + query);
       boolean execution = st.execute();
       logIfDebug(LOG, "Query executed and result: " + execution);
@@ -237,12 +254,17 @@ public class Utils {
       if (execution) {//
         JSONArray rows = new JSONArray();
         var rs = st.getResultSet();
+        // Resolve the column names once per result set instead of once per cell
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+          columnNames[i - 1] = metaData.getColumnName(i);
+        }
         while (rs.next()) {
           JSONObject row = new JSONObject();
-          for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            String columnName = rs.getMetaData().getColumnName(i);
-            Object value = rs.getObject(i);
-            row.put(columnName, value);
+          for (int i = 1; i <= columnCount; i++) {
+            row.put(columnNames[i - 1], rs.getObject(i));
           }
           rows.put(row);
         }
@@ -251,18 +273,156 @@ public class Utils {
         response.put("result", st.getUpdateCount());
       }
       st.close();
-
       return response;
+    } catch (OBException e) {
+      throw e;
     } catch (Exception e) {
 
       logIfDebug(LOG, "Error executing query: " + e.getMessage());
       throw new OBException(String.format(errmsg, query, e.getMessage()));
     } finally {
+      if (guard != null) {
+        guard.release(st);
+      }
       connProv.releasePreparedStatement(st);
+      if (guarded) {
+        // The DAL transaction goes on after the query, so it must not keep the timeout of the guard
+        restoreTimeout(guard, connProv);
+      }
     }
 
   }
 
+  private static void restoreTimeout(QueryGuard guard, DalConnectionProvider connProv) {
+    try {
+      guard.restore(connProv.getConnection());
+    } catch (Exception e) {
+      // A failed query aborts the transaction, and its rollback discards the timeout anyway
+      logIfDebug(LOG, "Statement timeout not restored: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Executes a list of statements, typically DDL, as a single batch in one transaction.
+   * <p>
+   * All the statements are sent with {@code addBatch}/{@code executeBatch} on a single connection, so the batch
+   * costs one round trip and one transaction instead of one of each per statement. If any statement fails the
+   * whole batch is rolled back, leaving the database as it was before the call.
+   * </p>
+   * <p>
+   * The batch is committed on its own, independently of the DAL transaction. DDL that must succeed or fail together
+   * with the AD records registered for it should use {@link #executeBatch(Connection, List)} on the DAL connection.
+   * </p>
+   *
+   * @param statements
+   *     the statements to execute, in order
+   * @return a JSONObject whose "result" array holds, for each statement, the statement and its update count
+   * @throws OBException
+   *     if any statement fails; the message includes the failing statement and the batch is rolled back
+   */
+  public static JSONObject executeBatch(List<String> statements) {
+    if (statements == null || statements.isEmpty()) {
+      return new JSONObject();
+    }
+    var connProv = new DalConnectionProvider(false);
+    Connection conn = null;
+    boolean committed = false;
+    try {
+      conn = connProv.getTransactionConnection();
+      JSONObject response = executeBatch(conn, statements);
+      connProv.releaseCommitConnection(conn);
+      committed = true;
+      return response;
+    } catch (OBException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_NotValidQuery"),
+          String.join(";\n", statements), e.getMessage()));
+    } finally {
+      if (conn != null && !committed) {
+        try {
+          connProv.releaseRollbackConnection(conn);
+        } catch (SQLException e) {
+          LOG.error("Error rolling back batch: {}", e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Executes a list of statements as a single batch on the given connection, within its current transaction.
+   * <p>
+   * The transaction is neither committed nor rolled back: on the DAL connection the statements are committed or
+   * rolled back together with the AD records of the request, so a failed registration never leaves orphan tables
+   * or columns behind. A failed statement aborts the transaction, which must then be rolled back.
+   * </p>
+   *
+   * @param conn
+   *     the connection, with autocommit disabled
+   * @param statements
+   *     the statements to execute, in order
+   * @return a JSONObject whose "result" array holds, for each statement, the statement and its update count
+   * @throws OBException
+   *     if any statement fails; the message includes the failing statement
+   */
+  public static JSONObject executeBatch(Connection conn, List<String> statements) {
+    JSONObject response = new JSONObject();
+    if (statements == null || statements.isEmpty()) {
+      return response;
+    }
+    String errmsg = OBMessageUtils.messageBD("COPDEV_NotValidQuery");
+    String failed = String.join(";\n", statements);
+    try (Statement st = conn.createStatement()) {
+      for (String statement : statements) {
+        logIfDebug(LOG, "Adding statement to batch: " + statement);
+        st.addBatch(statement);
+      }
+      int[] updateCounts;
+      try {
+        updateCounts = st.executeBatch();
+      } catch (BatchUpdateException e) {
+        failed = statements.get(Math.min(getFailedIndex(e.getUpdateCounts()), statements.size() - 1));
+        throw e;
+      }
+      JSONArray results = new JSONArray();
+      for (int i = 0; i < statements.size(); i++) {
+        results.put(new JSONObject().put("statement", statements.get(i))
+            .put("updateCount", i < updateCounts.length ? updateCounts[i] : Statement.SUCCESS_NO_INFO));
+      }
+      response.put("warnings", st.getWarnings());
+      response.put("result", results);
+      return response;
+    } catch (Exception e) {
+      logIfDebug(LOG, "Error executing batch: " + e.getMessage());
+      throw new OBException(String.format(errmsg, failed, getRootMessage(e)));
+    }
+  }
+
+  /**
+   * Returns the index of the first failed statement of a batch, based on the update counts reported by the driver.
+   */
+  private static int getFailedIndex(int[] updateCounts) {
+    if (updateCounts == null) {
+      return 0;
+    }
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+        return i;
+      }
+    }
+    return updateCounts.length;
+  }
+
+  /**
+   * Returns the message of the next exception of a batch failure, which holds the actual database error.
+   */
+  private static String getRootMessage(Exception e) {
+    if (e instanceof SQLException && ((SQLException) e).getNextException() != null) {
+      return ((SQLException) e).getNextException().getMessage();
+    }
+    return e.getMessage();
+  }
+
   /**
    * Retrieves a `Table` object based on its database table name.
    * <p>
@@ -275,13 +435,13 @@ public class Utils {
    * @return The `Table` object matching the provided database table name, or null if no match is found.
    */
   public static Table getTableByDBName(String name) {
-    Table table;
     // Trying to get the table by name, because maybe the name is the name instead of the ID
-    OBCriteria<Table> criteria = OBDal.getInstance().createCriteria(Table.class);
-    criteria.add(Restrictions.ilike(Table.PROPERTY_DBTABLENAME, name));
-    criteria.setMaxResults(1);
-    table = (Table) criteria.uniqueResult();
-    return table;
+    return MetadataCache.getEntity(MetadataCache.TABLE_BY_DB_NAME, StringUtils.lowerCase(name), Table.class, () -> {
+      OBCriteria<Table> criteria = OBDal.getInstance().createCriteria(Table.class);
+      criteria.add(Restrictions.ilike(Table.PROPERTY_DBTABLENAME, name));
+      criteria.setMaxResults(1);
+      return (Table) criteria.uniqueResult();
+    });
   }
 
 
@@ -295,14 +455,7 @@ public class Utils {
    *     if no matching data package is found or if the module is not in development.
    */
   public static DataPackage getDataPackage(Module module) {
-    if (Boolean.FALSE.equals(module.isInDevelopment())) {
-      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModNotDev"), module.getName()));
-    }
-    List<DataPackage> dataPackList = module.getDataPackageList();
-    if (dataPackList.isEmpty()) {
-      throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_ModNotDP"), module.getName()));
-    }
-    return dataPackList.get(0);
+    return TableRegistrationUtils.getDataPackage(module);
   }
 
 }
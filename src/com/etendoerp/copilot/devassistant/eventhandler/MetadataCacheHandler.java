@@ -0,0 +1,100 @@
+package com.etendoerp.copilot.devassistant.eventhandler;
+
+import javax.enterprise.event.Observes;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.model.Property;
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.client.kernel.event.TransactionCompletedEvent;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.module.DataPackage;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.module.ModuleDBPrefix;
+
+import com.etendoerp.copilot.devassistant.MetadataCache;
+
+/**
+ * Event handler that evicts from the {@link MetadataCache} the keys of the AD metadata that is written: the Java
+ * package, DB prefix and data package of a module, and the DB name of a table. The evictions are repeated when the
+ * transaction ends.
+ */
+public class MetadataCacheHandler extends EntityPersistenceEventObserver {
+  private static Entity[] entities = {
+      ModelProvider.getInstance().getEntity(Module.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(ModuleDBPrefix.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DataPackage.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Table.ENTITY_NAME) };
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    evict(event);
+  }
+
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    evict(event);
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    evict(event);
+  }
+
+  public void onTransactionCompleted(@Observes TransactionCompletedEvent event) {
+    MetadataCache.transactionCompleted();
+  }
+
+  private void evict(EntityPersistenceEvent event) {
+    String entityName = event.getTargetInstance().getEntity().getName();
+    if (StringUtils.equals(entityName, Module.ENTITY_NAME)) {
+      evict(event, MetadataCache.MODULE_BY_JAVA_PACKAGE, Module.PROPERTY_JAVAPACKAGE);
+      evict(event, MetadataCache.PREFIX_BY_MODULE, Module.PROPERTY_ID);
+      evict(event, MetadataCache.DATA_PACKAGE_BY_MODULE, Module.PROPERTY_ID);
+    } else if (StringUtils.equals(entityName, ModuleDBPrefix.ENTITY_NAME)) {
+      evict(event, MetadataCache.MODULE_BY_PREFIX, ModuleDBPrefix.PROPERTY_NAME);
+      evict(event, MetadataCache.PREFIX_BY_MODULE, ModuleDBPrefix.PROPERTY_MODULE);
+    } else if (StringUtils.equals(entityName, DataPackage.ENTITY_NAME)) {
+      evict(event, MetadataCache.DATA_PACKAGE_BY_MODULE, DataPackage.PROPERTY_MODULE);
+    } else {
+      evict(event, MetadataCache.TABLE_BY_DB_NAME, Table.PROPERTY_DBTABLENAME);
+    }
+  }
+
+  /**
+   * Evicts the keys given by the current value of a property and, on an update, by its previous value.
+   */
+  private void evict(EntityPersistenceEvent event, MetadataCache.Region region, String propertyName) {
+    Property property = event.getTargetInstance().getEntity().getProperty(propertyName);
+    MetadataCache.evict(region, toKey(region, event.getCurrentState(property)));
+    if (event instanceof EntityUpdateEvent) {
+      MetadataCache.evict(region, toKey(region, ((EntityUpdateEvent) event).getPreviousState(property)));
+    }
+  }
+
+  private static String toKey(MetadataCache.Region region, Object value) {
+    if (value instanceof BaseOBObject) {
+      return (String) ((BaseOBObject) value).getId();
+    }
+    String key = value != null ? value.toString() : null;
+    // The tables are looked up by their DB name in lower case
+    return region == MetadataCache.TABLE_BY_DB_NAME ? StringUtils.lowerCase(key) : key;
+  }
+}
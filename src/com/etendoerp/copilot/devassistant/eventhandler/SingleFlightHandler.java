@@ -0,0 +1,63 @@
+package com.etendoerp.copilot.devassistant.eventhandler;
+
+import javax.enterprise.event.Observes;
+
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.client.kernel.event.TransactionCompletedEvent;
+import org.openbravo.model.ad.datamodel.Column;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.ui.Field;
+import org.openbravo.model.ad.ui.Tab;
+import org.openbravo.model.ad.ui.Window;
+
+import com.etendoerp.copilot.devassistant.SingleFlight;
+
+/**
+ * Event handler that drops the responses kept by {@link SingleFlight} when the AD metadata read by the coalesced
+ * webhooks is written, and again when the transaction that wrote it is committed or rolled back.
+ */
+public class SingleFlightHandler extends EntityPersistenceEventObserver {
+  private static Entity[] entities = {
+      ModelProvider.getInstance().getEntity(Module.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Window.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Tab.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Field.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Table.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(Column.ENTITY_NAME) };
+
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    SingleFlight.invalidate();
+  }
+
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    SingleFlight.invalidate();
+  }
+
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    SingleFlight.invalidate();
+  }
+
+  public void onTransactionCompleted(@Observes TransactionCompletedEvent event) {
+    SingleFlight.transactionCompleted();
+  }
+}
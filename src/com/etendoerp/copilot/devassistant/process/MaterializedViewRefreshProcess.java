@@ -0,0 +1,20 @@
+package com.etendoerp.copilot.devassistant.process;
+
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.service.db.DalBaseProcess;
+
+import com.etendoerp.copilot.devassistant.MaterializedViews;
+
+/**
+ * Background process that refreshes concurrently the materialized views created by the assistant. It is meant to
+ * be scheduled from the Process Request window; the frequency of the schedule is the shortest refresh interval,
+ * and views created with a longer "RefreshMinutes" are skipped until their interval has elapsed.
+ */
+public class MaterializedViewRefreshProcess extends DalBaseProcess {
+
+  @Override
+  protected void doExecute(ProcessBundle bundle) throws Exception {
+    int refreshed = MaterializedViews.refreshDue();
+    bundle.getLogger().logln(String.format("%d materialized views refreshed", refreshed));
+  }
+}
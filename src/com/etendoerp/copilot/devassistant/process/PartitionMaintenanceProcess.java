@@ -0,0 +1,47 @@
+package com.etendoerp.copilot.devassistant.process;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.scheduling.ProcessLogger;
+import org.openbravo.service.db.DalBaseProcess;
+
+import com.etendoerp.copilot.devassistant.TablePartitioning;
+
+/**
+ * Background process that creates the future monthly partitions of the range partitioned tables created by the
+ * assistant. It is meant to be scheduled, for example daily, from the Process Request window.
+ * <p>
+ * The number of months of partitions kept ahead of the current one is read from the
+ * {@value #PROP_MONTHS_AHEAD} property of Openbravo.properties, with the same limits as the
+ * partitioned tables created by the webhooks. The tables whose partitions cannot be created are reported in the
+ * process log.
+ * </p>
+ */
+public class PartitionMaintenanceProcess extends DalBaseProcess {
+
+  public static final String PROP_MONTHS_AHEAD = "copdev.partition.monthsAhead";
+
+  @Override
+  protected void doExecute(ProcessBundle bundle) throws Exception {
+    ProcessLogger logger = bundle.getLogger();
+    int monthsAhead = getMonthsAhead();
+    List<String> failed = TablePartitioning.createFuturePartitions(monthsAhead);
+    logger.logln(String.format("Partitions created %d months ahead", monthsAhead));
+    if (!failed.isEmpty()) {
+      logger.logln(String.format("Partitions could not be created for: %s", String.join(", ", failed)));
+    }
+  }
+
+  private static int getMonthsAhead() {
+    Properties props = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+    String value = props != null ? props.getProperty(PROP_MONTHS_AHEAD) : null;
+    if (StringUtils.isNumeric(StringUtils.trim(value))) {
+      return TablePartitioning.clampMonthsAhead(Integer.parseInt(value.trim()));
+    }
+    return TablePartitioning.DEFAULT_MONTHS_AHEAD;
+  }
+}
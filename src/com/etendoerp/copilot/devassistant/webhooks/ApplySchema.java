@@ -0,0 +1,528 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.datamodel.Column;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.domain.Reference;
+import org.openbravo.model.ad.module.DataPackage;
+import org.openbravo.model.ad.module.Module;
+
+import com.etendoerp.copilot.devassistant.ConstraintNameAllocator;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.SupportingIndexes;
+import com.etendoerp.copilot.devassistant.TablePartitioning;
+import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
+import com.etendoerp.copilot.devassistant.TableStorage;
+import com.etendoerp.copilot.devassistant.Utils;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that applies a declarative schema spec to a module: list references, tables and their columns, with the
+ * foreign keys implied by the references of the columns.
+ * <p>
+ * The spec is validated and turned into a plan before anything is written. All the DDL of the plan runs in a single
+ * batch, so either every table and column is created or none is. Then all the AD records are registered with a
+ * single flush, the standard columns of the new tables are registered with the register columns process, and the
+ * IDs of the new records are returned. If the AD registration fails, the new tables are dropped.
+ * </p>
+ * <p>
+ * The spec has the following shape. The names, the values of the references and the column name and reference of
+ * each column are required:
+ * </p>
+ * <pre>
+ * {
+ *   "references": [{"name": "Sale Status", "values": "Draft,Completed", "description": "", "help": ""}],
+ *   "tables": [{
+ *     "name": "sale", "dbTableName": "", "javaClass": "", "dataAccessLevel": "3", "description": "", "help": "",
+ *     "columns": [{"name": "Status", "columnNameDB": "status", "reference": "Sale Status", "referenceID": "",
+ *                  "defaultValue": "", "canBeNull": true}]
+ *   }]
+ * }
+ * </pre>
+ * <p>
+ * A column gets its reference by ID, or by name among the references of the spec and the existing ones.
+ * TableDir and Table references may point to tables of the same spec.
+ * </p>
+ */
+public class ApplySchema extends BaseWebhookService {
+
+  private static final Logger LOG = LogManager.getLogger();
+  private static final String ERROR = "error";
+  private static final String NAME = "name";
+  private static final String COLUMNS = "columns";
+  private static final String REFERENCES = "references";
+  private static final String TABLES = "tables";
+  private static final String DESCRIPTION = "description";
+  private static final String HELP = "help";
+
+  /**
+   * Applies the schema spec to a module.
+   *
+   * @param parameter
+   *     A map containing the "ModuleID", the "Spec" as a JSON string and, optionally, "RegisterColumns" set to
+   *     "false" to skip the registration of the standard columns.
+   * @param responseVars
+   *     A map that will hold the IDs of the new records in "response", or the error.
+   */
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, LOG);
+    OBContext.setAdminMode(true);
+    try {
+      Object[] moduleAndPrefix = TableRegistrationUtils.getModuleAndPrefix(parameter.get("ModuleID"));
+      Module module = (Module) moduleAndPrefix[0];
+      String prefix = (String) moduleAndPrefix[1];
+      ModuleLock.lock(prefix);
+      DataPackage dataPackage = TableRegistrationUtils.getDataPackage(module);
+      JSONObject spec = new JSONObject(StringUtils.defaultIfBlank(parameter.get("Spec"), "{}"));
+
+      SchemaPlan plan = SchemaPlan.of(spec, prefix);
+      LOG.debug("Schema plan with {} tables and {} statements", plan.tables.size(), plan.ddl.size());
+      JSONObject response = new JSONObject();
+      response.put("ddl", Utils.executeBatch(plan.ddl).optJSONArray("result"));
+
+      try {
+        register(plan, module, dataPackage, response);
+      } catch (Exception e) {
+        // The tables are dropped while the module lock is still held, as the rollback releases it
+        dropTables(plan);
+        OBDal.getInstance().rollbackAndClose();
+        throw e;
+      }
+      if (!StringUtils.equalsIgnoreCase(parameter.get("RegisterColumns"), "false")) {
+        JSONArray registerColumns = new JSONArray();
+        for (TablePlan table : plan.tables) {
+          registerColumns.put(TableRegistrationUtils.executeRegisterColumns(table.adTable.getId()));
+        }
+        response.put("registerColumns", registerColumns);
+      }
+      responseVars.put("response", response.toString());
+    } catch (Exception e) {
+      LOG.error("Error applying the schema spec", e);
+      responseVars.put(ERROR, e.getMessage());
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
+  /**
+   * Registers the references, tables and columns of the plan with a single flush and puts their IDs in the response.
+   */
+  private static void register(SchemaPlan plan, Module module, DataPackage dataPackage, JSONObject response)
+      throws JSONException {
+    for (ReferencePlan reference : plan.references.values()) {
+      reference.adReference = CreateReference.createReference(reference.name, module, reference.help,
+          reference.description);
+      CreateReference.createReferenceListItems(reference.values, reference.adReference);
+    }
+    for (TablePlan table : plan.tables) {
+      table.adTable = TableRegistrationUtils.newAdTable(dataPackage, table.javaClass, table.dbTableName,
+          table.dataAccessLevel, table.description, table.help, false);
+      for (ColumnPlan column : table.columns) {
+        Reference reference = column.reference.resolve();
+        column.adColumn = CreateColumn.createAdColumn(table.adTable, module, column.name, column.columnName,
+            reference, column.defaultValue);
+      }
+    }
+    OBDal.getInstance().flush();
+
+    JSONObject references = new JSONObject();
+    for (ReferencePlan reference : plan.references.values()) {
+      references.put(reference.name, reference.adReference.getId());
+    }
+    JSONArray tables = new JSONArray();
+    for (TablePlan table : plan.tables) {
+      JSONObject columns = new JSONObject();
+      for (ColumnPlan column : table.columns) {
+        columns.put(column.columnName, column.adColumn.getId());
+      }
+      tables.put(new JSONObject().put(NAME, table.dbTableName).put("id", table.adTable.getId()).put(COLUMNS,
+          columns));
+    }
+    response.put(REFERENCES, references);
+    response.put(TABLES, tables);
+  }
+
+  /**
+   * Drops the tables created by the plan after a failed AD registration. The plan only creates tables that did not
+   * exist, so no previous table is dropped.
+   */
+  private static void dropTables(SchemaPlan plan) {
+    List<String> drops = plan.tables.stream()
+        .map(table -> String.format("DROP TABLE IF EXISTS public.%s CASCADE", table.dbTableName))
+        .collect(Collectors.toList());
+    try {
+      Utils.executeBatch(drops);
+    } catch (OBException e) {
+      LOG.error("Error dropping the tables of a failed schema spec: {}", e.getMessage(), e);
+    }
+  }
+
+  private static OBException invalidSpec(String detail) {
+    return new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidSchemaSpec"), detail));
+  }
+
+  /**
+   * The validated spec, with the names and the DDL computed.
+   */
+  static class SchemaPlan {
+    private final Map<String, ReferencePlan> references = new LinkedHashMap<>();
+    private final List<TablePlan> tables = new ArrayList<>();
+    private final List<String> ddl = new ArrayList<>();
+
+    /**
+     * Validates the spec and computes the plan.
+     *
+     * @param spec
+     *     the schema spec
+     * @param prefix
+     *     the lower-case DB prefix of the module
+     * @return the plan
+     * @throws OBException
+     *     if the spec is not valid or a table already exists
+     * @throws SQLException
+     *     if the database catalog cannot be read
+     */
+    static SchemaPlan of(JSONObject spec, String prefix) throws JSONException, SQLException {
+      SchemaPlan plan = new SchemaPlan();
+      JSONArray referencesSpec = spec.optJSONArray(REFERENCES);
+      for (int i = 0; referencesSpec != null && i < referencesSpec.length(); i++) {
+        JSONObject referenceSpec = referencesSpec.getJSONObject(i);
+        ReferencePlan reference = new ReferencePlan(required(referenceSpec, NAME), required(referenceSpec, "values"),
+            referenceSpec.optString(DESCRIPTION, null), referenceSpec.optString(HELP, null));
+        if (plan.references.put(reference.name, reference) != null) {
+          throw invalidSpec("duplicated reference " + reference.name);
+        }
+      }
+
+      JSONArray tablesSpec = spec.optJSONArray(TABLES);
+      if (tablesSpec == null || tablesSpec.length() == 0) {
+        throw invalidSpec("no tables");
+      }
+      Set<String> tableNames = new HashSet<>();
+      Set<String> partitionedTables = new HashSet<>();
+      for (int i = 0; i < tablesSpec.length(); i++) {
+        TablePlan table = new TablePlan(tablesSpec.getJSONObject(i), prefix);
+        if (!tableNames.add(table.dbTableName)) {
+          throw invalidSpec("duplicated table " + table.dbTableName);
+        }
+        if (table.partitioning != null) {
+          partitionedTables.add(table.dbTableName);
+        }
+        plan.tables.add(table);
+      }
+      checkNewTables(tableNames);
+      plan.resolveReferences(tableNames, partitionedTables);
+      plan.buildDDL(prefix);
+      return plan;
+    }
+
+    /**
+     * @return the statements of the plan, in execution order
+     */
+    List<String> getDDL() {
+      return ddl;
+    }
+
+    /**
+     * Resolves the references of the columns: first the references of the spec, then the existing references by ID
+     * and by name, each with a single query. Then checks the tables the foreign keys of the columns point to.
+     */
+    private void resolveReferences(Set<String> tableNames, Set<String> partitionedTables) {
+      Set<String> ids = new HashSet<>();
+      Set<String> names = new HashSet<>();
+      for (TablePlan table : tables) {
+        for (ColumnPlan column : table.columns) {
+          if (StringUtils.isNotBlank(column.referenceId)) {
+            ids.add(column.referenceId);
+          } else if (!references.containsKey(column.referenceName)) {
+            names.add(column.referenceName);
+          }
+        }
+      }
+      Map<String, Reference> byId = new HashMap<>();
+      Map<String, Reference> byName = new HashMap<>();
+      for (Reference reference : queryReferences("id", ids)) {
+        byId.put(reference.getId(), reference);
+      }
+      for (Reference reference : queryReferences(NAME, names)) {
+        byName.putIfAbsent(reference.getName(), reference);
+      }
+      for (TablePlan table : tables) {
+        for (ColumnPlan column : table.columns) {
+          if (StringUtils.isNotBlank(column.referenceId)) {
+            column.reference = ResolvedReference.of(byId.get(column.referenceId));
+          } else if (references.containsKey(column.referenceName)) {
+            column.reference = references.get(column.referenceName);
+          } else {
+            column.reference = ResolvedReference.of(byName.get(column.referenceName));
+          }
+          if (column.reference == null) {
+            throw invalidSpec(String.format("reference %s of column %s.%s not found",
+                StringUtils.defaultIfBlank(column.referenceId, column.referenceName), table.dbTableName,
+                column.columnName));
+          }
+          column.checkTarget(table.dbTableName, tableNames, partitionedTables);
+        }
+      }
+    }
+
+    private static List<Reference> queryReferences(String property, Collection<String> values) {
+      if (values.isEmpty()) {
+        return new ArrayList<>();
+      }
+      OBQuery<Reference> query = OBDal.getInstance()
+          .createQuery(Reference.class, String.format("as r where r.%s in (:values)", property))
+          .setNamedParameter("values", values);
+      query.setFilterOnReadableClients(false);
+      query.setFilterOnReadableOrganization(false);
+      return query.list();
+    }
+
+    /**
+     * Builds the DDL of the plan: the tables first, then the columns, then the foreign keys and their indexes, so
+     * that a foreign key can point to any table of the spec.
+     */
+    private void buildDDL(String prefix) {
+      ConstraintNameAllocator names = ConstraintNameAllocator.forPrefixes(List.of(prefix));
+      List<String> columns = new ArrayList<>();
+      List<String> foreignKeys = new ArrayList<>();
+      for (TablePlan table : tables) {
+        ddl.addAll(CreateAndRegisterTable.buildCreateTableStatements(names, prefix, table.dbTableName, false,
+            table.partitioning, table.storage));
+        for (ColumnPlan column : table.columns) {
+          columns.add(column.reference.getDDL(names, prefix, table.dbTableName, column));
+          String target = column.reference.getFKTarget(column.columnName);
+          if (target != null) {
+            Pair<String, String> fk = CreateColumn.buildFKQuery(column.reference.getDDLReference(), column.columnName,
+                prefix, table.dbTableName, false, names);
+            foreignKeys.add(fk.getRight());
+            foreignKeys.add(SupportingIndexes.buildCreateIndexQuery(
+                names.allocate(prefix, table.dbTableName, target, SupportingIndexes.INDEX_SUFFIX), table.dbTableName,
+                column.columnName, false));
+          }
+        }
+      }
+      ddl.addAll(columns);
+      ddl.addAll(foreignKeys);
+    }
+
+    /**
+     * Rejects the spec if any of its tables is already registered in the AD or exists in the database.
+     */
+    private static void checkNewTables(Set<String> tableNames) throws SQLException {
+      OBQuery<Table> query = OBDal.getInstance()
+          .createQuery(Table.class, "as t where lower(t.dBTableName) in (:names)")
+          .setNamedParameter("names", tableNames);
+      query.setFilterOnReadableClients(false);
+      query.setFilterOnReadableOrganization(false);
+      query.setMaxResult(1);
+      Table registered = query.uniqueResult();
+      if (registered != null) {
+        throw invalidSpec(String.format(OBMessageUtils.messageBD("COPDEV_TableNameAlreadyUse")) + " "
+            + registered.getDBTableName());
+      }
+      Set<String> existing = CheckTablesColumnHook.loadCatalogColumns(tableNames).keySet();
+      if (!existing.isEmpty()) {
+        throw invalidSpec("tables already exist in the database: " + existing);
+      }
+    }
+  }
+
+  /**
+   * The reference of a column, either an existing one or one of the spec.
+   */
+  interface ResolvedReference {
+
+    static ResolvedReference of(Reference reference) {
+      return reference != null ? new ExistingReference(reference) : null;
+    }
+
+    Reference resolve();
+
+    /**
+     * @return the reference used to build the DDL; a list reference of the spec uses the List base reference
+     */
+    Reference getDDLReference();
+
+    default String getDDL(ConstraintNameAllocator names, String prefix, String tableName, ColumnPlan column) {
+      return CreateColumn.buildAddColumnQuery(names, prefix, tableName, column.columnName, getDDLReference(),
+          column.defaultValue, column.canBeNull);
+    }
+
+    default String getFKTarget(String columnName) {
+      return CreateColumn.getFKTargetTable(getDDLReference(), columnName);
+    }
+  }
+
+  private static class ExistingReference implements ResolvedReference {
+    private final Reference reference;
+
+    ExistingReference(Reference reference) {
+      this.reference = reference;
+    }
+
+    @Override
+    public Reference resolve() {
+      return reference;
+    }
+
+    @Override
+    public Reference getDDLReference() {
+      return reference;
+    }
+  }
+
+  /**
+   * A list reference of the spec, created with its items during the registration.
+   */
+  private static class ReferencePlan implements ResolvedReference {
+    private static final String LIST_REFERENCE_ID = "17";
+    private final String name;
+    private final String values;
+    private final String description;
+    private final String help;
+    private Reference adReference;
+
+    ReferencePlan(String name, String values, String description, String help) {
+      this.name = name;
+      this.values = values;
+      this.description = StringUtils.defaultIfBlank(description, name);
+      this.help = StringUtils.defaultIfBlank(help, name);
+    }
+
+    @Override
+    public Reference resolve() {
+      return adReference;
+    }
+
+    @Override
+    public Reference getDDLReference() {
+      return OBDal.getInstance().get(Reference.class, LIST_REFERENCE_ID);
+    }
+
+    @Override
+    public String getFKTarget(String columnName) {
+      return null;
+    }
+  }
+
+  /**
+   * A table of the spec.
+   */
+  private static class TablePlan {
+    private final String dbTableName;
+    private final String javaClass;
+    private final String dataAccessLevel;
+    private final String description;
+    private final String help;
+    private final TablePartitioning partitioning;
+    private final TableStorage storage;
+    private final List<ColumnPlan> columns = new ArrayList<>();
+    private Table adTable;
+
+    TablePlan(JSONObject spec, String prefix) throws JSONException {
+      String name = StringUtils.lowerCase(required(spec, NAME));
+      String dbTableName = StringUtils.lowerCase(StringUtils.trimToNull(spec.optString("dbTableName", null)));
+      this.dbTableName = CreateAndRegisterTable.determineTableName(name, prefix, dbTableName);
+      this.javaClass = TableRegistrationUtils.determineJavaClassName(name, spec.optString("javaClass", null));
+      this.dataAccessLevel = spec.optString("dataAccessLevel", null);
+      this.description = spec.optString(DESCRIPTION, null);
+      this.help = spec.optString(HELP, null);
+      this.partitioning = TablePartitioning.of(spec.optString("partitionBy", null),
+          spec.optString("partitionKey", null), spec.optString("partitionValues", null),
+          spec.optString("partitionsAhead", null));
+      this.storage = TableStorage.of(spec.optString("storageProfile", null), spec.optString("fillFactor", null),
+          null, null, spec.optString("unlogged", null), spec.optString("tablespace", null));
+      JSONArray columnsSpec = spec.optJSONArray(COLUMNS);
+      Set<String> columnNames = new HashSet<>();
+      for (int i = 0; columnsSpec != null && i < columnsSpec.length(); i++) {
+        ColumnPlan column = new ColumnPlan(columnsSpec.getJSONObject(i));
+        if (!columnNames.add(column.columnName)) {
+          throw invalidSpec("duplicated column " + this.dbTableName + "." + column.columnName);
+        }
+        columns.add(column);
+      }
+    }
+  }
+
+  /**
+   * A column of the spec.
+   */
+  private static class ColumnPlan {
+    private final String name;
+    private final String columnName;
+    private final String referenceId;
+    private final String referenceName;
+    private final String defaultValue;
+    private final boolean canBeNull;
+    private ResolvedReference reference;
+    private Column adColumn;
+
+    ColumnPlan(JSONObject spec) throws JSONException {
+      this.columnName = StringUtils.lowerCase(required(spec, "columnNameDB"));
+      this.name = StringUtils.defaultIfBlank(spec.optString(NAME, null), columnName);
+      this.referenceId = StringUtils.trimToNull(spec.optString("referenceID", null));
+      this.referenceName = StringUtils.trimToNull(spec.optString("reference", null));
+      if (referenceId == null && referenceName == null) {
+        throw invalidSpec("no reference for column " + columnName);
+      }
+      this.defaultValue = StringUtils.trimToNull(spec.optString("defaultValue", null));
+      this.canBeNull = spec.optBoolean("canBeNull", true);
+    }
+
+    /**
+     * Checks that the table a TableDir or Table column points to exists, in the spec or in the AD, and that it is
+     * not partitioned, either by the spec or in the database.
+     */
+    private void checkTarget(String tableName, Set<String> tableNames, Set<String> partitionedTables) {
+      String target = reference.getFKTarget(columnName);
+      if (target == null) {
+        return;
+      }
+      if (partitionedTables.contains(StringUtils.lowerCase(target))) {
+        throw TablePartitioning.partitionedFKTarget(target);
+      }
+      if (tableNames.contains(StringUtils.lowerCase(target))) {
+        return;
+      }
+      if (Utils.getTableByDBName(target) == null) {
+        throw invalidSpec(String.format("table %s referenced by column %s.%s not found", target, tableName,
+            columnName));
+      }
+      TablePartitioning.checkFKTarget(target);
+    }
+  }
+
+  private static String required(JSONObject spec, String key) {
+    String value = StringUtils.trimToNull(spec.optString(key, null));
+    if (value == null) {
+      throw invalidSpec(String.format("%s is required in %s", key, spec));
+    }
+    return value;
+  }
+}
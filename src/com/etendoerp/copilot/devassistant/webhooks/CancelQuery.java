@@ -0,0 +1,39 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.dal.core.OBContext;
+
+import com.etendoerp.copilot.devassistant.QueryGuard;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that cancels a query started with a {@code QueryID}, typically called when the agent that is waiting for
+ * the query disconnects, so the query stops instead of running until the statement timeout.
+ * <p>
+ * Only the queries of the calling user can be cancelled. The response tells whether a running query was found and
+ * cancelled.
+ * </p>
+ */
+public class CancelQuery extends BaseWebhookService {
+
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, log);
+    try {
+      boolean cancelled = QueryGuard.cancel(OBContext.getOBContext().getUser().getId(),
+          parameter.get(ExecutePaginatedQuery.QUERY_ID));
+      responseVars.put("response", new JSONObject().put("cancelled", cancelled).toString());
+    } catch (Exception e) {
+      log.error("Error cancelling query", e);
+      responseVars.put("error", e.getMessage());
+    }
+  }
+}
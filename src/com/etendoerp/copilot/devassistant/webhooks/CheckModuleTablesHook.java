@@ -0,0 +1,251 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.datamodel.Column;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.ad.module.Module;
+
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.SafeDDLExecutor;
+import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook to validate, in a single call, every table that has columns of a module.
+ * <p>
+ * The tables are enumerated with one query and the database catalog of all of them is loaded with another one.
+ * Each table is then registered, if requested, and validated with the same rules as {@link CheckTablesColumnHook},
+ * in parallel, on worker threads that run with the caller's context and their own DAL session. The workers come
+ * from a pool shared by all the requests, so concurrent calls cannot start an unbounded number of threads. The
+ * module is locked with {@link ModuleLock} on the connection of the request for the whole validation, which the
+ * request transaction keeps open until the workers finish. The result is one consolidated report.
+ * </p>
+ */
+public class CheckModuleTablesHook extends BaseWebhookService {
+
+  private static final Logger log = LogManager.getLogger();
+  public static final String ERROR = "error";
+  private static final int DEFAULT_THREADS = 4;
+  private static final int MAX_THREADS = 8;
+  private static final int MAX_QUEUED_WORKERS = MAX_THREADS * 4;
+  private static final ThreadPoolExecutor WORKERS = newWorkers();
+
+  /**
+   * Handles the GET request to validate the tables of a module.
+   *
+   * @param parameter
+   *     A {@link Map} containing the "ModuleID" and the optional "RegisterColumns" (true to synchronize the
+   *     columns of every table before validating), "Threads" and "SafeDDL" parameters.
+   * @param responseVars
+   *     A {@link Map} to store the consolidated report in "message", or the error.
+   */
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, log);
+    try {
+      String moduleID = parameter.get("ModuleID");
+      if (StringUtils.isBlank(moduleID)) {
+        responseVars.put(ERROR, "No module ID provided for validation.");
+        return;
+      }
+      Module module = OBDal.getInstance().get(Module.class, moduleID);
+      if (module == null) {
+        responseVars.put(ERROR, "Module with ID " + moduleID + " not found.");
+        return;
+      }
+
+      // Held until the request transaction ends, that is, after every worker has finished
+      ModuleLock.lock(module);
+
+      List<Table> tables = getModuleTables(moduleID);
+      boolean registerColumns = StringUtils.equalsIgnoreCase(parameter.get("RegisterColumns"), "true");
+      // The catalog of the database does not depend on the registration of the columns in the AD
+      Map<String, Map<String, CheckTablesColumnHook.DBColumnInfo>> catalog = CheckTablesColumnHook.loadCatalogColumns(
+          tables.stream().map(Table::getDBTableName).collect(Collectors.toList()));
+
+      SafeDDLExecutor safeDDL = SafeDDLExecutor.isEnabled(parameter.get("SafeDDL"))
+          ? SafeDDLExecutor.fromProperties() : null;
+      JSONObject report = validateTables(tables, moduleID, catalog, getThreads(parameter.get("Threads")),
+          registerColumns, safeDDL);
+      responseVars.put("message", report.toString());
+    } catch (Exception e) {
+      log.error("Error during module validation", e);
+      responseVars.put(ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Retrieves the tables that have at least one column of the given module.
+   *
+   * @param moduleID
+   *     The ID of the module.
+   * @return The list of tables, ordered by name.
+   */
+  private static List<Table> getModuleTables(String moduleID) {
+    OBQuery<Table> query = OBDal.getInstance()
+        .createQuery(Table.class,
+            "as t where exists (select 1 from " + Column.ENTITY_NAME + " as c where c.table.id = t.id and c.module.id = :moduleID) order by t.dBTableName");
+    query.setNamedParameter("moduleID", moduleID);
+    return query.list();
+  }
+
+  private static ThreadPoolExecutor newWorkers() {
+    AtomicInteger counter = new AtomicInteger();
+    return new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_QUEUED_WORKERS), runnable -> {
+          Thread thread = new Thread(runnable, "copdev-module-check-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Validates the tables in parallel and builds the consolidated report.
+   *
+   * @param tables
+   *     The tables to validate.
+   * @param moduleID
+   *     The ID of the module whose columns are validated.
+   * @param catalog
+   *     The database catalog of the tables, grouped by lower-case table name.
+   * @param threads
+   *     The number of tables validated at the same time.
+   * @param registerColumns
+   *     Whether the columns of every table are registered before validating it.
+   * @param safeDDL
+   *     The executor used to apply the type repairs in safe-DDL mode, or null to apply them directly.
+   * @return A {@link JSONObject} with the errors of every table and the totals.
+   * @throws JSONException
+   *     If an error occurs while building the report.
+   * @throws InterruptedException
+   *     If the thread is interrupted while waiting for the workers.
+   * @throws OBException
+   *     If the shared pool cannot take the workers of the request.
+   */
+  private static JSONObject validateTables(List<Table> tables, String moduleID,
+      Map<String, Map<String, CheckTablesColumnHook.DBColumnInfo>> catalog, int threads, boolean registerColumns,
+      SafeDDLExecutor safeDDL) throws JSONException, InterruptedException {
+    OBContext context = OBContext.getOBContext();
+    List<String> tableIds = tables.stream().map(Table::getId).collect(Collectors.toList());
+    List<String> tableNames = tables.stream().map(Table::getDBTableName).collect(Collectors.toList());
+    JSONObject[] tableReports = new JSONObject[tables.size()];
+    // Each worker takes the next pending table, so the request never uses more than its number of threads
+    AtomicInteger next = new AtomicInteger();
+    Runnable worker = () -> {
+      for (int i = next.getAndIncrement(); i < tableIds.size(); i = next.getAndIncrement()) {
+        String tableName = tableNames.get(i);
+        tableReports[i] = validateInOwnSession(context, tableIds.get(i), tableName, moduleID, registerColumns,
+            catalog.getOrDefault(StringUtils.lowerCase(tableName), Map.of()), safeDDL);
+      }
+    };
+    List<Future<?>> workers = new ArrayList<>();
+    try {
+      for (int i = 0; i < Math.min(threads, tables.size()); i++) {
+        workers.add(WORKERS.submit(worker));
+      }
+      for (Future<?> future : workers) {
+        future.get();
+      }
+    } catch (RejectedExecutionException e) {
+      throw new OBException(OBMessageUtils.messageBD("COPDEV_ModuleCheckBusy"));
+    } catch (ExecutionException e) {
+      throw new OBException(e.getCause());
+    } finally {
+      workers.forEach(future -> future.cancel(true));
+    }
+
+    int tablesWithErrors = 0;
+    for (JSONObject tableReport : tableReports) {
+      if (tableReport.getJSONArray("errors").length() > 0) {
+        tablesWithErrors++;
+      }
+    }
+    JSONObject report = new JSONObject();
+    report.put("checkedTables", tables.size());
+    report.put("tablesWithErrors", tablesWithErrors);
+    report.put("tables", new JSONArray(Arrays.asList(tableReports)));
+    return report;
+  }
+
+  /**
+   * Registers, if requested, and validates a single table on the current worker thread, with the given context and
+   * a DAL session of its own that is committed, or rolled back on failure, and closed before returning. A failure
+   * is reported as an error of the table.
+   */
+  private static JSONObject validateInOwnSession(OBContext context, String tableId, String tableName,
+      String moduleID, boolean registerColumns, Map<String, CheckTablesColumnHook.DBColumnInfo> catalog,
+      SafeDDLExecutor safeDDL) {
+    OBContext.setOBContext(context);
+    boolean committed = false;
+    try {
+      if (registerColumns) {
+        TableRegistrationUtils.executeRegisterColumns(tableId);
+      }
+      Table table = OBDal.getInstance().get(Table.class, tableId);
+      JSONArray errors = CheckTablesColumnHook.validateTable(table, moduleID, catalog, safeDDL);
+      OBDal.getInstance().commitAndClose();
+      committed = true;
+      return tableReport(tableId, tableName, errors);
+    } catch (Exception e) {
+      log.error("Error validating table " + tableName, e);
+      return errorReport(tableId, tableName, e);
+    } finally {
+      if (!committed) {
+        OBDal.getInstance().rollbackAndClose();
+      }
+      OBContext.setOBContext((OBContext) null);
+    }
+  }
+
+  private static JSONObject errorReport(String tableId, String tableName, Exception e) {
+    try {
+      return tableReport(tableId, tableName, new JSONArray().put(new JSONObject().put(ERROR, e.getMessage())));
+    } catch (JSONException jsonException) {
+      throw new OBException(jsonException);
+    }
+  }
+
+  private static JSONObject tableReport(String tableId, String tableName, JSONArray errors) throws JSONException {
+    JSONObject tableReport = new JSONObject();
+    tableReport.put("tableId", tableId);
+    tableReport.put("table", tableName);
+    tableReport.put("errors", errors);
+    return tableReport;
+  }
+
+  private static int getThreads(String threads) {
+    if (StringUtils.isBlank(threads)) {
+      return DEFAULT_THREADS;
+    }
+    try {
+      return Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(threads.trim())));
+    } catch (NumberFormatException e) {
+      return DEFAULT_THREADS;
+    }
+  }
+}
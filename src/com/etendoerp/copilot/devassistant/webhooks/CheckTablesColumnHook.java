@@ -2,8 +2,17 @@ package com.etendoerp.copilot.devassistant.webhooks;
 
 import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -14,12 +23,18 @@ import org.codehaus.jettison.json.JSONObject;
 import org.hibernate.criterion.Restrictions;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.datamodel.Column;
 import org.openbravo.model.ad.datamodel.Table;
 import org.openbravo.model.ad.domain.Reference;
+import org.openbravo.model.ad.module.Module;
 import org.openbravo.model.ad.ui.Tab;
 
+import com.etendoerp.copilot.devassistant.AsyncWebhookJobs;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.ReferenceTypeRegistry;
+import com.etendoerp.copilot.devassistant.SafeDDLExecutor;
 import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
 import com.etendoerp.copilot.devassistant.Utils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
@@ -47,15 +62,18 @@ public class CheckTablesColumnHook extends BaseWebhookService {
    * </p>
    *
    * @param parameter
-   *     A {@link Map} containing the request parameters, including the "TableID" of the table to validate.
+   *     A {@link Map} containing the request parameters, including the "TableID" of the table to validate and the
+   *     optional "SafeDDL" flag.
    * @param responseVars
    *     A {@link Map} to store the response variables, including any validation errors or messages.
    */ public void get(Map<String, String> parameter, Map<String, String> responseVars) {
     logExecutionInit(parameter, log);
+    if (AsyncWebhookJobs.isRequested(parameter)) {
+      AsyncWebhookJobs.getInstance().submit(this, parameter, responseVars);
+      return;
+    }
     log.info("Starting column validation for a specific table...");
 
-    JSONArray errors = new JSONArray();
-
     try {
       // Retrieve the table ID from the parameters
       String tableId = parameter.get("TableID");
@@ -73,21 +91,19 @@ public class CheckTablesColumnHook extends BaseWebhookService {
         return;
       }
 
+      // The module of the table owns its DDL and the given module the validated columns, so both are locked
+      ModuleLock.lockAll(table.getDataPackage().getModule(),
+          StringUtils.isEmpty(moduleID) ? null : OBDal.getInstance().get(Module.class, moduleID));
+
       // Register columns for the table
+      AsyncWebhookJobs.reportProgress("Registering columns");
       TableRegistrationUtils.executeRegisterColumns(tableId);
       OBDal.getInstance().refresh(table);
 
-      // Validate each column in the table
-      List<Column> columns = table.getADColumnList();
-      for (Column column : columns) {
-        if (column.getModule() == null || !StringUtils.equals(column.getModule().getId(), moduleID)) {
-          continue;
-        }
-        JSONObject error = validateColumn(table, column);
-        if (error != null) {
-          errors.put(error);
-        }
-      }
+      SafeDDLExecutor safeDDL = SafeDDLExecutor.isEnabled(parameter.get("SafeDDL"))
+          ? SafeDDLExecutor.fromProperties() : null;
+      AsyncWebhookJobs.reportProgress("Validating columns");
+      JSONArray errors = validateTable(table, moduleID, loadCatalogColumns(table.getDBTableName()), safeDDL);
 
       // Add validation results to the response variables
       responseVars.put("message", errors.toString());
@@ -97,6 +113,59 @@ public class CheckTablesColumnHook extends BaseWebhookService {
     }
   }
 
+  /**
+   * Validates the columns of a table that belong to the given module against the database catalog.
+   * <p>
+   * The TableDir target tables of the columns are loaded with a single query, and every column is compared
+   * in memory with the preloaded catalog. The types that differ from the AD are fixed with a single
+   * {@code ALTER TABLE} with one {@code ALTER COLUMN} clause per column, so the table is rewritten at most once.
+   * In safe-DDL mode the changes go through the {@link SafeDDLExecutor}, which applies a lock timeout and switches
+   * to an online type change on large tables.
+   * </p>
+   *
+   * @param table
+   *     The {@link Table} to validate.
+   * @param moduleID
+   *     The ID of the module whose columns are validated.
+   * @param catalog
+   *     The columns of the table in the database, keyed by lower-case column name.
+   * @param safeDDL
+   *     The executor used to apply the type repairs in safe-DDL mode, or null to apply them directly.
+   * @return A {@link JSONArray} with one entry per column with errors, plus one if the type repairs failed.
+   * @throws JSONException
+   *     If an error occurs while reporting a failed type repair.
+   */
+  static JSONArray validateTable(Table table, String moduleID, Map<String, DBColumnInfo> catalog,
+      SafeDDLExecutor safeDDL) throws JSONException {
+    List<Column> columns = table.getADColumnList().stream()
+        .filter(column -> column.getModule() != null && StringUtils.equals(column.getModule().getId(), moduleID))
+        .collect(Collectors.toList());
+    Map<String, Table> tableDirTargets = loadTableDirTargets(columns);
+
+    JSONArray errors = new JSONArray();
+    List<SafeDDLExecutor.ColumnTypeChange> typeRepairs = new ArrayList<>();
+    for (Column column : columns) {
+      JSONObject error = validateColumn(table, column, catalog, tableDirTargets, typeRepairs);
+      if (error != null) {
+        errors.put(error);
+      }
+    }
+    if (!typeRepairs.isEmpty()) {
+      JSONObject error = new JSONObject();
+      if (safeDDL != null) {
+        applySafely(safeDDL, table.getDBTableName(), typeRepairs, error);
+      } else {
+        execAndLog(String.format("ALTER TABLE %s %s", table.getDBTableName(),
+            typeRepairs.stream().map(SafeDDLExecutor.ColumnTypeChange::getClause).collect(Collectors.joining(", "))),
+            error);
+      }
+      if (error.length() > 0) {
+        errors.put(error);
+      }
+    }
+    return errors;
+  }
+
   /**
    * Validates a specific column within a table.
    *
@@ -104,9 +173,16 @@ public class CheckTablesColumnHook extends BaseWebhookService {
    *     The table that contains the column.
    * @param column
    *     The column to validate.
+   * @param catalog
+   *     The columns of the table in the database, keyed by lower-case column name.
+   * @param tableDirTargets
+   *     The tables referenced by the TableDir columns, keyed by lower-case table name.
+   * @param typeRepairs
+   *     The list that receives the type change if the column type must be fixed.
    * @return A JSON object containing the validation errors, or null if no errors are found.
    */
-  private JSONObject validateColumn(Table table, Column column) {
+  private static JSONObject validateColumn(Table table, Column column, Map<String, DBColumnInfo> catalog,
+      Map<String, Table> tableDirTargets, List<SafeDDLExecutor.ColumnTypeChange> typeRepairs) {
     try {
 
       log.info("Validating column: " + column.getDBColumnName() + " in table: " + table.getDBTableName());
@@ -114,7 +190,7 @@ public class CheckTablesColumnHook extends BaseWebhookService {
 
 
       // Validate TableDir points to a valid table
-      validateTableDir(table, column, error);
+      validateTableDir(table, column, tableDirTargets, error);
 
       // Check for column name length violations
       if (column.getDBColumnName().length() > MAX_COLUMN_NAME_LENGTH) {
@@ -123,30 +199,22 @@ public class CheckTablesColumnHook extends BaseWebhookService {
                 column.getDBColumnName(), table.getDBTableName(), MAX_COLUMN_NAME_LENGTH));
       }
       //check and modify table type
-      var columnInAD = CreateColumn.getDbType(column.getReference());
+      var columnInAD = ReferenceTypeRegistry.getInstance().getDbType(column.getReference());
       String typeInAD = columnInAD.getLeft();
       // check if the column in DB has the same type as in AD and the same length
-      var query = String.format(
-          "SELECT column_name, udt_name, character_maximum_length " + "FROM information_schema.columns " + "WHERE table_name ilike '%s' AND column_name ilike '%s'",
-          column.getTable().getDBTableName(), column.getDBColumnName());
-      JSONObject result = Utils.executeQuery(query);
-      JSONArray resultArr = result.optJSONArray("result");
-      if (resultArr == null || resultArr.length() <= 0) {
+      DBColumnInfo columnInfo = catalog.get(StringUtils.lowerCase(column.getDBColumnName()));
+      if (columnInfo == null) {
         return error.length() > 0 ? error : null;
       }
-      JSONObject columnInfo = resultArr.getJSONObject(0);
-      String typeInDB = columnInfo.optString("udt_name");
+      String typeInDB = columnInfo.getType();
       if (StringUtils.equalsIgnoreCase(typeInDB, "bpchar")) {
         typeInDB = "character";
       }
-      int lengthInDB = columnInfo.optInt("character_maximum_length", -1);
+      int lengthInDB = columnInfo.getLength();
 
       if (needToApplyChangesInDB(column, typeInAD, typeInDB, lengthInDB)) {
 
-        query = String.format("ALTER TABLE %s ALTER COLUMN %s TYPE %s%s", column.getTable().getDBTableName(),
-            column.getDBColumnName(),
-            typeInAD, getLength(column));
-        execAndLog(query, error);
+        typeRepairs.add(new SafeDDLExecutor.ColumnTypeChange(column.getDBColumnName(), typeInAD + getLength(column)));
       }
 
       return error.length() > 0 ? error : null;
@@ -188,24 +256,19 @@ public class CheckTablesColumnHook extends BaseWebhookService {
    *     The {@link Table} containing the column to validate.
    * @param column
    *     The {@link Column} being validated.
+   * @param tableDirTargets
+   *     The preloaded destination tables, keyed by lower-case table name.
    * @param error
    *     A {@link JSONObject} to store validation errors, if any.
    * @throws JSONException
    *     If an error occurs while adding validation errors to the JSON object.
    */
-  private static void validateTableDir(Table table, Column column, JSONObject error) throws JSONException {
+  private static void validateTableDir(Table table, Column column, Map<String, Table> tableDirTargets,
+      JSONObject error) throws JSONException {
     if (!isTableDirRef(column)) {
       return;
     }
-    var destinationTable = column.getDBColumnName().toLowerCase();
-    // Subtract "_id" from the column name
-    if (destinationTable.endsWith("_id")) {
-      destinationTable = destinationTable.substring(0, destinationTable.length() - 3);
-    }
-    OBCriteria<Table> tableCriteria = OBDal.getInstance().createCriteria(Table.class);
-    tableCriteria.add(Restrictions.ilike(Table.PROPERTY_DBTABLENAME, destinationTable));
-    tableCriteria.setMaxResults(1);
-    Table destinationTableObj = (Table) tableCriteria.uniqueResult();
+    Table destinationTableObj = tableDirTargets.get(getTableDirTargetName(column));
     if (destinationTableObj == null) {
       error.put(ERROR,
           String.format(OBMessageUtils.messageBD("COPDEV_TableDirInvalidReference"), column.getDBColumnName(),
@@ -218,6 +281,116 @@ public class CheckTablesColumnHook extends BaseWebhookService {
     }
   }
 
+  /**
+   * Returns the lower-case name of the table a TableDir column points to, that is, its name without "_id".
+   *
+   * @param column
+   *     The TableDir {@link Column}.
+   * @return The name of the destination table.
+   */
+  private static String getTableDirTargetName(Column column) {
+    var destinationTable = column.getDBColumnName().toLowerCase();
+    // Subtract "_id" from the column name
+    if (destinationTable.endsWith("_id")) {
+      destinationTable = destinationTable.substring(0, destinationTable.length() - 3);
+    }
+    return destinationTable;
+  }
+
+  /**
+   * Loads, with a single query, the tables referenced by the TableDir columns of the given list.
+   *
+   * @param columns
+   *     The columns being validated.
+   * @return The destination tables found, keyed by lower-case table name.
+   */
+  private static Map<String, Table> loadTableDirTargets(List<Column> columns) {
+    Set<String> targetNames = columns.stream()
+        .filter(CheckTablesColumnHook::isTableDirRef)
+        .map(CheckTablesColumnHook::getTableDirTargetName)
+        .collect(Collectors.toSet());
+    Map<String, Table> targets = new HashMap<>();
+    if (targetNames.isEmpty()) {
+      return targets;
+    }
+    OBQuery<Table> query = OBDal.getInstance().createQuery(Table.class, "lower(dBTableName) in (:names)");
+    query.setNamedParameter("names", targetNames);
+    for (Table target : query.list()) {
+      targets.putIfAbsent(StringUtils.lowerCase(target.getDBTableName()), target);
+    }
+    return targets;
+  }
+
+  /**
+   * Loads, with a single catalog query, the type and length of every column of a table in the database.
+   *
+   * @param tableName
+   *     The database name of the table.
+   * @return The columns of the table, keyed by lower-case column name.
+   * @throws SQLException
+   *     If an error occurs while querying the catalog.
+   */
+  static Map<String, DBColumnInfo> loadCatalogColumns(String tableName) throws SQLException {
+    return loadCatalogColumns(List.of(tableName)).getOrDefault(StringUtils.lowerCase(tableName), new HashMap<>());
+  }
+
+  /**
+   * Loads, with a single catalog query, the type and length of every column of several tables in the database.
+   *
+   * @param tableNames
+   *     The database names of the tables.
+   * @return The columns of each table keyed by lower-case column name, grouped by lower-case table name.
+   * @throws SQLException
+   *     If an error occurs while querying the catalog.
+   */
+  static Map<String, Map<String, DBColumnInfo>> loadCatalogColumns(Collection<String> tableNames)
+      throws SQLException {
+    String query = "SELECT lower(c.relname), a.attname, t.typname, "
+        + "CASE WHEN t.typname IN ('varchar', 'bpchar') AND a.atttypmod > 4 THEN a.atttypmod - 4 ELSE -1 END AS len "
+        + "FROM pg_catalog.pg_attribute a "
+        + "JOIN pg_catalog.pg_class c ON c.oid = a.attrelid "
+        + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+        + "JOIN pg_catalog.pg_type t ON t.oid = a.atttypid "
+        + "WHERE n.nspname = 'public' AND lower(c.relname) = ANY(?) AND a.attnum > 0 AND NOT a.attisdropped";
+    Map<String, Map<String, DBColumnInfo>> catalog = new HashMap<>();
+    Connection conn = OBDal.getInstance().getConnection();
+    try (PreparedStatement st = conn.prepareStatement(query)) {
+      st.setArray(1, conn.createArrayOf("varchar",
+          tableNames.stream().map(StringUtils::lowerCase).distinct().toArray(String[]::new)));
+      try (ResultSet rs = st.executeQuery()) {
+        while (rs.next()) {
+          catalog.computeIfAbsent(rs.getString(1), k -> new HashMap<>())
+              .put(StringUtils.lowerCase(rs.getString(2)), new DBColumnInfo(rs.getString(3), rs.getInt(4)));
+        }
+      }
+    }
+    return catalog;
+  }
+
+  /**
+   * Type and length of a column as defined in the database catalog.
+   */
+  static class DBColumnInfo {
+    private final String type;
+    private final int length;
+
+    DBColumnInfo(String type, int length) {
+      this.type = type;
+      this.length = length;
+    }
+
+    String getType() {
+      return type;
+    }
+
+    /**
+     * @return The maximum length for character types, or -1 if the type has no length.
+     */
+    int getLength() {
+      return length;
+    }
+  }
+
   /**
    * Executes a database query and logs any errors that occur.
    * <p>
@@ -237,7 +410,32 @@ public class CheckTablesColumnHook extends BaseWebhookService {
     try {
       Utils.executeQuery(query);
     } catch (Exception e) {
-      String msg = "Error executing query: " + query + ". Error: " + e.getMessage() + ". Please try to fix the column type manually.";
+      String msg = "Error executing query: " + query + ". Error: " + e.getMessage() + ". Please try to fix the column types manually.";
+      log.error(msg);
+      error.put(ERROR, msg);
+    }
+  }
+
+  /**
+   * Applies the type repairs of a table through the {@link SafeDDLExecutor} and logs the strategy used.
+   *
+   * @param safeDDL
+   *     The executor that applies the changes.
+   * @param tableName
+   *     The database name of the table.
+   * @param typeRepairs
+   *     The type changes to apply.
+   * @param error
+   *     A {@link JSONObject} to store error details if the changes fail.
+   * @throws JSONException
+   *     If an error occurs while adding the error message to the JSON object.
+   */
+  private static void applySafely(SafeDDLExecutor safeDDL, String tableName,
+      List<SafeDDLExecutor.ColumnTypeChange> typeRepairs, JSONObject error) throws JSONException {
+    try {
+      log.info("Column types repaired in safe-DDL mode: " + safeDDL.alterColumnTypes(tableName, typeRepairs));
+    } catch (Exception e) {
+      String msg = "Error repairing the column types of " + tableName + ". Error: " + e.getMessage() + ". Please try to fix the column types manually.";
       log.error(msg);
       error.put(ERROR, msg);
     }
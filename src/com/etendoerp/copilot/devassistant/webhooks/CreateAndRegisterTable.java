@@ -2,12 +2,15 @@ package com.etendoerp.copilot.devassistant.webhooks;
 
 import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
 
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
@@ -15,6 +18,12 @@ import org.openbravo.model.ad.datamodel.Table;
 import org.openbravo.model.ad.module.DataPackage;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.ConstraintNameAllocator;
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.SupportingIndexes;
+import com.etendoerp.copilot.devassistant.TablePartitioning;
+import com.etendoerp.copilot.devassistant.TableStorage;
 import com.etendoerp.copilot.devassistant.Utils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
@@ -26,7 +35,6 @@ import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
 public class CreateAndRegisterTable extends BaseWebhookService {
 
   private static final Logger LOG = LogManager.getLogger();
-  private static final int MAX_LENGTH = 30;
 
   /**
    * Processes the incoming webhook request to create and register a table.
@@ -58,13 +66,26 @@ public class CreateAndRegisterTable extends BaseWebhookService {
       Object[] moduleAndPrefix = TableRegistrationUtils.getModuleAndPrefix(moduleID);
       Module module = (Module) moduleAndPrefix[0];
       String prefix = (String) moduleAndPrefix[1];
+      if (!DryRun.isEnabled(parameter)) {
+        ModuleLock.lock(prefix);
+      }
 
       name = getDefaultName(name);
       tableName = determineTableName(name, prefix, tableName);
       javaClass = TableRegistrationUtils.determineJavaClassName(name, javaClass);
 
       // Step 2: Create the table in the database
-      createTableInDatabase(prefix, tableName, isView);
+      TablePartitioning partitioning = TablePartitioning.of(parameter.get("PartitionBy"),
+          parameter.get("PartitionKey"), parameter.get("PartitionValues"), parameter.get("PartitionsAhead"));
+      TableStorage storage = TableStorage.of(parameter.get("StorageProfile"), parameter.get("FillFactor"),
+          parameter.get("AutovacuumVacuumScaleFactor"), parameter.get("AutovacuumAnalyzeScaleFactor"),
+          parameter.get("Unlogged"), parameter.get("Tablespace"));
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planTable(module, prefix, tableName, javaClass, dataAccessLevel,
+            description, helpTable, isView, partitioning, storage).toString());
+        return;
+      }
+      createTableInDatabase(prefix, tableName, isView, partitioning, storage);
 
       // Step 3: Register the table in Etendo
       TableRegistrationUtils.alreadyExistTable(tableName);
@@ -76,7 +97,8 @@ public class CreateAndRegisterTable extends BaseWebhookService {
 
     } catch (Exception e) {
       responseVars.put("error", e.getMessage());
-      OBDal.getInstance().getSession().clear();
+      // The table is created in the DAL transaction, so it is rolled back together with its AD records
+      OBDal.getInstance().rollbackAndClose();
     }
   }
 
@@ -91,7 +113,7 @@ public class CreateAndRegisterTable extends BaseWebhookService {
    *     The optional table name provided in the parameters.
    * @return The final table name to use.
    * */
-  private String determineTableName(String name, String prefix, String tableName) {
+  static String determineTableName(String name, String prefix, String tableName) {
     if (StringUtils.isEmpty(tableName)) {
       tableName = StringUtils.startsWith(name, prefix) ? StringUtils.substring(StringUtils.removeStart(name, prefix), 1) : name;
     }
@@ -99,7 +121,8 @@ public class CreateAndRegisterTable extends BaseWebhookService {
   }
 
   /**
-   * Creates the table physically in the PostgreSQL database.
+   * Creates the table physically in the PostgreSQL database, in the DAL transaction of the request, so the table is
+   * only committed together with its AD_TABLE record.
    *
    * @param prefix
    *     The prefix for the table name.
@@ -107,19 +130,68 @@ public class CreateAndRegisterTable extends BaseWebhookService {
    *     The base name of the table.
    * @param isView
    *     Indicates if the table is a view.
+   * @param partitioning
+   *     The partitioning of the table, or null for a plain table. A partitioned table is created with its initial
+   *     partitions, and its primary key includes the partition key.
+   * @param storage
+   *     The storage options of the table: UNLOGGED, storage parameters and tablespace.
    * @throws Exception
    *     If an error occurs during table creation.
    */
-  private void createTableInDatabase(String prefix, String tableName, boolean isView) throws Exception {
-    String constraintIsactive = getConstName(prefix, tableName, "isactive", "chk");
-    String constraintPk = getConstName(prefix, tableName, "", "pk");
-    String constraintFkClient = getConstName(prefix, tableName, "ad_client", "fk");
-    String constraintFkOrg = getConstName(prefix, tableName, "ad_org", "fk");
+  private void createTableInDatabase(String prefix, String tableName, boolean isView,
+      TablePartitioning partitioning, TableStorage storage) throws Exception {
+    // The existing names are read once for the six names of the table
+    ConstraintNameAllocator names = ConstraintNameAllocator.forPrefixes(List.of(prefix));
+    List<String> ddl = buildCreateTableStatements(names, prefix, tableName, isView, partitioning, storage);
+    JSONObject response = Utils.executeBatch(OBDal.getInstance().getConnection(), ddl);
+    LOG.info("Table created in database: {}", response.toString());
+  }
+
+  /**
+   * Builds the dry-run plan of a table: the statements that create it and its AD_TABLE record. The same
+   * validations as a real run are done, but nothing is created.
+   *
+   * @return The plan, as returned by {@link DryRun#toJSON()}.
+   * @throws JSONException
+   *     If the plan cannot be written.
+   */
+  private JSONObject planTable(Module module, String prefix, String tableName, String javaClass,
+      String dataAccessLevel, String description, String helpTable, boolean isView, TablePartitioning partitioning,
+      TableStorage storage) throws JSONException {
+    TableRegistrationUtils.alreadyExistTable(tableName);
+    DataPackage dataPackage = TableRegistrationUtils.getDataPackage(module);
+    ConstraintNameAllocator names = ConstraintNameAllocator.forPrefixes(List.of(prefix));
+    DryRun plan = new DryRun().addStatements(
+        buildCreateTableStatements(names, prefix, tableName, isView, partitioning, storage));
+    TableRegistrationUtils.planAdTable(plan, dataPackage, javaClass, tableName, dataAccessLevel, description,
+        helpTable, isView);
+    return plan.toJSON();
+  }
+
+  /**
+   * Builds the statements that create a table, its partitions and the indexes of its client and organization FKs.
+   * <p>
+   * See {@link #createTableInDatabase(String, String, boolean, TablePartitioning, TableStorage)} for the meaning of
+   * the parameters.
+   * </p>
+   *
+   * @param names
+   *     The allocator of the constraint and index names of the operation.
+   * @return The statements, in execution order.
+   */
+  static List<String> buildCreateTableStatements(ConstraintNameAllocator names, String prefix, String tableName,
+      boolean isView, TablePartitioning partitioning, TableStorage storage) {
+    String constraintIsactive = names.allocate(prefix, tableName, "isactive", "chk");
+    String constraintPk = names.allocate(prefix, tableName, "", "pk");
+    String constraintFkClient = names.allocate(prefix, tableName, "ad_client", "fk");
+    String constraintFkOrg = names.allocate(prefix, tableName, "ad_org", "fk");
+    String indexClient = names.allocate(prefix, tableName, "ad_client", SupportingIndexes.INDEX_SUFFIX);
+    String indexOrg = names.allocate(prefix, tableName, "ad_org", SupportingIndexes.INDEX_SUFFIX);
 
     String finalTableName = isView ? tableName + "_v" : tableName;
 
     StringBuilder queryBuilder = new StringBuilder();
-    queryBuilder.append("CREATE TABLE IF NOT EXISTS public.%s ( ").append(
+    queryBuilder.append("CREATE %sTABLE IF NOT EXISTS public.%s ( ").append(
         "%s_id character varying(32) COLLATE pg_catalog.\"default\" NOT NULL, ").append(
         "ad_client_id character varying(32) COLLATE pg_catalog.\"default\" NOT NULL, ").append(
         "ad_org_id character varying(32) COLLATE pg_catalog.\"default\" NOT NULL, ").append(
@@ -128,18 +200,27 @@ public class CreateAndRegisterTable extends BaseWebhookService {
         "createdby character varying(32) COLLATE pg_catalog.\"default\" NOT NULL, ").append(
         "updated timestamp without time zone NOT NULL DEFAULT now(), ").append(
         "updatedby character varying(32) COLLATE pg_catalog.\"default\" NOT NULL, ").append(
-        "CONSTRAINT %s PRIMARY KEY (%s_id), ").append("CONSTRAINT %s FOREIGN KEY (ad_client_id) ").append(
+        "CONSTRAINT %s PRIMARY KEY (%s), ").append("CONSTRAINT %s FOREIGN KEY (ad_client_id) ").append(
         "REFERENCES public.ad_client (ad_client_id) MATCH SIMPLE ").append("ON UPDATE NO ACTION ").append(
         "ON DELETE NO ACTION, ").append("CONSTRAINT %s FOREIGN KEY (ad_org_id) ").append(
         "REFERENCES public.ad_org (ad_org_id) MATCH SIMPLE ").append("ON UPDATE NO ACTION ").append(
         "ON DELETE NO ACTION, ").append(
-        "CONSTRAINT %s CHECK (isactive = ANY (ARRAY['Y'::bpchar, 'N'::bpchar]))").append(") TABLESPACE pg_default;");
+        "CONSTRAINT %s CHECK (isactive = ANY (ARRAY['Y'::bpchar, 'N'::bpchar]))").append(") %s;");
 
-    String query = String.format(queryBuilder.toString(), finalTableName, finalTableName, constraintPk, finalTableName,
-        constraintFkClient, constraintFkOrg, constraintIsactive);
+    String primaryKey = partitioning != null ? partitioning.getPrimaryKeyColumns(finalTableName) : finalTableName + "_id";
+    String storageClause = storage.getStorageClause(partitioning != null ? partitioning.getPartitionClause() : null);
+    String query = String.format(queryBuilder.toString(), storage.getTableModifier(), finalTableName, finalTableName,
+        constraintPk, primaryKey, constraintFkClient, constraintFkOrg, constraintIsactive, storageClause);
 
-    JSONObject response = Utils.executeQuery(query);
-    LOG.info("Table created in database: {}", response.toString());
+    List<String> ddl = new ArrayList<>();
+    ddl.add(query);
+    if (partitioning != null) {
+      ddl.addAll(partitioning.buildInitialPartitions(finalTableName, YearMonth.now()));
+    }
+    // The client and organization FKs get their supporting indexes in the same transaction as the table
+    ddl.add(SupportingIndexes.buildCreateIndexQuery(indexClient, finalTableName, "ad_client_id", false));
+    ddl.add(SupportingIndexes.buildCreateIndexQuery(indexOrg, finalTableName, "ad_org_id", false));
+    return ddl;
   }
 
   /**
@@ -155,141 +236,4 @@ public class CreateAndRegisterTable extends BaseWebhookService {
     }
     return name;
   }
-
-  /**
-   * Generates a constraint name based on the provided prefix, names, and suffix.
-   * Ensures the name does not exceed the maximum length and does not conflict with existing constraints.
-   *
-   * @param prefix The prefix to use for the constraint name.
-   * @param name1  The first name component.
-   * @param name2  The second name component.
-   * @param suffix The suffix to append to the constraint name.
-   * @return The generated constraint name.
-   */
-  public static String getConstName(String prefix, String name1, String name2, String suffix) {
-    String adjustedName1 = adjustNameWithPrefix(name1, prefix);
-    String adjustedName2 = adjustNameWithPrefix(name2, prefix);
-    String proposal = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
-
-    proposal = adjustProposalLength(proposal, adjustedName1, adjustedName2, prefix, suffix);
-
-    int count = checkConstraintExists(proposal);
-    if (count > 0) {
-      count++;
-      proposal = String.format("%s_%s_%s%d_%s", prefix,
-          StringUtils.substring(adjustedName1, 0, adjustedName1.length() - 1),
-          StringUtils.substring(adjustedName2, 0, adjustedName2.length() - 1), count, suffix);
-    }
-
-    return proposal;
-  }
-
-  /**
-   * Adjusts a name by removing the prefix if it starts with it.
-   *
-   * @param name   The name to adjust.
-   * @param prefix The prefix to check and remove.
-   * @return The adjusted name.
-   */
-  private static String adjustNameWithPrefix(String name, String prefix) {
-    String prefixWithUnderscore = prefix + "_";
-    if (StringUtils.startsWith(name, prefixWithUnderscore) ||
-        StringUtils.startsWithIgnoreCase(name, prefixWithUnderscore)) {
-      return StringUtils.substring(name, prefix.length() + 1);
-    }
-    return name;
-  }
-
-  /**
-   * Builds the initial proposal for the constraint name.
-   *
-   * @param prefix The prefix to use.
-   * @param name1  The first name component.
-   * @param name2  The second name component.
-   * @param suffix The suffix to append.
-   * @return The initial proposal.
-   */
-  private static String buildProposal(String prefix, String name1, String name2, String suffix) {
-    return prefix + "_" + name1 + "_" + name2 + "_" + suffix;
-  }
-
-  /**
-   * Adjusts the proposal if it exceeds the maximum length by removing underscores or trimming characters.
-   *
-   * @param proposal The initial proposal.
-   * @param name1    The first name component.
-   * @param name2    The second name component.
-   * @param prefix   The prefix used.
-   * @param suffix   The suffix used.
-   * @return The adjusted proposal.
-   */
-  private static String adjustProposalLength(String proposal, String name1, String name2,
-      String prefix, String suffix) {
-    String adjustedName1 = name1;
-    String adjustedName2 = name2;
-    String result = proposal;
-
-    if (result.length() > MAX_LENGTH &&
-        (StringUtils.contains(adjustedName1, "_") || StringUtils.contains(adjustedName2, "_"))) {
-      adjustedName1 = adjustedName1.replace("_", "");
-      adjustedName2 = adjustedName2.replace("_", "");
-      result = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
-    }
-
-    int offset = 1;
-    while (result.length() > MAX_LENGTH && offset < 15) {
-      adjustedName1 = trimName(adjustedName1, offset);
-      adjustedName2 = trimName(adjustedName2, offset);
-      result = buildProposal(prefix, adjustedName1, adjustedName2, suffix);
-      offset++;
-    }
-
-    return result;
-  }
-
-  /**
-   * Trims a name by removing characters from the start based on the offset.
-   *
-   * @param name   The name to trim.
-   * @param offset The number of characters to trim from the start.
-   * @return The trimmed name.
-   */
-  private static String trimName(String name, int offset) {
-    if (name.length() > offset) {
-      return StringUtils.substring(name, offset);
-    }
-    return name;
-  }
-
-  /**
-   * Checks if a constraint with the given name already exists in the database.
-   *
-   * @param constraintName The name of the constraint to check.
-   * @return The count of existing constraints with the given name.
-   */
-  private static int checkConstraintExists(String constraintName) {
-    String query = String.format(
-        "SELECT count(1) FROM information_schema.table_constraints " +
-            "WHERE constraint_type = 'FOREIGN KEY' AND constraint_name = '%s';",
-        constraintName);
-
-    int count = 0;
-    try {
-      JSONObject response = Utils.executeQuery(query);
-      if (response == null) {
-        return count;
-      }
-
-      JSONArray resultArray = response.getJSONArray("result");
-      if (resultArray == null || resultArray.length() == 0) {
-        return count;
-      }
-
-      JSONObject resultObject = resultArray.getJSONObject(0);
-      count = resultObject.getInt("count");
-    } catch (Exception e) {
-      LOG.error("Error checking constraint name '{}': {}", constraintName, e.getMessage(), e);
-    }
-    return count;
-  }
 }
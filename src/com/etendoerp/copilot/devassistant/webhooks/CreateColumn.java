@@ -1,9 +1,14 @@
 package com.etendoerp.copilot.devassistant.webhooks;
 
+import static com.etendoerp.copilot.devassistant.ReferenceTypeRegistry.CHARACTER;
+
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -24,6 +29,14 @@ import org.openbravo.model.ad.domain.Reference;
 import org.openbravo.model.ad.domain.ReferencedTable;
 import org.openbravo.model.ad.module.ModuleDBPrefix;
 
+import com.etendoerp.copilot.devassistant.ConstraintNameAllocator;
+import com.etendoerp.copilot.devassistant.ConstraintValidator;
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.ReferenceTypeRegistry;
+import com.etendoerp.copilot.devassistant.SafeDDLExecutor;
+import com.etendoerp.copilot.devassistant.SupportingIndexes;
+import com.etendoerp.copilot.devassistant.TablePartitioning;
 import com.etendoerp.copilot.devassistant.Utils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
@@ -34,7 +47,6 @@ import com.etendoerp.webhookevents.services.BaseWebhookService;
 public class CreateColumn extends BaseWebhookService {
 
   private static final Logger LOG = LogManager.getLogger();
-  private static final int MAX_LENGTH = 30;
 
   private static final String VARCHAR32 = "character varying(32)";
   private static final String VARCHAR60 = "character varying(60)";
@@ -43,13 +55,15 @@ public class CreateColumn extends BaseWebhookService {
   private static final String TABLE_REFERECE_ID = "18";
   public static final String VARCHAR200 = "character varying(200)";
   public static final String VARCHAR255 = "character varying(255)";
-  public static final String CHARACTER_VARYING = "varchar";
-  public static final String NUMERIC = "numeric";
-  public static final String TIMESTAMP_WITHOUT_TIME_ZONE = "timestamp without time zone";
-  public static final String CHARACTER = "character";
 
   /**
-   * This method is invoked by the webhook to add a column to a table in the database.
+   * This method is invoked by the webhook to add columns to a table in the database.
+   * <p>
+   * A single column is described by the {@code name}, {@code columnNameDB}, {@code referenceID},
+   * {@code defaultValue} and {@code canBeNull} parameters. Several columns are described by the {@code columns}
+   * parameter, a JSON array of objects with the same keys; they are added with a single ALTER TABLE, their FKs are
+   * created in the same batch and their AD columns are registered with a single flush.
+   * </p>
    *
    * @param parameter
    *     A map containing parameters for the column addition, including the table ID, column name,
@@ -66,25 +80,26 @@ public class CreateColumn extends BaseWebhookService {
     JSONArray messageArray = new JSONArray();
 
     String tableId = parameter.get("tableID");
-    String name = parameter.get("name");
     String moduleId = parameter.get("moduleID");
-    String defaultParam = parameter.get("defaultValue");
-    String referenceID = parameter.get("referenceID");
-    String columnName = parameter.get("columnNameDB");
-    String canBeNull = parameter.get("canBeNull");
+    boolean multiple = StringUtils.isNotBlank(parameter.get("columns"));
+    List<NewColumn> newColumns = multiple ? NewColumn.fromJSON(parameter.get("columns")) : List.of(
+        new NewColumn(parameter.get("name"), parameter.get("columnNameDB"), parameter.get("referenceID"),
+            parameter.get("defaultValue"), parameter.get("canBeNull")));
 
     Table table = OBDal.getInstance().get(Table.class, tableId);
     org.openbravo.model.ad.module.Module module = OBDal.getInstance().get(org.openbravo.model.ad.module.Module.class,
         moduleId);
-    var reference = OBDal.getInstance().get(Reference.class, referenceID);
     var isExternal = module != table.getDataPackage().getModule();
-    if (isTableDirRef(reference) && isExternal) {
-      //the table dir cannot be used in when is an em_ column
-      throw new OBException(OBMessageUtils.messageBD("COPDEV_ExternalTableDirRef"));
-    }
+    for (NewColumn newColumn : newColumns) {
+      newColumn.reference = OBDal.getInstance().get(Reference.class, newColumn.referenceID);
+      if (isTableDirRef(newColumn.reference) && isExternal) {
+        //the table dir cannot be used in when is an em_ column
+        throw new OBException(OBMessageUtils.messageBD("COPDEV_ExternalTableDirRef"));
+      }
 
-    if (isTableDirRef(reference)) {
-      validateTableDir(table, columnName);
+      if (isTableDirRef(newColumn.reference)) {
+        validateTableDir(table, newColumn.columnName);
+      }
     }
 
     if (Boolean.FALSE.equals(module.isInDevelopment())) {
@@ -97,44 +112,97 @@ public class CreateColumn extends BaseWebhookService {
     }
 
     String prefix = getPrefix(module);
-    String prefixForConstraint = prefix;
-    if (isExternal) {
-      columnName = "EM_" + prefix + "_" + columnName;
-      name = "EM_" + prefix + "_ " + name;
-      prefixForConstraint = "EM_" + prefix;
+    if (!DryRun.isEnabled(parameter)) {
+      ModuleLock.lock(prefix);
     }
+    String prefixForConstraint = isExternal ? "EM_" + prefix : prefix;
+    for (NewColumn newColumn : newColumns) {
+      String requestedColumnName = newColumn.columnName;
+      String requestedName = newColumn.name;
+      if (isExternal) {
+        newColumn.columnName = "EM_" + prefix + "_" + newColumn.columnName;
+        newColumn.name = "EM_" + prefix + "_ " + newColumn.name;
+      }
 
-    if (!StringUtils.equalsIgnoreCase(columnName, parameter.get("columnNameDB")) || !StringUtils.equalsIgnoreCase(name,
-        parameter.get("name"))) {
-      messageArray.put(String.format(OBMessageUtils.messageBD("COPDEV_ColumnRenamed"), columnName, name));
+      if (!StringUtils.equalsIgnoreCase(newColumn.columnName, requestedColumnName) || !StringUtils.equalsIgnoreCase(
+          newColumn.name, requestedName)) {
+        messageArray.put(String.format(OBMessageUtils.messageBD("COPDEV_ColumnRenamed"), newColumn.columnName,
+            newColumn.name));
+      }
     }
 
     try {
-      JSONObject response = addColumn(prefix, dbTableName, columnName, reference, defaultParam,
-          StringUtils.equalsIgnoreCase(canBeNull, "true"));
-      handleFKCase(reference, columnName, prefixForConstraint, table, dbTableName, messageArray);
-
-      Column newCol = OBProvider.getInstance().get(Column.class);
-      newCol.setName(name);
-      newCol.setDBColumnName(columnName);
-      newCol.setTable(table);
-      newCol.setModule(module);
-      if (Boolean.TRUE.equals(reference.isBaseReference())) {
-        newCol.setReference(reference);
-      } else {
-        newCol.setReferenceSearchKey(reference);
-        newCol.setReference(reference.getParentReference());
+      // The columns and their FKs are created in a single batch, so a failing FK does not leave an orphan column
+      List<String> ddl = new ArrayList<>();
+      List<String> clauses = new ArrayList<>();
+      ConstraintNameAllocator names = ConstraintNameAllocator.forPrefixes(List.of(prefixForConstraint));
+      for (NewColumn newColumn : newColumns) {
+        clauses.add(buildAddColumnClause(names, prefixForConstraint, dbTableName, newColumn.columnName,
+            newColumn.reference, newColumn.defaultValue, newColumn.canBeNull));
+      }
+      ddl.add(String.format("ALTER TABLE IF EXISTS public.%s %s", dbTableName, String.join(", ", clauses)));
+      // With a deferred validation the FK is created NOT VALID, so the batch does not scan the whole table
+      String fkValidation = ConstraintValidator.getMode(parameter.get("fkValidation"));
+      // Postgres does not index FK columns, so a supporting index is created with the FK
+      boolean concurrentIndex = StringUtils.equalsIgnoreCase(parameter.get("concurrentIndex"), "true");
+      for (NewColumn newColumn : newColumns) {
+        String fkTarget = getFKTargetTable(newColumn.reference, newColumn.columnName);
+        if (fkTarget != null) {
+          TablePartitioning.checkFKTarget(fkTarget);
+        }
+        newColumn.fk = buildFKQuery(newColumn.reference, newColumn.columnName, prefixForConstraint, dbTableName,
+            ConstraintValidator.isDeferred(fkValidation), names);
+        if (newColumn.fk != null) {
+          ddl.add(newColumn.fk.getRight());
+          newColumn.fkIndex = names.allocate(prefixForConstraint, dbTableName, fkTarget,
+              SupportingIndexes.INDEX_SUFFIX);
+          if (!concurrentIndex) {
+            ddl.add(SupportingIndexes.buildCreateIndexQuery(newColumn.fkIndex, dbTableName, newColumn.columnName,
+                false));
+          }
+        }
       }
-      if (StringUtils.isNotEmpty(defaultParam)) {
-        newCol.setDefaultValue(defaultParam.replace("'", ""));
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planColumns(table, module, dbTableName, newColumns, ddl, concurrentIndex,
+            fkValidation).toString());
+        return;
       }
-      Integer length = getDbType(reference).getRight();
-      if (length != null) {
-        newCol.setLength(Long.valueOf(length));
+      SafeDDLExecutor safeDDL = SafeDDLExecutor.isEnabled(parameter.get("safeDDL"))
+          ? SafeDDLExecutor.fromProperties() : null;
+      JSONObject response = safeDDL != null ? safeDDL.execute(ddl) : Utils.executeBatch(ddl);
+      List<Column> adColumns;
+      try {
+        JSONObject indexes = new JSONObject();
+        JSONObject fkValidations = new JSONObject();
+        for (NewColumn newColumn : newColumns) {
+          if (newColumn.fkIndex != null && concurrentIndex) {
+            indexes.put(newColumn.columnName,
+                SupportingIndexes.createConcurrently(newColumn.fkIndex, dbTableName, newColumn.columnName));
+          }
+          if (newColumn.fk != null && ConstraintValidator.isDeferred(fkValidation)) {
+            fkValidations.put(newColumn.columnName,
+                ConstraintValidator.validate(dbTableName, newColumn.fk.getLeft(), fkValidation, safeDDL));
+          }
+        }
+        putColumnResults(response, "index", indexes, multiple);
+        putColumnResults(response, "fkValidation", fkValidations, multiple);
+
+        adColumns = new ArrayList<>();
+        for (NewColumn newColumn : newColumns) {
+          adColumns.add(createAdColumn(table, module, newColumn.name, newColumn.columnName, newColumn.reference,
+              newColumn.defaultValue));
+        }
+        OBDal.getInstance().flush();
+      } catch (Exception e) {
+        // The DDL is already committed, as the concurrent indexes and deferred validations need it, so the columns
+        // are dropped while the module lock is still held and then the AD transaction is rolled back
+        dropColumns(dbTableName, newColumns);
+        OBDal.getInstance().rollbackAndClose();
+        throw e;
+      }
+      for (Column newCol : adColumns) {
+        messageArray.put(String.format(OBMessageUtils.messageBD("COPDEV_ColumnAddedSucc"), newCol.getId()));
       }
-      OBDal.getInstance().save(newCol);
-      OBDal.getInstance().flush();
-      messageArray.put(String.format(OBMessageUtils.messageBD("COPDEV_ColumnAddedSucc"), newCol.getId()));
 
       response.put("messages", messageArray);
       responseVars.put("response", response.toString());
@@ -143,6 +211,130 @@ public class CreateColumn extends BaseWebhookService {
     }
   }
 
+  /**
+   * Drops the columns added to a table, with their FKs and indexes, after their AD registration failed. The batch
+   * fails on a column that already existed, so every column dropped here was created by this request.
+   */
+  private static void dropColumns(String dbTableName, List<NewColumn> newColumns) {
+    String drops = newColumns.stream()
+        .map(newColumn -> "DROP COLUMN IF EXISTS " + newColumn.columnName)
+        .collect(Collectors.joining(", "));
+    try {
+      Utils.executeBatch(List.of(String.format("ALTER TABLE IF EXISTS public.%s %s", dbTableName, drops)));
+    } catch (OBException e) {
+      LOG.error("Error dropping the columns of a failed registration on {}: {}", dbTableName, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Builds the dry-run plan of the new columns: the statements of the batch, followed by the concurrent indexes and
+   * the deferred FK validations that would run after it, and the AD_COLUMN records.
+   *
+   * @return The plan, as returned by {@link DryRun#toJSON()}.
+   * @throws JSONException
+   *     If the plan cannot be written.
+   */
+  private static JSONObject planColumns(Table table, org.openbravo.model.ad.module.Module module, String dbTableName,
+      List<NewColumn> newColumns, List<String> ddl, boolean concurrentIndex, String fkValidation)
+      throws JSONException {
+    DryRun plan = new DryRun().addStatements(ddl);
+    for (NewColumn newColumn : newColumns) {
+      if (newColumn.fkIndex != null && concurrentIndex) {
+        plan.addStatements(List.of(SupportingIndexes.buildCreateIndexQuery(newColumn.fkIndex, dbTableName,
+            newColumn.columnName, true)));
+      }
+      if (newColumn.fk != null && ConstraintValidator.isDeferred(fkValidation)) {
+        plan.addStatements(List.of(ConstraintValidator.buildValidateQuery(dbTableName, newColumn.fk.getLeft())));
+      }
+    }
+    for (NewColumn newColumn : newColumns) {
+      Map<String, Object> values = DryRun.values();
+      values.put(Column.PROPERTY_NAME, newColumn.name);
+      values.put(Column.PROPERTY_DBCOLUMNNAME, newColumn.columnName);
+      values.put(Column.PROPERTY_TABLE, table);
+      values.put(Column.PROPERTY_MODULE, module);
+      if (Boolean.TRUE.equals(newColumn.reference.isBaseReference())) {
+        values.put(Column.PROPERTY_REFERENCE, newColumn.reference);
+      } else {
+        values.put(Column.PROPERTY_REFERENCE, newColumn.reference.getParentReference());
+        values.put(Column.PROPERTY_REFERENCESEARCHKEY, newColumn.reference);
+      }
+      if (StringUtils.isNotEmpty(newColumn.defaultValue)) {
+        values.put(Column.PROPERTY_DEFAULTVALUE, newColumn.defaultValue.replace("'", ""));
+      }
+      values.put(Column.PROPERTY_LENGTH, ReferenceTypeRegistry.getInstance().getDbType(newColumn.reference)
+          .getRight());
+      plan.addRecord(Column.ENTITY_NAME, DryRun.ACTION_CREATE, values);
+    }
+    return plan.toJSON();
+  }
+
+  /**
+   * Adds the per-column results of a step to the response. A single column keeps the result itself under the key,
+   * as before the multi-column form existed, while several columns get an object keyed by column name.
+   */
+  private static void putColumnResults(JSONObject response, String key, JSONObject results,
+      boolean multiple) throws JSONException {
+    if (results.length() == 0) {
+      return;
+    }
+    if (multiple) {
+      response.put(key, results);
+    } else {
+      response.put(key, results.get((String) results.keys().next()));
+    }
+  }
+
+  /**
+   * A column to add, as requested and, once validated, with its resolved reference and FK.
+   */
+  private static class NewColumn {
+    private String name;
+    private String columnName;
+    private final String referenceID;
+    private final String defaultValue;
+    private final boolean canBeNull;
+    private Reference reference;
+    private Pair<String, String> fk;
+    private String fkIndex;
+
+    NewColumn(String name, String columnName, String referenceID, String defaultValue, String canBeNull) {
+      this.name = name;
+      this.columnName = columnName;
+      this.referenceID = referenceID;
+      this.defaultValue = defaultValue;
+      this.canBeNull = StringUtils.equalsIgnoreCase(canBeNull, "true");
+    }
+
+    static List<NewColumn> fromJSON(String columns) {
+      try {
+        JSONArray array = new JSONArray(columns);
+        List<NewColumn> result = new ArrayList<>();
+        Set<String> columnNames = new HashSet<>();
+        for (int i = 0; i < array.length(); i++) {
+          JSONObject column = array.getJSONObject(i);
+          NewColumn newColumn = new NewColumn(column.optString("name", null), column.optString("columnNameDB", null),
+              column.optString("referenceID", null), column.optString("defaultValue", null),
+              column.optString("canBeNull", null));
+          // Postgres folds the names to lower case, so a repeated name would fail the whole ALTER TABLE
+          if (!columnNames.add(StringUtils.lowerCase(StringUtils.trim(newColumn.columnName)))) {
+            throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidSchemaSpec"),
+                "duplicated column " + newColumn.columnName));
+          }
+          result.add(newColumn);
+        }
+        if (result.isEmpty()) {
+          throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidSchemaSpec"),
+              "columns is empty"));
+        }
+        return result;
+      } catch (JSONException e) {
+        throw new OBException(String.format(OBMessageUtils.messageBD("COPDEV_InvalidSchemaSpec"), e.getMessage()),
+            e);
+      }
+    }
+  }
+
   /**
    * Retrieves the database prefix associated with a module.
    * <p>
@@ -166,12 +358,11 @@ public class CreateColumn extends BaseWebhookService {
   }
 
   /**
-   * Handles the creation of a foreign key (FK) constraint for a database column.
+   * Builds the statement that creates the foreign key (FK) constraint for a database column.
    * <p>
    * This method checks if the provided reference is a Table Directory or Table Base Reference.
    * If so, it determines the target table's database name and constructs an SQL query to add
-   * a foreign key constraint to the specified column. The query is executed, and the response
-   * is added to the provided message array.
+   * a foreign key constraint to the specified column.
    * </p>
    *
    * @param reference
@@ -180,37 +371,89 @@ public class CreateColumn extends BaseWebhookService {
    *     The name of the column for which the foreign key constraint is being created.
    * @param prefixForConstraint
    *     The prefix to be used for naming the foreign key constraint.
-   * @param table
-   *     The `Table` object representing the table to which the column belongs.
    * @param dbTableName
    *     The database name of the table to which the column belongs.
-   * @param messageArray
-   *     A `JSONArray` to which the response of the SQL query execution will be added.
-   * @throws SQLException
-   *     If an error occurs while executing the SQL query.
-   * @throws JSONException
-   *     If an error occurs while processing the JSON response.
+   * @param notValid
+   *     Whether the constraint is created {@code NOT VALID}, leaving the check of the existing rows to a later
+   *     {@code VALIDATE CONSTRAINT}.
+   * @param names
+   *     The allocator of the constraint names of the operation.
+   * @return A pair with the name of the FK and the ALTER TABLE statement that adds it, or null if the reference is
+   *     not a table reference.
    */
-  private void handleFKCase(Reference reference, String columnName, String prefixForConstraint, Table table,
-      String dbTableName, JSONArray messageArray) throws SQLException, JSONException {
-    if (isTableDirRef(reference) || isTableBaseRef(reference)) {
-      String targetTableDBName;
-      if (isTableDirRef(reference)) {
-        targetTableDBName = StringUtils.substring(columnName, 0, columnName.length() - 3);
-      } else {
-        ReferencedTable tableRefInfo = reference.getADReferencedTableList().get(0);
-        targetTableDBName = tableRefInfo.getTable().getDBTableName();
-      }
+  static Pair<String, String> buildFKQuery(Reference reference, String columnName, String prefixForConstraint,
+      String dbTableName, boolean notValid, ConstraintNameAllocator names) {
+    String targetTableDBName = getFKTargetTable(reference, columnName);
+    if (targetTableDBName != null) {
+      String constraintFk = names.allocate(prefixForConstraint, dbTableName, targetTableDBName, "fk");
+      return Pair.of(constraintFk, String.format(
+          "ALTER TABLE IF EXISTS public.%s ADD CONSTRAINT %s FOREIGN KEY (%s) " + "REFERENCES public.%s (%s) MATCH SIMPLE ON UPDATE NO ACTION ON DELETE NO ACTION%s",
+          dbTableName, constraintFk, columnName, targetTableDBName, targetTableDBName + "_id",
+          notValid ? " NOT VALID" : ""));
+    }
+    return null;
+  }
 
-      String constraintFk = CreateAndRegisterTable.getConstName(prefixForConstraint, table.getDBTableName(),
-          targetTableDBName,
-          "fk");
-      String query = String.format(
-          "ALTER TABLE IF EXISTS public.%s ADD CONSTRAINT %s FOREIGN KEY (%s) " + "REFERENCES public.%s (%s) MATCH SIMPLE ON UPDATE NO ACTION ON DELETE NO ACTION;",
-          dbTableName, constraintFk, columnName, targetTableDBName, targetTableDBName + "_id");
-      JSONObject responseFk = Utils.executeQuery(query);
-      messageArray.put(responseFk.toString());
+  /**
+   * Creates the AD_COLUMN record of a column, without flushing it.
+   *
+   * @param table
+   *     The table of the column.
+   * @param module
+   *     The module the column belongs to.
+   * @param name
+   *     The name of the column.
+   * @param columnName
+   *     The database name of the column.
+   * @param reference
+   *     The reference of the column. A reference that is not a base reference is set as the reference search key,
+   *     and its parent as the reference.
+   * @param defaultValue
+   *     The default value of the column, or null.
+   * @return The new column, saved in the session.
+   */
+  static Column createAdColumn(Table table, org.openbravo.model.ad.module.Module module, String name,
+      String columnName, Reference reference, String defaultValue) {
+    Column newCol = OBProvider.getInstance().get(Column.class);
+    newCol.setName(name);
+    newCol.setDBColumnName(columnName);
+    newCol.setTable(table);
+    newCol.setModule(module);
+    if (Boolean.TRUE.equals(reference.isBaseReference())) {
+      newCol.setReference(reference);
+    } else {
+      newCol.setReferenceSearchKey(reference);
+      newCol.setReference(reference.getParentReference());
+    }
+    if (StringUtils.isNotEmpty(defaultValue)) {
+      newCol.setDefaultValue(defaultValue.replace("'", ""));
     }
+    Integer length = ReferenceTypeRegistry.getInstance().getDbType(reference).getRight();
+    if (length != null) {
+      newCol.setLength(Long.valueOf(length));
+    }
+    OBDal.getInstance().save(newCol);
+    return newCol;
+  }
+
+  /**
+   * Returns the database name of the table referenced by a column.
+   *
+   * @param reference
+   *     The `Reference` object that defines the type of the column.
+   * @param columnName
+   *     The name of the column.
+   * @return The name of the referenced table, or null if the reference is not a table reference.
+   */
+  static String getFKTargetTable(Reference reference, String columnName) {
+    if (isTableDirRef(reference)) {
+      return StringUtils.substring(columnName, 0, columnName.length() - 3);
+    }
+    if (isTableBaseRef(reference)) {
+      ReferencedTable tableRefInfo = reference.getADReferencedTableList().get(0);
+      return tableRefInfo.getTable().getDBTableName();
+    }
+    return null;
   }
 
   /**
@@ -225,7 +468,7 @@ public class CreateColumn extends BaseWebhookService {
    * @return `true` if the reference is not a base reference and its parent reference ID
    *     matches the Table Reference ID, otherwise `false`.
    */
-  private boolean isTableBaseRef(Reference reference) {
+  private static boolean isTableBaseRef(Reference reference) {
     return !reference.isBaseReference() && StringUtils.equals(reference.getParentReference().getId(),
         TABLE_REFERECE_ID);
   }
@@ -255,7 +498,7 @@ public class CreateColumn extends BaseWebhookService {
   }
 
 
-  private boolean isTableDirRef(Reference reference) {
+  static boolean isTableDirRef(Reference reference) {
     return StringUtils.equals(reference.getId(), TABLEDIR_REFERENCE_ID);
   }
 
@@ -285,6 +528,52 @@ public class CreateColumn extends BaseWebhookService {
    */
   public static JSONObject addColumn(String prefix, String tableName, String column, Reference reference,
       String defaultValue, boolean canBeNull) throws SQLException {
+    return Utils.executeQuery(buildAddColumnQuery(prefix, tableName, column, reference, defaultValue, canBeNull));
+  }
+
+  /**
+   * Builds the statement that adds a new column to a database table.
+   * <p>
+   * See {@link #addColumn(String, String, String, Reference, String, boolean)} for the meaning of the parameters.
+   * </p>
+   *
+   * @return The ALTER TABLE statement that adds the column.
+   */
+  static String buildAddColumnQuery(String prefix, String tableName, String column, Reference reference,
+      String defaultValue, boolean canBeNull) {
+    return buildAddColumnQuery(ConstraintNameAllocator.forPrefixes(List.of(prefix)), prefix, tableName, column,
+        reference, defaultValue, canBeNull);
+  }
+
+  /**
+   * Builds the statement that adds a new column to a database table, allocating the name of its check constraint
+   * with the allocator of an operation that creates several columns.
+   *
+   * @param names
+   *     The allocator of the constraint names of the operation.
+   * @return The ALTER TABLE statement that adds the column.
+   */
+  static String buildAddColumnQuery(ConstraintNameAllocator names, String prefix, String tableName, String column,
+      Reference reference, String defaultValue, boolean canBeNull) {
+    return String.format("ALTER TABLE IF EXISTS public.%s %s", tableName,
+        buildAddColumnClause(names, prefix, tableName, column, reference, defaultValue, canBeNull));
+  }
+
+  /**
+   * Builds the {@code ADD COLUMN} clause of a new column, with its check constraint if any, so several columns can
+   * be added by the same ALTER TABLE. A column that already exists fails the statement instead of being skipped, so
+   * the columns dropped after a failed registration are always the ones the statement created.
+   * <p>
+   * See {@link #addColumn(String, String, String, Reference, String, boolean)} for the meaning of the other
+   * parameters.
+   * </p>
+   *
+   * @param names
+   *     The allocator of the constraint names of the operation.
+   * @return The clause that adds the column.
+   */
+  static String buildAddColumnClause(ConstraintNameAllocator names, String prefix, String tableName, String column,
+      Reference reference, String defaultValue, boolean canBeNull) {
 
     if (StringUtils.isBlank(column)) {
       column = String.format(OBMessageUtils.messageBD("COPDEV_DefaultColumnName"));
@@ -292,7 +581,7 @@ public class CreateColumn extends BaseWebhookService {
       column = StringUtils.replace(StringUtils.trimToEmpty(column), " +", "_");
     }
 
-    var dbTypeTuple = getDbType(reference);
+    var dbTypeTuple = ReferenceTypeRegistry.getInstance().getDbType(reference);
     String dbTypeName = dbTypeTuple.getLeft();
     Integer length = dbTypeTuple.getRight();
     String dbType = dbTypeName + (length != null ? "(" + length + ")" : "");
@@ -305,12 +594,11 @@ public class CreateColumn extends BaseWebhookService {
     String queryNull = canBeNull ? " " : " NOT NULL";
 
     if (StringUtils.equals(dbType, CHAR1)) {
-      queryConstraint = generateCheckConstraint(prefix, tableName, column);
+      queryConstraint = generateCheckConstraint(names, prefix, tableName, column);
     }
 
-    String query = String.format("ALTER TABLE IF EXISTS public.%s ADD COLUMN IF NOT EXISTS %s %s %s %s %s;", tableName,
-        column, dbType, queryNull, defaultState, queryConstraint);
-    return Utils.executeQuery(query);
+    return String.format("ADD COLUMN %s %s %s %s %s", column, dbType, queryNull, defaultState,
+        queryConstraint);
   }
 
   /**
@@ -344,11 +632,13 @@ public class CreateColumn extends BaseWebhookService {
   /**
    * Generates a SQL check constraint for a column in a database table.
    * <p>
-   * This method creates a check constraint for a column, ensuring that its value
-   * is restricted to 'Y' or 'N'. It also ensures that the constraint name does not
-   * exceed the maximum allowed length by truncating and adjusting the name if necessary.
+   * This method creates a check constraint for a column, ensuring that its value is restricted to 'Y' or 'N'. Its
+   * name is allocated by the allocator of the operation, which keeps it within the maximum allowed length and
+   * distinct from the existing names and from the other names of the operation.
    * </p>
    *
+   * @param names
+   *     The allocator of the constraint names of the operation.
    * @param prefix
    *     The prefix to be used in the constraint name.
    * @param tableName
@@ -357,102 +647,10 @@ public class CreateColumn extends BaseWebhookService {
    *     The name of the column for which the constraint is being generated.
    * @return A SQL string representing the check constraint.
    */
-  private static String generateCheckConstraint(String prefix, String tableName, String column) {
-    String queryConstraint;
-    String proposal = column + "_chk";
-    String columnOff = column;
-    var offset = 1;
-    while ((proposal.length() > MAX_LENGTH) && (offset < 15)) {
-      String nameOff = StringUtils.isNotEmpty(tableName) && tableName.length() > offset ? StringUtils.substring(
-          tableName, offset) : tableName;
-      columnOff = StringUtils.isNotEmpty(column) && column.length() > offset ? StringUtils.substring(column,
-          offset) : column;
-      proposal = prefix + "_" + nameOff + "_" + columnOff + "_chk";
-      offset++;
-    }
-    queryConstraint = String.format(", ADD CONSTRAINT %s CHECK (%s = ANY (ARRAY['Y'::bpchar, 'N'::bpchar]))", proposal,
-        columnOff);
-    return queryConstraint;
-  }
-
-  /**
-   * Retrieves the corresponding database type for the given column type.
-   * <p>
-   * This method maps a column type to its corresponding database type based on predefined mappings.
-   * If the column type is not found in the mappings, it checks the parent reference type.
-   * If neither is found, an exception is thrown.
-   * </p>
-   *
-   * @param columnType
-   *     The column type as a `Reference` object.
-   * @return The corresponding database type as a string.
-   * @throws OBException
-   *     If the column type or its parent reference is not found in the mappings.
-   */
-  protected static Pair<String, Integer> getDbType(Reference columnType) {
-    Map<String, Pair<String, Integer>> mapping = new HashMap<>();
-    mapping.put("Absolute DateTime", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("Absolute Time", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("Amount", getPair(NUMERIC));
-    mapping.put("Assignment", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Binary", getPair("bytea"));
-    mapping.put("Button", getPair(CHARACTER, 1));
-    mapping.put("Button List", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Color", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Date", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("DateTime", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("DateTime_From (Date)", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("DateTime_To (Date)", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("General Quantity", getPair(NUMERIC));
-    mapping.put("ID", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Image", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Image BLOB", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Integer", getPair(NUMERIC));
-    mapping.put("Link", getPair(CHARACTER_VARYING, 200));
-    mapping.put("List", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Masked String", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Memo", getPair(CHARACTER_VARYING, 4000));
-    mapping.put("Non Transactional Sequence", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Number", getPair(NUMERIC));
-    mapping.put("OBKMO_Widget in Form Reference", getPair(CHARACTER_VARYING, 32));
-    mapping.put("OBUISEL_Multi Selector Reference", getPair(CHARACTER_VARYING, 60));
-    mapping.put("OBUISEL_SelectorAsLink Reference", getPair(NUMERIC));
-    mapping.put("OBUISEL_Selector Reference", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Password (decryptable)", getPair(CHARACTER_VARYING, 255));
-    mapping.put("Password (not decryptable)", getPair(CHARACTER_VARYING, 255));
-    mapping.put("PAttribute", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Price", getPair(NUMERIC));
-    mapping.put("Product Characteristics", getPair(CHARACTER_VARYING, 2000));
-    mapping.put("Quantity", getPair(NUMERIC));
-    mapping.put("Rich Text Area", getPair("text"));
-    mapping.put("RowID", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Search", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Search Vector", getPair(CHARACTER_VARYING, 60));
-    mapping.put("String", getPair(CHARACTER_VARYING, 200));
-    mapping.put("Table", getPair(CHARACTER_VARYING, 32));
-    mapping.put("TableDir", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Text", getPair("text"));
-    mapping.put("Time", getPair(TIMESTAMP_WITHOUT_TIME_ZONE));
-    mapping.put("Transactional Sequence", getPair(CHARACTER_VARYING, 60));
-    mapping.put("Tree Reference", getPair(CHARACTER_VARYING, 32));
-    mapping.put("Window Reference", getPair(CHARACTER_VARYING, 60));
-    mapping.put("YesNo", getPair(CHARACTER, 1));
-
-    if (mapping.containsKey(columnType.getName())) {
-      return mapping.get(columnType.getName());
-    }
-    String parentRefName = columnType.getParentReference().getName();
-    if (Boolean.FALSE.equals(columnType.isBaseReference()) && mapping.containsKey(parentRefName)) {
-      return mapping.get(parentRefName);
-    }
-    throw new OBException(OBMessageUtils.messageBD("COPDEV_ColumnTypeNotFound") + columnType.getName());
-  }
-
-  private static Pair<String, Integer> getPair(String type) {
-    return Pair.of(type, null);
-  }
-
-  private static Pair<String, Integer> getPair(String type, int length) {
-    return Pair.of(type, length);
+  private static String generateCheckConstraint(ConstraintNameAllocator names, String prefix, String tableName,
+      String column) {
+    String constraintName = names.allocate(prefix, tableName, column, "chk");
+    return String.format(", ADD CONSTRAINT %s CHECK (%s = ANY (ARRAY['Y'::bpchar, 'N'::bpchar]))", constraintName,
+        column);
   }
 }
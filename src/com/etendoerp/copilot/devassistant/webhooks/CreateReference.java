@@ -1,18 +1,30 @@
 package com.etendoerp.copilot.devassistant.webhooks;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.domain.List;
 import org.openbravo.model.ad.domain.Reference;
+import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.RecordUpsert;
 import com.etendoerp.copilot.devassistant.Utils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
@@ -21,6 +33,8 @@ import com.etendoerp.webhookevents.services.BaseWebhookService;
  * Class to create references through webhook services.
  * This class handles the creation of references and their items.
  * Requires the parameters: referenceList, prefix, nameReference, help, and description.
+ * When the module already has a reference with the same name, the list items missing from it are created, the
+ * items that are no longer listed are deactivated and the deactivated items listed again are activated.
  */
 public class CreateReference extends BaseWebhookService {
 
@@ -41,7 +55,39 @@ public class CreateReference extends BaseWebhookService {
       String help = parameter.get("Help");
       String description = parameter.get("Description");
 
-      Reference newReference = createReference(name, prefix, help, description);
+      Module module = Utils.getModuleByPrefix(prefix);
+      if (!DryRun.isEnabled(parameter)) {
+        ModuleLock.lock(prefix);
+      }
+      // The reference is found by its natural key, so a retried call converges instead of duplicating it
+      Reference existing = findReference(name, module);
+      Map<String, Object> referenceValues = getReferenceValues(name, module, help, description);
+
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planReference(existing, referenceValues, module, list).toString());
+        return;
+      }
+
+      if (existing != null) {
+        boolean changed = RecordUpsert.converge(existing, referenceValues);
+        Set<String> requestedItems = getRequestedItems(list);
+        for (List item : existing.getADListList()) {
+          changed |= RecordUpsert.converge(item, getItemValues(item, requestedItems));
+        }
+        for (Pair<String, String> item : buildListItems(list, getListItems(existing))) {
+          generateReferenceListRecord(item.getLeft(), item.getRight(), existing);
+          changed = true;
+        }
+        if (changed) {
+          OBDal.getInstance().flush();
+        }
+        responseVars.put("message", String.format(OBMessageUtils.messageBD(
+            changed ? "COPDEV_RecordUpdated" : "COPDEV_RecordUpToDate"), Reference.ENTITY_NAME, name,
+            existing.getId()));
+        return;
+      }
+
+      Reference newReference = createReference(name, module, help, description);
       createReferenceListItems(list, newReference);
 
       OBDal.getInstance().flush();
@@ -75,11 +121,11 @@ public class CreateReference extends BaseWebhookService {
     }
   }
 
-  private Reference createReference(String name, String prefix, String help, String description) {
+  static Reference createReference(String name, Module module, String help, String description) {
     Reference newReference = OBProvider.getInstance().get(Reference.class);
     newReference.setNewOBObject(true);
     newReference.setName(name);
-    newReference.setModule(Utils.getModuleByPrefix(prefix));
+    newReference.setModule(module);
     newReference.setParentReference(OBDal.getInstance().get(Reference.class, DEFAULT_PARENT_REFERENCE_ID));
     newReference.setHelpComment(help);
     newReference.setDescription(description);
@@ -87,19 +133,134 @@ public class CreateReference extends BaseWebhookService {
     return newReference;
   }
 
-  private void createReferenceListItems(String list, Reference reference) {
+  static void createReferenceListItems(String list, Reference reference) {
+    for (Pair<String, String> item : buildListItems(list, Collections.emptyMap())) {
+      generateReferenceListRecord(item.getLeft(), item.getRight(), reference);
+    }
+  }
+
+  private static Reference findReference(String name, Module module) {
+    OBCriteria<Reference> referenceCrit = OBDal.getInstance().createCriteria(Reference.class);
+    referenceCrit.add(Restrictions.eq(Reference.PROPERTY_NAME, name));
+    referenceCrit.add(Restrictions.eq(Reference.PROPERTY_MODULE, module));
+    referenceCrit.setMaxResults(1);
+    return (Reference) referenceCrit.uniqueResult();
+  }
+
+  /**
+   * @return the values a reference gets from the request, as set by {@link #createReference}
+   */
+  private static Map<String, Object> getReferenceValues(String name, Module module, String help,
+      String description) {
+    Map<String, Object> values = DryRun.values();
+    values.put(Reference.PROPERTY_NAME, name);
+    values.put(Reference.PROPERTY_MODULE, module);
+    values.put(Reference.PROPERTY_PARENTREFERENCE,
+        OBDal.getInstance().get(Reference.class, DEFAULT_PARENT_REFERENCE_ID));
+    values.put(Reference.PROPERTY_HELPCOMMENT, help);
+    values.put(Reference.PROPERTY_DESCRIPTION, description);
+    return values;
+  }
+
+  /**
+   * @return the trimmed names of the items of a comma separated list
+   */
+  private static Set<String> getRequestedItems(String list) {
+    Set<String> names = new HashSet<>();
+    for (String name : StringUtils.split(list, ",")) {
+      names.add(StringUtils.trim(name));
+    }
+    return names;
+  }
+
+  /**
+   * Returns the state an existing list item gets from the request. An item that is no longer listed is deactivated
+   * instead of deleted, as records may still store its search key, and is activated again when it is listed back.
+   *
+   * @param item
+   *     the existing list item
+   * @param requestedItems
+   *     the names of the requested items
+   * @return the active flag of the item
+   */
+  private static Map<String, Object> getItemValues(List item, Set<String> requestedItems) {
+    Map<String, Object> values = DryRun.values();
+    values.put(List.PROPERTY_ACTIVE, requestedItems.contains(item.getName()));
+    return values;
+  }
+
+  /**
+   * @return the search keys of the list items of a reference, by item name
+   */
+  private static Map<String, String> getListItems(Reference reference) {
+    Map<String, String> items = new HashMap<>();
+    for (List item : reference.getADListList()) {
+      items.put(item.getName(), item.getSearchKey());
+    }
+    return items;
+  }
+
+  /**
+   * Builds the dry-run plan of a list reference: the reference and list item records that would be created, or
+   * the changes to the existing reference, its missing items and the items that would be deactivated or activated
+   * again, with the same values as {@link #createReference} and {@link #createReferenceListItems}.
+   *
+   * @param existing
+   *     the existing reference with the same name in the module, or null
+   * @return the plan, as returned by {@link DryRun#toJSON()}
+   * @throws JSONException
+   *     if the plan cannot be written
+   */
+  private static JSONObject planReference(Reference existing, Map<String, Object> referenceValues, Module module,
+      String list) throws JSONException {
+    DryRun plan = new DryRun();
+    if (existing != null) {
+      plan.addUpdate(Reference.ENTITY_NAME, existing, referenceValues);
+      Set<String> requestedItems = getRequestedItems(list);
+      for (List item : existing.getADListList()) {
+        plan.addUpdate(List.ENTITY_NAME, item, getItemValues(item, requestedItems));
+      }
+    } else {
+      plan.addRecord(Reference.ENTITY_NAME, DryRun.ACTION_CREATE, referenceValues);
+    }
+    Map<String, String> existingItems = existing != null ? getListItems(existing) : Collections.emptyMap();
+    for (Pair<String, String> item : buildListItems(list, existingItems)) {
+      Map<String, Object> values = DryRun.values();
+      values.put(List.PROPERTY_NAME, item.getLeft());
+      values.put(List.PROPERTY_SEARCHKEY, item.getRight());
+      values.put(List.PROPERTY_MODULE, module);
+      plan.addRecord(List.ENTITY_NAME, DryRun.ACTION_CREATE, values);
+    }
+    return plan.toJSON();
+  }
+
+  /**
+   * Builds the items of a comma separated list that are not among the existing items of the reference.
+   *
+   * @param list
+   *     the comma separated item names
+   * @param existingItems
+   *     the search keys of the existing items, by name
+   * @return the name and unique search key of each missing item, in order
+   */
+  private static java.util.List<Pair<String, String>> buildListItems(String list, Map<String, String> existingItems) {
     String[] referenceItems = StringUtils.split(list, ",");
-    Set<String> existingSearchKeys = new HashSet<>();
+    Set<String> existingSearchKeys = new HashSet<>(existingItems.values());
+    java.util.List<Pair<String, String>> items = new ArrayList<>();
 
     for (int i = 0; i < referenceItems.length; i++) {
       String trimmedName = StringUtils.trim(referenceItems[i]);
+      if (existingItems.containsKey(trimmedName)) {
+        continue;
+      }
       String searchKey = generateUniqueSearchKey(trimmedName, existingSearchKeys);
-      generateReferenceListRecord(trimmedName, searchKey, reference);
+      items.add(Pair.of(trimmedName, searchKey));
       existingSearchKeys.add(searchKey);
     }
+    return items;
   }
 
-  private String generateUniqueSearchKey(String name, Set<String> existingSearchKeys) {
+  private static String generateUniqueSearchKey(String name, Set<String> existingSearchKeys) {
     String baseKey = StringUtils.left(name, 2).toUpperCase();
     String searchKey = baseKey;
     int index = 2;
@@ -113,7 +274,7 @@ public class CreateReference extends BaseWebhookService {
     return searchKey;
   }
 
-  private void generateReferenceListRecord(String name, String searchKey, Reference reference) {
+  private static void generateReferenceListRecord(String name, String searchKey, Reference reference) {
     List newReferenceList = OBProvider.getInstance().get(List.class);
     newReferenceList.setNewOBObject(true);
     newReferenceList.setName(name);
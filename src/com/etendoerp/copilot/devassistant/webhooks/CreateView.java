@@ -13,6 +13,8 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBDal;
@@ -21,6 +23,9 @@ import org.openbravo.model.ad.datamodel.Table;
 import org.openbravo.model.ad.module.DataPackage;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.MaterializedViews;
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
@@ -28,6 +33,10 @@ import com.etendoerp.webhookevents.services.BaseWebhookService;
  * Webhook service to create a database view in Etendo.
  * This service creates a view based on a provided SQL query, registers it in the Etendo application dictionary,
  * and validates that the view meets the required column projections.
+ * <p>
+ * With the "Materialized" parameter the rows are stored in a materialized view, refreshed concurrently by a
+ * background process, and the registered view selects from it. See {@link MaterializedViews}.
+ * </p>
  */
 public class CreateView extends BaseWebhookService {
 
@@ -47,6 +56,8 @@ public class CreateView extends BaseWebhookService {
     String dataAccessLevel = parameter.get("DataAccessLevel");
     String description = parameter.get("Description");
     String helpTable = parameter.get("Help");
+    boolean materialized = StringUtils.equalsIgnoreCase(parameter.get("Materialized"), "true");
+    String refreshMinutes = parameter.get("RefreshMinutes");
 
     try {
       // Step 1: Validate required parameters
@@ -57,6 +68,9 @@ public class CreateView extends BaseWebhookService {
       Module module = (Module) moduleAndPrefix[0];
       String prefix = (String) moduleAndPrefix[1];
       LOG.debug("Module: {}, Prefix: {}", module.getName(), prefix);
+      if (!DryRun.isEnabled(parameter)) {
+        ModuleLock.lock(prefix);
+      }
 
       // Step 3: Construct the view database name
       String viewDbName = constructViewDbName(name, prefix);
@@ -67,18 +81,29 @@ public class CreateView extends BaseWebhookService {
       LOG.debug("SELECT query validated successfully");
 
       // Step 5: Create the view in the database and verify
-      createAndVerifyView(viewDbName, querySelect);
-
-      // Step 6: Register the view in Etendo
+      List<String> statements = materialized ? MaterializedViews.buildCreateStatements(viewDbName, querySelect,
+          StringUtils.isNumeric(refreshMinutes) ? Integer.parseInt(refreshMinutes) : 0) : List.of(
+          String.format("CREATE OR REPLACE VIEW public.%s AS %s", viewDbName, querySelect));
       ViewRegistrationParams params = new ViewRegistrationParams(module, viewDbName, javaClass, dataAccessLevel,
           description, helpTable, name);
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planView(params, statements).toString());
+        return;
+      }
+      // The view and its AD registration share the DAL transaction, committed at the end of the request, so a
+      // failed registration does not leave the view behind and the module stays locked until the commit
+      createAndVerifyView(viewDbName, statements);
+
+      // Step 6: Register the view in Etendo
       registerView(params, responseVars);
 
     } catch (SQLException e) {
       LOG.error("SQL error while creating view: {}", e.getMessage(), e);
+      OBDal.getInstance().rollbackAndClose();
       responseVars.put("error", "SQL Error: " + e.getMessage());
     } catch (Exception e) {
       LOG.error("Error creating view: {}", e.getMessage(), e);
+      OBDal.getInstance().rollbackAndClose();
       responseVars.put("error", e.getMessage());
     }
   }
@@ -193,27 +218,27 @@ public class CreateView extends BaseWebhookService {
   }
 
   /**
-   * Creates the view in the database, verifies its creation, and logs its columns.
+   * Creates the view in the database, verifies its creation, and logs its columns. The statements run on the
+   * connection of the DAL session and are not committed here.
    *
    * @param viewDbName
    *     The database name of the view.
-   * @param querySelect
-   *     The SQL SELECT query for the view.
+   * @param statements
+   *     The statements that create the view, executed in order in the DAL transaction.
    * @throws SQLException
    *     If a database error occurs.
    */
-  private void createAndVerifyView(String viewDbName, String querySelect) throws SQLException {
+  private void createAndVerifyView(String viewDbName, List<String> statements) throws SQLException {
     Connection conn = null;
     PreparedStatement statement = null;
     try {
       conn = OBDal.getInstance().getConnection();
-      String query = String.format("CREATE OR REPLACE VIEW public.%s AS %s", viewDbName, querySelect);
-      statement = conn.prepareStatement(query);
-      boolean resultBool = statement.execute();
-      LOG.debug("Query executed and returned: {}", resultBool);
-
-      conn.commit();
-      LOG.debug("Transaction committed after creating view");
+      for (String query : statements) {
+        statement = conn.prepareStatement(query);
+        boolean resultBool = statement.execute();
+        LOG.debug("Query executed and returned: {}", resultBool);
+        statement.close();
+      }
 
       verifyViewExists(conn, viewDbName);
 
@@ -325,6 +350,33 @@ public class CreateView extends BaseWebhookService {
   }
 
 
+  /**
+   * Builds the dry-run plan of the view: the statements that create it and its AD_TABLE record. The query has
+   * already been checked with {@code LIMIT 0}, which reads nothing and writes nothing.
+   *
+   * @param params
+   *     The parameters for view registration.
+   * @param statements
+   *     The statements that would create the view.
+   * @return The plan, as returned by {@link DryRun#toJSON()}.
+   * @throws JSONException
+   *     If the plan cannot be written.
+   */
+  private JSONObject planView(ViewRegistrationParams params, List<String> statements) throws JSONException {
+    OBContext.setAdminMode(true);
+    try {
+      TableRegistrationUtils.alreadyExistTable(params.getViewDbName());
+      DataPackage dataPackage = TableRegistrationUtils.getDataPackage(params.getModule());
+      String javaClass = TableRegistrationUtils.determineJavaClassName(params.getName(), params.getJavaClass());
+      DryRun plan = new DryRun().addStatements(statements);
+      TableRegistrationUtils.planAdTable(plan, dataPackage, javaClass, params.getViewDbName(),
+          params.getDataAccessLevel(), params.getDescription(), params.getHelpTable(), true);
+      return plan.toJSON();
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
   /**
    * Sets the success response for the view creation.
    *
@@ -0,0 +1,69 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.service.db.DalConnectionProvider;
+
+import com.etendoerp.copilot.devassistant.PaginatedQuery;
+import com.etendoerp.copilot.devassistant.ResultFormat;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that executes a read-only SQL query and returns a single page of its result.
+ * <p>
+ * The first call only needs the {@code Query} and the {@code KeyColumn}, a unique and not null column of the
+ * result that orders the pages. When more rows are available the response includes a {@code NextToken} that must
+ * be sent back as {@code ContinuationToken}, together with the same query and key column, to read the following
+ * page. This lets agents pull only the rows they need instead of materializing the whole result.
+ * With {@code Format=columnar} the rows are returned in the compact columnar encoding. A page read with a
+ * {@code QueryID} can be cancelled by the same user with the {@code CancelQuery} webhook, for example when the
+ * agent that asked for it disconnects.
+ * </p>
+ */
+public class ExecutePaginatedQuery extends BaseWebhookService {
+
+  private static final Logger LOG = LogManager.getLogger();
+  private static final String ERROR = "error";
+  public static final String RESULT = "Result";
+  public static final String NEXT_TOKEN = "NextToken";
+  public static final String QUERY_ID = "QueryID";
+
+  /**
+   * Executes the requested page of the query.
+   *
+   * @param parameter
+   *     A map containing "Query", "KeyColumn" and the optional "PageSize", "ContinuationToken", "Format" and
+   *     "QueryID" parameters.
+   * @param responseVars
+   *     A map that will hold the page rows, the next token if any, or the error message.
+   */
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, LOG);
+    try {
+      PaginatedQuery query = PaginatedQuery.of(parameter.get("Query"), parameter.get("KeyColumn"),
+          parameter.get("PageSize"), parameter.get("ContinuationToken"));
+      String userId = OBContext.getOBContext().getUser().getId();
+      String queryId = parameter.get(QUERY_ID);
+      query.getGuard().track(userId, queryId);
+      PaginatedQuery.Page page;
+      try {
+        page = query.fetch(new DalConnectionProvider(false), ResultFormat.of(parameter.get("Format")));
+      } finally {
+        query.getGuard().untrack(userId, queryId);
+      }
+      responseVars.put(RESULT, page.getJson());
+      if (page.getNextToken() != null) {
+        responseVars.put(NEXT_TOKEN, page.getNextToken());
+      }
+    } catch (Exception e) {
+      LOG.error("Error executing paginated query", e);
+      responseVars.put(ERROR, e.getMessage());
+    }
+  }
+}
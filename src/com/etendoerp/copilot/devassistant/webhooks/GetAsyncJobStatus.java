@@ -0,0 +1,35 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.etendoerp.copilot.devassistant.AsyncWebhookJobs;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that returns the status of a webhook submitted with {@code Async=true}.
+ * <p>
+ * The response holds the job status (queued, running, done or failed), the last progress reported by the webhook
+ * and, once the job has finished, the response variables it produced.
+ * </p>
+ */
+public class GetAsyncJobStatus extends BaseWebhookService {
+
+  private static final Logger log = LogManager.getLogger();
+  private static final String JOB_ID = "JobID";
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, log);
+    try {
+      responseVars.put("response", AsyncWebhookJobs.getInstance().getStatus(parameter.get(JOB_ID)).toString());
+    } catch (Exception e) {
+      log.error("Error retrieving async job status", e);
+      responseVars.put("error", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that returns the module lock metrics of the node that serves the request.
+ * <p>
+ * The response holds the locks acquired since startup, the acquisitions that had to wait or timed out, and the
+ * total and maximum wait in milliseconds. It is read-only and meant to tell whether the DDL requests on the same
+ * module are being serialized for too long.
+ * </p>
+ */
+public class GetModuleLockMetrics extends BaseWebhookService {
+
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, log);
+    try {
+      responseVars.put("response", ModuleLock.getMetrics().toString());
+    } catch (Exception e) {
+      log.error("Error retrieving module lock metrics", e);
+      responseVars.put("error", e.getMessage());
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.etendoerp.copilot.devassistant.webhooks;
 
+import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,6 +13,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.openbravo.dal.service.OBDal;
 
+import com.etendoerp.copilot.devassistant.QueryResultStreamer;
+import com.etendoerp.copilot.devassistant.ResultFormat;
+import com.etendoerp.copilot.devassistant.SingleFlight;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
 import kong.unirest.json.JSONArray;
@@ -31,6 +35,7 @@ public class GetWindowTabOrTableInfo extends BaseWebhookService {
   private static final String QUERY_EXECUTED = "QueryExecuted";
   private static final String COLUMNS = "Columns";
   private static final String DATA = "Data";
+  private static final String RESULT = "Result";
 
   /**
    * Processes the incoming webhook request to fetch details about a window, table,
@@ -39,13 +44,19 @@ public class GetWindowTabOrTableInfo extends BaseWebhookService {
    *
    * @param parameter
    *     A map containing the input parameters for the request, including
-   *     "Name" and "KeyWord".
+   *     "Name", "KeyWord" and the optional "Format" ("columnar" returns a single
+   *     "Result" entry in the compact columnar encoding).
    * @param responseVars
    *     A map that will hold the response variables, including the
    *     query executed, column names, and data retrieved.
    */
   @Override
   public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    // Identical lookups fired at the same time by several assistants share a single query
+    SingleFlight.execute(this, parameter, responseVars, this::getInfo);
+  }
+
+  private void getInfo(Map<String, String> parameter, Map<String, String> responseVars) {
     LOG.info("Getting Information.");
     for (Map.Entry<String, String> entry : parameter.entrySet()) {
       LOG.info("Parameter: {} = {}", entry.getKey(), entry.getValue());
@@ -55,6 +66,7 @@ public class GetWindowTabOrTableInfo extends BaseWebhookService {
 
     String name = parameter.get("Name");
     String keyWord = parameter.get("KeyWord");
+    ResultFormat format = ResultFormat.of(parameter.get("Format"));
 
     if (StringUtils.isBlank(keyWord)) {
       responseVars.put(ERROR, "KeyWord parameter is required");
@@ -118,6 +130,15 @@ public class GetWindowTabOrTableInfo extends BaseWebhookService {
       statement.setString(paramIndex, name); // id match (exact)
 
       ResultSet result = statement.executeQuery();
+      responseVars.put(QUERY_EXECUTED, query);
+
+      if (format == ResultFormat.COLUMNAR) {
+        StringWriter writer = new StringWriter();
+        format.encoder(QueryResultStreamer.DEFAULT_MAX_ROWS, QueryResultStreamer.DEFAULT_MAX_BYTES).stream(result,
+            writer);
+        responseVars.put(RESULT, writer.toString());
+        return;
+      }
 
       int columnCount = result.getMetaData().getColumnCount();
       JSONArray columns = new JSONArray();
@@ -134,7 +155,6 @@ public class GetWindowTabOrTableInfo extends BaseWebhookService {
         data.put(row);
       }
 
-      responseVars.put(QUERY_EXECUTED, query);
       responseVars.put(COLUMNS, columns.toString());
       responseVars.put(DATA, data.toString());
 
@@ -0,0 +1,232 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.module.Module;
+import org.openbravo.model.ad.module.ModuleDBPrefix;
+
+import com.etendoerp.copilot.devassistant.ConstraintNameAllocator;
+import com.etendoerp.copilot.devassistant.SupportingIndexes;
+import com.etendoerp.copilot.devassistant.TableRegistrationUtils;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that inspects the Postgres statistics of the tables of a module and returns indexing advice.
+ * <p>
+ * The tables are the ones whose name starts with one of the DB prefixes of the module. The report has four
+ * sections, each one limited to the most relevant entries and including the DDL that would fix the issue:
+ * </p>
+ * <ul>
+ *   <li>{@code seqScanHeavy}: tables with data that are read more often by sequential scans than by indexes;</li>
+ *   <li>{@code unusedIndexes}: non-unique indexes that have never been used, except the ones supporting a foreign
+ *   key, which are used by the deletes and updates of the referenced table and would be advised back as missing;
+ *   </li>
+ *   <li>{@code unindexedForeignKeys}: foreign keys whose column is not the leading column of any index;</li>
+ *   <li>{@code bloat}: analyzed tables whose size is well above the one estimated from their rows and
+ *   {@code pg_stats}.</li>
+ * </ul>
+ * The usage counters are cumulative since the last statistics reset, so the advice is only as good as the
+ * workload seen since then.
+ */
+public class IndexAdvisor extends BaseWebhookService {
+
+  private static final Logger LOG = LogManager.getLogger();
+  private static final String ERROR = "error";
+  private static final int MAX_ENTRIES = 20;
+  private static final long MIN_ROWS_FOR_SEQ_SCAN = 10000;
+  private static final long MIN_PAGES_FOR_BLOAT = 128;
+  private static final double MIN_BLOAT_RATIO = 0.3;
+  private static final String TABLE = "table";
+  private static final String DDL = "ddl";
+
+  private static final String SEQ_SCAN_QUERY = "SELECT relname, seq_scan, coalesce(idx_scan, 0), n_live_tup "
+      + "FROM pg_catalog.pg_stat_user_tables "
+      + "WHERE schemaname = 'public' AND relname LIKE ANY(?) AND n_live_tup >= ? AND seq_scan > coalesce(idx_scan, 0) "
+      + "ORDER BY seq_tup_read DESC LIMIT " + MAX_ENTRIES;
+
+  private static final String UNUSED_INDEX_QUERY = "SELECT s.relname, s.indexrelname, "
+      + "pg_catalog.pg_relation_size(s.indexrelid) "
+      + "FROM pg_catalog.pg_stat_user_indexes s JOIN pg_catalog.pg_index i ON i.indexrelid = s.indexrelid "
+      + "WHERE s.schemaname = 'public' AND s.relname LIKE ANY(?) AND s.idx_scan = 0 "
+      + "AND NOT i.indisunique AND NOT i.indisprimary "
+      + "AND NOT EXISTS (SELECT 1 FROM pg_catalog.pg_constraint c WHERE c.contype = 'f' AND c.conrelid = i.indrelid "
+      + "AND c.conkey[1] = i.indkey[0]) "
+      + "ORDER BY pg_catalog.pg_relation_size(s.indexrelid) DESC LIMIT " + MAX_ENTRIES;
+
+  private static final String UNINDEXED_FK_QUERY = "SELECT t.relname, c.conname, a.attname, r.relname "
+      + "FROM pg_catalog.pg_constraint c "
+      + "JOIN pg_catalog.pg_class t ON t.oid = c.conrelid "
+      + "JOIN pg_catalog.pg_namespace n ON n.oid = t.relnamespace "
+      + "JOIN pg_catalog.pg_class r ON r.oid = c.confrelid "
+      + "JOIN pg_catalog.pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = c.conkey[1] "
+      + "WHERE c.contype = 'f' AND n.nspname = 'public' AND t.relname LIKE ANY(?) "
+      + "AND NOT EXISTS (SELECT 1 FROM pg_catalog.pg_index i WHERE i.indrelid = c.conrelid AND i.indkey[0] = c.conkey[1]) "
+      + "ORDER BY t.relname, c.conname LIMIT " + MAX_ENTRIES;
+
+  private static final String BLOAT_QUERY = "SELECT s.relname, c.relpages, s.n_live_tup, s.n_dead_tup, "
+      + "ceil(s.n_live_tup * (28 + w.width) / current_setting('block_size')::numeric) "
+      + "FROM pg_catalog.pg_stat_user_tables s "
+      + "JOIN pg_catalog.pg_class c ON c.oid = s.relid "
+      // A table without statistics has no width to estimate its size from, so it is not reported
+      + "JOIN (SELECT tablename, sum(avg_width) AS width FROM pg_catalog.pg_stats "
+      + "WHERE schemaname = 'public' GROUP BY tablename) w ON w.tablename = s.relname "
+      + "WHERE s.schemaname = 'public' AND s.relname LIKE ANY(?) AND c.relpages >= ? "
+      + "ORDER BY c.relpages DESC";
+
+  /**
+   * Builds the index advice for a module.
+   *
+   * @param parameter
+   *     A map containing the "ModuleID" of the module to inspect.
+   * @param responseVars
+   *     A map that will hold the advice in "message", or the error.
+   */
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, LOG);
+    try {
+      Module module = OBDal.getInstance().get(Module.class, parameter.get("ModuleID"));
+      if (module == null) {
+        throw new OBException(
+            String.format(OBMessageUtils.messageBD("COPDEV_ModuleNotFound"), parameter.get("ModuleID")));
+      }
+      List<String> prefixes = TableRegistrationUtils.getModuleDBPrefixList(module)
+          .stream()
+          .map(ModuleDBPrefix::getName)
+          .map(StringUtils::lowerCase)
+          .collect(Collectors.toList());
+      if (prefixes.isEmpty()) {
+        throw new OBException(
+            String.format(OBMessageUtils.messageBD("COPDEV_ModulePrefixNotFound"), module.getId()));
+      }
+      responseVars.put("message", advise(prefixes).toString());
+    } catch (Exception e) {
+      LOG.error("Error building the index advice", e);
+      responseVars.put(ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Runs the statistics queries for the tables of the given prefixes and builds the report.
+   *
+   * @param prefixes
+   *     The lower-case DB prefixes of the module.
+   * @return The report.
+   * @throws SQLException
+   *     If an error occurs while reading the statistics.
+   * @throws JSONException
+   *     If an error occurs while building the report.
+   */
+  private static JSONObject advise(List<String> prefixes) throws SQLException, JSONException {
+    String[] patterns = prefixes.stream().map(prefix -> prefix + "\\_%").toArray(String[]::new);
+    Connection conn = OBDal.getInstance().getConnection();
+    JSONObject report = new JSONObject();
+
+    JSONArray seqScans = new JSONArray();
+    try (PreparedStatement st = prepare(conn, SEQ_SCAN_QUERY, patterns)) {
+      st.setLong(2, MIN_ROWS_FOR_SEQ_SCAN);
+      try (ResultSet rs = st.executeQuery()) {
+        while (rs.next()) {
+          seqScans.put(new JSONObject().put(TABLE, rs.getString(1))
+              .put("seqScans", rs.getLong(2))
+              .put("indexScans", rs.getLong(3))
+              .put("liveRows", rs.getLong(4))
+              .put("advice", "Review the filters of the queries on this table and index the columns they use"));
+        }
+      }
+    }
+    report.put("seqScanHeavy", seqScans);
+
+    JSONArray unusedIndexes = new JSONArray();
+    try (PreparedStatement st = prepare(conn, UNUSED_INDEX_QUERY, patterns);
+         ResultSet rs = st.executeQuery()) {
+      while (rs.next()) {
+        unusedIndexes.put(new JSONObject().put(TABLE, rs.getString(1))
+            .put("index", rs.getString(2))
+            .put("sizeBytes", rs.getLong(3))
+            .put(DDL, String.format("DROP INDEX CONCURRENTLY IF EXISTS public.%s", rs.getString(2))));
+      }
+    }
+    report.put("unusedIndexes", unusedIndexes);
+
+    JSONArray unindexedFKs = new JSONArray();
+    ConstraintNameAllocator names = ConstraintNameAllocator.forPrefixes(prefixes);
+    try (PreparedStatement st = prepare(conn, UNINDEXED_FK_QUERY, patterns);
+         ResultSet rs = st.executeQuery()) {
+      while (rs.next()) {
+        String table = rs.getString(1);
+        String column = rs.getString(3);
+        String indexName = names.allocate(getPrefix(table, prefixes), table, rs.getString(4),
+            SupportingIndexes.INDEX_SUFFIX);
+        unindexedFKs.put(new JSONObject().put(TABLE, table)
+            .put("constraint", rs.getString(2))
+            .put("column", column)
+            .put(DDL, SupportingIndexes.buildCreateIndexQuery(indexName, table, column, true)));
+      }
+    }
+    report.put("unindexedForeignKeys", unindexedFKs);
+
+    report.put("bloat", getBloat(conn, patterns));
+    return report;
+  }
+
+  /**
+   * Estimates the bloat of the tables from their number of rows and the average width of their columns.
+   */
+  private static JSONArray getBloat(Connection conn, String[] patterns) throws SQLException, JSONException {
+    JSONArray bloat = new JSONArray();
+    try (PreparedStatement st = prepare(conn, BLOAT_QUERY, patterns)) {
+      st.setLong(2, MIN_PAGES_FOR_BLOAT);
+      try (ResultSet rs = st.executeQuery()) {
+        while (rs.next() && bloat.length() < MAX_ENTRIES) {
+          long pages = rs.getLong(2);
+          long expectedPages = rs.getLong(5);
+          double ratio = pages > 0 ? Math.max(0, pages - expectedPages) / (double) pages : 0;
+          if (ratio < MIN_BLOAT_RATIO) {
+            continue;
+          }
+          String table = rs.getString(1);
+          bloat.put(new JSONObject().put(TABLE, table)
+              .put("pages", pages)
+              .put("estimatedBloatPct", Math.round(ratio * 100))
+              .put("deadRows", rs.getLong(4))
+              .put(DDL, String.format("VACUUM (ANALYZE) public.%s", table)));
+        }
+      }
+    }
+    return bloat;
+  }
+
+  private static PreparedStatement prepare(Connection conn, String query, String[] patterns) throws SQLException {
+    PreparedStatement st = conn.prepareStatement(query);
+    st.setArray(1, conn.createArrayOf("text", patterns));
+    return st;
+  }
+
+  /**
+   * Returns the prefix of the module a table belongs to.
+   */
+  private static String getPrefix(String table, List<String> prefixes) {
+    return prefixes.stream()
+        .filter(prefix -> StringUtils.startsWithIgnoreCase(table, prefix + "_"))
+        .findFirst()
+        .orElse(prefixes.get(0));
+  }
+}
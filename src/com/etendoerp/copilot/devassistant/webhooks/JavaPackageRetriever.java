@@ -11,6 +11,7 @@ import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.model.ad.module.Module;
 
+import com.etendoerp.copilot.devassistant.SingleFlight;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
 /**
@@ -25,6 +26,11 @@ public class JavaPackageRetriever extends BaseWebhookService {
 
   @Override
   public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    // Identical searches fired at the same time by several assistants share a single query
+    SingleFlight.execute(this, parameter, responseVars, this::getJavaPackages);
+  }
+
+  private void getJavaPackages(Map<String, String> parameter, Map<String, String> responseVars) {
     LOG.debug("Executing WebHook: JavaPackageRetriever");
     String keyWord = parameter.get(KEY_WORD);
 
@@ -15,6 +15,8 @@ import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.datamodel.Table;
 
+import com.etendoerp.copilot.devassistant.AsyncWebhookJobs;
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
 /**
@@ -42,6 +44,10 @@ public class RegisterColumns extends BaseWebhookService {
   @Override
   public void get(Map<String, String> parameter, Map<String, String> responseVars) {
     logExecutionInit(parameter, log);
+    if (AsyncWebhookJobs.isRequested(parameter)) {
+      AsyncWebhookJobs.getInstance().submit(this, parameter, responseVars);
+      return;
+    }
     try {
       String tableName = parameter.get("TableName");
       responseVars.put("message", registerColumns(tableName));
@@ -70,6 +76,7 @@ public class RegisterColumns extends BaseWebhookService {
     if (table == null) {
       return String.format(OBMessageUtils.messageBD("COPDEV_TableNotFound"), tableName);
     }
+    ModuleLock.lock(table.getDataPackage().getModule());
     String recordId = table.getId();
     return executeRegisterColumns(recordId);
   }
@@ -3,16 +3,23 @@ package com.etendoerp.copilot.devassistant.webhooks;
 import static com.etendoerp.copilot.devassistant.Utils.execPInstanceProcess;
 import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.etendoerp.copilot.devassistant.AsyncWebhookJobs;
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
 import com.etendoerp.copilot.devassistant.Utils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.erpCommon.utility.OBError;
 import org.openbravo.erpCommon.utility.OBMessageUtils;
+import org.openbravo.model.ad.datamodel.Column;
 import org.openbravo.model.ad.module.Module;
 import org.openbravo.model.ad.ui.Element;
 import org.openbravo.model.ad.ui.Field;
@@ -46,6 +53,10 @@ public class RegisterFields extends BaseWebhookService {
   @Override
   public void get(Map<String, String> parameter, Map<String, String> responseVars) {
     logExecutionInit(parameter, log);
+    if (AsyncWebhookJobs.isRequested(parameter)) {
+      AsyncWebhookJobs.getInstance().submit(this, parameter, responseVars);
+      return;
+    }
     try {
       String tabID = parameter.get("WindowTabID");
       String helpComment = parameter.get("HelpComment");
@@ -59,6 +70,11 @@ public class RegisterFields extends BaseWebhookService {
         responseVars.put(ERROR_PROPERTY, String.format(OBMessageUtils.messageBD("COPDEV_TabNotFound"), tabID));
         return;
       }
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planFields(tab, module, helpComment, description).toString());
+        return;
+      }
+      ModuleLock.lock(dbPrefix);
       String recordId = tab.getId();
       OBError myMessage = execPInstanceProcess(REGISTER_FIELDS_PROCESS, recordId);
       String textResponse = myMessage.getTitle() + " - " + myMessage.getMessage();
@@ -108,4 +124,63 @@ public class RegisterFields extends BaseWebhookService {
       responseVars.put(ERROR_PROPERTY, e.getMessage());
     }
   }
+
+  /**
+   * Builds the dry-run plan of the fields of a tab. The registration process creates a field for each column of
+   * the table without one, and the fields that are not key columns then get the help comment and description, are
+   * shown in the grid and lose the underscores of their names, like the elements of the module.
+   *
+   * @param tab The tab whose fields would be registered.
+   * @param module The module of the elements that would be renamed.
+   * @param helpComment The help comment of the fields.
+   * @param description The description of the fields.
+   * @return The plan, as returned by {@link DryRun#toJSON()}.
+   * @throws JSONException If the plan cannot be written.
+   */
+  private JSONObject planFields(Tab tab, Module module, String helpComment, String description)
+      throws JSONException {
+    DryRun plan = new DryRun();
+    Map<String, Field> fieldsByColumn = new HashMap<>();
+    for (Field field : tab.getADFieldList()) {
+      fieldsByColumn.put(field.getColumn().getId(), field);
+    }
+    for (Column column : tab.getTable().getADColumnList()) {
+      Field field = fieldsByColumn.get(column.getId());
+      boolean key = Boolean.TRUE.equals(column.isKeyColumn());
+      Map<String, Object> values = DryRun.values();
+      if (field == null) {
+        values.put(Field.PROPERTY_TAB, tab);
+        values.put(Field.PROPERTY_COLUMN, column);
+        values.put(Field.PROPERTY_NAME, key ? column.getName() : StringUtils.replace(column.getName(), "_", " "));
+      } else {
+        values.put(Field.PROPERTY_ID, field.getId());
+        if (!key && field.getName() != null) {
+          values.put(Field.PROPERTY_NAME, StringUtils.replace(field.getName(), "_", " "));
+        }
+      }
+      if (!key) {
+        values.put(Field.PROPERTY_HELPCOMMENT, helpComment);
+        values.put(Field.PROPERTY_DESCRIPTION, description);
+        values.put(Field.PROPERTY_SHOWINGRIDVIEW, true);
+        planElement(plan, column, module);
+      }
+      plan.addRecord(Field.ENTITY_NAME, field == null ? DryRun.ACTION_CREATE : DryRun.ACTION_UPDATE, values);
+    }
+    return plan.toJSON();
+  }
+
+  private void planElement(DryRun plan, Column column, Module module) throws JSONException {
+    Element element = column.getApplicationElement();
+    if (element == null || element.getModule() == null || module == null
+        || !StringUtils.equals(element.getModule().getId(), module.getId())) {
+      return;
+    }
+    String elementName = StringUtils.isBlank(element.getName()) ? column.getName() : element.getName();
+    String elementPrintTxt = StringUtils.isBlank(element.getPrintText()) ? column.getName() : element.getPrintText();
+    Map<String, Object> values = DryRun.values();
+    values.put(Element.PROPERTY_ID, element.getId());
+    values.put(Element.PROPERTY_NAME, StringUtils.replace(elementName, "_", " "));
+    values.put(Element.PROPERTY_PRINTTEXT, StringUtils.replace(elementPrintTxt, "_", " "));
+    plan.addRecord(Element.ENTITY_NAME, DryRun.ACTION_UPDATE, values);
+  }
 }
@@ -8,6 +8,8 @@ import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
 import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.provider.OBProvider;
@@ -22,6 +24,9 @@ import org.openbravo.model.ad.module.ModuleDBPrefix;
 import org.openbravo.model.ad.ui.Tab;
 import org.openbravo.model.ad.ui.Window;
 
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.RecordUpsert;
 import com.etendoerp.copilot.devassistant.Utils;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
@@ -102,6 +107,9 @@ public class RegisterTab extends BaseWebhookService {
       // Retrieve the associated DataPackage
       Module module = Utils.getModuleByPrefix(dbPrefix);
       DataPackage dataPackage = Utils.getDataPackage(module);
+      if (!DryRun.isEnabled(parameter)) {
+        ModuleLock.lock(dbPrefix);
+      }
 
       // Formatting the table name by replacing underscores with spaces
       String name = table.getName().replace("_", " ");
@@ -115,8 +123,9 @@ public class RegisterTab extends BaseWebhookService {
           .findFirst()
           .orElse(null);
 
-      // If the tab exists, return an error message
-      if (tab != null) {
+      // The tab of the table in the window is its natural key: a tab of the module converges to the request,
+      // while a tab of another module cannot be changed
+      if (tab != null && !StringUtils.equals(tab.getModule().getId(), module.getId())) {
         window = tab.getWindow();
         String copdevTabAlreadyExists = OBMessageUtils.messageBD("COPDEV_TabAlreadyExists");
         responseVars.put(ERROR_PROPERTY,
@@ -130,12 +139,34 @@ public class RegisterTab extends BaseWebhookService {
       }
 
       OBContext context = OBContext.getOBContext();
+      boolean setTableWindow = table.getDataPackage() != null && dataPackage != null
+          && StringUtils.equals(table.getDataPackage().getId(), dataPackage.getId());
+      Map<String, Object> tabValues = getTabValues(window, name, table, description, helpComment, tabLevel,
+          sequenceNumber, module);
+
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planTab(tab, table, setTableWindow ? window : null, tabValues, context)
+            .toString());
+        return;
+      }
 
       // Fetching the window and setting the table for the window
-      if (table.getDataPackage() != null && dataPackage != null
-              && StringUtils.equals(table.getDataPackage().getId(), dataPackage.getId())) {
+      boolean changed = false;
+      if (setTableWindow && table.getWindow() != window) {
         table.setWindow(window);
         OBDal.getInstance().save(table);
+        changed = true;
+      }
+
+      if (tab != null) {
+        changed |= RecordUpsert.converge(tab, tabValues);
+        if (changed) {
+          OBDal.getInstance().flush();
+        }
+        responseVars.put("message", String.format(OBMessageUtils.messageBD(
+            changed ? "COPDEV_RecordUpdated" : "COPDEV_RecordUpToDate"), Tab.ENTITY_NAME, tab.getName(),
+            tab.getId()));
+        return;
       }
 
       // Creating and saving the new tab
@@ -155,6 +186,65 @@ public class RegisterTab extends BaseWebhookService {
     }
   }
 
+  /**
+   * Returns the values a tab gets from the request, as set by {@link #createTab}. The parameters are the same.
+   *
+   * @return the values by property name
+   */
+  private Map<String, Object> getTabValues(Window window, String name, Table table, String description,
+      String helpComment, String tabLevel, String sequenceNumber, Module module) {
+    long level = Long.parseLong(tabLevel);
+    Map<String, Object> values = DryRun.values();
+    values.put(Tab.PROPERTY_NAME, level == 0 ? name + " Header" : name);
+    values.put(Tab.PROPERTY_TABLE, table);
+    values.put(Tab.PROPERTY_WINDOW, window);
+    values.put(Tab.PROPERTY_UIPATTERN, STD);
+    values.put(Tab.PROPERTY_SEQUENCENUMBER, Long.parseLong(sequenceNumber));
+    values.put(Tab.PROPERTY_MODULE, module);
+    values.put(Tab.PROPERTY_DESCRIPTION, description);
+    values.put(Tab.PROPERTY_HELPCOMMENT, helpComment);
+    values.put(Tab.PROPERTY_TABLEVEL, level);
+    return values;
+  }
+
+  /**
+   * Builds the dry-run plan of the tab: the update of the window of the table, when the table belongs to the
+   * module, and the tab record that would be created, or the changes to the existing one.
+   *
+   * @param tab
+   *     the existing tab of the table in the window, or null
+   * @param table
+   *     the table of the tab
+   * @param tableWindow
+   *     the window to set on the table, or null if the table does not belong to the module
+   * @param tabValues
+   *     the values requested for the tab
+   * @param context
+   *     the OBContext of the current user
+   * @return the plan, as returned by {@link DryRun#toJSON()}
+   * @throws JSONException
+   *     if the plan cannot be written
+   */
+  private JSONObject planTab(Tab tab, Table table, Window tableWindow, Map<String, Object> tabValues,
+      OBContext context) throws JSONException {
+    DryRun plan = new DryRun();
+    if (tableWindow != null) {
+      Map<String, Object> tableValues = DryRun.values();
+      tableValues.put(Table.PROPERTY_WINDOW, tableWindow);
+      plan.addUpdate(Table.ENTITY_NAME, table, tableValues);
+    }
+    if (tab != null) {
+      plan.addUpdate(Tab.ENTITY_NAME, tab, tabValues);
+    } else {
+      Map<String, Object> created = DryRun.values();
+      created.put(Tab.PROPERTY_CLIENT, context.getCurrentClient());
+      created.put(Tab.PROPERTY_ORGANIZATION, context.getCurrentOrganization());
+      created.putAll(tabValues);
+      plan.addRecord(Tab.ENTITY_NAME, DryRun.ACTION_CREATE, created);
+    }
+    return plan.toJSON();
+  }
+
   /**
    * Creates a new tab for the specified window and table with the provided details.
    *
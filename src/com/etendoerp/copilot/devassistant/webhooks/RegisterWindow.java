@@ -10,9 +10,12 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
 import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.provider.OBProvider;
+import org.openbravo.base.structure.BaseOBObject;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
@@ -24,6 +27,9 @@ import org.openbravo.model.ad.module.ModuleDBPrefix;
 import org.openbravo.model.ad.ui.Menu;
 import org.openbravo.model.ad.ui.Window;
 
+import com.etendoerp.copilot.devassistant.DryRun;
+import com.etendoerp.copilot.devassistant.ModuleLock;
+import com.etendoerp.copilot.devassistant.RecordUpsert;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
 /**
@@ -67,9 +73,41 @@ public class RegisterWindow extends BaseWebhookService {
       DataPackage dataPackage = getDataPackage(dbPrefix);
 
       OBContext context = OBContext.getOBContext();
+      Module module = dataPackage.getModule();
+      if (!DryRun.isEnabled(parameter)) {
+        ModuleLock.lock(dbPrefix);
+      }
+
+      // The window is found by its natural key, so a retried call converges instead of duplicating it
+      Window window = findWindow(name, module);
+      Menu menu = window != null ? findMenu(window) : null;
+      Map<String, Object> windowValues = getWindowValues(name, module, description, helpComment);
+      Map<String, Object> menuValues = getMenuValues(name, module, description);
+
+      if (DryRun.isEnabled(parameter)) {
+        responseVars.put("response", planWindow(window, menu, windowValues, menuValues, context).toString());
+        return;
+      }
+
+      if (window != null) {
+        boolean changed = RecordUpsert.converge(window, windowValues);
+        if (menu == null) {
+          createMenuElem(context, window, description);
+          changed = true;
+        } else {
+          changed |= RecordUpsert.converge(menu, menuValues);
+        }
+        if (changed) {
+          OBDal.getInstance().flush();
+        }
+        responseVars.put("message", String.format(OBMessageUtils.messageBD(
+            changed ? "COPDEV_RecordUpdated" : "COPDEV_RecordUpToDate"), Window.ENTITY_NAME, window.getName(),
+            window.getId()));
+        return;
+      }
 
       // Create the window record
-      Window window = createWindow(name, dataPackage, context, description, helpComment);
+      window = createWindow(name, dataPackage, context, description, helpComment);
 
       // Create the menu entry for the window
       createMenuElem(context, window, description);
@@ -88,6 +126,92 @@ public class RegisterWindow extends BaseWebhookService {
     }
   }
 
+  /**
+   * Finds the window of a module by name.
+   *
+   * @param name The name of the window.
+   * @param module The module of the window.
+   * @return The window, or null if the module has none with that name.
+   */
+  private Window findWindow(String name, Module module) {
+    OBCriteria<Window> windowCrit = OBDal.getInstance().createCriteria(Window.class);
+    windowCrit.add(Restrictions.eq(Window.PROPERTY_NAME, name));
+    windowCrit.add(Restrictions.eq(Window.PROPERTY_MODULE, module));
+    windowCrit.setMaxResults(1);
+    return (Window) windowCrit.uniqueResult();
+  }
+
+  /**
+   * Finds the menu entry of a window.
+   *
+   * @param window The window.
+   * @return The menu entry, or null if the window has none.
+   */
+  private Menu findMenu(Window window) {
+    OBCriteria<Menu> menuCrit = OBDal.getInstance().createCriteria(Menu.class);
+    menuCrit.add(Restrictions.eq(Menu.PROPERTY_WINDOW, window));
+    menuCrit.setMaxResults(1);
+    return (Menu) menuCrit.uniqueResult();
+  }
+
+  /**
+   * @return The values a window gets from the request, as set by {@link #createWindow}.
+   */
+  private Map<String, Object> getWindowValues(String name, Module module, String description, String helpComment) {
+    Map<String, Object> values = DryRun.values();
+    values.put(Window.PROPERTY_NAME, name);
+    values.put(Window.PROPERTY_MODULE, module);
+    values.put(Window.PROPERTY_WINDOWTYPE, WINDOW_TYPE);
+    values.put(Window.PROPERTY_SALESTRANSACTION, true);
+    values.put(Window.PROPERTY_DESCRIPTION, description);
+    values.put(Window.PROPERTY_HELPCOMMENT, helpComment);
+    return values;
+  }
+
+  /**
+   * @return The values a menu entry gets from the request, as set by {@link #createMenuElem}.
+   */
+  private Map<String, Object> getMenuValues(String name, Module module, String description) {
+    Map<String, Object> values = DryRun.values();
+    values.put(Menu.PROPERTY_NAME, name);
+    values.put(Menu.PROPERTY_SUMMARYLEVEL, false);
+    values.put(Menu.PROPERTY_ACTION, MENU_SET_ACTION);
+    values.put(Menu.PROPERTY_OPENLINKINBROWSER, false);
+    values.put(Menu.PROPERTY_MODULE, module);
+    values.put(Menu.PROPERTY_DESCRIPTION, description);
+    return values;
+  }
+
+  /**
+   * Builds the dry-run plan of the window: the window and menu records that would be created, or the changes to
+   * the existing ones, with the same values as {@link #createWindow} and {@link #createMenuElem}.
+   *
+   * @param window The existing window, or null.
+   * @param menu The existing menu entry of the window, or null.
+   * @return The plan, as returned by {@link DryRun#toJSON()}.
+   * @throws JSONException If the plan cannot be written.
+   */
+  private JSONObject planWindow(Window window, Menu menu, Map<String, Object> windowValues,
+      Map<String, Object> menuValues, OBContext context) throws JSONException {
+    DryRun plan = new DryRun();
+    planRecord(plan, Window.ENTITY_NAME, window, windowValues, context);
+    planRecord(plan, Menu.ENTITY_NAME, menu, menuValues, context);
+    return plan.toJSON();
+  }
+
+  private void planRecord(DryRun plan, String entityName, BaseOBObject existing, Map<String, Object> values,
+      OBContext context) throws JSONException {
+    if (existing != null) {
+      plan.addUpdate(entityName, existing, values);
+      return;
+    }
+    Map<String, Object> created = DryRun.values();
+    created.put(Window.PROPERTY_CLIENT, context.getCurrentClient());
+    created.put(Window.PROPERTY_ORGANIZATION, context.getCurrentOrganization());
+    created.putAll(values);
+    plan.addRecord(entityName, DryRun.ACTION_CREATE, created);
+  }
+
   /**
    * Creates a new menu entry for the given window.
    *
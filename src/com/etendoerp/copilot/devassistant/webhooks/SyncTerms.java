@@ -16,6 +16,7 @@ import org.openbravo.erpCommon.utility.OBError;
 import org.openbravo.model.ad.module.Module;
 import org.openbravo.model.ad.ui.Element;
 
+import com.etendoerp.copilot.devassistant.AsyncWebhookJobs;
 import com.etendoerp.webhookevents.services.BaseWebhookService;
 
 /**
@@ -42,8 +43,13 @@ public class SyncTerms extends BaseWebhookService {
   @Override
   public void get(Map<String, String> parameter, Map<String, String> responseVars) {
     logExecutionInit(parameter, log);
+    if (AsyncWebhookJobs.isRequested(parameter)) {
+      AsyncWebhookJobs.getInstance().submit(this, parameter, responseVars);
+      return;
+    }
     try {
       // Initialize process to sync terms
+      AsyncWebhookJobs.reportProgress("Synchronizing terms");
       String recordId = "0";
       OBError myMessage = execPInstanceProcess(PROCESS_SYNC_TERM, recordId);
       String textResponse = myMessage.getTitle() + " - " + myMessage.getMessage();
@@ -58,6 +64,7 @@ public class SyncTerms extends BaseWebhookService {
 
 
       // Clean-up process for elements
+      AsyncWebhookJobs.reportProgress("Cleaning up terms");
       OBCriteria<Module> modCrit = OBDal.getInstance().createCriteria(Module.class);
       modCrit.add(Restrictions.eq(Module.PROPERTY_INDEVELOPMENT, true));
       List<Module> modInDevList = modCrit.list();
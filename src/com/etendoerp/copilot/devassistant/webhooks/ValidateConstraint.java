@@ -0,0 +1,53 @@
+package com.etendoerp.copilot.devassistant.webhooks;
+
+import static com.etendoerp.copilot.devassistant.Utils.logExecutionInit;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.erpCommon.utility.OBMessageUtils;
+
+import com.etendoerp.copilot.devassistant.ConstraintValidator;
+import com.etendoerp.copilot.devassistant.SafeDDLExecutor;
+import com.etendoerp.webhookevents.services.BaseWebhookService;
+
+/**
+ * Webhook that validates a constraint created {@code NOT VALID}.
+ * <p>
+ * It validates again a constraint whose validation, queued by {@link ConstraintValidator}, failed or was lost on a
+ * restart.
+ * </p>
+ */
+public class ValidateConstraint extends BaseWebhookService {
+
+  private static final Logger log = LogManager.getLogger();
+  public static final String TABLE_NAME = ConstraintValidator.PARAM_TABLE_NAME;
+  public static final String CONSTRAINT_NAME = ConstraintValidator.PARAM_CONSTRAINT_NAME;
+  public static final String SAFE_DDL = ConstraintValidator.PARAM_SAFE_DDL;
+  private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    logExecutionInit(parameter, log);
+    String tableName = parameter.get(TABLE_NAME);
+    String constraintName = parameter.get(CONSTRAINT_NAME);
+    if (tableName == null || constraintName == null || !IDENTIFIER.matcher(tableName).matches()
+        || !IDENTIFIER.matcher(constraintName).matches()) {
+      responseVars.put("error", String.format(OBMessageUtils.messageBD("COPDEV_InvalidConstraint"), tableName,
+          constraintName));
+      return;
+    }
+    SafeDDLExecutor safeDDL = SafeDDLExecutor.isEnabled(parameter.get(SAFE_DDL))
+        ? SafeDDLExecutor.fromProperties() : null;
+    JSONObject result = ConstraintValidator.validate(tableName, constraintName, ConstraintValidator.MODE_SYNC,
+        safeDDL);
+    if (result.has("error")) {
+      responseVars.put("error", result.optString("error"));
+    } else {
+      responseVars.put("response", result.toString());
+    }
+  }
+}